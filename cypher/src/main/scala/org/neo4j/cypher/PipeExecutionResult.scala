@@ -65,7 +65,9 @@ class PipeExecutionResult(result: Traversable[Map[String, Any]], val symbols:Sym
   }
 
   def dumpToString(writer: PrintWriter) {
+    val start = System.currentTimeMillis()
     val eagerResult = result.toList
+    val totalTime = timeTaken + System.currentTimeMillis() - start
 
     val columnSizes = calculateColumnSizes(eagerResult)
 
@@ -73,7 +75,7 @@ class PipeExecutionResult(result: Traversable[Map[String, Any]], val symbols:Sym
     val headerLine: String = createString(columns, columnSizes, headers)
     val lineWidth: Int = headerLine.length - 2
     val --- = "+" + repeat("-", lineWidth) + "+"
-    val footer = "%d rows, %d ms".format(eagerResult.size, timeTaken)
+    val footer = "%d rows, %d ms".format(eagerResult.size, totalTime)
 
     writer.println(---)
     writer.println(headerLine)
@@ -119,7 +121,10 @@ class PipeExecutionResult(result: Traversable[Map[String, Any]], val symbols:Sym
     }).mkString("| ", " | ", " |")
   }
 
+  // Rows are pulled through the pipes as they are read, only sorting and aggregation take in all their rows first.
+  // The first row is made right away, so that queries failing from the start, like on a missing parameter, fail here.
   val iterator = result.toIterator
+  iterator.hasNext
 
   def hasNext: Boolean = iterator.hasNext
 
@@ -27,8 +27,31 @@ import java.lang.Iterable
 import org.neo4j.cypher.internal.pipes._
 import org.neo4j.cypher._
 import org.neo4j.tooling.GlobalGraphOperations
+import org.neo4j.kernel.{AbstractGraphDatabase, Config}
+import org.neo4j.kernel.guard.Guard
+import org.neo4j.graphdb.index.{LongIndexHits, ReadableIdIndex}
 
 class ExecutionPlanImpl(query: Query, graph: GraphDatabaseService) extends ExecutionPlan {
+  // ORDER BY without LIMIT spills to disk beyond this many rows, if configured
+  private lazy val sortRowsInMemory: Option[Int] = graph match {
+    case database: AbstractGraphDatabase =>
+      database.getConfig.getParams.asScala.get(Config.CYPHER_SORT_ROWS_IN_MEMORY).map(_.toString.toInt).filter(_ > 0)
+    case _ => None
+  }
+
+  // Aggregation spills groups to disk beyond this many bytes, if configured
+  private lazy val aggregationMemory: Option[Long] = graph match {
+    case database: AbstractGraphDatabase =>
+      database.getConfig.getParams.asScala.get(Config.CYPHER_AGGREGATION_MEMORY).map(_.toString.toLong).filter(_ > 0)
+    case _ => None
+  }
+
+  // Rows produced by the pattern match count against the execution guard, if enabled
+  private lazy val guard: Option[Guard] = graph match {
+    case database: AbstractGraphDatabase => Option(database.getGuard)
+    case _ => None
+  }
+
   val (executionPlan, executionPlanText) = prepareExecutionPlan()
 
   def execute(params: Map[String, Any]): ExecutionResult = {
@@ -56,6 +79,7 @@ class ExecutionPlanImpl(query: Query, graph: GraphDatabaseService) extends Execu
         context = createMatchPipe(matching, namedPaths, context)
 
         context.pipe = createShortestPathPipe(context.pipe, matching, namedPaths)
+        guard.foreach(g => context.pipe = new GuardPipe(context.pipe, g))
         context = addFilters(context)
 
         namedPaths match {
@@ -98,13 +122,13 @@ class ExecutionPlanImpl(query: Query, graph: GraphDatabaseService) extends Execu
           aggregation match {
             case None =>
             case Some(aggr) => {
-              context.pipe = new EagerAggregationPipe(context.pipe, returns.returnItems, aggr.aggregationItems)
+              context.pipe = new EagerAggregationPipe(context.pipe, returns.returnItems, aggr.aggregationItems, aggregationMemory, graph)
             }
           }
         }
 
         if (!sorted) {
-          createSortPipe(sort, allReturnItems, context)
+          createSortPipe(sort, allReturnItems, context, slice)
         }
 
         slice match {
@@ -130,7 +154,7 @@ class ExecutionPlanImpl(query: Query, graph: GraphDatabaseService) extends Execu
     }
   }
 
-  private def createSortPipe(sort: Option[Sort], allReturnItems: Seq[ReturnItem], context: CurrentContext) {
+  private def createSortPipe(sort: Option[Sort], allReturnItems: Seq[ReturnItem], context: CurrentContext, slice: Option[Slice] = None) {
     sort match {
       case None =>
       case Some(s) => {
@@ -139,7 +163,10 @@ class ExecutionPlanImpl(query: Query, graph: GraphDatabaseService) extends Execu
         if (sortItems.nonEmpty) {
           context.pipe = new ExtractPipe(context.pipe, sortItems)
         }
-        context.pipe = new SortPipe(context.pipe, s.sortItems.toList)
+        context.pipe = slice match {
+          case Some(Slice(skip, Some(limit))) => new TopPipe(context.pipe, s.sortItems.toList, skip, limit)
+          case _ => new SortPipe(context.pipe, s.sortItems.toList, sortRowsInMemory, graph)
+        }
       }
     }
   }
@@ -230,16 +257,24 @@ class ExecutionPlanImpl(query: Query, graph: GraphDatabaseService) extends Execu
       new NodeStartPipe(lastPipe, varName, m => {
         val keyVal = key(m).toString
         val valueVal = value(m)
-        val indexHits: Iterable[Node] = graph.index.forNodes(idxName).get(keyVal, valueVal)
-        indexHits.asScala
+        graph.index.forNodes(idxName) match {
+          case index: ReadableIdIndex => entitiesById(index.getIds(keyVal, valueVal), graph.getNodeById)
+          case index =>
+            val indexHits: Iterable[Node] = index.get(keyVal, valueVal)
+            indexHits.asScala
+        }
       })
 
     case RelationshipByIndex(varName, idxName, key, value) =>
       new RelationshipStartPipe(lastPipe, varName, m => {
         val keyVal = key(m).toString
         val valueVal = value(m)
-        val indexHits: Iterable[Relationship] = graph.index.forRelationships(idxName).get(keyVal, valueVal)
-        indexHits.asScala
+        graph.index.forRelationships(idxName) match {
+          case index: ReadableIdIndex => entitiesById(index.getIds(keyVal, valueVal), graph.getRelationshipById)
+          case index =>
+            val indexHits: Iterable[Relationship] = index.get(keyVal, valueVal)
+            indexHits.asScala
+        }
       })
 
     case NodeByIndexQuery(varName, idxName, query) =>
@@ -262,6 +297,26 @@ class ExecutionPlanImpl(query: Query, graph: GraphDatabaseService) extends Execu
     case RelationshipById(varName, id) => new RelationshipStartPipe(lastPipe, varName, m => makeNodes[Relationship](id(m), varName, graph.getRelationshipById))
   }
 
+  // The ids are read up front so the hits are closed right away, whether or not the result is read to the end.
+  // Entities are looked up as the result is traversed, skipping ids of entities which have been deleted.
+  private def entitiesById[T](hits: LongIndexHits, getById: Long => T): scala.collection.Iterable[T] = {
+    val ids = try {
+      val builder = new scala.collection.mutable.ArrayBuilder.ofLong()
+      while (hits.hasNext) {
+        builder += hits.next()
+      }
+      builder.result()
+    } finally {
+      hits.close()
+    }
+
+    ids.view.flatMap(id => try {
+      Seq(getById(id))
+    } catch {
+      case e: NotFoundException => Seq()
+    })
+  }
+
   private def canUseOrderedAggregation(sortColumns: Seq[String], keyColumns: Seq[String]): Boolean = keyColumns.take(sortColumns.size) == sortColumns
 
   private def makeNodes[T](data: Any, name: String, getElement: Long => T): Seq[T] = {
@@ -19,16 +19,21 @@
  */
 package org.neo4j.cypher.internal.pipes
 
-import aggregation.AggregationFunction
 import collection.Seq
 import org.neo4j.cypher.internal.commands.{AggregationItem, ReturnItem}
 import java.lang.String
 import org.neo4j.cypher.internal.symbols.{Identifier, SymbolTable}
+import org.neo4j.graphdb.GraphDatabaseService
 
 // Eager aggregation means that this pipe will eagerly load the whole resulting subgraphs before starting
 // to emit aggregated results.
 // Cypher is lazy until it has to - this pipe makes stops the lazyness
-class EagerAggregationPipe(source: Pipe, val returnItems: Seq[ReturnItem], aggregations: Seq[AggregationItem]) extends PipeWithSource(source) {
+// With a memory budget, groups that don't fit are spilled to disk - see HashAggregation
+class EagerAggregationPipe(source: Pipe, val returnItems: Seq[ReturnItem], aggregations: Seq[AggregationItem],
+                           memoryBudget: Option[Long], graph: GraphDatabaseService) extends PipeWithSource(source) {
+  def this(source: Pipe, returnItems: Seq[ReturnItem], aggregations: Seq[AggregationItem]) =
+    this(source, returnItems, aggregations, None, null)
+
   val symbols: SymbolTable = createSymbols()
 
   def dependencies: Seq[Identifier] = returnItems.flatMap(_.dependencies) ++ aggregations.flatMap(_.dependencies)
@@ -41,23 +46,8 @@ class EagerAggregationPipe(source: Pipe, val returnItems: Seq[ReturnItem], aggre
   }
 
   def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = {
-    // This is the temporary storage used while the aggregation is going on
-    val result = collection.mutable.Map[NiceHasher, Seq[AggregationFunction]]()
     val keyNames = returnItems.map(_.columnName)
-    val aggregationNames = aggregations.map(_.identifier.name)
-
-    source.createResults(params).foreach(m => {
-      val groupValues: NiceHasher = new NiceHasher(keyNames.map(m(_)))
-      val functions = result.getOrElseUpdate(groupValues, aggregations.map(_.createAggregationFunction))
-      functions.foreach(func => func(m))
-    })
-
-    result.map {
-      case (key, value: Seq[AggregationFunction]) => {
-        val elems = keyNames.zip(key.original) ++ aggregationNames.zip(value.map(_.result))
-        elems.toMap
-      }
-    }
+    new HashAggregation(keyNames, aggregations, memoryBudget, graph).aggregate(source.createResults(params))
   }
 
   override def executionPlan(): String = source.executionPlan() + "\r\n" + "EagerAggregation( keys: [" + returnItems.map(_.columnName).mkString(", ") + "], aggregates: [" + aggregations.mkString(", ") + "])"
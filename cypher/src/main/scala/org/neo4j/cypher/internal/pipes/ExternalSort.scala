@@ -0,0 +1,208 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes
+
+import java.io._
+import scala.collection.JavaConverters._
+import collection.mutable.{ArrayBuffer, PriorityQueue}
+import org.neo4j.graphdb.{GraphDatabaseService, Node, Path, PropertyContainer, Relationship}
+import org.neo4j.cypher.PathImpl
+
+/**
+ * Sorts rows keeping at most rowsInMemory of them on heap. Whenever that
+ * many rows have been added they are sorted and written to a temporary file
+ * as a run, and the result merges the runs as it's traversed.
+ *
+ * Nodes, relationships and paths are written as ids and looked up again in
+ * the graph when read back, other values have to be serializable.
+ */
+class ExternalSort(ordering: Ordering[Map[String, Any]], rowsInMemory: Int, graph: GraphDatabaseService) {
+  require(rowsInMemory > 0, "rowsInMemory must be positive")
+
+  private val buffer = new ArrayBuffer[Map[String, Any]]()
+  private val runs = new ArrayBuffer[SortRun]()
+
+  def add(row: Map[String, Any]) {
+    buffer += row
+    if (buffer.size >= rowsInMemory) {
+      runs += SortRun.write(buffer.sorted(ordering))
+      buffer.clear()
+    }
+  }
+
+  def result(): Traversable[Map[String, Any]] = if (runs.isEmpty)
+    buffer.sorted(ordering)
+  else
+    new MergedRuns(runs.toIndexedSeq, buffer.sorted(ordering), ordering, graph)
+}
+
+/**
+ * The merged rows of the spilled runs and the rows left in memory. The run
+ * files are deleted once the rows have been traversed to the end, which can
+ * only be done once. Traversals that stop early, like isEmpty and head, can
+ * be done any number of times before that.
+ */
+class MergedRuns(runs: IndexedSeq[SortRun], inMemory: Seq[Map[String, Any]],
+                 ordering: Ordering[Map[String, Any]], graph: GraphDatabaseService) extends Traversable[Map[String, Any]] {
+  private var consumed = false
+
+  // The lowest row first, ties are decided by the order of the runs to keep the sort stable
+  private val mergeOrdering = new Ordering[(Map[String, Any], Int)] {
+    def compare(a: (Map[String, Any], Int), b: (Map[String, Any], Int)): Int = {
+      val result = ordering.compare(b._1, a._1)
+      if (result != 0) result else b._2 - a._2
+    }
+  }
+
+  def foreach[U](f: (Map[String, Any]) => U) {
+    if (consumed) {
+      throw new IllegalStateException("The sorted rows have already been read to the end")
+    }
+
+    val readers = runs.map(_.open(graph))
+    try {
+      val sources: IndexedSeq[Iterator[Map[String, Any]]] = readers :+ inMemory.iterator
+      val heap = new PriorityQueue[(Map[String, Any], Int)]()(mergeOrdering)
+      for (i <- 0 until sources.size if sources(i).hasNext) {
+        heap.enqueue((sources(i).next(), i))
+      }
+      while (heap.nonEmpty) {
+        val (row, i) = heap.dequeue()
+        f(row)
+        if (sources(i).hasNext) {
+          heap.enqueue((sources(i).next(), i))
+        }
+      }
+      consumed = true
+    } finally {
+      readers.foreach(_.close())
+      if (consumed) {
+        runs.foreach(_.delete())
+      }
+    }
+  }
+}
+
+class SortRun(file: File, val size: Int) {
+  def open(graph: GraphDatabaseService): SortRunReader = new SortRunReader(file, size, graph)
+
+  def delete() {
+    file.delete()
+  }
+}
+
+object SortRun {
+  def write(rows: Seq[Map[String, Any]]): SortRun = {
+    val writer = new RunWriter("cypher-sort")
+    rows.foreach(writer.write)
+    writer.finish()
+  }
+
+  private[pipes] def toStorable(value: Any): Any = value match {
+    case node: Node => NodeId(node.getId)
+    case rel: Relationship => RelationshipId(rel.getId)
+    case path: Path => PathEntities(path.iterator().asScala.map(toStorable).toList)
+    case seq: Seq[_] => SeqValues(seq.map(toStorable).toList)
+    case x => x
+  }
+
+  private[pipes] def fromStorable(value: Any, graph: GraphDatabaseService): Any = value match {
+    case NodeId(id) => graph.getNodeById(id)
+    case RelationshipId(id) => graph.getRelationshipById(id)
+    case PathEntities(entities) => PathImpl(entities.map(e => fromStorable(e, graph).asInstanceOf[PropertyContainer]): _*)
+    case SeqValues(values) => values.map(fromStorable(_, graph))
+    case x => x
+  }
+}
+
+/**
+ * Writes rows to a temporary file one at a time, finish gives the run that
+ * reads them back in the same order.
+ */
+class RunWriter(prefix: String) {
+  private val file = File.createTempFile(prefix, ".run")
+  file.deleteOnExit()
+  private val out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))
+  private var written = 0
+
+  def write(row: Map[String, Any]) {
+    val storable = new java.util.HashMap[String, Any]()
+    row.foreach {
+      case (key, value) => storable.put(key, SortRun.toStorable(value))
+    }
+    try {
+      out.writeObject(storable)
+    } catch {
+      case e: NotSerializableException => {
+        abort()
+        throw new RuntimeException("Can't spill rows with values of type " + e.getMessage + " to disk", e)
+      }
+    }
+    written += 1
+    // Resetting the stream now and then keeps it from holding on to every row written
+    if (written % RunWriter.ROWS_BETWEEN_RESETS == 0) {
+      out.reset()
+    }
+  }
+
+  def finish(): SortRun = {
+    out.close()
+    new SortRun(file, written)
+  }
+
+  def abort() {
+    out.close()
+    file.delete()
+  }
+}
+
+object RunWriter {
+  private val ROWS_BETWEEN_RESETS = 1000
+}
+
+class SortRunReader(file: File, size: Int, graph: GraphDatabaseService) extends Iterator[Map[String, Any]] {
+  private val in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))
+  private var read = 0
+
+  def hasNext: Boolean = read < size
+
+  def next(): Map[String, Any] = {
+    if (!hasNext) {
+      throw new NoSuchElementException()
+    }
+    read += 1
+    val storable = in.readObject().asInstanceOf[java.util.Map[String, Any]]
+    storable.asScala.map {
+      case (key, value) => (key, SortRun.fromStorable(value, graph))
+    }.toMap
+  }
+
+  def close() {
+    in.close()
+  }
+}
+
+private case class NodeId(id: Long)
+
+private case class RelationshipId(id: Long)
+
+private case class PathEntities(entities: List[Any])
+
+private case class SeqValues(values: List[Any])
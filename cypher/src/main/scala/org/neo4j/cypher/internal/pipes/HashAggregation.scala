@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes
+
+import aggregation.AggregationFunction
+import collection.mutable.{ArrayBuffer, Map => MutableMap}
+import org.neo4j.cypher.internal.commands.AggregationItem
+import org.neo4j.graphdb.GraphDatabaseService
+
+/**
+ * Groups rows on the values of the key columns and feeds each row to the
+ * aggregation functions of its group.
+ *
+ * With a memory budget the estimated size of the groups is tracked, including
+ * the values functions like collect and distinct keep as they aggregate, and
+ * once a new group wouldn't fit, rows of groups not already in memory are written
+ * to one of a number of partition files picked by the hash of the key. The
+ * groups in memory keep aggregating as before, so every group lives either in
+ * memory or in a single partition. Each partition is then aggregated on its
+ * own with the same budget, partitioning it further if needed.
+ */
+class HashAggregation(keyNames: Seq[String], aggregations: Seq[AggregationItem],
+                      memoryBudget: Option[Long], graph: GraphDatabaseService) {
+  memoryBudget.foreach(budget => require(budget > 0, "memoryBudget must be positive"))
+
+  private val aggregationNames = aggregations.map(_.identifier.name)
+
+  def aggregate(rows: TraversableOnce[Map[String, Any]]): Traversable[Map[String, Any]] = aggregate(rows, 0)
+
+  private def aggregate(rows: TraversableOnce[Map[String, Any]], depth: Int): Traversable[Map[String, Any]] = {
+    val groups = MutableMap[NiceHasher, Seq[AggregationFunction]]()
+    var used = 0L
+    var partitions: IndexedSeq[RunWriter] = null
+
+    def startGroup(key: NiceHasher): Seq[AggregationFunction] = {
+      val functions = aggregations.map(_.createAggregationFunction)
+      groups(key) = functions
+      functions
+    }
+
+    // Functions keeping values from the rows, like collect, grow after their group has been charged for
+    def feed(functions: Seq[AggregationFunction], row: Map[String, Any]) {
+      if (memoryBudget.isEmpty) {
+        functions.foreach(func => func(row))
+      } else {
+        functions.foreach(func => {
+          val before = func.retainedSize
+          func(row)
+          used += func.retainedSize - before
+        })
+      }
+    }
+
+    def fits(key: NiceHasher): Boolean = memoryBudget match {
+      // Past the last level there's nothing left to gain from partitioning, all groups share a hash
+      case Some(budget) if groups.nonEmpty && depth < HashAggregation.MAX_DEPTH => {
+        val size = HashAggregation.groupSize(key.original, aggregations.size)
+        if (size <= budget - used) {
+          used += size
+          true
+        } else {
+          false
+        }
+      }
+      case _ => true
+    }
+
+    try {
+      rows.foreach(row => {
+        val key = new NiceHasher(keyNames.map(row(_)))
+        groups.get(key) match {
+          case Some(functions) => feed(functions, row)
+          case None if fits(key) => feed(startGroup(key), row)
+          case None => {
+            if (partitions == null) {
+              partitions = (0 until HashAggregation.PARTITIONS).map(i => new RunWriter("cypher-aggregation"))
+            }
+            partitions(HashAggregation.partition(key, depth)).write(row)
+          }
+        }
+      })
+    } catch {
+      case e: Throwable => {
+        if (partitions != null) {
+          partitions.foreach(_.abort())
+        }
+        throw e
+      }
+    }
+
+    val inMemory = groups.toSeq.map {
+      case (key, functions) => (keyNames.zip(key.original) ++ aggregationNames.zip(functions.map(_.result))).toMap
+    }
+    if (partitions == null)
+      inMemory
+    else
+      new SpilledGroups(inMemory, partitions.map(_.finish()), depth)
+  }
+
+  /**
+   * The groups that stayed in memory followed by the aggregated partitions.
+   * Each traversal aggregates the partitions again as it reaches them, so
+   * traversals that stop early, like isEmpty and head, can be done any number
+   * of times. Like MergedRuns the partition files are deleted once the groups
+   * have been traversed to the end, which can only be done once.
+   */
+  private class SpilledGroups(inMemory: Seq[Map[String, Any]], partitions: Seq[SortRun], depth: Int) extends Traversable[Map[String, Any]] {
+    private var consumed = false
+
+    def foreach[U](f: (Map[String, Any]) => U) {
+      if (consumed) {
+        throw new IllegalStateException("The aggregated rows have already been read to the end")
+      }
+
+      inMemory.foreach(f)
+      partitions.foreach(run => {
+        val reader = run.open(graph)
+        val groups = try {
+          aggregate(reader, depth + 1)
+        } finally {
+          reader.close()
+        }
+        // The groups of a partition are aggregated anew by every traversal, so theirs go whether read to the end or not
+        try {
+          groups.foreach(f)
+        } finally {
+          groups match {
+            case spilled: SpilledGroups => spilled.delete()
+            case _ =>
+          }
+        }
+      })
+      consumed = true
+      delete()
+    }
+
+    def delete() {
+      partitions.foreach(_.delete())
+    }
+  }
+}
+
+object HashAggregation {
+  val PARTITIONS = 16
+  val MAX_DEPTH = 4
+
+  // Rough heap sizes in bytes, the map entry and key wrapper of a group and the state of one function
+  private val GROUP_OVERHEAD = 96
+  private val FUNCTION_OVERHEAD = 32
+  // A value kept by a function, the list node or hash set entry holding it
+  val ENTRY_OVERHEAD = 32
+
+  /**
+   * Estimates the heap a group takes from its key values and number of
+   * functions. Functions that keep their input, like collect and distinct,
+   * grow past this as they aggregate, see AggregationFunction.retainedSize.
+   */
+  def groupSize(key: Seq[Any], functions: Int): Long =
+    key.foldLeft((GROUP_OVERHEAD + FUNCTION_OVERHEAD * functions).toLong)((size, value) => size + valueSize(value))
+
+  def valueSize(value: Any): Long = value match {
+    case null => 0
+    case s: String => 40 + 2 * s.length
+    case a: Array[_] => a.foldLeft(16L)((size, v) => size + valueSize(v))
+    case s: Traversable[_] => s.foldLeft(32L)((size, v) => size + valueSize(v))
+    // Boxed primitives, and nodes and relationships which are held by the cache anyway
+    case _ => 16
+  }
+
+  // Every level mixes the hash differently, so a partition spreads out over new partitions when it's split again
+  def partition(key: NiceHasher, depth: Int): Int = {
+    var h = key.hashCode ^ (depth * 0x5bd1e995)
+    h ^= h >>> 16
+    h *= 0x5bd1e995
+    h ^= h >>> 13
+    (h & Int.MaxValue) % PARTITIONS
+  }
+}
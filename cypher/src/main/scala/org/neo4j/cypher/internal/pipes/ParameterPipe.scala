@@ -23,8 +23,9 @@ import java.lang.String
 import org.neo4j.cypher.internal.symbols.{SymbolTable, Identifier}
 import org.neo4j.cypher.internal.commands.ParameterValue
 
+// The pipes on top of this one map, filter and slice a view, so rows are only made as the result is read
 class ParameterPipe() extends Pipe {
-  def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = Seq(params.map { case (k,v) => "-=PARAMETER=-"+k+"-=PARAMETER=-" -> ParameterValue(v) } )
+  def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = Seq(params.map { case (k,v) => "-=PARAMETER=-"+k+"-=PARAMETER=-" -> ParameterValue(v) } ).view
   val identifiers: Seq[Identifier] = Seq()
   val symbols: SymbolTable = new SymbolTable()
   override def executionPlan(): String = "Parameters()"
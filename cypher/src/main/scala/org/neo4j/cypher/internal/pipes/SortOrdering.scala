@@ -0,0 +1,48 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes
+
+import scala.math.signum
+import org.neo4j.cypher.internal.commands.SortItem
+import org.neo4j.cypher.internal.Comparer
+
+/**
+ * Orders rows by the given sort items, the first item deciding first.
+ */
+class SortOrdering(sortDescription: List[SortItem]) extends Ordering[Map[String, Any]] {
+  // Comparer.compare(Any, Any) would clash with Ordering.compare, so it's used through an instance
+  private val comparer = new Comparer {}
+
+  def compare(a: Map[String, Any], b: Map[String, Any]): Int = compareBy(a, b, sortDescription)
+
+  private def compareBy(a: Map[String, Any], b: Map[String, Any], order: List[SortItem]): Int = order match {
+    case Nil => 0
+    case head :: tail => {
+      val key = head.returnItem.identifier.name
+      val result = signum(comparer.compare(a(key), b(key)))
+      if (result == 0)
+        compareBy(a, b, tail)
+      else if (head.ascending)
+        result
+      else
+        -result
+    }
+  }
+}
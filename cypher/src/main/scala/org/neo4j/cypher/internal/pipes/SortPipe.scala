@@ -19,36 +19,35 @@
  */
 package org.neo4j.cypher.internal.pipes
 
-import scala.math.signum
 import org.neo4j.cypher.internal.commands.SortItem
 import java.lang.String
-import org.neo4j.cypher.internal.Comparer
+import org.neo4j.graphdb.GraphDatabaseService
+
+/**
+ * Sorts all rows of its source. If rowsInMemory is given, rows are sorted in
+ * runs of that size which are spilled to disk and merged, see ExternalSort.
+ */
+class SortPipe(source: Pipe, sortDescription: List[SortItem], rowsInMemory: Option[Int], graph: GraphDatabaseService) extends Pipe {
+  def this(source: Pipe, sortDescription: List[SortItem]) = this(source, sortDescription, None, null)
 
-class SortPipe(source: Pipe, sortDescription: List[SortItem]) extends Pipe with Comparer {
   val symbols = source.symbols
 
   assertDependenciesAreMet()
 
-  def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = source.createResults(params).toList.sortWith((a, b) => compareBy(a, b, sortDescription))
-
-  def compareBy(a: Map[String, Any], b: Map[String, Any], order: Seq[SortItem]): Boolean = order match {
-    case Nil => false
-    case head :: tail => {
-      val key = head.returnItem.identifier.name
-      val aVal = a(key)
-      val bVal = b(key)
-      signum(compare(aVal, bVal)) match {
-        case 1 => !head.ascending
-        case -1 => head.ascending
-        case 0 => compareBy(a, b, tail)
-      }
+  private val ordering = new SortOrdering(sortDescription)
+
+  def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = rowsInMemory match {
+    case None => source.createResults(params).toList.sorted(ordering)
+    case Some(maxRows) => {
+      val sort = new ExternalSort(ordering, maxRows, graph)
+      source.createResults(params).foreach(sort.add)
+      sort.result()
     }
   }
 
-
   override def executionPlan(): String = source.executionPlan() + "\r\nSort(" + sortDescription.mkString(",") + ")"
 
   private def assertDependenciesAreMet() {
     sortDescription.map(_.returnItem.identifier).foreach( source.symbols.assertHas )
   }
-}
\ No newline at end of file
+}
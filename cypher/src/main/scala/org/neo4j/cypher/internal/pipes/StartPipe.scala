@@ -33,7 +33,7 @@ abstract class StartPipe[T <: PropertyContainer](inner: Pipe, name: String, crea
 
   def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = {
     inner.createResults(params).flatMap(sourceMap => {
-      createSource(sourceMap).map(x=> sourceMap ++ Map(name -> x))
+      createSource(sourceMap).view.map(x=> sourceMap ++ Map(name -> x))
     })
   }
 
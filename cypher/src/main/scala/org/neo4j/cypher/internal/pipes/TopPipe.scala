@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes
+
+import org.neo4j.cypher.internal.commands.{Expression, SortItem}
+import java.lang.String
+import collection.mutable.PriorityQueue
+
+/**
+ * Sorts and keeps only the first skip + limit rows, which is all a SlicePipe
+ * following a sort needs. Only that many rows are held at a time, in a heap
+ * with the worst of them on top, instead of sorting all rows.
+ */
+class TopPipe(source: Pipe, sortDescription: List[SortItem], skip: Option[Expression], limit: Expression) extends Pipe {
+  val symbols = source.symbols
+
+  assertDependenciesAreMet()
+
+  private val ordering = new SortOrdering(sortDescription)
+
+  // Ties are decided by input order, to sort stable like SortPipe does
+  private val rankOrdering = new Ordering[(Map[String, Any], Long)] {
+    def compare(a: (Map[String, Any], Long), b: (Map[String, Any], Long)): Int = {
+      val result = ordering.compare(a._1, b._1)
+      if (result != 0) result
+      else if (a._2 < b._2) -1
+      else if (a._2 > b._2) 1
+      else 0
+    }
+  }
+
+  def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = {
+    val input = source.createResults(params)
+
+    if (input.isEmpty)
+      return Seq()
+
+    val first: Map[String, Any] = input.head
+
+    def asInt(v: Expression) = v(first).asInstanceOf[Int]
+
+    val size = skip.map(asInt).getOrElse(0) + asInt(limit)
+
+    if (size <= 0)
+      return Seq()
+
+    val top = new PriorityQueue[(Map[String, Any], Long)]()(rankOrdering)
+    var position = 0L
+    input.foreach(row => {
+      val ranked = (row, position)
+      position += 1
+      if (top.size < size) {
+        top.enqueue(ranked)
+      } else if (rankOrdering.compare(ranked, top.head) < 0) {
+        top.dequeue()
+        top.enqueue(ranked)
+      }
+    })
+
+    top.toList.sorted(rankOrdering).map(_._1)
+  }
+
+  override def executionPlan(): String = source.executionPlan() + "\r\nTop(" + sortDescription.mkString(",") + ")"
+
+  private def assertDependenciesAreMet() {
+    sortDescription.map(_.returnItem.identifier).foreach(source.symbols.assertHas)
+  }
+}
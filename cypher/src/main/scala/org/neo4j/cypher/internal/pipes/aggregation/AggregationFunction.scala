@@ -34,5 +34,11 @@ abstract class AggregationFunction {
    * The aggregated result.
    */
   def result: Any
+
+  /**
+   * Estimated heap in bytes taken by values kept from the rows aggregated so
+   * far. Functions only keeping a running result don't grow, and keep 0.
+   */
+  def retainedSize: Long = 0
 }
 
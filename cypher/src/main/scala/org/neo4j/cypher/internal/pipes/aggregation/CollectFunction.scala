@@ -21,14 +21,20 @@ package org.neo4j.cypher.internal.pipes.aggregation
 
 import collection.mutable.ListBuffer
 import org.neo4j.cypher.internal.commands.Expression
+import org.neo4j.cypher.internal.pipes.HashAggregation
 
 
 class CollectFunction(value:Expression) extends AggregationFunction {
   val collection = new ListBuffer[Any]()
+  private var retained = 0L
 
   def apply(data: Map[String, Any]) {
-    collection += value(data)
+    val v = value(data)
+    collection += v
+    retained += HashAggregation.ENTRY_OVERHEAD + HashAggregation.valueSize(v)
   }
 
+  override def retainedSize: Long = retained
+
   def result: Any = collection.toSeq
 }
\ No newline at end of file
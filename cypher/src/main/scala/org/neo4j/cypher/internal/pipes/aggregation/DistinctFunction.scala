@@ -20,10 +20,12 @@
 package org.neo4j.cypher.internal.pipes.aggregation
 
 import org.neo4j.cypher.internal.commands.Expression
+import org.neo4j.cypher.internal.pipes.HashAggregation
 
 class DistinctFunction(value: Expression, inner: AggregationFunction) extends AggregationFunction {
   val seen = scala.collection.mutable.Set[Any]()
   var seenNull = false
+  private var retained = 0L
 
   def apply(m: Map[String, Any]) {
     val data = value(m)
@@ -33,9 +35,12 @@ class DistinctFunction(value: Expression, inner: AggregationFunction) extends Ag
       inner(m)
     } else if (!seen.contains(data)) {
       seen += data
+      retained += HashAggregation.ENTRY_OVERHEAD + HashAggregation.valueSize(data)
       inner(m)
     }
   }
 
+  override def retainedSize: Long = retained + inner.retainedSize
+
   def result: Any = inner.result
 }
\ No newline at end of file
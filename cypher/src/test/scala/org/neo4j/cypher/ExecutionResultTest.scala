@@ -41,4 +41,16 @@ class ExecutionResultTest extends ExecutionEngineHelper with Assertions {
 
     assertTrue( "Columns did not apperar in the expected order: \n" + result.dumpToString(), pattern.matcher(result.dumpToString()).find() );
   }
+
+  @Test def rowsAreMadeAsTheyAreRead() {
+    val a = createNode("A")
+    val b = createNode("B")
+
+    val result = parseAndExecute("start n=node(%d, %d) return n.name".format(a.getId, b.getId))
+    assertEquals(Map("n.name" -> "A"), result.next())
+
+    inTx(() => b.setProperty("name", "changed after the first row was read"))
+    assertEquals(Map("n.name" -> "changed after the first row was read"), result.next())
+    assertFalse(result.hasNext)
+  }
 }
\ No newline at end of file
@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes
+
+import org.neo4j.cypher.internal.commands.{CountStar, Entity, ExpressionReturnItem}
+import org.neo4j.cypher.internal.symbols.{Identifier, NumberType, SymbolTable}
+
+/**
+ * Compares count(*) grouping with the plain in memory map against grouping
+ * with a memory budget, for keys of low and high cardinality. Run with a
+ * small heap, like -Xmx256m, to see the in memory map run out of it on the
+ * high cardinality keys.
+ */
+object EagerAggregationBenchmark {
+  val ROWS = 2000000
+  val BUDGET = 16L * 1024 * 1024
+
+  def main(args: Array[String]) {
+    for (distinctKeys <- List(100, ROWS / 2)) {
+      for (round <- 0 until 3) {
+        time("in memory, " + distinctKeys + " keys", aggregate(distinctKeys, None))
+        time("budget " + BUDGET + " bytes, " + distinctKeys + " keys", aggregate(distinctKeys, Some(BUDGET)))
+      }
+    }
+  }
+
+  private def aggregate(distinctKeys: Int, budget: Option[Long]): Int = {
+    val rows = (0 until ROWS).view.map(i => Map[String, Any]("x" -> (i % distinctKeys).toLong))
+    val pipe = new EagerAggregationPipe(new FakePipe(rows, new SymbolTable(Identifier("x", NumberType()))),
+      List(ExpressionReturnItem(Entity("x"))), List(CountStar()), budget, null)
+    var groups = 0
+    pipe.createResults(Map()).foreach(row => groups += 1)
+    groups
+  }
+
+  private def time(name: String, f: => Int) {
+    val start = System.currentTimeMillis()
+    val groups = f
+    println(name + ": " + groups + " groups in " + (System.currentTimeMillis() - start) + "ms")
+  }
+}
@@ -26,7 +26,7 @@ import scala.collection.JavaConverters._
 import org.neo4j.cypher.internal.commands._
 import org.scalatest.junit.JUnitSuite
 import org.neo4j.cypher.SyntaxException
-import org.neo4j.cypher.internal.symbols.{IntegerType, SymbolTable, Identifier, NodeType}
+import org.neo4j.cypher.internal.symbols.{IntegerType, NumberType, SymbolTable, Identifier, NodeType}
 
 class EagerAggregationPipeTest extends JUnitSuite {
   @Test def shouldReturnColumnsFromReturnItems() {
@@ -80,6 +80,66 @@ class EagerAggregationPipeTest extends JUnitSuite {
     assertEquals(List(Map("count(name)" -> 3)), aggregationPipe.createResults(Map()).toList)
   }
 
+  @Test def shouldAggregateGroupsSpilledToDisk() {
+    val rows = (0 until 1000).map(i => Map[String, Any]("name" -> ("name" + (i % 100)), "age" -> i))
+    val symbols = new SymbolTable(Identifier("name", NodeType()), Identifier("age", NumberType()))
+
+    val returnItems = List(ExpressionReturnItem(Entity("name")))
+    val grouping = List(
+      CountStar(),
+      ValueAggregationItem(Sum(Entity("age"), "sum(age)")),
+      ValueAggregationItem(Collect(Entity("age"), "collect(age)")))
+    val inMemory = new EagerAggregationPipe(new FakePipe(rows, symbols), returnItems, grouping)
+    val spilling = new EagerAggregationPipe(new FakePipe(rows, symbols), returnItems, grouping, Some(1000L), null)
+
+    val expected = inMemory.createResults(Map()).toSet
+    assertEquals(100, expected.size)
+    assertEquals(expected, spilling.createResults(Map()).toSet)
+  }
+
+  @Test def shouldReadSpilledGroupsThroughTopPipe() {
+    val (inMemory, spilling) = countingPipes()
+    def top(source: Pipe) = new TopPipe(source, List(SortItem(ExpressionReturnItem(Entity("name")), true)), None, Literal(5))
+
+    val expected = top(inMemory).createResults(Map()).toList
+    assertEquals(List("name0", "name1", "name10", "name11", "name12"), expected.map(_("name")))
+    assertEquals(expected, top(spilling).createResults(Map()).toList)
+  }
+
+  @Test def shouldReadSpilledGroupsThroughSlicePipe() {
+    val (inMemory, spilling) = countingPipes()
+    val expected = inMemory.createResults(Map()).toSet
+
+    val page = new SlicePipe(spilling, Some(Literal(10)), Some(Literal(20))).createResults(Map()).toList
+    assertEquals(20, page.size)
+    assertEquals(20, page.toSet.size)
+    assertTrue(page.forall(expected.contains))
+
+    val all = new SlicePipe(spilling, None, Some(Literal(1000))).createResults(Map()).toSet
+    assertEquals(expected, all)
+  }
+
+  @Test def shouldChargeGroupsForTheValuesTheyCollect() {
+    val rows = (0 until 1000).map(i => Map[String, Any]("name" -> "a", "age" -> i)) ++
+      (0 until 10).map(i => Map[String, Any]("name" -> ("name" + i), "age" -> i))
+    val collect = List(ValueAggregationItem(Collect(Entity("age"), "collect(age)")))
+    val groups = new HashAggregation(List("name"), collect, Some(10000L), null).aggregate(rows)
+
+    // The eleven groups would fit the budget, but not with all the ages collected by the first one
+    assertFalse(groups.isInstanceOf[Seq[_]])
+    assertEquals(11, groups.size)
+  }
+
+  // 100 groups counting 10 rows each, where the spilling one only keeps a few groups in memory
+  private def countingPipes(): (Pipe, Pipe) = {
+    val rows = (0 until 1000).map(i => Map[String, Any]("name" -> ("name" + (i % 100)), "age" -> i))
+    val symbols = new SymbolTable(Identifier("name", NodeType()), Identifier("age", NumberType()))
+    val returnItems = List(ExpressionReturnItem(Entity("name")))
+    val grouping = List(CountStar())
+    (new EagerAggregationPipe(new FakePipe(rows, symbols), returnItems, grouping),
+      new EagerAggregationPipe(new FakePipe(rows, symbols), returnItems, grouping, Some(1000L), null))
+  }
+
   private def createSymbolTableFor(name:String) = new SymbolTable(Identifier(name, NodeType()))
 
 }
\ No newline at end of file
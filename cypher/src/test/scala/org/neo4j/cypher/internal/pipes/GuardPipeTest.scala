@@ -0,0 +1,57 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes
+
+import org.junit.Assert._
+import org.junit.{After, Test}
+import org.scalatest.junit.JUnitSuite
+import org.neo4j.cypher.internal.symbols.{Identifier, NodeType, SymbolTable}
+import org.neo4j.kernel.guard.{GuardException, Guard}
+
+class GuardPipeTest extends JUnitSuite {
+  val guard = new Guard()
+
+  @After def stopGuard() {
+    guard.stop()
+    guard.shutdown()
+  }
+
+  @Test def shouldPassRowsWithinTheLimit() {
+    guard.start(0, 0, 3)
+    val pipe = new GuardPipe(createSource(), guard)
+
+    assertEquals(3, pipe.createResults(Map()).size)
+  }
+
+  @Test def shouldAbortWhenRowLimitIsPassed() {
+    guard.start(0, 0, 2)
+    val pipe = new GuardPipe(createSource(), guard)
+
+    try {
+      pipe.createResults(Map()).toList
+      fail("Expected the row limit to be passed")
+    } catch {
+      case e: GuardException => assertEquals(Guard.Limit.ROWS, e.getLimit)
+    }
+  }
+
+  private def createSource() =
+    new FakePipe(List(Map("x" -> 1), Map("x" -> 2), Map("x" -> 3)), new SymbolTable(Identifier("x", NodeType())))
+}
@@ -87,6 +87,31 @@ class SortPipeTest extends JUnitSuite{
       Map("y" -> null)), sortPipe.createResults(Map()).toList)
   }
 
+  @Test def sortsRunsSpilledToDisk() {
+    val input = List(5, 3, 9, 1, 7, 2, 8, 6, 4).map(x => Map[String, Any]("x" -> x))
+    val source = new FakePipe(input)
+
+    val sortPipe = new SortPipe(source, List(SortItem(ExpressionReturnItem(Entity("x")), true)), Some(2), null)
+
+    val result = sortPipe.createResults(Map())
+    assertFalse(result.isEmpty)
+    assertEquals(Map("x" -> 1), result.head)
+    assertEquals((1 to 9).map(x => Map("x" -> x)).toList, result.toList)
+  }
+
+  @Test def spilledSortIsStable() {
+    val input = List(
+      Map[String, Any]("x" -> "B", "y" -> 1),
+      Map[String, Any]("x" -> "A", "y" -> 2),
+      Map[String, Any]("x" -> "B", "y" -> 3),
+      Map[String, Any]("x" -> "A", "y" -> 4),
+      Map[String, Any]("x" -> "B", "y" -> 5))
+    val source = new FakePipe(input)
+
+    val sortPipe = new SortPipe(source, List(SortItem(ExpressionReturnItem(Entity("x")), true)), Some(2), null)
+
+    assertEquals(List(input(1), input(3), input(0), input(2), input(4)), sortPipe.createResults(Map()).toList)
+  }
 }
 
 class FakePipe(data: Seq[Map[String, Any]], val symbols: SymbolTable) extends Pipe {
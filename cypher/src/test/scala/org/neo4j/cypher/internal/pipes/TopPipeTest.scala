@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes
+
+import org.junit.Test
+import org.junit.Assert._
+import org.scalatest.junit.JUnitSuite
+import org.neo4j.cypher.internal.commands.{Literal, Entity, ExpressionReturnItem, SortItem}
+
+class TopPipeTest extends JUnitSuite {
+  private val sortByX = List(SortItem(ExpressionReturnItem(Entity("x")), true))
+
+  private def rows(values: Int*) = values.map(x => Map[String, Any]("x" -> x)).toList
+
+  @Test def emptyInIsEmptyOut() {
+    val topPipe = new TopPipe(new FakePipe(List()), sortByX, None, Literal(5))
+
+    assertEquals(List(), topPipe.createResults(Map()).toList)
+  }
+
+  @Test def keepsTheLowestRows() {
+    val topPipe = new TopPipe(new FakePipe(rows(5, 3, 9, 1, 7, 2)), sortByX, None, Literal(3))
+
+    assertEquals(rows(1, 2, 3), topPipe.createResults(Map()).toList)
+  }
+
+  @Test def keepsRowsForSkipAndLimit() {
+    val topPipe = new TopPipe(new FakePipe(rows(5, 3, 9, 1, 7, 2)), sortByX, Some(Literal(2)), Literal(2))
+
+    assertEquals(rows(1, 2, 3, 5), topPipe.createResults(Map()).toList)
+  }
+
+  @Test def limitLargerThanInput() {
+    val topPipe = new TopPipe(new FakePipe(rows(2, 1)), sortByX, None, Literal(10))
+
+    assertEquals(rows(1, 2), topPipe.createResults(Map()).toList)
+  }
+
+  @Test def tiesKeepInputOrder() {
+    val input = List(
+      Map[String, Any]("x" -> 1, "y" -> "a"),
+      Map[String, Any]("x" -> 0, "y" -> "b"),
+      Map[String, Any]("x" -> 1, "y" -> "c"),
+      Map[String, Any]("x" -> 1, "y" -> "d"))
+    val topPipe = new TopPipe(new FakePipe(input), sortByX, None, Literal(3))
+
+    assertEquals(List(input(1), input(0), input(2)), topPipe.createResults(Map()).toList)
+  }
+}
@@ -43,6 +43,8 @@ import org.neo4j.graphdb.Path;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipExpander;
 import org.neo4j.helpers.collection.PrefetchingIterator;
+import org.neo4j.kernel.impl.util.LongHashSet;
+import org.neo4j.kernel.impl.util.LongObjectHashMap;
 
 public class AStar implements PathFinder<WeightedPath>
 {
@@ -117,12 +119,12 @@ public class AStar implements PathFinder<WeightedPath>
         private final Node end;
         private Node lastNode;
         private boolean expand;
-        private final Set<Long> visitedNodes = new HashSet<Long>();
+        private final LongHashSet visitedNodes = new LongHashSet();
         private final Set<Node> nextNodesSet = new HashSet<Node>();
         private final TreeMap<Double, Collection<Node>> nextNodes =
                 new TreeMap<Double, Collection<Node>>();
         private final Map<Long, Long> cameFrom = new HashMap<Long, Long>();
-        private final Map<Long, Data> score = new HashMap<Long, Data>();
+        private final LongObjectHashMap<Data> score = new LongObjectHashMap<Data>();
         
         Doer( Node start, Node end )
         {
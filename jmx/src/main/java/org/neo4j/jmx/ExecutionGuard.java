@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.jmx;
+
+import javax.management.MBeanOperationInfo;
+
+@ManagementInterface( name = ExecutionGuard.NAME )
+@Description( "Limits and counters of operations run under the execution guard" )
+public interface ExecutionGuard
+{
+    final String NAME = "Execution guard";
+
+    @Description( "The number of guarded operations currently running" )
+    int getRunningCount();
+
+    @Description( "The number of guarded operations started" )
+    long getStartedCount();
+
+    @Description( "The number of guarded operations that completed within their limits" )
+    long getCompletedCount();
+
+    @Description( "The number of guarded operations aborted by their time limit" )
+    long getTimeLimitAbortedCount();
+
+    @Description( "The number of guarded operations aborted by their operation limit" )
+    long getOperationLimitAbortedCount();
+
+    @Description( "The number of guarded operations aborted by their row limit" )
+    long getRowLimitAbortedCount();
+
+    @Description( "The number of guarded operations that were cancelled" )
+    long getCancelledCount();
+
+    @Description( "The number of nodes and relationships loaded by finished guarded operations" )
+    long getTotalOperations();
+
+    @Description( "The number of result rows produced by finished guarded operations" )
+    long getTotalRows();
+
+    @Description( value = "Cancel all running guarded operations at their next check point, "
+                          + "returns the number of cancelled operations",
+            impact = MBeanOperationInfo.ACTION )
+    int cancelAll();
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.jmx.impl;
+
+import javax.management.NotCompliantMBeanException;
+
+import org.neo4j.helpers.Service;
+import org.neo4j.jmx.ExecutionGuard;
+import org.neo4j.kernel.guard.Guard;
+
+@Service.Implementation( ManagementBeanProvider.class )
+public final class ExecutionGuardBean extends ManagementBeanProvider
+{
+    public ExecutionGuardBean()
+    {
+        super( ExecutionGuard.class );
+    }
+
+    @Override
+    protected Neo4jMBean createMBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        Guard guard = (Guard) management.getKernelData().getConfig().getParams().get( Guard.class );
+        if ( guard == null ) return null; // the guard isn't enabled
+        return new ExecutionGuardImpl( management, guard );
+    }
+
+    private static class ExecutionGuardImpl extends Neo4jMBean implements ExecutionGuard
+    {
+        private final Guard guard;
+
+        ExecutionGuardImpl( ManagementData management, Guard guard ) throws NotCompliantMBeanException
+        {
+            super( management );
+            this.guard = guard;
+        }
+
+        public int getRunningCount()
+        {
+            return guard.getRunningCount();
+        }
+
+        public long getStartedCount()
+        {
+            return guard.getStartedCount();
+        }
+
+        public long getCompletedCount()
+        {
+            return guard.getCompletedCount();
+        }
+
+        public long getTimeLimitAbortedCount()
+        {
+            return guard.getAbortedCount( Guard.Limit.TIME );
+        }
+
+        public long getOperationLimitAbortedCount()
+        {
+            return guard.getAbortedCount( Guard.Limit.OPERATIONS );
+        }
+
+        public long getRowLimitAbortedCount()
+        {
+            return guard.getAbortedCount( Guard.Limit.ROWS );
+        }
+
+        public long getCancelledCount()
+        {
+            return guard.getAbortedCount( Guard.Limit.CANCELLED );
+        }
+
+        public long getTotalOperations()
+        {
+            return guard.getTotalOperations();
+        }
+
+        public long getTotalRows()
+        {
+            return guard.getTotalRows();
+        }
+
+        public int cancelAll()
+        {
+            return guard.cancelAll();
+        }
+    }
+}
@@ -20,8 +20,10 @@
 package org.neo4j.graphdb.index;
 
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.kernel.impl.batchinsert.ImportProgressMonitor;
 
 /**
  * The primary interaction point with the auto indexing infrastructure of neo4j.
@@ -89,4 +91,51 @@ public interface AutoIndexer<T extends PropertyContainer>
      *         empty.
      */
     Set<String> getAutoIndexedProperties();
+
+    /**
+     * Rebuilds the auto index from the current values of the auto indexed
+     * properties of all entities in the graph, using several threads. This
+     * is meant for when properties have been added to the set of auto indexed
+     * properties after entities already had them, or when the index has
+     * gotten out of sync with the graph.
+     *
+     * @param threads the number of threads to use.
+     * @param monitor receives the progress of the rebuild.
+     * @throws UnsupportedOperationException if the auto index can't be
+     *             rebuilt.
+     */
+    void rebuildAutoIndex( int threads, ImportProgressMonitor monitor );
+
+    /**
+     * Returns the id of the last transaction for which it and all
+     * transactions committed before it have their changes in the auto index.
+     * Unless auto indexing is asynchronous, see
+     * {@link org.neo4j.kernel.Config#AUTO_INDEXING_ASYNC}, it's the id of the
+     * last committed transaction, or lower if changes lost in asynchronous mode
+     * couldn't be recovered by rebuilding the auto index on startup.
+     *
+     * @return the id of the last transaction that is in the auto index.
+     */
+    long getLastIndexedTxId();
+
+    /**
+     * Returns the number of committed transactions which may not have their
+     * changes in the auto index yet, 0 unless auto indexing is asynchronous
+     * or changes lost in asynchronous mode couldn't be recovered.
+     *
+     * @return the number of transactions the auto index is behind.
+     */
+    long getIndexingLag();
+
+    /**
+     * Waits until the changes of the transaction with the given id, and of
+     * all transactions before it, are in the auto index.
+     *
+     * @param txId the id of the transaction to wait for.
+     * @param timeout the longest time to wait.
+     * @param unit the unit of {@code timeout}.
+     * @return {@code true} if the transaction is in the auto index, or
+     *         {@code false} if the time ran out first.
+     */
+    boolean waitForIndexing( long txId, long timeout, TimeUnit unit );
 }
@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphdb.index;
+
+import java.util.NoSuchElementException;
+
+/**
+ * The ids of the entities matched by an index lookup or query, iterated as
+ * primitive {@code long}s so that large results don't cost an object per
+ * hit. Like {@link IndexHits} it should be closed if it isn't iterated
+ * through to the end.
+ *
+ * @see ReadableIdIndex
+ */
+public interface LongIndexHits
+{
+    /**
+     * @return whether or not there are more ids in this result.
+     */
+    boolean hasNext();
+
+    /**
+     * @return the next id in this result.
+     * @throws NoSuchElementException if there are no more ids.
+     */
+    long next();
+
+    /**
+     * @return the number of ids in this result.
+     */
+    int size();
+
+    /**
+     * Closes the underlying search result.
+     *
+     * @see IndexHits#close()
+     */
+    void close();
+}
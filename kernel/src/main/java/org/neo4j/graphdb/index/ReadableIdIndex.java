@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphdb.index;
+
+/**
+ * An index which can return the ids of the entities matching a lookup or
+ * query instead of the entities themselves. This is cheaper for large
+ * results, the entities can be looked up by id when they are needed.
+ * Indexes which support it implement this interface next to
+ * {@link ReadableIndex}.
+ *
+ * Ids of entities which have been deleted from the graph, but are still in
+ * the index may be returned, as well as ids of entities added or removed in
+ * the current transaction in the same way as {@link ReadableIndex} does. The
+ * order of the ids is undefined, unless it's specified by a query object.
+ */
+public interface ReadableIdIndex
+{
+    /**
+     * Returns the ids of exact matches from this index.
+     *
+     * @see ReadableIndex#get(String, Object)
+     */
+    LongIndexHits getIds( String key, Object value );
+
+    /**
+     * Returns the ids of matches from this index.
+     *
+     * @see ReadableIndex#query(String, Object)
+     */
+    LongIndexHits queryIds( String key, Object queryOrQueryObject );
+
+    /**
+     * Returns the ids of matches from this index.
+     *
+     * @see ReadableIndex#query(Object)
+     */
+    LongIndexHits queryIds( Object queryOrQueryObject );
+}
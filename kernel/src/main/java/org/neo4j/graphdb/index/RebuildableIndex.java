@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphdb.index;
+
+import java.util.Set;
+
+import org.neo4j.kernel.impl.batchinsert.ImportProgressMonitor;
+
+/**
+ * An index which can be rebuilt from the entities in the graph in one go,
+ * which is a lot faster than adding them one by one in transactions.
+ * Indexes which support it implement this interface next to {@link Index}
+ * or {@link BatchInserterIndex}.
+ */
+public interface RebuildableIndex
+{
+    /**
+     * Replaces the contents of this index with the values of the properties
+     * in {@code keys} of all entities in the graph. The store is scanned in
+     * {@code threads} partitions in parallel, each of which is indexed on its
+     * own before they are merged into this index.
+     * <p>
+     * Transactions may continue to use an {@link Index} while it's rebuilt,
+     * it keeps its old contents until the rebuilt index replaces it. Entities
+     * which are changed in the index while it's being rebuilt are indexed
+     * again from the graph when the rebuilt index replaces the old one.
+     * Changes which haven't been committed yet, such as those of the calling
+     * transaction, are not seen by the rebuild.
+     * <p>
+     * The rebuild isn't written to the logical log, so an {@link Index} can't
+     * be rebuilt while its logical logs are kept, see
+     * {@link org.neo4j.kernel.Config#KEEP_LOGICAL_LOGS}. That is the case for
+     * HA and online backup, which apply those logs elsewhere.
+     *
+     * @param keys the property keys to index.
+     * @param threads the number of partitions to scan and index in parallel.
+     * @param monitor receives the progress of the rebuild, with the name of
+     *            the index as stage.
+     * @throws UnsupportedOperationException if this index can't be rebuilt
+     *             while its logical logs are kept.
+     */
+    void rebuild( Set<String> keys, int threads, ImportProgressMonitor monitor );
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphdb.traversal;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.kernel.BranchCollisionPolicies;
+import org.neo4j.kernel.SideSelectorPolicies;
+
+/**
+ * Describes a traversal which expands from a start node and an end node at
+ * the same time, and returns the paths where the two sides meet. Each side
+ * is a {@link TraversalDescription}, whose expander, uniqueness and
+ * evaluators decide how that side is expanded. Only whether an
+ * {@link Evaluation} of a side evaluator continues matters, every branch a
+ * side reaches takes part in the collisions whether it's included or not.
+ * Which paths are returned is decided by the {@link BranchCollisionPolicy}
+ * and the collision {@link Evaluator}s, applied to the joined paths.
+ *
+ * Both sides are always expanded breadth first, whatever branch ordering
+ * their descriptions have.
+ */
+public interface BidirectionalTraversalDescription
+{
+    /**
+     * Sets the description of the side expanding from the start node.
+     *
+     * @param startSide the {@link TraversalDescription} of the start side.
+     * @return a new traversal description with the new modifications.
+     */
+    BidirectionalTraversalDescription startSide( TraversalDescription startSide );
+
+    /**
+     * Sets the description of the side expanding from the end node. Its
+     * expander should expand relationships in the opposite direction of
+     * the start side, see {@link #mirroredSides(TraversalDescription)}.
+     *
+     * @param endSide the {@link TraversalDescription} of the end side.
+     * @return a new traversal description with the new modifications.
+     */
+    BidirectionalTraversalDescription endSide( TraversalDescription endSide );
+
+    /**
+     * Uses {@code sideDescription} for the start side and the same
+     * description with a {@link org.neo4j.graphdb.RelationshipExpander#reversed()
+     * reversed} expander for the end side.
+     *
+     * @param sideDescription the {@link TraversalDescription} of the start side.
+     * @return a new traversal description with the new modifications.
+     */
+    BidirectionalTraversalDescription mirroredSides( TraversalDescription sideDescription );
+
+    /**
+     * Sets the {@link BranchCollisionPolicy} deciding which paths are
+     * formed where the sides meet, see {@link BranchCollisionPolicies}.
+     *
+     * @param collisionPolicy the {@link BranchCollisionPolicy} to use.
+     * @return a new traversal description with the new modifications.
+     */
+    BidirectionalTraversalDescription collisionPolicy( BranchCollisionPolicy collisionPolicy );
+
+    /**
+     * Adds {@code collisionEvaluator} to the evaluators deciding which of
+     * the paths formed where the sides meet are returned. Only whether an
+     * {@link Evaluation} includes a path matters, the sides have already
+     * been expanded.
+     *
+     * @param collisionEvaluator the {@link Evaluator} to add.
+     * @return a new traversal description with the new modifications.
+     */
+    BidirectionalTraversalDescription collisionEvaluator( Evaluator collisionEvaluator );
+
+    /**
+     * Sets the {@link SideSelectorPolicy} deciding which side to expand
+     * next, see {@link SideSelectorPolicies}, and the maximum length of the
+     * returned paths.
+     *
+     * @param sideSelector the {@link SideSelectorPolicy} to use.
+     * @param maxDepth the maximum combined depth of the two sides.
+     * @return a new traversal description with the new modifications.
+     */
+    BidirectionalTraversalDescription sideSelector( SideSelectorPolicy sideSelector, int maxDepth );
+
+    /**
+     * Traverses from {@code start} and {@code end} at the same time. The
+     * returned {@link Traverser} returns paths from {@code start} to
+     * {@code end}.
+     *
+     * @param start the {@link Node} the start side expands from.
+     * @param end the {@link Node} the end side expands from.
+     * @return a {@link Traverser} used to step through the paths found.
+     */
+    Traverser traverse( Node start, Node end );
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphdb.traversal;
+
+import java.util.Collection;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Path;
+
+/**
+ * Keeps the branches of both sides of a bidirectional traversal and detects
+ * where they meet.
+ */
+public interface BranchCollisionDetector
+{
+    /**
+     * Adds {@code branch} and returns the new paths formed by it meeting
+     * branches of the other side.
+     *
+     * @param branch a new branch of the traversal.
+     * @param direction the side of {@code branch}, {@link Direction#OUTGOING}
+     *            for the start side and {@link Direction#INCOMING} for the
+     *            end side.
+     * @return the paths, from the start node to the end node, formed with
+     *         {@code branch}. Empty if there were none.
+     */
+    Collection<Path> evaluate( TraversalBranch branch, Direction direction );
+}
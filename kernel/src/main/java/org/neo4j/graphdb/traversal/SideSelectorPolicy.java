@@ -0,0 +1,36 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphdb.traversal;
+
+/**
+ * Creator of {@link SideSelector} instances, deciding in which order the
+ * sides of a bidirectional traversal are expanded.
+ */
+public interface SideSelectorPolicy
+{
+    /**
+     * @param start the {@link BranchSelector} of the start side.
+     * @param end the {@link BranchSelector} of the end side.
+     * @param maxDepth the maximum combined depth of the two sides.
+     * @return a new {@link SideSelector} selecting from {@code start}
+     *         and {@code end}.
+     */
+    SideSelector create( BranchSelector start, BranchSelector end, int maxDepth );
+}
@@ -19,6 +19,8 @@
  */
 package org.neo4j.graphdb.traversal;
 
+import java.util.concurrent.ExecutorService;
+
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Path;
@@ -200,6 +202,30 @@ public interface TraversalDescription
      */
     TraversalDescription expand( RelationshipExpander expander );
 
+    /**
+     * Makes the traversal expand branches in parallel, as tasks on
+     * {@code executor}. Branches are expanded breadth first, one depth at a
+     * time, so the {@link BranchOrderingPolicy} is ignored. Paths are returned
+     * as soon as they are found, in no particular order within a depth.
+     * Only {@link Uniqueness#NODE_GLOBAL}, {@link Uniqueness#RELATIONSHIP_GLOBAL}
+     * and {@link Uniqueness#NONE} are supported, {@link #traverse(Node)}
+     * throws {@link IllegalArgumentException} for any other uniqueness.
+     *
+     * Evaluators and expanders are called from the threads of the executor,
+     * so they must be thread safe. Those threads don't see the state of the
+     * transaction of the calling thread.
+     *
+     * The tasks stay at most a bounded number of paths ahead of the caller.
+     * The iterators of such a traversal are
+     * {@link org.neo4j.helpers.collection.ClosableIterator closable}, close
+     * one that isn't iterated to the end to stop the remaining tasks.
+     *
+     * @param executor the {@link ExecutorService} to expand branches on, or
+     * {@code null} to traverse on the calling thread.
+     * @return a new traversal description with the new modifications.
+     */
+    TraversalDescription parallel( ExecutorService executor );
+
     /**
      * Traverse from {@code startNode} based on all the rules and behavior
      * in this description. A {@link Traverser} is returned which is
@@ -19,6 +19,7 @@
  */
 package org.neo4j.helpers;
 
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 public abstract class Counter
@@ -32,6 +33,50 @@ public abstract class Counter
         return new AtomicCounter();
     }
 
+    /**
+     * A counter that spreads increments from different threads over a number
+     * of cells, for counters that many threads increment very frequently.
+     * Reading the count sums up the cells and is more expensive than for
+     * {@link #atomic()}.
+     */
+    public static Counter striped()
+    {
+        return new StripedCounter( Runtime.getRuntime().availableProcessors() );
+    }
+
+    private static class StripedCounter extends Counter
+    {
+        // cells are spaced out to keep them on separate cache lines
+        private static final int SPACING = 8;
+
+        private final AtomicLongArray cells;
+        private final int mask;
+
+        StripedCounter( int concurrency )
+        {
+            int stripes = Integer.highestOneBit( Math.max( 1, concurrency ) ) << 1;
+            this.cells = new AtomicLongArray( stripes * SPACING );
+            this.mask = stripes - 1;
+        }
+
+        @Override
+        public void inc()
+        {
+            cells.incrementAndGet( ((int) Thread.currentThread().getId() & mask) * SPACING );
+        }
+
+        @Override
+        public long count()
+        {
+            long count = 0;
+            for ( int i = 0; i < cells.length(); i += SPACING )
+            {
+                count += cells.get( i );
+            }
+            return count;
+        }
+    }
+
     private static class AtomicCounter extends Counter
     {
         private volatile long count;
@@ -21,15 +21,23 @@ package org.neo4j.kernel;
 
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
 
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
 import org.neo4j.graphdb.index.AutoIndexer;
 import org.neo4j.graphdb.index.Index;
 import org.neo4j.graphdb.index.IndexHits;
 import org.neo4j.graphdb.index.ReadableIndex;
+import org.neo4j.graphdb.index.RebuildableIndex;
+import org.neo4j.kernel.impl.batchinsert.ImportProgressMonitor;
+import org.neo4j.kernel.impl.batchinsert.SilentImportProgressMonitor;
+import org.neo4j.kernel.impl.util.StringLogger;
 
 /**
  * Default implementation of the AutoIndexer, binding to the beforeCommit hook
@@ -40,12 +48,22 @@ import org.neo4j.graphdb.index.ReadableIndex;
 abstract class AbstractAutoIndexerImpl<T extends PropertyContainer> implements
         PropertyTracker<T>, AutoIndexer<T>
 {
+    static final int DEFAULT_ASYNC_BATCH_SIZE = 10000;
+
     private final Set<String> propertyKeysToInclude = new HashSet<String>();
 
     private final EmbeddedGraphDbImpl gdb;
 
     private volatile boolean enabled;
 
+    private AsyncAutoIndexUpdater<T> asyncUpdater;
+
+    /**
+     * The id after which committed transactions may be missing from the auto
+     * index until it's rebuilt, or {@link Long#MAX_VALUE}.
+     */
+    private volatile long outOfDateAfter = Long.MAX_VALUE;
+
     public AbstractAutoIndexerImpl( EmbeddedGraphDbImpl gdb )
     {
         this.gdb = gdb;
@@ -53,7 +71,79 @@ abstract class AbstractAutoIndexerImpl<T extends PropertyContainer> implements
 
     void start()
     {
+        Map<Object, Object> params = gdb.getConfig().getParams();
+        if ( Boolean.parseBoolean( (String) params.get( Config.AUTO_INDEXING_ASYNC ) ) )
+        {
+            String batchSize = (String) params.get( Config.AUTO_INDEXING_ASYNC_BATCH_SIZE );
+            asyncUpdater = new AsyncAutoIndexUpdater<T>( this, batchSize != null ?
+                    Integer.parseInt( batchSize ) : DEFAULT_ASYNC_BATCH_SIZE );
+        }
         resolveConfig();
+        recoverAsynchronousIndexing();
+        if ( asyncUpdater != null )
+        {
+            gdb.registerTransactionEventHandler( asyncUpdater );
+            gdb.registerKernelEventHandler( asyncUpdater );
+            // So that a crash before the first batch is applied is noticed
+            asyncUpdater.writeProgress();
+            asyncUpdater.start();
+        }
+    }
+
+    /**
+     * Rebuilds the auto index if the changes of committed transactions were
+     * still queued by an {@link AsyncAutoIndexUpdater} when the database
+     * stopped, since those changes are only held in memory. If it can't be
+     * rebuilt the auto index reports the lost transactions as not indexed,
+     * on this and later startups, until {@link #rebuildAutoIndex} succeeds.
+     */
+    private void recoverAsynchronousIndexing()
+    {
+        long lastIndexed = AsyncAutoIndexUpdater.readProgress( AsyncAutoIndexUpdater.progressFile( this ) );
+        long lastCommitted = lastCommittedTxId();
+        if ( lastIndexed < lastCommitted )
+        {
+            StringLogger msgLog = gdb.getMessageLog();
+            msgLog.logMessage( getAutoIndexName() + " may be missing the changes of transactions "
+                               + "committed after " + ( lastIndexed == -1 ? "an unknown one" : "tx " + lastIndexed )
+                               + ", which were not applied before the database stopped. Rebuilding it." );
+            try
+            {
+                rebuildAutoIndex( Runtime.getRuntime().availableProcessors(), new SilentImportProgressMonitor() );
+                msgLog.logMessage( "Rebuilt " + getAutoIndexName() );
+            }
+            catch ( RuntimeException e )
+            {
+                outOfDateAfter = lastIndexed;
+                msgLog.logMessage( "Unable to rebuild " + getAutoIndexName() + ", it stays out of date "
+                                   + "until it's rebuilt with AutoIndexer.rebuildAutoIndex", e );
+            }
+        }
+        else if ( asyncUpdater == null )
+        {
+            AsyncAutoIndexUpdater.progressFile( this ).delete();
+        }
+    }
+
+    long getOutOfDateAfter()
+    {
+        return outOfDateAfter;
+    }
+
+    private long lastCommittedTxId()
+    {
+        return gdb.getConfig().getTxModule().getXaDataSourceManager().getXaDataSource(
+                Config.DEFAULT_DATA_SOURCE_NAME ).getLastCommittedTxId();
+    }
+
+    /**
+     * @return whether changes are applied to the auto index after
+     *         transactions commit instead of within them, see
+     *         {@link Config#AUTO_INDEXING_ASYNC}.
+     */
+    boolean isAsynchronous()
+    {
+        return asyncUpdater != null;
     }
 
     public void propertyAdded( T primitive, String propertyName,
@@ -119,6 +209,58 @@ abstract class AbstractAutoIndexerImpl<T extends PropertyContainer> implements
         return Collections.unmodifiableSet( propertyKeysToInclude );
     }
 
+    @Override
+    public long getLastIndexedTxId()
+    {
+        if ( asyncUpdater != null )
+        {
+            return asyncUpdater.getLastIndexedTxId();
+        }
+        return Math.min( lastCommittedTxId(), outOfDateAfter );
+    }
+
+    @Override
+    public long getIndexingLag()
+    {
+        if ( asyncUpdater != null )
+        {
+            return asyncUpdater.getIndexingLag();
+        }
+        return Math.max( 0, lastCommittedTxId() - getLastIndexedTxId() );
+    }
+
+    @Override
+    public boolean waitForIndexing( long txId, long timeout, TimeUnit unit )
+    {
+        if ( asyncUpdater != null )
+        {
+            return asyncUpdater.waitForIndexing( txId, timeout, unit );
+        }
+        return getLastIndexedTxId() >= txId;
+    }
+
+    @Override
+    public void rebuildAutoIndex( int threads, ImportProgressMonitor monitor )
+    {
+        Index<T> index = getIndexInternal();
+        if ( !( index instanceof RebuildableIndex ) )
+        {
+            throw new UnsupportedOperationException( "Auto index " + index.getName()
+                                                     + " can't be rebuilt" );
+        }
+        ( (RebuildableIndex) index ).rebuild( new HashSet<String>( propertyKeysToInclude ),
+                threads, monitor );
+        outOfDateAfter = Long.MAX_VALUE;
+        if ( asyncUpdater != null )
+        {
+            asyncUpdater.rebuilt();
+        }
+        else
+        {
+            AsyncAutoIndexUpdater.progressFile( this ).delete();
+        }
+    }
+
     protected EmbeddedGraphDbImpl getGraphDbImpl()
     {
         return gdb;
@@ -133,6 +275,18 @@ abstract class AbstractAutoIndexerImpl<T extends PropertyContainer> implements
      */
     protected abstract Index<T> getIndexInternal();
 
+    /**
+     * @return the changes to properties of the auto indexed entity type in
+     *         {@code data} that assigned a value.
+     */
+    protected abstract Iterable<PropertyEntry<T>> assignedProperties( TransactionData data );
+
+    /**
+     * @return the changes to properties of the auto indexed entity type in
+     *         {@code data} that removed a value.
+     */
+    protected abstract Iterable<PropertyEntry<T>> removedProperties( TransactionData data );
+
     /**
      * @return The configuration parameter name that contains the comma
      *         separated list of properties to auto index.
@@ -27,6 +27,7 @@ import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.guard.Guard;
 import org.neo4j.kernel.impl.util.FileUtils;
 import org.neo4j.kernel.impl.util.StringLogger;
 import org.neo4j.tooling.GlobalGraphOperations;
@@ -66,6 +67,15 @@ public abstract class AbstractGraphDatabase implements GraphDatabaseService
 
     public abstract Config getConfig();
 
+    /**
+     * @return the guard limiting operations run against this database, or
+     * {@code null} if {@link Config#EXECUTION_GUARD_ENABLED} isn't set.
+     */
+    public Guard getGuard()
+    {
+        return (Guard) getConfig().getParams().get( Guard.class );
+    }
+
     public final StringLogger getMessageLog()
     {
         return msgLog;
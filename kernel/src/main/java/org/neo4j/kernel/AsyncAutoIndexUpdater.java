@@ -0,0 +1,448 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.ErrorState;
+import org.neo4j.graphdb.event.KernelEventHandler;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.helpers.Pair;
+import org.neo4j.kernel.impl.transaction.xaframework.XaDataSource;
+import org.neo4j.kernel.impl.util.StringLogger;
+
+/**
+ * Applies the changes of committed transactions to an auto index from a
+ * background thread, many transactions at a time, instead of within the
+ * committing transactions. See {@link Config#AUTO_INDEXING_ASYNC}.
+ * <p>
+ * Changes to properties are captured right before a transaction commits and
+ * queued when it has committed. Until its changes have been applied, each
+ * transaction is remembered together with the id of the last transaction
+ * committed before it, which is lower than its own id. The lowest of those is
+ * therefore an id up to which all transactions are in the index.
+ * <p>
+ * Queued changes are only held in memory. So that changes lost to a crash are
+ * noticed on the next startup, the id up to which all transactions are in the
+ * index is written to a file in the store directory, see
+ * {@link #progressFile(AbstractAutoIndexerImpl)}, after each applied batch and
+ * on shutdown.
+ */
+class AsyncAutoIndexUpdater<T extends PropertyContainer> extends Thread implements
+        TransactionEventHandler<AsyncAutoIndexUpdater.PendingTransaction>, KernelEventHandler
+{
+    private final AbstractAutoIndexerImpl<T> indexer;
+    private final XaDataSource dataSource;
+    private final StringLogger msgLog;
+    private final int batchSize;
+    private final File progressFile;
+    private final LinkedList<PendingTransaction> queue = new LinkedList<PendingTransaction>();
+    /**
+     * The number of transactions not yet applied, by the id of the last
+     * transaction committed before them.
+     */
+    private final TreeMap<Long, Integer> unapplied = new TreeMap<Long, Integer>();
+    private int waiting;
+    private boolean done;
+
+    AsyncAutoIndexUpdater( AbstractAutoIndexerImpl<T> indexer, int batchSize )
+    {
+        super( "Auto index updater for " + indexer.getAutoIndexName() );
+        this.indexer = indexer;
+        this.batchSize = batchSize;
+        EmbeddedGraphDbImpl gdb = indexer.getGraphDbImpl();
+        this.dataSource = gdb.getConfig().getTxModule().getXaDataSourceManager().getXaDataSource(
+                Config.DEFAULT_DATA_SOURCE_NAME );
+        this.msgLog = gdb.getMessageLog();
+        this.progressFile = progressFile( indexer );
+        setDaemon( true );
+    }
+
+    /**
+     * @return the file that the id up to which all transactions are in the
+     * auto index of {@code indexer} is written to.
+     */
+    static File progressFile( AbstractAutoIndexerImpl<?> indexer )
+    {
+        return new File( indexer.getGraphDbImpl().getStoreDir(), indexer.getAutoIndexName()
+                                                                  + ".lastindexedtx" );
+    }
+
+    /**
+     * @return the transaction id in {@code file}, {@link Long#MAX_VALUE} if
+     * there is no such file, or -1 if it can't be read.
+     */
+    static long readProgress( File file )
+    {
+        if ( !file.exists() )
+        {
+            return Long.MAX_VALUE;
+        }
+        try
+        {
+            BufferedReader reader = new BufferedReader( new FileReader( file ) );
+            try
+            {
+                return Long.parseLong( reader.readLine().trim() );
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            return -1;
+        }
+        catch ( RuntimeException e )
+        {   // Empty or partially written
+            return -1;
+        }
+    }
+
+    void writeProgress()
+    {
+        try
+        {
+            Writer writer = new FileWriter( progressFile );
+            try
+            {
+                writer.write( getLastIndexedTxId() + "\n" );
+            }
+            finally
+            {
+                writer.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            msgLog.logMessage( "Unable to write indexing progress of " + indexer.getAutoIndexName()
+                               + " to " + progressFile, e );
+        }
+    }
+
+    synchronized void rebuilt()
+    {
+        notifyAll();
+    }
+
+    static class PendingTransaction
+    {
+        final long lastCommittedBefore;
+        final List<Change> changes;
+
+        PendingTransaction( long lastCommittedBefore, List<Change> changes )
+        {
+            this.lastCommittedBefore = lastCommittedBefore;
+            this.changes = changes;
+        }
+    }
+
+    private static class Change
+    {
+        final PropertyContainer entity;
+        final String key;
+        final Object value;
+        final boolean removeFirst;
+
+        /**
+         * @param value the new value, or {@code null} if the property was
+         * removed.
+         * @param removeFirst whether the entity may have been indexed with
+         * another value for the key.
+         */
+        Change( PropertyContainer entity, String key, Object value, boolean removeFirst )
+        {
+            this.entity = entity;
+            this.key = key;
+            this.value = value;
+            this.removeFirst = removeFirst;
+        }
+    }
+
+    public PendingTransaction beforeCommit( TransactionData data ) throws Exception
+    {
+        if ( !indexer.isEnabled() )
+        {
+            return null;
+        }
+        Set<String> keys = indexer.getAutoIndexedProperties();
+        List<Change> changes = new ArrayList<Change>();
+        for ( PropertyEntry<T> entry : indexer.assignedProperties( data ) )
+        {
+            boolean hadValue = entry.previouslyCommitedValue() != null;
+            if ( keys.contains( entry.key() ) )
+            {
+                changes.add( new Change( entry.entity(), entry.key(), entry.value(), hadValue ) );
+            }
+            else if ( hadValue )
+            {
+                changes.add( new Change( entry.entity(), entry.key(), null, true ) );
+            }
+        }
+        for ( PropertyEntry<T> entry : indexer.removedProperties( data ) )
+        {
+            changes.add( new Change( entry.entity(), entry.key(), null, true ) );
+        }
+        if ( changes.isEmpty() )
+        {
+            return null;
+        }
+        synchronized ( this )
+        {
+            long lastCommittedBefore = dataSource.getLastCommittedTxId();
+            Integer count = unapplied.get( lastCommittedBefore );
+            unapplied.put( lastCommittedBefore, count == null ? 1 : count + 1 );
+            return new PendingTransaction( lastCommittedBefore, changes );
+        }
+    }
+
+    public synchronized void afterCommit( TransactionData data, PendingTransaction state )
+    {
+        if ( state != null )
+        {
+            queue.add( state );
+        }
+        if ( state != null || waiting > 0 )
+        {
+            notifyAll();
+        }
+    }
+
+    public synchronized void afterRollback( TransactionData data, PendingTransaction state )
+    {
+        if ( state != null )
+        {
+            applied( state );
+            notifyAll();
+        }
+    }
+
+    private void applied( PendingTransaction transaction )
+    {
+        int count = unapplied.get( transaction.lastCommittedBefore );
+        if ( count == 1 )
+        {
+            unapplied.remove( transaction.lastCommittedBefore );
+        }
+        else
+        {
+            unapplied.put( transaction.lastCommittedBefore, count - 1 );
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        while ( true )
+        {
+            List<PendingTransaction> batch = new ArrayList<PendingTransaction>();
+            synchronized ( this )
+            {
+                while ( queue.isEmpty() && !done )
+                {
+                    try
+                    {
+                        wait();
+                    }
+                    catch ( InterruptedException e )
+                    {   // Keep going until shut down, so nothing committed is lost
+                    }
+                }
+                if ( queue.isEmpty() )
+                {
+                    break;
+                }
+                for ( int size = 0; !queue.isEmpty() && size < batchSize; )
+                {
+                    PendingTransaction transaction = queue.removeFirst();
+                    batch.add( transaction );
+                    size += transaction.changes.size();
+                }
+            }
+            try
+            {
+                apply( batch );
+            }
+            catch ( RuntimeException e )
+            {
+                msgLog.logMessage( "Unable to apply changes of " + batch.size() +
+                        " transactions to " + indexer.getAutoIndexName(), e );
+            }
+            synchronized ( this )
+            {
+                for ( PendingTransaction transaction : batch )
+                {
+                    applied( transaction );
+                }
+                notifyAll();
+            }
+            writeProgress();
+        }
+        writeProgress();
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private void apply( List<PendingTransaction> batch )
+    {
+        // Only the last change to a property within the batch matters
+        Map<Pair<PropertyContainer, String>, Change> changes =
+                new LinkedHashMap<Pair<PropertyContainer, String>, Change>();
+        for ( PendingTransaction transaction : batch )
+        {
+            for ( Change change : transaction.changes )
+            {
+                Pair<PropertyContainer, String> property = Pair.of( change.entity, change.key );
+                Change previous = changes.remove( property );
+                changes.put( property, previous == null ? change : new Change( change.entity,
+                        change.key, change.value, previous.removeFirst || change.removeFirst ) );
+            }
+        }
+
+        Index<T> index = indexer.getIndexInternal();
+        Transaction tx = index.getGraphDatabase().beginTx();
+        try
+        {
+            for ( Change change : changes.values() )
+            {
+                try
+                {
+                    if ( change.removeFirst )
+                    {
+                        index.remove( (T) change.entity, change.key );
+                    }
+                    if ( change.value != null )
+                    {
+                        index.add( (T) change.entity, change.key, change.value );
+                    }
+                }
+                catch ( NotFoundException e )
+                {   // A deleted relationship, queries skip it if it's still in the index
+                }
+            }
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+    }
+
+    /**
+     * @return the id of a transaction for which it and all transactions
+     * committed before it have their changes in the auto index.
+     */
+    synchronized long getLastIndexedTxId()
+    {
+        long lastCommitted = Math.min( dataSource.getLastCommittedTxId(), indexer.getOutOfDateAfter() );
+        return unapplied.isEmpty() ? lastCommitted : Math.min( unapplied.firstKey(), lastCommitted );
+    }
+
+    long getIndexingLag()
+    {
+        return Math.max( 0, dataSource.getLastCommittedTxId() - getLastIndexedTxId() );
+    }
+
+    synchronized boolean waitForIndexing( long txId, long timeout, TimeUnit unit )
+    {
+        long end = System.currentTimeMillis() + unit.toMillis( timeout );
+        waiting++;
+        try
+        {
+            for ( long left = end - System.currentTimeMillis(); getLastIndexedTxId() < txId;
+                    left = end - System.currentTimeMillis() )
+            {
+                if ( left <= 0 )
+                {
+                    return false;
+                }
+                wait( left );
+            }
+            return true;
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        finally
+        {
+            waiting--;
+        }
+    }
+
+    /**
+     * Applies what's left in the queue and stops the thread.
+     */
+    void shutdown()
+    {
+        synchronized ( this )
+        {
+            done = true;
+            notifyAll();
+        }
+        try
+        {
+            join();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void beforeShutdown()
+    {
+        shutdown();
+    }
+
+    public void kernelPanic( ErrorState error )
+    {
+    }
+
+    public Object getResource()
+    {
+        return null;
+    }
+
+    public ExecutionOrder orderComparedTo( KernelEventHandler other )
+    {
+        return ExecutionOrder.DOESNT_MATTER;
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel;
+
+import org.neo4j.graphdb.traversal.BranchCollisionDetector;
+import org.neo4j.graphdb.traversal.BranchCollisionPolicy;
+import org.neo4j.graphdb.traversal.Evaluator;
+import org.neo4j.kernel.impl.traversal.ShortestPathsBranchCollisionDetector;
+import org.neo4j.kernel.impl.traversal.StandardBranchCollisionDetector;
+
+/**
+ * Common ways of deciding which paths a bidirectional traversal returns
+ * where its sides meet.
+ */
+public enum BranchCollisionPolicies implements BranchCollisionPolicy
+{
+    /**
+     * Returns every path without repeated nodes, formed where the sides meet,
+     * which the collision evaluators include.
+     */
+    STANDARD
+    {
+        public BranchCollisionDetector create( Evaluator evaluator )
+        {
+            return new StandardBranchCollisionDetector( evaluator );
+        }
+    },
+    /**
+     * Like {@link #STANDARD}, but never returns a path longer than the
+     * shortest one found so far. Together with
+     * {@link SideSelectorPolicies#LEVEL} paths are found shortest first.
+     */
+    SHORTEST_PATH
+    {
+        public BranchCollisionDetector create( Evaluator evaluator )
+        {
+            return new ShortestPathsBranchCollisionDetector( evaluator );
+        }
+    };
+}
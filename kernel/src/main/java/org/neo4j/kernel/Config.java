@@ -29,6 +29,7 @@ import javax.transaction.TransactionManager;
 
 import org.neo4j.helpers.Args;
 import org.neo4j.helpers.collection.PrefetchingIterator;
+import org.neo4j.kernel.guard.Guard;
 import org.neo4j.kernel.impl.annotations.Documented;
 import org.neo4j.kernel.impl.cache.AdaptiveCacheManager;
 import org.neo4j.kernel.impl.core.GraphDbModule;
@@ -79,6 +80,43 @@ public class Config implements DiagnosticsProvider
      */
     @Documented
     public static final String KEEP_LOGICAL_LOGS = "keep_logical_logs";
+    /**
+     * Boolean (one of true,false) defining whether concurrently committing
+     * transactions should share a single force of the logical log instead of
+     * forcing it once per transaction. Only transactions getting their tx ids
+     * from the default tx id generator share forces, with other generators
+     * (like in HA) a transaction gets its tx id once the ones before it are
+     * applied. Defaults to false.
+     */
+    @Documented
+    public static final String GROUP_COMMIT = "logical_log_group_commit";
+    /**
+     * The maximum number of milliseconds a group commit waits for more
+     * transactions to join before forcing the logical log. Defaults to 0,
+     * i.e. only transactions that committed during the previous force share
+     * the next one.
+     */
+    @Documented
+    public static final String GROUP_COMMIT_MAX_BATCH_WAIT = "logical_log_group_commit_max_wait";
+    /**
+     * The number of transactions a group commit waits for before forcing the
+     * logical log, if reached before the max wait time. Defaults to 100.
+     */
+    @Documented
+    public static final String GROUP_COMMIT_MAX_BATCH_SIZE = "logical_log_group_commit_max_batch_size";
+    /**
+     * Boolean (one of true,false) defining whether threads should allocate
+     * ids for new records from batches striped by thread instead of all going
+     * through the single lock of each id generator. Defaults to false.
+     */
+    @Documented
+    public static final String CONCURRENT_ID_GENERATION = "concurrent_id_generation";
+    /**
+     * The number of ids taken at a time for each stripe when concurrent id
+     * generation is enabled. Defaults to 64.
+     */
+    @Documented
+    public static final String CONCURRENT_ID_BATCH_SIZE = "concurrent_id_batch_size";
     /** Enable a remote shell server which shell clients can log in to */
     @Documented
     public static final String ENABLE_REMOTE_SHELL = "enable_remote_shell";
@@ -138,11 +176,37 @@ public class Config implements DiagnosticsProvider
 
     /**
      * The type of cache to use for nodes and relationships, one of [weak, soft,
-     * none]
+     * old, clock, none, strong, offheap]
      */
     @Documented
     public static final String CACHE_TYPE = "cache_type";
 
+    /**
+     * The amount of direct memory outside of the heap the node cache may use
+     * when {@link #CACHE_TYPE} is offheap, in bytes or with a k, M or G suffix.
+     * The number of nodes kept on the heap is set by max_node_cache_size.
+     */
+    @Documented
+    public static final String NODE_CACHE_OFFHEAP_MEMORY = "node_cache_offheap_memory";
+
+    /**
+     * The amount of direct memory outside of the heap the relationship cache
+     * may use when {@link #CACHE_TYPE} is offheap, in bytes or with a k, M or G
+     * suffix. The number of relationships kept on the heap is set by
+     * max_relationship_cache_size.
+     */
+    @Documented
+    public static final String RELATIONSHIP_CACHE_OFFHEAP_MEMORY = "relationship_cache_offheap_memory";
+
+    /**
+     * Integer value that sets the number of relationships a node can have
+     * before its relationships are grouped by type and direction, so that
+     * getting the relationships of one type only reads those relationships.
+     * The default is 50.
+     */
+    @Documented
+    public static final String DENSE_NODE_THRESHOLD = "dense_node_threshold";
+
     /**
      * The name of the Transaction Manager service to use as defined in the TM
      * service provider constructor, defaults to native.
@@ -211,6 +275,34 @@ public class Config implements DiagnosticsProvider
     @Documented
     public static final String RELATIONSHIP_AUTO_INDEXING = "relationship_auto_indexing";
 
+    /**
+     * Boolean value that sets auto indexes to be updated by a background
+     * thread after transactions have committed, many transactions at a time,
+     * instead of within the committing transactions. Queries of an auto index
+     * may then not see the changes of recently committed transactions, see
+     * {@link org.neo4j.graphdb.index.AutoIndexer#waitForIndexing(long, long, java.util.concurrent.TimeUnit)}.
+     * <p>
+     * Changes waiting to be applied are only held in memory, so a crash loses
+     * them even though their transactions have committed. The id of the last
+     * transaction known to be indexed is kept in a file in the store
+     * directory, and if transactions committed after it on startup the auto
+     * indexes are rebuilt from the graph before the database is available,
+     * which takes time proportional to the size of the graph. An auto index
+     * that can't be rebuilt is logged as out of date and reports the lost
+     * transactions as not indexed until it has been rebuilt.
+     * The default is false.
+     */
+    @Documented
+    public static final String AUTO_INDEXING_ASYNC = "auto_indexing_async";
+
+    /**
+     * Integer value that sets the number of property changes that are applied
+     * to an auto index in one transaction when {@link #AUTO_INDEXING_ASYNC}
+     * is enabled. The default is 10000.
+     */
+    @Documented
+    public static final String AUTO_INDEXING_ASYNC_BATCH_SIZE = "auto_indexing_async_batch_size";
+
     /**
      * Integer value that sets the maximum number of open lucene index searchers.
      * The default is Integer.MAX_VALUE
@@ -225,6 +317,52 @@ public class Config implements DiagnosticsProvider
     @Documented
     public static final String LUCENE_WRITER_CACHE_SIZE = "lucene_writer_cache_size";
 
+    /**
+     * Integer value that sets the number of milliseconds a lucene index
+     * searcher may miss committed changes before it's reopened in the
+     * background. Queries don't wait for searchers to be reopened, but may
+     * not see changes committed within that time. The default is 0, where
+     * a searcher is reopened by the first query after a commit.
+     */
+    @Documented
+    public static final String LUCENE_SEARCHER_REFRESH_INTERVAL = "lucene_searcher_refresh_interval";
+
+    /**
+     * Integer value that sets the number of commits to a lucene index after
+     * which its searcher is reopened in the background, without waiting for
+     * the {@link #LUCENE_SEARCHER_REFRESH_INTERVAL}. The default is 0, where
+     * only the refresh interval is considered.
+     */
+    @Documented
+    public static final String LUCENE_SEARCHER_REFRESH_COMMITS = "lucene_searcher_refresh_commits";
+
+    /**
+     * Boolean (one of true,false) defining whether operations can be guarded
+     * with time, operation and row limits, see
+     * {@link org.neo4j.kernel.guard.Guard}. Default is false.
+     */
+    @Documented
+    public static final String EXECUTION_GUARD_ENABLED = "execution_guard_enabled";
+
+    /**
+     * Integer value that sets the number of rows a Cypher ORDER BY without a
+     * LIMIT sorts in memory. Beyond that, sorted runs of rows are written to
+     * temporary files and merged as the result is read. The default is 0,
+     * where all rows are sorted in memory.
+     */
+    @Documented
+    public static final String CYPHER_SORT_ROWS_IN_MEMORY = "cypher_sort_rows_in_memory";
+
+    /**
+     * Integer value that sets the number of bytes of heap a Cypher
+     * aggregation may use for its groups, as estimated from their keys and
+     * aggregated values. Rows of groups that don't fit are written to
+     * temporary files and aggregated from there. The default is 0, where all
+     * groups are kept in memory.
+     */
+    @Documented
+    public static final String CYPHER_AGGREGATION_MEMORY = "cypher_aggregation_memory";
+
     static final String LOAD_EXTENSIONS = "load_kernel_extensions";
 
     private final AdaptiveCacheManager cacheManager;
@@ -281,6 +419,10 @@ public class Config implements DiagnosticsProvider
         this.persistenceModule = new PersistenceModule();
         this.cacheManager = new AdaptiveCacheManager();
         this.params.put( FileSystemAbstraction.class, fileSystem );
+        if ( Boolean.parseBoolean( (String) params.get( EXECUTION_GUARD_ENABLED ) ) )
+        {
+            this.params.put( Guard.class, new Guard() );
+        }
         graphDbModule = new GraphDbModule( graphDb, cacheManager, lockManager,
                 txModule.getTxManager(), idGeneratorModule.getIdGenerator(),
                 readOnly );
@@ -321,6 +463,8 @@ public class Config implements DiagnosticsProvider
         }
         params.put( NODE_AUTO_INDEXING, "false" );
         params.put( RELATIONSHIP_AUTO_INDEXING, "false" );
+        params.put( CYPHER_SORT_ROWS_IN_MEMORY, "0" );
+        params.put( CYPHER_AGGREGATION_MEMORY, "0" );
         return params;
     }
 
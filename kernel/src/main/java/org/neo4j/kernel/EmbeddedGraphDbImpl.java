@@ -45,6 +45,7 @@ import org.neo4j.graphdb.event.KernelEventHandler;
 import org.neo4j.graphdb.event.TransactionEventHandler;
 import org.neo4j.graphdb.index.IndexManager;
 import org.neo4j.helpers.Service;
+import org.neo4j.kernel.guard.Guard;
 import org.neo4j.kernel.impl.core.KernelPanicEventGenerator;
 import org.neo4j.kernel.impl.core.LastCommittedTxIdSetter;
 import org.neo4j.kernel.impl.core.LockReleaser;
@@ -359,6 +360,13 @@ class EmbeddedGraphDbImpl
                 }
             }
             graphDbInstance.shutdown();
+            // The guard belongs to the config, not to the node manager which
+            // can be stopped and started again
+            Guard guard = (Guard) getConfig().getParams().get( Guard.class );
+            if ( guard != null )
+            {
+                guard.shutdown();
+            }
         }
         finally
         {
@@ -506,4 +514,9 @@ class EmbeddedGraphDbImpl
     {
         return extensions;
     }
+
+    StringLogger getMessageLog()
+    {
+        return msgLog;
+    }
 }
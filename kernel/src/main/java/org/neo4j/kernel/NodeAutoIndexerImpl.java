@@ -20,6 +20,8 @@
 package org.neo4j.kernel;
 
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
 import org.neo4j.graphdb.index.Index;
 
 /**
@@ -62,11 +64,23 @@ class NodeAutoIndexerImpl extends AbstractAutoIndexerImpl<Node>
                 NODE_AUTO_INDEX, null );
     }
 
+    @Override
+    protected Iterable<PropertyEntry<Node>> assignedProperties( TransactionData data )
+    {
+        return data.assignedNodeProperties();
+    }
+
+    @Override
+    protected Iterable<PropertyEntry<Node>> removedProperties( TransactionData data )
+    {
+        return data.removedNodeProperties();
+    }
+
     @Override
     public void setEnabled( boolean enabled )
     {
         super.setEnabled( enabled );
-        if ( enabled )
+        if ( enabled && !isAsynchronous() )
         {
             getGraphDbImpl().getConfig().getGraphDbModule().getNodeManager().addNodePropertyTracker(
                 this );
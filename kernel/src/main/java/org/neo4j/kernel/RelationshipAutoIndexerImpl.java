@@ -21,6 +21,8 @@ package org.neo4j.kernel;
 
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
 import org.neo4j.graphdb.index.IndexHits;
 import org.neo4j.graphdb.index.ReadableRelationshipIndex;
 import org.neo4j.graphdb.index.RelationshipAutoIndexer;
@@ -67,11 +69,23 @@ class RelationshipAutoIndexerImpl extends AbstractAutoIndexerImpl<Relationship>
         return getIndexInternal();
     }
 
+    @Override
+    protected Iterable<PropertyEntry<Relationship>> assignedProperties( TransactionData data )
+    {
+        return data.assignedRelationshipProperties();
+    }
+
+    @Override
+    protected Iterable<PropertyEntry<Relationship>> removedProperties( TransactionData data )
+    {
+        return data.removedRelationshipProperties();
+    }
+
     @Override
     public void setEnabled( boolean enabled )
     {
         super.setEnabled( enabled );
-        if ( enabled )
+        if ( enabled && !isAsynchronous() )
         {
             getGraphDbImpl().getConfig().getGraphDbModule().getNodeManager().addRelationshipPropertyTracker(
                     this );
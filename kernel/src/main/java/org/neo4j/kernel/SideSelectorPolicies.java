@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel;
+
+import org.neo4j.graphdb.traversal.BranchSelector;
+import org.neo4j.graphdb.traversal.SideSelector;
+import org.neo4j.graphdb.traversal.SideSelectorPolicy;
+import org.neo4j.kernel.impl.traversal.AlternatingSelectorOrderer;
+import org.neo4j.kernel.impl.traversal.LevelSelectorOrderer;
+
+/**
+ * Common orders in which the sides of a bidirectional traversal are
+ * expanded.
+ */
+public enum SideSelectorPolicies implements SideSelectorPolicy
+{
+    /**
+     * Expands a whole level, i.e. every branch of a depth, of one side
+     * before switching to the other side.
+     */
+    LEVEL
+    {
+        public SideSelector create( BranchSelector start, BranchSelector end, int maxDepth )
+        {
+            return new LevelSelectorOrderer( start, end, maxDepth );
+        }
+    },
+    /**
+     * Switches side after every branch.
+     */
+    ALTERNATING
+    {
+        public SideSelector create( BranchSelector start, BranchSelector end, int maxDepth )
+        {
+            return new AlternatingSelectorOrderer( start, end, maxDepth );
+        }
+    };
+}
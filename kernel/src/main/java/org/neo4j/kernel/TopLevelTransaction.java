@@ -149,7 +149,7 @@ public class TopLevelTransaction implements Transaction
     public Lock acquireWriteLock( PropertyContainer entity )
     {
         lockManager.getWriteLock( entity );
-        LockElement lockElement = lockReleaser.addLockToTransaction( entity, LockType.WRITE );
+        LockElement lockElement = lockReleaser.addReleasableLockToTransaction( entity, LockType.WRITE );
         return new LockImpl( lockManager, lockElement );
     }
 
@@ -157,7 +157,7 @@ public class TopLevelTransaction implements Transaction
     public Lock acquireReadLock( PropertyContainer entity )
     {
         lockManager.getReadLock( entity );
-        LockElement lockElement = lockReleaser.addLockToTransaction( entity, LockType.READ );
+        LockElement lockElement = lockReleaser.addReleasableLockToTransaction( entity, LockType.READ );
         return new LockImpl( lockManager, lockElement );
     }
 }
@@ -28,6 +28,7 @@ import org.neo4j.graphdb.Path;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipExpander;
 import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.traversal.BidirectionalTraversalDescription;
 import org.neo4j.graphdb.traversal.BranchOrderingPolicy;
 import org.neo4j.graphdb.traversal.Evaluator;
 import org.neo4j.graphdb.traversal.Evaluators;
@@ -35,6 +36,7 @@ import org.neo4j.graphdb.traversal.PruneEvaluator;
 import org.neo4j.graphdb.traversal.TraversalBranch;
 import org.neo4j.graphdb.traversal.TraversalDescription;
 import org.neo4j.helpers.Predicate;
+import org.neo4j.kernel.impl.traversal.BidirectionalTraversalDescriptionImpl;
 import org.neo4j.kernel.impl.traversal.FinalTraversalBranch;
 import org.neo4j.kernel.impl.traversal.TraversalDescriptionImpl;
 
@@ -75,6 +77,20 @@ public class Traversal
         return new TraversalDescriptionImpl();
     }
 
+    /**
+     * Creates a new {@link BidirectionalTraversalDescription} where both
+     * sides expand breadth first along all relationships, the end side in
+     * the opposite direction of the start side, and every path where they
+     * meet is returned.
+     *
+     * @return a new {@link BidirectionalTraversalDescription} with default
+     *         values.
+     */
+    public static BidirectionalTraversalDescription bidirectionalTraversal()
+    {
+        return new BidirectionalTraversalDescriptionImpl();
+    }
+
     /**
      * Creates a new {@link RelationshipExpander} which is set to expand
      * relationships with {@code type} and {@code direction}.
@@ -0,0 +1,326 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.guard;
+
+import static java.lang.System.currentTimeMillis;
+
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the time, the number of primitive operations and the number of
+ * result rows that a single operation (typically a server request) may use.
+ * An operation is started and stopped in the thread that executes it. While
+ * it runs, the kernel calls {@link #check()} whenever it loads a node or a
+ * relationship, and query engines call {@link #checkRow()} for every row they
+ * produce. When a limit has been passed the next check point throws a
+ * {@link GuardException}, which unwinds the operation.
+ * <p>
+ * The check path only increments thread confined counters and reads a
+ * volatile flag. Time limits are enforced by a shared timer which raises that
+ * flag when the deadline passes, so there is no clock read per operation.
+ * Timeouts of operations that stop in time are cancelled, and the timer is
+ * purged of them every {@link #PURGE_INTERVAL} cancellations so that they
+ * don't pile up until their deadline.
+ */
+public class Guard
+{
+    public enum Limit
+    {
+        TIME( "time limit exceeded" ),
+        OPERATIONS( "operation limit exceeded" ),
+        ROWS( "row limit exceeded" ),
+        CANCELLED( "operation cancelled" );
+
+        private final String description;
+
+        private Limit( String description )
+        {
+            this.description = description;
+        }
+
+        String description()
+        {
+            return description;
+        }
+    }
+
+    static final int PURGE_INTERVAL = 1000;
+
+    private final ThreadLocal<GuardInternal> threadLocal = new ThreadLocal<GuardInternal>();
+    private final Map<Thread, GuardInternal> running = new ConcurrentHashMap<Thread, GuardInternal>();
+    private Timer timer;
+    private boolean shutdown;
+
+    private final AtomicLong cancelledTimeouts = new AtomicLong();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong totalOperations = new AtomicLong();
+    private final AtomicLong totalRows = new AtomicLong();
+    private final AtomicLong[] aborted = new AtomicLong[Limit.values().length];
+
+    public Guard()
+    {
+        for ( int i = 0; i < aborted.length; i++ )
+        {
+            aborted[i] = new AtomicLong();
+        }
+    }
+
+    /**
+     * Starts guarding an operation in the current thread. Any limit that is
+     * zero or negative is not enforced. An operation already guarded in this
+     * thread is stopped first.
+     *
+     * @param timeLimitMillis the wall clock time the operation may run.
+     * @param operationLimit the number of nodes and relationships it may load.
+     * @param rowLimit the number of result rows it may produce.
+     */
+    public void start( long timeLimitMillis, long operationLimit, long rowLimit )
+    {
+        stop();
+        GuardInternal guardInternal = new GuardInternal( operationLimit, rowLimit );
+        threadLocal.set( guardInternal );
+        running.put( Thread.currentThread(), guardInternal );
+        started.incrementAndGet();
+        if ( timeLimitMillis > 0 )
+        {
+            schedule( guardInternal, timeLimitMillis );
+        }
+    }
+
+    /**
+     * Stops guarding the operation running in the current thread, if any.
+     */
+    public void stop()
+    {
+        GuardInternal guardInternal = threadLocal.get();
+        if ( guardInternal == null )
+        {
+            return;
+        }
+        threadLocal.remove();
+        running.remove( Thread.currentThread() );
+        if ( guardInternal.timeout.cancel() && cancelledTimeouts.incrementAndGet() % PURGE_INTERVAL == 0 )
+        {
+            purge();
+        }
+        totalOperations.addAndGet( guardInternal.operations );
+        totalRows.addAndGet( guardInternal.rows );
+        Limit abortedBy = guardInternal.abortedBy;
+        if ( abortedBy == null )
+        {
+            completed.incrementAndGet();
+        }
+        else
+        {
+            aborted[abortedBy.ordinal()].incrementAndGet();
+        }
+    }
+
+    /**
+     * Counts one operation against the operation guarded in the current
+     * thread.
+     *
+     * @throws GuardException if the operation has passed one of its limits.
+     */
+    public void check()
+    {
+        GuardInternal guardInternal = threadLocal.get();
+        if ( guardInternal != null )
+        {
+            guardInternal.check();
+        }
+    }
+
+    /**
+     * Counts one result row against the operation guarded in the current
+     * thread.
+     *
+     * @throws GuardException if the operation has passed one of its limits.
+     */
+    public void checkRow()
+    {
+        GuardInternal guardInternal = threadLocal.get();
+        if ( guardInternal != null )
+        {
+            guardInternal.checkRow();
+        }
+    }
+
+    /**
+     * Cancels the operation guarded in the given thread. It is aborted at its
+     * next check point.
+     *
+     * @return {@code true} if the thread was running a guarded operation.
+     */
+    public boolean cancel( Thread thread )
+    {
+        GuardInternal guardInternal = running.get( thread );
+        if ( guardInternal == null )
+        {
+            return false;
+        }
+        guardInternal.abort( Limit.CANCELLED );
+        return true;
+    }
+
+    /**
+     * Cancels all currently guarded operations.
+     *
+     * @return the number of operations that were cancelled.
+     */
+    public int cancelAll()
+    {
+        int count = 0;
+        for ( GuardInternal guardInternal : running.values() )
+        {
+            guardInternal.abort( Limit.CANCELLED );
+            count++;
+        }
+        return count;
+    }
+
+    public synchronized void shutdown()
+    {
+        shutdown = true;
+        if ( timer != null )
+        {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    public int getRunningCount()
+    {
+        return running.size();
+    }
+
+    public long getStartedCount()
+    {
+        return started.get();
+    }
+
+    public long getCompletedCount()
+    {
+        return completed.get();
+    }
+
+    public long getAbortedCount( Limit limit )
+    {
+        return aborted[limit.ordinal()].get();
+    }
+
+    public long getTotalOperations()
+    {
+        return totalOperations.get();
+    }
+
+    public long getTotalRows()
+    {
+        return totalRows.get();
+    }
+
+    /**
+     * @return the number of cancelled timeouts removed from the timer.
+     */
+    synchronized int purge()
+    {
+        return timer != null ? timer.purge() : 0;
+    }
+
+    private synchronized void schedule( GuardInternal guardInternal, long timeLimitMillis )
+    {
+        if ( shutdown )
+        {
+            return;
+        }
+        if ( timer == null )
+        {
+            timer = new Timer( "Neo4j execution guard", true );
+        }
+        timer.schedule( guardInternal.timeout, timeLimitMillis );
+    }
+
+    private static class GuardInternal
+    {
+        private final long startTime = currentTimeMillis();
+        private final long operationLimit;
+        private final long rowLimit;
+        // Only touched by the guarded thread, summed up when it stops
+        private long operations;
+        private long rows;
+        private volatile Limit abortedBy;
+
+        private final TimerTask timeout = new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                abort( Limit.TIME );
+            }
+        };
+
+        GuardInternal( long operationLimit, long rowLimit )
+        {
+            this.operationLimit = operationLimit > 0 ? operationLimit : Long.MAX_VALUE;
+            this.rowLimit = rowLimit > 0 ? rowLimit : Long.MAX_VALUE;
+        }
+
+        void check()
+        {
+            if ( ++operations > operationLimit )
+            {
+                abort( Limit.OPERATIONS );
+            }
+            verify();
+        }
+
+        void checkRow()
+        {
+            if ( ++rows > rowLimit )
+            {
+                abort( Limit.ROWS );
+            }
+            verify();
+        }
+
+        void abort( Limit limit )
+        {
+            // The first limit that was passed is the one reported
+            if ( abortedBy == null )
+            {
+                abortedBy = limit;
+            }
+        }
+
+        private void verify()
+        {
+            Limit limit = abortedBy;
+            if ( limit != null )
+            {
+                throw new GuardException( limit, operations, rows, currentTimeMillis() - startTime );
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.guard;
+
+/**
+ * Thrown from a {@link Guard} check point when the guarded operation running
+ * in the current thread has exceeded one of its limits or has been
+ * cancelled. Once thrown, every following check point of the same operation
+ * throws again, so code that swallows the exception still gets stopped.
+ */
+public class GuardException extends RuntimeException
+{
+    private final Guard.Limit limit;
+    private final long operations;
+    private final long rows;
+    private final long elapsedMillis;
+
+    public GuardException( Guard.Limit limit, long operations, long rows, long elapsedMillis )
+    {
+        super( String.format( "%s (ops=%d, rows=%d, elapsed=%dms)",
+                limit.description(), operations, rows, elapsedMillis ) );
+        this.limit = limit;
+        this.operations = operations;
+        this.rows = rows;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public Guard.Limit getLimit()
+    {
+        return limit;
+    }
+
+    public long getOperations()
+    {
+        return operations;
+    }
+
+    public long getRows()
+    {
+        return rows;
+    }
+
+    public long getElapsedMillis()
+    {
+        return elapsedMillis;
+    }
+}
@@ -28,6 +28,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -35,6 +36,7 @@ import java.util.Map.Entry;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.helpers.collection.PrefetchingIterator;
 import org.neo4j.kernel.AutoConfigurator;
 import org.neo4j.kernel.CommonFactories;
 import org.neo4j.kernel.Config;
@@ -42,9 +44,12 @@ import org.neo4j.kernel.EmbeddedGraphDatabase;
 import org.neo4j.kernel.IdGeneratorFactory;
 import org.neo4j.kernel.IdType;
 import org.neo4j.kernel.impl.index.IndexStore;
+import org.neo4j.kernel.impl.nioneo.store.AbstractStore;
+import org.neo4j.kernel.impl.nioneo.store.DirectRecordAccess;
 import org.neo4j.kernel.impl.nioneo.store.DynamicRecord;
 import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
 import org.neo4j.kernel.impl.nioneo.store.IdGeneratorImpl;
+import org.neo4j.kernel.impl.nioneo.store.InUseRecordScanner;
 import org.neo4j.kernel.impl.nioneo.store.InvalidRecordException;
 import org.neo4j.kernel.impl.nioneo.store.NameData;
 import org.neo4j.kernel.impl.nioneo.store.NeoStore;
@@ -59,6 +64,9 @@ import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
 import org.neo4j.kernel.impl.nioneo.store.PropertyType;
 import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupStore;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroups;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
@@ -84,6 +92,12 @@ public class BatchInserterImpl implements BatchInserter
 
     private final StringLogger msgLog;
 
+    // relationships added to each node since startup, in pages of REL_COUNT_PAGE_SIZE
+    // nodes, to know when a node has become dense without counting its chain
+    private static final int REL_COUNT_PAGE_SIZE = 1 << 16;
+    private final Map<Long,int[]> relCounts = new HashMap<Long,int[]>();
+    private final long nodeHighIdAtStartup;
+
     public BatchInserterImpl( String storeDir )
     {
         this( storeDir, Collections.<String, String>emptyMap() );
@@ -124,6 +138,7 @@ public class BatchInserterImpl implements BatchInserter
         indexHolder = new PropertyIndexHolder( indexes );
         NameData[] types = getRelationshipTypeStore().getNames( Integer.MAX_VALUE );
         typeHolder = new RelationshipTypeHolder( types );
+        nodeHighIdAtStartup = getNodeStore().getHighId();
         graphDbService = new BatchGraphDatabaseImpl( this );
         indexStore = new IndexStore( storeDir, fileSystem );
     }
@@ -395,17 +410,33 @@ public class BatchInserterImpl implements BatchInserter
 
     public long createNode( Map<String,Object> properties )
     {
-        return internalCreateNode( getNodeStore().nextId(), properties );
+        return internalCreateNode( nextNodeId(), properties );
+    }
+
+    long nextNodeId()
+    {
+        return getNodeStore().nextId();
+    }
+
+    long nextRelationshipId()
+    {
+        return getRelationshipStore().nextId();
     }
 
     private long internalCreateNode( long nodeId, Map<String, Object> properties )
+    {
+        writeNode( nodeId, createPropertyChain( properties ) );
+        return nodeId;
+    }
+
+    // may be called concurrently for different nodes
+    void writeNode( long nodeId, long firstProp )
     {
         NodeRecord nodeRecord = new NodeRecord( nodeId, Record.NO_NEXT_RELATIONSHIP.intValue(), Record.NO_NEXT_PROPERTY.intValue() );
         nodeRecord.setInUse( true );
         nodeRecord.setCreated();
-        nodeRecord.setNextProp( createPropertyChain( properties ) );
+        nodeRecord.setNextProp( firstProp );
         getNodeStore().updateRecord( nodeRecord );
-        return nodeId;
     }
 
     public void createNode( long id, Map<String,Object> properties )
@@ -435,43 +466,127 @@ public class BatchInserterImpl implements BatchInserter
     public long createRelationship( long node1, long node2, RelationshipType
         type, Map<String,Object> properties )
     {
-        NodeRecord firstNode = getNodeRecord( node1 );
-        NodeRecord secondNode = getNodeRecord( node2 );
-        int typeId = typeHolder.getTypeId( type.name() );
+        int typeId = getOrCreateRelationshipTypeId( type.name() );
+        long id = nextRelationshipId();
+        writeRelationship( id, node1, node2, typeId, createPropertyChain( properties ) );
+        return id;
+    }
+
+    int getOrCreateRelationshipTypeId( String name )
+    {
+        int typeId = typeHolder.getTypeId( name );
         if ( typeId == -1 )
         {
-            typeId = createNewRelationshipType( type.name() );
+            typeId = createNewRelationshipType( name );
         }
-        long id = getRelationshipStore().nextId();
+        return typeId;
+    }
+
+    // links the relationship into the chains of its nodes, so calls must not overlap
+    void writeRelationship( long id, long node1, long node2, int typeId, long firstProp )
+    {
+        NodeRecord firstNode = getNodeRecord( node1 );
+        NodeRecord secondNode = node1 == node2 ? firstNode : getNodeRecord( node2 );
         RelationshipRecord record = new RelationshipRecord( id, node1, node2, typeId );
         record.setInUse( true );
         record.setCreated();
-        connectRelationship( firstNode, secondNode, record );
+        DirectRecordAccess access = new DirectRecordAccess( getRelationshipStore(), getRelationshipGroupStore() );
+        connectRelationship( firstNode, secondNode, record, access );
+        access.flush();
         getNodeStore().updateRecord( firstNode );
-        getNodeStore().updateRecord( secondNode );
-        record.setNextProp( createPropertyChain( properties ) );
+        if ( secondNode != firstNode )
+        {
+            getNodeStore().updateRecord( secondNode );
+        }
+        record.setNextProp( firstProp );
         getRelationshipStore().updateRecord( record );
-        return id;
     }
 
     private void connectRelationship( NodeRecord firstNode,
-            NodeRecord secondNode, RelationshipRecord rel )
+            NodeRecord secondNode, RelationshipRecord rel, DirectRecordAccess access )
     {
         assert firstNode.getNextRel() != rel.getId();
         assert secondNode.getNextRel() != rel.getId();
-        rel.setFirstNextRel( firstNode.getNextRel() );
-        rel.setSecondNextRel( secondNode.getNextRel() );
-        connect( firstNode, rel );
-        connect( secondNode, rel );
-        firstNode.setNextRel( rel.getId() );
-        secondNode.setNextRel( rel.getId() );
+        convertToDenseIfNeeded( firstNode, access );
+        if ( secondNode != firstNode )
+        {
+            convertToDenseIfNeeded( secondNode, access );
+        }
+        if ( !firstNode.isDense() )
+        {
+            rel.setFirstNextRel( firstNode.getNextRel() );
+        }
+        if ( !secondNode.isDense() )
+        {
+            rel.setSecondNextRel( secondNode.getNextRel() );
+        }
+        connect( firstNode, rel, access );
+        if ( secondNode != firstNode )
+        {
+            connect( secondNode, rel, access );
+        }
+    }
+
+    private void convertToDenseIfNeeded( NodeRecord node, DirectRecordAccess access )
+    {
+        if ( !node.isDense() && incrementRelationshipCount( node.getId() ) >= neoStore.getDenseNodeThreshold() )
+        {
+            RelationshipGroups.convertToDense( node, access );
+        }
     }
 
-    private void connect( NodeRecord node, RelationshipRecord rel )
+    private int incrementRelationshipCount( long nodeId )
     {
+        int[] page = relCounts.get( nodeId / REL_COUNT_PAGE_SIZE );
+        if ( page == null )
+        {
+            page = new int[REL_COUNT_PAGE_SIZE];
+            relCounts.put( nodeId / REL_COUNT_PAGE_SIZE, page );
+        }
+        return ++page[(int) (nodeId % REL_COUNT_PAGE_SIZE)];
+    }
+
+    /*
+     * Nodes which had relationships before startup may have reached the
+     * dense node threshold without getting that many relationships here.
+     */
+    private void convertRemainingDenseNodes()
+    {
+        int threshold = neoStore.getDenseNodeThreshold();
+        for ( Map.Entry<Long,int[]> page : relCounts.entrySet() )
+        {
+            int[] counts = page.getValue();
+            for ( int i = 0; i < counts.length; i++ )
+            {
+                long nodeId = page.getKey() * REL_COUNT_PAGE_SIZE + i;
+                if ( counts[i] == 0 || counts[i] >= threshold || nodeId >= nodeHighIdAtStartup )
+                {
+                    continue;
+                }
+                DirectRecordAccess access = new DirectRecordAccess( getRelationshipStore(),
+                        getRelationshipGroupStore() );
+                NodeRecord node = getNodeRecord( nodeId );
+                if ( !node.isDense() && RelationshipGroups.countRelationships( node, threshold, access ) >= threshold )
+                {
+                    RelationshipGroups.convertToDense( node, access );
+                    access.flush();
+                    getNodeStore().updateRecord( node );
+                }
+            }
+        }
+        relCounts.clear();
+    }
+
+    private void connect( NodeRecord node, RelationshipRecord rel, DirectRecordAccess access )
+    {
+        if ( node.isDense() )
+        {
+            RelationshipGroups.connect( node, rel, access );
+            return;
+        }
         if ( node.getNextRel() != Record.NO_NEXT_RELATIONSHIP.intValue() )
         {
-            RelationshipRecord nextRel = getRelationshipStore().getRecord( node.getNextRel() );
+            RelationshipRecord nextRel = access.getRelationship( node.getNextRel() );
             boolean changed = false;
             if ( nextRel.getFirstNode() == node.getId() )
             {
@@ -487,8 +602,8 @@ public class BatchInserterImpl implements BatchInserter
             {
                 throw new InvalidRecordException( node + " dont match " + nextRel );
             }
-            getRelationshipStore().updateRecord( nextRel );
         }
+        node.setNextRel( rel.getId() );
     }
 
     public void setNodeProperties( long node, Map<String,Object> properties )
@@ -549,27 +664,29 @@ public class BatchInserterImpl implements BatchInserter
     public Iterable<Long> getRelationshipIds( long nodeId )
     {
         NodeRecord nodeRecord = getNodeRecord( nodeId );
-        long nextRel = nodeRecord.getNextRel();
         List<Long> ids = new ArrayList<Long>();
-        while ( nextRel != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        for ( long nextRel : getChainHeads( nodeRecord ) )
         {
-            RelationshipRecord relRecord = getRelationshipRecord( nextRel );
-            ids.add( relRecord.getId() );
-            long firstNode = relRecord.getFirstNode();
-            long secondNode = relRecord.getSecondNode();
-            if ( firstNode == nodeId )
-            {
-                nextRel = relRecord.getFirstNextRel();
-            }
-            else if ( secondNode == nodeId )
+            while ( nextRel != Record.NO_NEXT_RELATIONSHIP.intValue() )
             {
-                nextRel = relRecord.getSecondNextRel();
-            }
-            else
-            {
-                throw new InvalidRecordException( "Node[" + nodeId +
-                    "] not part of firstNode[" + firstNode +
-                    "] or secondNode[" + secondNode + "]" );
+                RelationshipRecord relRecord = getRelationshipRecord( nextRel );
+                ids.add( relRecord.getId() );
+                long firstNode = relRecord.getFirstNode();
+                long secondNode = relRecord.getSecondNode();
+                if ( firstNode == nodeId )
+                {
+                    nextRel = relRecord.getFirstNextRel();
+                }
+                else if ( secondNode == nodeId )
+                {
+                    nextRel = relRecord.getSecondNextRel();
+                }
+                else
+                {
+                    throw new InvalidRecordException( "Node[" + nodeId +
+                        "] not part of firstNode[" + firstNode +
+                        "] or secondNode[" + secondNode + "]" );
+                }
             }
         }
         return ids;
@@ -578,30 +695,32 @@ public class BatchInserterImpl implements BatchInserter
     public Iterable<SimpleRelationship> getRelationships( long nodeId )
     {
         NodeRecord nodeRecord = getNodeRecord( nodeId );
-        long nextRel = nodeRecord.getNextRel();
         List<SimpleRelationship> rels = new ArrayList<SimpleRelationship>();
-        while ( nextRel != Record.NO_NEXT_RELATIONSHIP.intValue() )
-        {
-            RelationshipRecord relRecord = getRelationshipRecord( nextRel );
-            RelationshipType type = new RelationshipTypeImpl(
-                typeHolder.getName( relRecord.getType() ) );
-            rels.add( new SimpleRelationship( relRecord.getId(),
-                relRecord.getFirstNode(), relRecord.getSecondNode(), type ) );
-            long firstNode = relRecord.getFirstNode();
-            long secondNode = relRecord.getSecondNode();
-            if ( firstNode == nodeId )
-            {
-                nextRel = relRecord.getFirstNextRel();
-            }
-            else if ( secondNode == nodeId )
-            {
-                nextRel = relRecord.getSecondNextRel();
-            }
-            else
+        for ( long nextRel : getChainHeads( nodeRecord ) )
+        {
+            while ( nextRel != Record.NO_NEXT_RELATIONSHIP.intValue() )
             {
-                throw new InvalidRecordException( "Node[" + nodeId +
-                    "] not part of firstNode[" + firstNode +
-                    "] or secondNode[" + secondNode + "]" );
+                RelationshipRecord relRecord = getRelationshipRecord( nextRel );
+                RelationshipType type = new RelationshipTypeImpl(
+                    typeHolder.getName( relRecord.getType() ) );
+                rels.add( new SimpleRelationship( relRecord.getId(),
+                    relRecord.getFirstNode(), relRecord.getSecondNode(), type ) );
+                long firstNode = relRecord.getFirstNode();
+                long secondNode = relRecord.getSecondNode();
+                if ( firstNode == nodeId )
+                {
+                    nextRel = relRecord.getFirstNextRel();
+                }
+                else if ( secondNode == nodeId )
+                {
+                    nextRel = relRecord.getSecondNextRel();
+                }
+                else
+                {
+                    throw new InvalidRecordException( "Node[" + nodeId +
+                        "] not part of firstNode[" + firstNode +
+                        "] or secondNode[" + secondNode + "]" );
+                }
             }
         }
         return rels;
@@ -626,8 +745,59 @@ public class BatchInserterImpl implements BatchInserter
         return Collections.emptyMap();
     }
 
+    /**
+     * Returns the ids of the nodes in one of {@code partitions} equally sized
+     * id ranges of the node store, read sequentially from the store file. The
+     * partitions can be iterated in parallel as long as nothing is written to
+     * the store meanwhile.
+     *
+     * @param partition the partition to return the ids of, from 0 to
+     *            {@code partitions - 1}.
+     * @param partitions the number of partitions the node ids are split into.
+     * @return the ids of the nodes in the given partition.
+     */
+    public Iterator<Long> getAllNodeIds( int partition, int partitions )
+    {
+        return scanInUseIds( getNodeStore(), partition, partitions );
+    }
+
+    /**
+     * Returns the ids of the relationships in one of {@code partitions}
+     * equally sized id ranges of the relationship store.
+     *
+     * @see #getAllNodeIds(int, int)
+     */
+    public Iterator<Long> getAllRelationshipIds( int partition, int partitions )
+    {
+        return scanInUseIds( getRelationshipStore(), partition, partitions );
+    }
+
+    private static Iterator<Long> scanInUseIds( AbstractStore store, int partition, int partitions )
+    {
+        if ( partitions < 1 || partition < 0 || partition >= partitions )
+        {
+            throw new IllegalArgumentException( "Invalid partition " + partition + " of "
+                + partitions );
+        }
+        long highId = store.getHighId();
+        long partitionSize = (highId + partitions - 1) / partitions;
+        long fromId = Math.min( highId, partition * partitionSize );
+        final InUseRecordScanner scanner = store.scanInUseRecords( fromId,
+                Math.min( highId, fromId + partitionSize ), InUseRecordScanner.DEFAULT_CHUNK_SIZE );
+        return new PrefetchingIterator<Long>()
+        {
+            @Override
+            protected Long fetchNextOrNull()
+            {
+                long id = scanner.next();
+                return id != -1 ? id : null;
+            }
+        };
+    }
+
     public void shutdown()
     {
+        convertRemainingDenseNodes();
         graphDbService.clearCaches();
         neoStore.close();
         msgLog.logMessage( Thread.currentThread() + " Clean shutdown on BatchInserter(" + this + ")", true );
@@ -668,7 +838,8 @@ public class BatchInserterImpl implements BatchInserter
         }
     }
 
-    private long createPropertyChain( Map<String,Object> properties )
+    // may be called concurrently
+    long createPropertyChain( Map<String,Object> properties )
     {
         if ( properties == null || properties.isEmpty() )
         {
@@ -682,11 +853,7 @@ public class BatchInserterImpl implements BatchInserter
         propRecords.add( currentRecord );
         for ( Entry<String,Object> entry : properties.entrySet() )
         {
-            int keyId = indexHolder.getKeyId( entry.getKey() );
-            if ( keyId == -1 )
-            {
-                keyId = createNewPropertyIndex( entry.getKey() );
-            }
+            int keyId = getOrCreatePropertyKeyId( entry.getKey() );
 
             PropertyBlock block = new PropertyBlock();
             propStore.encodeValue( block, keyId, entry.getValue() );
@@ -775,6 +942,19 @@ public class BatchInserterImpl implements BatchInserter
         return properties;
     }
 
+    private int getOrCreatePropertyKeyId( String key )
+    {
+        synchronized ( indexHolder )
+        {
+            int keyId = indexHolder.getKeyId( key );
+            if ( keyId == -1 )
+            {
+                keyId = createNewPropertyIndex( key );
+            }
+            return keyId;
+        }
+    }
+
     private int createNewPropertyIndex( String stringKey )
     {
         PropertyIndexStore idxStore = getPropertyIndexStore();
@@ -834,11 +1014,34 @@ public class BatchInserterImpl implements BatchInserter
         return neoStore.getRelationshipStore();
     }
 
+    private RelationshipGroupStore getRelationshipGroupStore()
+    {
+        return neoStore.getRelationshipGroupStore();
+    }
+
     private RelationshipTypeStore getRelationshipTypeStore()
     {
         return neoStore.getRelationshipTypeStore();
     }
 
+    private List<Long> getChainHeads( NodeRecord node )
+    {
+        if ( !node.isDense() )
+        {
+            return Collections.singletonList( node.getNextRel() );
+        }
+        List<Long> heads = new ArrayList<Long>();
+        for ( long next = node.getNextRel(); next != Record.NO_NEXT_RELATIONSHIP.intValue(); )
+        {
+            RelationshipGroupRecord group = getRelationshipGroupStore().getRecord( next );
+            heads.add( group.getFirstOut() );
+            heads.add( group.getFirstIn() );
+            heads.add( group.getFirstLoop() );
+            next = group.getNext();
+        }
+        return heads;
+    }
+
     private NodeRecord getNodeRecord( long id )
     {
         if ( id < 0 || id >= getNodeStore().getHighId() )
@@ -0,0 +1,34 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.batchinsert;
+
+/**
+ * Receives progress of the stages run by a {@link ParallelBatchImporter} or
+ * of an index population. Counts are the number of entities written so far in
+ * the stage and the elapsed time is measured from the start of that stage.
+ */
+public interface ImportProgressMonitor
+{
+    void started( String stage );
+
+    void progress( String stage, long count, long elapsedMillis );
+
+    void finished( String stage, long count, long elapsedMillis );
+}
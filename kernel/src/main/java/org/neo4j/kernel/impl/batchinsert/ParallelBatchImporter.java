@@ -0,0 +1,445 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.batchinsert;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Imports streams of nodes and relationships through a {@link BatchInserter}
+ * using all available cores. Input is cut into batches which flow through
+ * three stages:
+ * <ol>
+ * <li>id assignment, done in input order by the calling thread,</li>
+ * <li>property encoding and record writing, done by a pool of workers,</li>
+ * <li>relationship chain linking, done by a single writer thread that sees
+ * the batches in input order.</li>
+ * </ol>
+ * The number of batches in flight is bounded, so a slow stage holds back the
+ * ones before it instead of buffering the input in memory.
+ * <p>
+ * The batch inserter must not be used by anyone else while an import is
+ * running.
+ */
+public class ParallelBatchImporter
+{
+    public static final int DEFAULT_BATCH_SIZE = 10000;
+
+    private final BatchInserterImpl inserter;
+    private final int workers;
+    private final int batchSize;
+    private final ImportProgressMonitor monitor;
+
+    public ParallelBatchImporter( BatchInserter inserter )
+    {
+        this( inserter, Runtime.getRuntime().availableProcessors(), DEFAULT_BATCH_SIZE,
+                new SilentImportProgressMonitor() );
+    }
+
+    public ParallelBatchImporter( BatchInserter inserter, int workers, int batchSize,
+            ImportProgressMonitor monitor )
+    {
+        if ( !( inserter instanceof BatchInserterImpl ) )
+        {
+            throw new IllegalArgumentException( "Unsupported batch inserter " + inserter );
+        }
+        if ( workers < 1 || batchSize < 1 )
+        {
+            throw new IllegalArgumentException( "workers=" + workers + ", batchSize=" + batchSize );
+        }
+        this.inserter = (BatchInserterImpl) inserter;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.monitor = monitor;
+    }
+
+    /**
+     * Receives the id of each imported node, in input order, from the thread
+     * calling {@link ParallelBatchImporter#importNodes(Iterator, NodeIds)}.
+     * Ids are handed out as they are assigned, so they can be kept in
+     * whatever form fits the size of the import.
+     */
+    public interface NodeIds
+    {
+        void assigned( long nodeId );
+    }
+
+    /**
+     * Creates one node for each property map in {@code nodes}.
+     *
+     * @return the number of created nodes
+     */
+    public long importNodes( Iterator<Map<String,Object>> nodes )
+    {
+        return importNodes( nodes, null );
+    }
+
+    /**
+     * Creates one node for each property map in {@code nodes}, handing the id
+     * of each to {@code ids}, unless it's {@code null}.
+     *
+     * @return the number of created nodes
+     */
+    public long importNodes( Iterator<Map<String,Object>> nodes, NodeIds ids )
+    {
+        long count = 0;
+        Pipeline pipeline = new Pipeline( "nodes" );
+        boolean success = false;
+        try
+        {
+            while ( nodes.hasNext() && !pipeline.hasFailed() )
+            {
+                NodeBatch batch = new NodeBatch( batchSize );
+                while ( batch.size < batchSize && nodes.hasNext() )
+                {
+                    long id = inserter.nextNodeId();
+                    batch.add( id, nodes.next() );
+                    if ( ids != null )
+                    {
+                        ids.assigned( id );
+                    }
+                    count++;
+                }
+                pipeline.submit( batch );
+            }
+            success = true;
+        }
+        finally
+        {
+            pipeline.close( success );
+        }
+        return count;
+    }
+
+    /**
+     * Creates the relationships in {@code relationships}, whose start and end
+     * nodes must already exist.
+     *
+     * @return the number of created relationships
+     */
+    public long importRelationships( Iterator<InputRelationship> relationships )
+    {
+        Pipeline pipeline = new Pipeline( "relationships" );
+        boolean success = false;
+        try
+        {
+            while ( relationships.hasNext() && !pipeline.hasFailed() )
+            {
+                RelationshipBatch batch = new RelationshipBatch( batchSize );
+                while ( batch.size < batchSize && relationships.hasNext() )
+                {
+                    InputRelationship rel = relationships.next();
+                    batch.add( inserter.nextRelationshipId(), rel.getStartNode(), rel.getEndNode(),
+                            inserter.getOrCreateRelationshipTypeId( rel.getType().name() ),
+                            rel.getProperties() );
+                }
+                pipeline.submit( batch );
+            }
+            success = true;
+        }
+        finally
+        {
+            pipeline.close( success );
+        }
+        return pipeline.count;
+    }
+
+    private static abstract class Batch implements Callable<Batch>
+    {
+        final long[] ids;
+        final Map<String,Object>[] properties;
+        int size;
+
+        @SuppressWarnings( "unchecked" )
+        Batch( int capacity )
+        {
+            this.ids = new long[capacity];
+            this.properties = new Map[capacity];
+        }
+
+        /**
+         * Called by the writer thread, one batch at a time in input order.
+         */
+        abstract void write();
+    }
+
+    private class NodeBatch extends Batch
+    {
+        NodeBatch( int capacity )
+        {
+            super( capacity );
+        }
+
+        void add( long id, Map<String,Object> props )
+        {
+            ids[size] = id;
+            properties[size++] = props;
+        }
+
+        public Batch call()
+        {
+            for ( int i = 0; i < size; i++ )
+            {
+                inserter.writeNode( ids[i], inserter.createPropertyChain( properties[i] ) );
+                properties[i] = null;
+            }
+            return this;
+        }
+
+        @Override
+        void write()
+        {
+        }
+    }
+
+    private class RelationshipBatch extends Batch
+    {
+        final long[] startNodes;
+        final long[] endNodes;
+        final int[] types;
+        final long[] firstProps;
+
+        RelationshipBatch( int capacity )
+        {
+            super( capacity );
+            this.startNodes = new long[capacity];
+            this.endNodes = new long[capacity];
+            this.types = new int[capacity];
+            this.firstProps = new long[capacity];
+        }
+
+        void add( long id, long startNode, long endNode, int type, Map<String,Object> props )
+        {
+            ids[size] = id;
+            startNodes[size] = startNode;
+            endNodes[size] = endNode;
+            types[size] = type;
+            properties[size++] = props;
+        }
+
+        public Batch call()
+        {
+            for ( int i = 0; i < size; i++ )
+            {
+                firstProps[i] = inserter.createPropertyChain( properties[i] );
+                properties[i] = null;
+            }
+            return this;
+        }
+
+        @Override
+        void write()
+        {
+            for ( int i = 0; i < size; i++ )
+            {
+                inserter.writeRelationship( ids[i], startNodes[i], endNodes[i], types[i], firstProps[i] );
+            }
+        }
+    }
+
+    private static final Future<Batch> END_OF_INPUT = new FutureTask<Batch>( new Callable<Batch>()
+    {
+        public Batch call()
+        {
+            return null;
+        }
+    } );
+
+    private class Pipeline implements Runnable
+    {
+        private final String stage;
+        private final ExecutorService executor;
+        private final BlockingQueue<Future<Batch>> queue;
+        private final Thread writer;
+        private final long startTime = System.currentTimeMillis();
+        private volatile Throwable failure;
+        private long count;
+
+        Pipeline( String stage )
+        {
+            this.stage = stage;
+            this.executor = Executors.newFixedThreadPool( workers, new WorkerThreadFactory( stage ) );
+            this.queue = new ArrayBlockingQueue<Future<Batch>>( workers * 2 );
+            this.writer = new Thread( this, "Import " + stage + " writer" );
+            monitor.started( stage );
+            writer.start();
+        }
+
+        void submit( Batch batch )
+        {
+            try
+            {
+                hand( executor.submit( batch ) );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException( "Interrupted while importing " + stage, e );
+            }
+        }
+
+        /*
+         * Blocks while the queue is full, but not on a writer that is gone
+         * and never will take anything from it.
+         */
+        private void hand( Future<Batch> next ) throws InterruptedException
+        {
+            while ( !queue.offer( next, 100, TimeUnit.MILLISECONDS ) )
+            {
+                if ( !writer.isAlive() )
+                {
+                    next.cancel( true );
+                    if ( failure == null )
+                    {
+                        failure = new IllegalStateException( "The writer of " + stage + " is gone" );
+                    }
+                    return;
+                }
+            }
+        }
+
+        boolean hasFailed()
+        {
+            return failure != null;
+        }
+
+        public void run()
+        {
+            while ( true )
+            {
+                Future<Batch> next;
+                try
+                {
+                    next = queue.take();
+                }
+                catch ( InterruptedException e )
+                {
+                    failure = e;
+                    return;
+                }
+                if ( next == END_OF_INPUT )
+                {
+                    return;
+                }
+                if ( failure != null )
+                {
+                    next.cancel( true );
+                    continue;
+                }
+                try
+                {
+                    Batch batch = next.get();
+                    batch.write();
+                    count += batch.size;
+                    monitor.progress( stage, count, System.currentTimeMillis() - startTime );
+                }
+                catch ( ExecutionException e )
+                {
+                    failure = e.getCause();
+                }
+                catch ( Throwable e )
+                {
+                    failure = e;
+                }
+            }
+        }
+
+        /**
+         * Waits for all submitted batches to be written. If the stage failed
+         * the failure is rethrown, unless {@code success} is {@code false} in
+         * which case the caller already has an exception on its way out.
+         */
+        void close( boolean success )
+        {
+            boolean interrupted = false;
+            try
+            {
+                while ( true )
+                {
+                    try
+                    {
+                        hand( END_OF_INPUT );
+                        writer.join();
+                        break;
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        interrupted = true;
+                        failure = e;
+                    }
+                }
+            }
+            finally
+            {
+                executor.shutdownNow();
+                if ( interrupted )
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if ( !success )
+            {
+                return;
+            }
+            if ( failure instanceof RuntimeException )
+            {
+                throw (RuntimeException) failure;
+            }
+            if ( failure instanceof Error )
+            {
+                throw (Error) failure;
+            }
+            if ( failure != null )
+            {
+                throw new RuntimeException( "Import of " + stage + " failed", failure );
+            }
+            monitor.finished( stage, count, System.currentTimeMillis() - startTime );
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory
+    {
+        private final String stage;
+        private final AtomicInteger number = new AtomicInteger();
+
+        WorkerThreadFactory( String stage )
+        {
+            this.stage = stage;
+        }
+
+        public Thread newThread( Runnable r )
+        {
+            Thread thread = new Thread( r, "Import " + stage + " worker-" + number.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        }
+    }
+}
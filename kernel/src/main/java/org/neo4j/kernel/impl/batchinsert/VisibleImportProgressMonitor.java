@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.batchinsert;
+
+import java.io.PrintStream;
+
+public class VisibleImportProgressMonitor implements ImportProgressMonitor
+{
+    private final PrintStream out;
+
+    public VisibleImportProgressMonitor( PrintStream out )
+    {
+        this.out = out;
+    }
+
+    public void started( String stage )
+    {
+        out.println( "Importing " + stage );
+    }
+
+    public void progress( String stage, long count, long elapsedMillis )
+    {
+        out.println( "  " + count + " " + stage + " (" + throughput( count, elapsedMillis ) + "/s)" );
+    }
+
+    public void finished( String stage, long count, long elapsedMillis )
+    {
+        out.println( "Imported " + count + " " + stage + " in " + elapsedMillis + "ms (" +
+                throughput( count, elapsedMillis ) + "/s)" );
+    }
+
+    private static long throughput( long count, long elapsedMillis )
+    {
+        return elapsedMillis == 0 ? count * 1000 : count * 1000 / elapsedMillis;
+    }
+}
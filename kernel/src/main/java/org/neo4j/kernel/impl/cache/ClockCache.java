@@ -0,0 +1,348 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrent approximation of a least-recently-used cache using the clock
+ * algorithm.
+ * <p>
+ * Unlike {@link LruCache} a <CODE>get</CODE> doesn't reorder anything, it
+ * only flags the entry as referenced, so reads never take a lock. Entries are
+ * kept in a queue in insertion order and when the number of cached elements
+ * exceeds <CODE>maxSize</CODE> the head of the queue is evicted, unless it
+ * has been referenced since it last passed the head, in which case the flag
+ * is cleared and the entry is given another round at the tail of the queue.
+ * Eviction is done by one thread at a time, other threads putting elements
+ * while another thread evicts don't wait for it.
+ */
+public class ClockCache<K,V> implements Cache<K,V>
+{
+    private final String name;
+    private volatile int maxSize;
+    private volatile boolean adaptive = false;
+    private volatile boolean resizing = false;
+
+    private final AdaptiveCacheManager cacheManager;
+
+    private final ConcurrentHashMap<K,Entry<K,V>> cache = new ConcurrentHashMap<K,Entry<K,V>>();
+    private final Queue<Entry<K,V>> clock = new ConcurrentLinkedQueue<Entry<K,V>>();
+    private final AtomicInteger size = new AtomicInteger();
+    // number of entries in the clock queue, including ones that have been
+    // removed or replaced in the map but not yet passed by the clock hand
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Lock evictionLock = new ReentrantLock();
+
+    private static class Entry<K,V>
+    {
+        final K key;
+        final V value;
+        volatile boolean referenced;
+
+        Entry( K key, V value )
+        {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Creates a clock cache. If <CODE>maxSize < 1</CODE> an
+     * IllegalArgumentException is thrown.
+     *
+     * @param name
+     *            name of cache
+     * @param maxSize
+     *            maximum size of this cache
+     * @param cacheManager
+     *            adaptive cache manager or null if adaptive caching not needed
+     */
+    public ClockCache( String name, int maxSize, AdaptiveCacheManager cacheManager )
+    {
+        if ( name == null || maxSize < 1 )
+        {
+            throw new IllegalArgumentException( "maxSize=" + maxSize
+                + ", name=" + name );
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        this.cacheManager = cacheManager;
+    }
+
+    public String getName()
+    {
+        return this.name;
+    }
+
+    public void put( K key, V value )
+    {
+        if ( key == null || value == null )
+        {
+            throw new IllegalArgumentException( "key=" + key + ", element="
+                + value );
+        }
+        Entry<K,V> entry = new Entry<K,V>( key, value );
+        if ( cache.put( key, entry ) == null )
+        {
+            size.incrementAndGet();
+        }
+        clock.offer( entry );
+        queued.incrementAndGet();
+        if ( size.get() > maxSize )
+        {
+            if ( isAdaptive() && !isResizing() )
+            {
+                adaptCache();
+            }
+            else if ( evictionLock.tryLock() )
+            {
+                try
+                {
+                    evict( maxSize );
+                }
+                finally
+                {
+                    evictionLock.unlock();
+                }
+            }
+        }
+        else if ( queued.get() > 2 * size.get() + 64 && evictionLock.tryLock() )
+        {
+            // lots of removed or replaced entries that the clock hand hasn't
+            // passed yet, don't let them pile up
+            try
+            {
+                purgeStaleEntries();
+            }
+            finally
+            {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    void adaptCache()
+    {
+        if ( cacheManager != null )
+        {
+            cacheManager.adaptCache( this );
+        }
+    }
+
+    public V remove( K key )
+    {
+        if ( key == null )
+        {
+            throw new IllegalArgumentException( "Null parameter" );
+        }
+        Entry<K,V> entry = cache.remove( key );
+        if ( entry == null )
+        {
+            return null;
+        }
+        size.decrementAndGet();
+        return entry.value;
+    }
+
+    public V get( K key )
+    {
+        if ( key == null )
+        {
+            throw new IllegalArgumentException();
+        }
+        Entry<K,V> entry = cache.get( key );
+        if ( entry == null )
+        {
+            return counter.<V>count( null );
+        }
+        if ( !entry.referenced )
+        {
+            // only write when needed to not invalidate the cache line for
+            // other readers of the same entry
+            entry.referenced = true;
+        }
+        return counter.count( entry.value );
+    }
+
+    public void clear()
+    {
+        evictionLock.lock();
+        resizing = true;
+        try
+        {
+            for ( Entry<K,V> entry : cache.values() )
+            {
+                if ( cache.remove( entry.key, entry ) )
+                {
+                    size.decrementAndGet();
+                    elementCleaned( entry.value );
+                }
+            }
+            purgeStaleEntries();
+        }
+        finally
+        {
+            resizing = false;
+            evictionLock.unlock();
+        }
+    }
+
+    public int size()
+    {
+        return size.get();
+    }
+
+    /**
+     * Returns the maximum size of this cache.
+     *
+     * @return maximum size
+     */
+    public int maxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Changes the max size of the cache. If <CODE>newMaxSize</CODE> is less
+     * than <CODE>size()</CODE> elements are evicted, in clock order, until
+     * <CODE>size()</CODE> equals <CODE>newMaxSize</CODE>. For each element
+     * removed the {@link #elementCleaned} method is invoked.
+     * <p>
+     * If <CODE>newMaxSize</CODE> is less then <CODE>1</CODE> an
+     * {@link IllegalArgumentException} is thrown.
+     *
+     * @param newMaxSize
+     *            the new maximum size of the cache
+     */
+    public void resize( int newMaxSize )
+    {
+        if ( newMaxSize < 1 )
+        {
+            throw new IllegalArgumentException( "newMaxSize=" + newMaxSize );
+        }
+        evictionLock.lock();
+        resizing = true;
+        try
+        {
+            maxSize = newMaxSize;
+            evict( newMaxSize );
+        }
+        finally
+        {
+            resizing = false;
+            evictionLock.unlock();
+        }
+    }
+
+    // must hold the eviction lock
+    private void evict( int targetSize )
+    {
+        while ( size.get() > targetSize )
+        {
+            Entry<K,V> entry = clock.poll();
+            if ( entry == null )
+            {
+                return;
+            }
+            queued.decrementAndGet();
+            if ( cache.get( entry.key ) != entry )
+            {
+                // removed or replaced since it was queued
+                continue;
+            }
+            if ( entry.referenced )
+            {
+                entry.referenced = false;
+                clock.offer( entry );
+                queued.incrementAndGet();
+                continue;
+            }
+            if ( cache.remove( entry.key, entry ) )
+            {
+                size.decrementAndGet();
+                elementCleaned( entry.value );
+            }
+        }
+    }
+
+    // must hold the eviction lock
+    private void purgeStaleEntries()
+    {
+        Iterator<Entry<K,V>> iterator = clock.iterator();
+        while ( iterator.hasNext() )
+        {
+            Entry<K,V> entry = iterator.next();
+            if ( cache.get( entry.key ) != entry )
+            {
+                iterator.remove();
+                queued.decrementAndGet();
+            }
+        }
+    }
+
+    boolean isResizing()
+    {
+        return resizing;
+    }
+
+    public void elementCleaned( V value )
+    {
+    }
+
+    public boolean isAdaptive()
+    {
+        return adaptive;
+    }
+
+    public void setAdaptiveStatus( boolean status )
+    {
+        this.adaptive = status;
+    }
+
+    public void putAll( Map<K,V> map )
+    {
+        for ( Map.Entry<K,V> entry : map.entrySet() )
+        {
+            put( entry.getKey(), entry.getValue() );
+        }
+    }
+
+    private final HitCounter counter = HitCounter.createStriped();
+
+    @Override
+    public long hitCount()
+    {
+        return counter.getHitsCount();
+    }
+
+    @Override
+    public long missCount()
+    {
+        return counter.getMissCount();
+    }
+}
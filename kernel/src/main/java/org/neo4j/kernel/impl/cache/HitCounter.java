@@ -51,4 +51,9 @@ final class HitCounter
     {
         return new HitCounter( Counter.atomic(), Counter.atomic() );
     }
+
+    public static HitCounter createStriped()
+    {
+        return new HitCounter( Counter.striped(), Counter.striped() );
+    }
 }
@@ -0,0 +1,526 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cache which keeps a small number of recently used elements on the heap and
+ * the rest in a compact, encoded form in direct memory outside of the heap.
+ * <p>
+ * The on heap part is an LRU with <CODE>maxSize</CODE> elements. Elements
+ * pushed out of it are encoded by a {@link Codec} and appended to one of a
+ * number of fixed size segments of direct memory. A get of an element that is
+ * off heap decodes it into a new element, which is moved back to the on heap
+ * part. An element is only kept in one of the parts at a time, so changes made
+ * to an element while it's on the heap are written off heap when it's pushed
+ * out again.
+ * <p>
+ * The memory is split into at least eight segments of at most 1MB each. When
+ * the memory limit has been reached the segment written the longest time ago
+ * is reused and the elements in it are evicted from the cache. The index
+ * from key to position in the off heap segments is kept on the heap in two
+ * primitive arrays, at 16 bytes per element plus slack.
+ */
+public class OffHeapCache<E> implements Cache<Long,E>
+{
+    /**
+     * Converts elements to and from their off heap representation.
+     */
+    public interface Codec<E>
+    {
+        /**
+         * Writes a compact representation of {@code element} to
+         * {@code target}. If the representation doesn't fit a
+         * {@link BufferOverflowException} may be thrown and it will be tried
+         * again with a bigger buffer.
+         *
+         * @return {@code false} if the element shouldn't be kept off heap.
+         */
+        boolean encode( E element, ByteBuffer target );
+
+        /**
+         * Reads an element written by {@link #encode(Object, ByteBuffer)}
+         * back from {@code source}.
+         */
+        E decode( long key, ByteBuffer source );
+    }
+
+    public static final int MAX_SEGMENT_SIZE = 1024 * 1024;
+    private static final int MIN_SEGMENTS = 8;
+    private static final int ENTRY_HEADER_SIZE = 12;
+
+    private final String name;
+    private final Codec<E> codec;
+    private int maxSize;
+    private long memoryLimit;
+    private int segmentSize;
+    private int maxSegments;
+
+    private final List<ByteBuffer> segments = new ArrayList<ByteBuffer>();
+    private int[] segmentFill = new int[0];
+    private int currentSegment = -1;
+    private final AddressIndex index = new AddressIndex();
+    private ByteBuffer scratch = ByteBuffer.allocate( 1024 );
+
+    private final HitCounter counter = HitCounter.create();
+    private long offHeapHits;
+    private long evictions;
+
+    private final Map<Long,E> heap = new LinkedHashMap<Long,E>( 500, 0.75f, true )
+    {
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<Long,E> eldest )
+        {
+            if ( super.size() > maxSize )
+            {
+                super.remove( eldest.getKey() );
+                moveOffHeap( eldest.getKey(), eldest.getValue() );
+            }
+            return false;
+        }
+    };
+
+    /**
+     * @param name name of the cache.
+     * @param maxSize the number of elements to keep on the heap.
+     * @param memoryLimit the number of bytes of direct memory to use for
+     *            elements which are pushed off the heap, <CODE>0</CODE> for
+     *            a plain LRU cache.
+     * @param codec converts elements to and from their off heap form.
+     */
+    public OffHeapCache( String name, int maxSize, long memoryLimit, Codec<E> codec )
+    {
+        if ( name == null || maxSize < 1 || memoryLimit < 0 )
+        {
+            throw new IllegalArgumentException( "maxSize=" + maxSize + ", memoryLimit="
+                + memoryLimit + ", name=" + name );
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        this.codec = codec;
+        setMemoryLimit( memoryLimit );
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Changes the amount of direct memory this cache may use. The elements
+     * currently off heap are evicted.
+     *
+     * @param memoryLimit the number of bytes of direct memory to use.
+     */
+    public synchronized void setMemoryLimit( long memoryLimit )
+    {
+        clearOffHeap();
+        this.memoryLimit = memoryLimit;
+        this.segmentSize = (int) Math.min( MAX_SEGMENT_SIZE, (memoryLimit + MIN_SEGMENTS - 1) / MIN_SEGMENTS );
+        this.maxSegments = segmentSize == 0 ? 0 : (int) (memoryLimit / segmentSize);
+        this.segmentFill = new int[maxSegments];
+    }
+
+    public synchronized long getMemoryLimit()
+    {
+        return memoryLimit;
+    }
+
+    public synchronized void put( Long key, E element )
+    {
+        if ( key == null || element == null )
+        {
+            throw new IllegalArgumentException( "key=" + key + ", element=" + element );
+        }
+        index.remove( key );
+        heap.put( key, element );
+    }
+
+    public synchronized E remove( Long key )
+    {
+        if ( key == null )
+        {
+            throw new IllegalArgumentException( "Null parameter" );
+        }
+        E element = heap.remove( key );
+        long address = index.remove( key );
+        if ( element == null && address != AddressIndex.NO_ADDRESS )
+        {
+            element = read( key, address );
+        }
+        return element;
+    }
+
+    public synchronized E get( Long key )
+    {
+        if ( key == null )
+        {
+            throw new IllegalArgumentException();
+        }
+        E element = heap.get( key );
+        if ( element == null )
+        {
+            long address = index.remove( key );
+            if ( address != AddressIndex.NO_ADDRESS )
+            {
+                element = read( key, address );
+                offHeapHits++;
+                heap.put( key, element );
+            }
+        }
+        return counter.count( element );
+    }
+
+    public synchronized void clear()
+    {
+        heap.clear();
+        clearOffHeap();
+    }
+
+    private void clearOffHeap()
+    {
+        index.clear();
+        segments.clear();
+        currentSegment = -1;
+    }
+
+    public synchronized int size()
+    {
+        return heap.size() + index.size();
+    }
+
+    public synchronized int heapSize()
+    {
+        return heap.size();
+    }
+
+    public synchronized int offHeapSize()
+    {
+        return index.size();
+    }
+
+    /**
+     * @return the number of bytes of direct memory allocated by this cache.
+     */
+    public synchronized long offHeapMemoryUsed()
+    {
+        return (long) segments.size() * segmentSize;
+    }
+
+    /**
+     * @return the number of hits served by decoding an element from off heap.
+     */
+    public synchronized long offHeapHitCount()
+    {
+        return offHeapHits;
+    }
+
+    /**
+     * @return the number of elements which have been evicted from off heap
+     *         to make room for others.
+     */
+    public synchronized long evictionCount()
+    {
+        return evictions;
+    }
+
+    public void elementCleaned( E value )
+    {
+    }
+
+    public int maxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Changes the number of elements kept on the heap, elements which don't
+     * fit any more are moved off heap.
+     */
+    public synchronized void resize( int newMaxSize )
+    {
+        if ( newMaxSize < 1 )
+        {
+            throw new IllegalArgumentException( "newMaxSize=" + newMaxSize );
+        }
+        maxSize = newMaxSize;
+        while ( heap.size() > maxSize )
+        {
+            Map.Entry<Long,E> eldest = heap.entrySet().iterator().next();
+            heap.remove( eldest.getKey() );
+            moveOffHeap( eldest.getKey(), eldest.getValue() );
+        }
+    }
+
+    public boolean isAdaptive()
+    {
+        return false;
+    }
+
+    public void setAdaptiveStatus( boolean status )
+    {
+    }
+
+    public synchronized void putAll( Map<Long,E> map )
+    {
+        for ( Map.Entry<Long,E> entry : map.entrySet() )
+        {
+            put( entry.getKey(), entry.getValue() );
+        }
+    }
+
+    public long hitCount()
+    {
+        return counter.getHitsCount();
+    }
+
+    public long missCount()
+    {
+        return counter.getMissCount();
+    }
+
+    private void moveOffHeap( long key, E element )
+    {
+        if ( maxSegments == 0 )
+        {
+            return;
+        }
+        ByteBuffer encoded = encode( element );
+        if ( encoded == null || ENTRY_HEADER_SIZE + encoded.remaining() > segmentSize )
+        {
+            return;
+        }
+        int length = encoded.remaining();
+        ByteBuffer segment = segmentFor( ENTRY_HEADER_SIZE + length );
+        int offset = segmentFill[currentSegment];
+        segment.putLong( offset, key );
+        segment.putInt( offset + 8, length );
+        ByteBuffer target = segment.duplicate();
+        target.position( offset + ENTRY_HEADER_SIZE );
+        target.put( encoded );
+        segmentFill[currentSegment] = offset + ENTRY_HEADER_SIZE + length;
+        index.put( key, address( currentSegment, offset ) );
+    }
+
+    private ByteBuffer encode( E element )
+    {
+        while ( true )
+        {
+            scratch.clear();
+            try
+            {
+                if ( !codec.encode( element, scratch ) )
+                {
+                    return null;
+                }
+                scratch.flip();
+                return scratch;
+            }
+            catch ( BufferOverflowException e )
+            {
+                if ( scratch.capacity() >= segmentSize )
+                {
+                    return null;
+                }
+                scratch = ByteBuffer.allocate( Math.min( segmentSize, scratch.capacity() * 2 ) );
+            }
+        }
+    }
+
+    private E read( long key, long address )
+    {
+        int offset = (int) address;
+        ByteBuffer source = segments.get( (int) (address >>> 32) ).duplicate();
+        int length = source.getInt( offset + 8 );
+        source.limit( offset + ENTRY_HEADER_SIZE + length );
+        source.position( offset + ENTRY_HEADER_SIZE );
+        return codec.decode( key, source );
+    }
+
+    private ByteBuffer segmentFor( int entrySize )
+    {
+        if ( currentSegment == -1 || segmentFill[currentSegment] + entrySize > segmentSize )
+        {
+            if ( segments.size() < maxSegments )
+            {
+                segments.add( ByteBuffer.allocateDirect( segmentSize ) );
+                currentSegment = segments.size() - 1;
+            }
+            else
+            {
+                currentSegment = (currentSegment + 1) % segments.size();
+                evictSegment( currentSegment );
+            }
+            segmentFill[currentSegment] = 0;
+        }
+        return segments.get( currentSegment );
+    }
+
+    private void evictSegment( int segmentIndex )
+    {
+        ByteBuffer segment = segments.get( segmentIndex );
+        int fill = segmentFill[segmentIndex];
+        for ( int offset = 0; offset < fill; offset += ENTRY_HEADER_SIZE + segment.getInt( offset + 8 ) )
+        {
+            // Only entries still pointed to by the index are live, others
+            // have been moved back on heap or removed since
+            long key = segment.getLong( offset );
+            if ( index.get( key ) == address( segmentIndex, offset ) )
+            {
+                index.remove( key );
+                evictions++;
+            }
+        }
+    }
+
+    private static long address( int segmentIndex, int offset )
+    {
+        return ((long) segmentIndex << 32) | offset;
+    }
+
+    /**
+     * Open addressing hash map from key to off heap address, using linear
+     * probing and backward shift deletion.
+     */
+    private static class AddressIndex
+    {
+        static final long NO_ADDRESS = -1;
+        private static final long FREE = -1;
+
+        private long[] keys;
+        private long[] addresses;
+        private int mask;
+        private int size;
+
+        AddressIndex()
+        {
+            allocate( 1024 );
+        }
+
+        private void allocate( int capacity )
+        {
+            keys = new long[capacity];
+            addresses = new long[capacity];
+            Arrays.fill( keys, FREE );
+            mask = capacity - 1;
+            size = 0;
+        }
+
+        private int slot( long key )
+        {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        }
+
+        long get( long key )
+        {
+            for ( int i = slot( key );; i = (i + 1) & mask )
+            {
+                if ( keys[i] == key )
+                {
+                    return addresses[i];
+                }
+                if ( keys[i] == FREE )
+                {
+                    return NO_ADDRESS;
+                }
+            }
+        }
+
+        void put( long key, long address )
+        {
+            if ( (size + 1) * 4L > keys.length * 3L )
+            {
+                grow();
+            }
+            int i = slot( key );
+            while ( keys[i] != FREE && keys[i] != key )
+            {
+                i = (i + 1) & mask;
+            }
+            if ( keys[i] == FREE )
+            {
+                size++;
+            }
+            keys[i] = key;
+            addresses[i] = address;
+        }
+
+        long remove( long key )
+        {
+            int i = slot( key );
+            while ( keys[i] != key )
+            {
+                if ( keys[i] == FREE )
+                {
+                    return NO_ADDRESS;
+                }
+                i = (i + 1) & mask;
+            }
+            long address = addresses[i];
+            size--;
+            int gap = i;
+            for ( int j = (i + 1) & mask; keys[j] != FREE; j = (j + 1) & mask )
+            {
+                if ( ((j - slot( keys[j] )) & mask) >= ((j - gap) & mask) )
+                {
+                    keys[gap] = keys[j];
+                    addresses[gap] = addresses[j];
+                    gap = j;
+                }
+            }
+            keys[gap] = FREE;
+            return address;
+        }
+
+        private void grow()
+        {
+            long[] oldKeys = keys;
+            long[] oldAddresses = addresses;
+            allocate( oldKeys.length * 2 );
+            for ( int i = 0; i < oldKeys.length; i++ )
+            {
+                if ( oldKeys[i] != FREE )
+                {
+                    put( oldKeys[i], oldAddresses[i] );
+                }
+            }
+        }
+
+        int size()
+        {
+            return size;
+        }
+
+        void clear()
+        {
+            if ( size > 0 )
+            {
+                allocate( 1024 );
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.helpers.Triplet;
+import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
+import org.neo4j.kernel.impl.util.ArrayMap;
+import org.neo4j.kernel.impl.util.RelIdArray;
+import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
+
+/**
+ * A node with so many relationships that they are kept in one chain per
+ * relationship type and direction, see
+ * {@link org.neo4j.kernel.impl.nioneo.store.RelationshipGroupStore}. When
+ * the relationships are first requested the groups and about one batch of
+ * relationships are read, after that only the chains matching the requested
+ * types and direction are loaded.
+ */
+class DenseNodeImpl extends NodeImpl
+{
+    private static final int OUT = 0;
+    private static final int IN = 1;
+    private static final int LOOP = 2;
+
+    // type name -> positions in the out, in and loop chains
+    private volatile Map<String,long[]> chainPositions;
+
+    DenseNodeImpl( long id, long firstRel, long firstProp )
+    {
+        super( id, firstRel, firstProp );
+    }
+
+    @Override
+    Triplet<ArrayMap<String,RelIdArray>,Map<Long,RelationshipImpl>,Long> loadInitialRelationships(
+            NodeManager nodeManager, ArrayMap<String,RelIdArray> tmpRelMap )
+    {
+        Map<String,long[]> positions = new HashMap<String,long[]>();
+        for ( RelationshipGroupRecord group : nodeManager.loadRelationshipGroups( this ) )
+        {
+            String type = nodeManager.getRelationshipTypeById( group.getType() ).name();
+            positions.put( type, new long[] { group.getFirstOut(), group.getFirstIn(), group.getFirstLoop() } );
+        }
+        chainPositions = positions;
+
+        /*
+         * Read the chains up to and including the first one that doesn't fit in
+         * one batch. A sparse node reads its first batch up front as well and the
+         * relationships which fit in there are seen even if they are deleted
+         * before they are iterated over.
+         */
+        Map<Long,RelationshipImpl> relsMap = new HashMap<Long,RelationshipImpl>();
+        for ( long[] chains : positions.values() )
+        {
+            for ( int chain = OUT; chain <= LOOP; chain++ )
+            {
+                if ( chains[chain] == Record.NO_NEXT_RELATIONSHIP.intValue() )
+                {
+                    continue;
+                }
+                Triplet<ArrayMap<String,RelIdArray>,Map<Long,RelationshipImpl>,Long> rels =
+                        nodeManager.getMoreRelationships( this, chains[chain] );
+                mergeRelationships( tmpRelMap, rels.first() );
+                relsMap.putAll( rels.second() );
+                boolean exhausted = rels.third() == Record.NO_NEXT_RELATIONSHIP.intValue() ||
+                        rels.third() == chains[chain];
+                chains[chain] = exhausted ? Record.NO_NEXT_RELATIONSHIP.intValue() : rels.third();
+                if ( !exhausted )
+                {
+                    return Triplet.of( tmpRelMap, relsMap, (long) Record.NO_NEXT_RELATIONSHIP.intValue() );
+                }
+            }
+        }
+        return Triplet.of( tmpRelMap, relsMap, (long) Record.NO_NEXT_RELATIONSHIP.intValue() );
+    }
+
+    @Override
+    boolean hasMoreRelationshipsToLoad()
+    {
+        return hasMoreRelationshipsToLoad( new RelationshipType[0], DirectionWrapper.BOTH );
+    }
+
+    @Override
+    boolean hasMoreRelationshipsToLoad( RelationshipType[] types, DirectionWrapper direction )
+    {
+        Map<String,long[]> positions = chainPositions;
+        if ( positions == null )
+        {
+            return false;
+        }
+        if ( types.length == 0 )
+        {
+            for ( long[] chains : positions.values() )
+            {
+                if ( nextChain( chains, direction ) != -1 )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for ( RelationshipType type : types )
+        {
+            long[] chains = positions.get( type.name() );
+            if ( chains != null && nextChain( chains, direction ) != -1 )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    boolean getMoreRelationships( NodeManager nodeManager )
+    {
+        return getMoreRelationships( nodeManager, new RelationshipType[0], DirectionWrapper.BOTH );
+    }
+
+    @Override
+    boolean getMoreRelationships( NodeManager nodeManager, RelationshipType[] types, DirectionWrapper direction )
+    {
+        Triplet<ArrayMap<String,RelIdArray>,Map<Long,RelationshipImpl>,Long> rels;
+        synchronized ( this )
+        {
+            long[] chains = null;
+            int chain = -1;
+            Map<String,long[]> positions = chainPositions;
+            if ( positions == null )
+            {
+                return false;
+            }
+            if ( types.length == 0 )
+            {
+                for ( long[] candidate : positions.values() )
+                {
+                    chain = nextChain( candidate, direction );
+                    if ( chain != -1 )
+                    {
+                        chains = candidate;
+                        break;
+                    }
+                }
+            }
+            else
+            {
+                for ( RelationshipType type : types )
+                {
+                    long[] candidate = positions.get( type.name() );
+                    chain = candidate != null ? nextChain( candidate, direction ) : -1;
+                    if ( chain != -1 )
+                    {
+                        chains = candidate;
+                        break;
+                    }
+                }
+            }
+            if ( chains == null )
+            {
+                return false;
+            }
+            long position = chains[chain];
+            rels = nodeManager.getMoreRelationships( this, position );
+            addRelationships( rels.first() );
+            // a chain position that can't be read any further ends that chain,
+            // just like it ends the single chain of a sparse node
+            chains[chain] = rels.third() == position ? Record.NO_NEXT_RELATIONSHIP.intValue() : rels.third();
+            shrinkIfFullyLoaded();
+        }
+        nodeManager.putAllInRelCache( rels.second() );
+        return true;
+    }
+
+    private static int nextChain( long[] chains, DirectionWrapper direction )
+    {
+        long none = Record.NO_NEXT_RELATIONSHIP.intValue();
+        if ( direction != DirectionWrapper.INCOMING && chains[OUT] != none )
+        {
+            return OUT;
+        }
+        if ( direction != DirectionWrapper.OUTGOING && chains[IN] != none )
+        {
+            return IN;
+        }
+        return chains[LOOP] != none ? LOOP : -1;
+    }
+}
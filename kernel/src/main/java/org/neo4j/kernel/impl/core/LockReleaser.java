@@ -19,12 +19,9 @@
  */
 package org.neo4j.kernel.impl.core;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.List;
-import java.util.Map.Entry;
-import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -43,6 +40,7 @@ import org.neo4j.kernel.impl.nioneo.store.Record;
 import org.neo4j.kernel.impl.transaction.LockManager;
 import org.neo4j.kernel.impl.transaction.LockType;
 import org.neo4j.kernel.impl.util.ArrayMap;
+import org.neo4j.kernel.impl.util.LongObjectHashMap;
 import org.neo4j.kernel.impl.util.RelIdArray;
 import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
 import org.neo4j.kernel.impl.util.RelIdArrayWithLoops;
@@ -55,8 +53,8 @@ public class LockReleaser
 {
     private static Logger log = Logger.getLogger( LockReleaser.class.getName() );
 
-    private final ArrayMap<Transaction,List<LockElement>> lockMap =
-        new ArrayMap<Transaction,List<LockElement>>( 5, true, true );
+    private final ArrayMap<Transaction,TransactionLocks> lockMap =
+        new ArrayMap<Transaction,TransactionLocks>( 5, true, true );
     private final ArrayMap<Transaction,PrimitiveElement> cowMap =
         new ArrayMap<Transaction,PrimitiveElement>( 5, true, true );
 
@@ -69,10 +67,12 @@ public class LockReleaser
     {
         PrimitiveElement() {}
 
-        private final ArrayMap<Long,CowNodeElement> nodes =
-            new ArrayMap<Long,CowNodeElement>();
-        private final ArrayMap<Long,CowRelElement> relationships =
-            new ArrayMap<Long,CowRelElement>();
+        // most transactions touch a handful of entities, but some touch
+        // millions and then boxed keys and map entries dominate the heap
+        private final LongObjectHashMap<CowNodeElement> nodes =
+            new LongObjectHashMap<CowNodeElement>( 4 );
+        private final LongObjectHashMap<CowRelElement> relationships =
+            new LongObjectHashMap<CowRelElement>( 4 );
         private CowGraphElement graph;
 
         public CowNodeElement nodeElement( long id, boolean create )
@@ -119,10 +119,16 @@ public class LockReleaser
         public ArrayMap<Integer, PropertyData> getPropertyAddMap( boolean create )
         {
             assertNotDeleted();
-            if ( propertyAddMap == null && create ) propertyAddMap = new ArrayMap<Integer, PropertyData>();
+            if ( propertyAddMap == null && create ) propertyAddMap = newPropertyMap();
             return propertyAddMap;
         }
 
+        private static ArrayMap<Integer, PropertyData> newPropertyMap()
+        {
+            // an entity typically changes a property or two per transaction
+            return new ArrayMap<Integer, PropertyData>( 1, 5, false, false );
+        }
+
         private void assertNotDeleted()
         {
             if ( deleted ) throw new IllegalStateException( this + " has been deleted in this tx" );
@@ -130,7 +136,7 @@ public class LockReleaser
 
         public ArrayMap<Integer, PropertyData> getPropertyRemoveMap( boolean create )
         {
-            if ( propertyRemoveMap == null && create ) propertyRemoveMap = new ArrayMap<Integer, PropertyData>();
+            if ( propertyRemoveMap == null && create ) propertyRemoveMap = newPropertyMap();
             return propertyRemoveMap;
         }
     }
@@ -267,6 +273,53 @@ public class LockReleaser
         }
     }
 
+    /**
+     * The locks held by one transaction, kept as parallel arrays rather than
+     * one {@link LockElement} per acquired lock since a large transaction
+     * takes several locks per entity it touches. A lock handed out as a
+     * {@link LockElement} is stored as that element with no type.
+     */
+    private static class TransactionLocks
+    {
+        private Object[] resources = new Object[4];
+        private LockType[] types = new LockType[4];
+        private int size;
+
+        void add( Object resource, LockType type )
+        {
+            if ( size == resources.length )
+            {
+                resources = Arrays.copyOf( resources, size * 2 );
+                types = Arrays.copyOf( types, size * 2 );
+            }
+            resources[size] = resource;
+            types[size++] = type;
+        }
+
+        void release( LockManager lockManager )
+        {
+            for ( int i = 0; i < size; i++ )
+            {
+                try
+                {
+                    if ( types[i] == null )
+                    {
+                        ((LockElement) resources[i]).releaseIfAcquired( lockManager );
+                    }
+                    else
+                    {
+                        types[i].release( resources[i], lockManager );
+                    }
+                }
+                catch ( Exception e )
+                {
+                    log.log( Level.SEVERE, "Unable to release lock[" + types[i] + "] on resource["
+                                           + resources[i] + "]", e );
+                }
+            }
+        }
+    }
+
     /**
      * Invoking this method with no transaction running will cause the lock to
      * be released right away.
@@ -277,45 +330,61 @@ public class LockReleaser
      *            type of lock (READ or WRITE)
      * @throws NotInTransactionException
      */
-    public LockElement addLockToTransaction( Object resource, LockType type )
+    public void addLockToTransaction( Object resource, LockType type )
+        throws NotInTransactionException
+    {
+        TransactionLocks locks = locksOf( resource, type );
+        if ( locks != null ) locks.add( resource, type );
+    }
+
+    /**
+     * Like {@link #addLockToTransaction(Object, LockType)}, but returns a
+     * handle that can release the lock before the transaction ends.
+     *
+     * @return the handle for the lock, or {@code null} if there was no
+     *         transaction and the lock was released right away.
+     */
+    public LockElement addReleasableLockToTransaction( Object resource, LockType type )
         throws NotInTransactionException
+    {
+        TransactionLocks locks = locksOf( resource, type );
+        if ( locks == null ) return null;
+        LockElement element = new LockElement( resource, type );
+        locks.add( element, null );
+        return element;
+    }
+
+    private TransactionLocks locksOf( Object resource, LockType type )
     {
         Transaction tx = getTransaction();
-        List<LockElement> lockElements = lockMap.get( tx );
-        if ( lockElements != null )
+        TransactionLocks locks = lockMap.get( tx );
+        if ( locks != null )
         {
-            LockElement element = new LockElement( resource, type );
-            lockElements.add( element );
-            return element;
+            return locks;
         }
-        else
+        if ( tx == null )
         {
-            if ( tx == null )
-            {
-                // no transaction we release lock right away
-                type.release( resource, lockManager );
-                return null;
-            }
-            lockElements = new ArrayList<LockElement>();
-            lockMap.put( tx, lockElements );
-            LockElement element = new LockElement( resource, type );
-            lockElements.add( element );
-            // we have to have a synchronization hook for read only transaction,
-            // write locks can be taken in read only transactions (ex:
-            // transactions that perform write operations that cancel each other
-            // out). This sync hook will only release locks if they exist and
-            // tx was read only
-            try
-            {
-                tx.registerSynchronization( new ReadOnlyTxReleaser( tx ) );
-            }
-            catch ( Exception e )
-            {
-                throw new TransactionFailureException(
-                    "Failed to register lock release synchronization hook", e );
-            }
-            return element;
+            // no transaction we release lock right away
+            type.release( resource, lockManager );
+            return null;
+        }
+        locks = new TransactionLocks();
+        lockMap.put( tx, locks );
+        // we have to have a synchronization hook for read only transaction,
+        // write locks can be taken in read only transactions (ex:
+        // transactions that perform write operations that cancel each other
+        // out). This sync hook will only release locks if they exist and
+        // tx was read only
+        try
+        {
+            tx.registerSynchronization( new ReadOnlyTxReleaser( tx ) );
+        }
+        catch ( Exception e )
+        {
+            throw new TransactionFailureException(
+                "Failed to register lock release synchronization hook", e );
         }
+        return locks;
     }
 
     private Transaction getTransaction()
@@ -336,7 +405,7 @@ public class LockReleaser
         PrimitiveElement primitiveElement = cowMap.get( getTransaction() );
         if ( primitiveElement != null )
         {
-            ArrayMap<Long,CowNodeElement> cowElements =
+            LongObjectHashMap<CowNodeElement> cowElements =
                 primitiveElement.nodes;
             CowNodeElement element = cowElements.get( node.getId() );
             if ( element != null && element.relationshipRemoveMap != null )
@@ -403,27 +472,16 @@ public class LockReleaser
 
     public boolean hasLocks( Transaction tx )
     {
-        List<LockElement> lockElements = lockMap.get( tx );
-        return lockElements != null && !lockElements.isEmpty();
+        TransactionLocks locks = lockMap.get( tx );
+        return locks != null && locks.size > 0;
     }
 
     void releaseLocks( Transaction tx )
     {
-        List<LockElement> lockElements = lockMap.remove( tx );
-        if ( lockElements != null )
+        TransactionLocks locks = lockMap.remove( tx );
+        if ( locks != null )
         {
-            for ( LockElement lockElement : lockElements )
-            {
-                try
-                {
-                    lockElement.releaseIfAcquired( lockManager );
-                }
-                catch ( Exception e )
-                {
-                    log.log( Level.SEVERE, "Unable to release lock[" + lockElement.lockType + "] on resource["
-                                           + lockElement.resource + "]", e );
-                }
-            }
+            locks.release( lockManager );
         }
     }
 
@@ -434,21 +492,18 @@ public class LockReleaser
         {
             return;
         }
-        ArrayMap<Long,CowNodeElement> cowNodeElements = element.nodes;
-        Set<Entry<Long,CowNodeElement>> nodeEntrySet =
-            cowNodeElements.entrySet();
-        for ( Entry<Long,CowNodeElement> entry : nodeEntrySet )
+        for ( CowNodeElement nodeElement : element.nodes.values() )
         {
-            NodeImpl node = nodeManager.getNodeIfCached( entry.getKey() );
+            NodeImpl node = nodeManager.getNodeIfCached( nodeElement.id );
             if ( node != null )
             {
-                CowNodeElement nodeElement = entry.getValue();
                 if ( param == Status.STATUS_COMMITTED )
                 {
                     node.commitRelationshipMaps( nodeElement.relationshipAddMap,
                         nodeElement.relationshipRemoveMap, nodeElement.firstRel );
                     node.commitPropertyMaps( nodeElement.propertyAddMap,
                         nodeElement.propertyRemoveMap, nodeElement.firstProp );
+                    nodeManager.committedInCache( node );
                 }
                 else if ( param != Status.STATUS_ROLLEDBACK )
                 {
@@ -457,19 +512,16 @@ public class LockReleaser
                 }
             }
         }
-        ArrayMap<Long,CowRelElement> cowRelElements = element.relationships;
-        Set<Entry<Long,CowRelElement>> relEntrySet =
-            cowRelElements.entrySet();
-        for ( Entry<Long,CowRelElement> entry : relEntrySet )
+        for ( CowRelElement relElement : element.relationships.values() )
         {
-            RelationshipImpl rel = nodeManager.getRelIfCached( entry.getKey() );
+            RelationshipImpl rel = nodeManager.getRelIfCached( relElement.id );
             if ( rel != null )
             {
-                CowRelElement relElement = entry.getValue();
                 if ( param == Status.STATUS_COMMITTED )
                 {
                     rel.commitPropertyMaps( relElement.propertyAddMap,
                         relElement.propertyRemoveMap, Record.NO_NEXT_PROPERTY.intValue() );
+                    nodeManager.committedInCache( rel );
                 }
                 else if ( param != Status.STATUS_ROLLEDBACK )
                 {
@@ -503,7 +555,7 @@ public class LockReleaser
         {
             Transaction transaction = (Transaction) itr.next();
             System.out.println( "" + transaction + "->" +
-                lockMap.get( transaction ).size() );
+                lockMap.get( transaction ).size );
         }
     }
 
@@ -660,9 +712,9 @@ public class LockReleaser
     private void populateRelationshipPropertyEvents( PrimitiveElement element,
             TransactionDataImpl result )
     {
-        for ( long relId : element.relationships.keySet() )
+        for ( CowRelElement relElement : element.relationships.values() )
         {
-            CowRelElement relElement = element.relationships.get( relId );
+            long relId = relElement.id;
             RelationshipProxy rel = new RelationshipProxy( relId, nodeManager );
             RelationshipImpl relImpl = nodeManager.getRelForProxy( rel, null );
             if ( relElement.deleted )
@@ -703,9 +755,9 @@ public class LockReleaser
     private void populateNodeRelEvent( PrimitiveElement element,
             TransactionDataImpl result )
     {
-        for ( long nodeId : element.nodes.keySet() )
+        for ( CowNodeElement nodeElement : element.nodes.values() )
         {
-            CowNodeElement nodeElement = element.nodes.get( nodeId );
+            long nodeId = nodeElement.id;
             NodeProxy node = new NodeProxy( nodeId, nodeManager );
             NodeImpl nodeImpl = nodeManager.getNodeForProxy( node, null );
             if ( nodeElement.deleted )
@@ -817,7 +869,7 @@ public class LockReleaser
         PrimitiveElement primitiveElement = cowMap.get( tx );
         if ( primitiveElement != null )
         {
-            ArrayMap<Long,CowNodeElement> cowElements =
+            LongObjectHashMap<CowNodeElement> cowElements =
                 primitiveElement.nodes;
             CowNodeElement element = cowElements.get( node.getId() );
             if ( element != null && (element.relationshipAddMap != null || element.relationshipRemoveMap != null) )
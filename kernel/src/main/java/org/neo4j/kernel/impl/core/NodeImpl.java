@@ -199,29 +199,31 @@ class NodeImpl extends ArrayBasedPrimitive
 
     public Iterable<Relationship> getRelationships( NodeManager nodeManager )
     {
+        RelationshipType[] types = new RelationshipType[0];
         return new IntArrayIterator( getAllRelationships( nodeManager, DirectionWrapper.BOTH ), this,
-            DirectionWrapper.BOTH, nodeManager, new RelationshipType[0], !hasMoreRelationshipsToLoad() );
+            DirectionWrapper.BOTH, nodeManager, types, !hasMoreRelationshipsToLoad( types, DirectionWrapper.BOTH ) );
     }
 
     public Iterable<Relationship> getRelationships( NodeManager nodeManager, Direction dir )
     {
         DirectionWrapper direction = RelIdArray.wrap( dir );
+        RelationshipType[] types = new RelationshipType[0];
         return new IntArrayIterator( getAllRelationships( nodeManager, direction ), this, direction,
-            nodeManager, new RelationshipType[0], !hasMoreRelationshipsToLoad() );
+            nodeManager, types, !hasMoreRelationshipsToLoad( types, direction ) );
     }
 
     public Iterable<Relationship> getRelationships( NodeManager nodeManager, RelationshipType type )
     {
         RelationshipType types[] = new RelationshipType[] { type };
         return new IntArrayIterator( getAllRelationshipsOfType( nodeManager, DirectionWrapper.BOTH, types ),
-            this, DirectionWrapper.BOTH, nodeManager, types, !hasMoreRelationshipsToLoad() );
+            this, DirectionWrapper.BOTH, nodeManager, types, !hasMoreRelationshipsToLoad( types, DirectionWrapper.BOTH ) );
     }
 
     public Iterable<Relationship> getRelationships( NodeManager nodeManager,
             RelationshipType... types )
     {
         return new IntArrayIterator( getAllRelationshipsOfType( nodeManager, DirectionWrapper.BOTH, types ),
-            this, DirectionWrapper.BOTH, nodeManager, types, !hasMoreRelationshipsToLoad() );
+            this, DirectionWrapper.BOTH, nodeManager, types, !hasMoreRelationshipsToLoad( types, DirectionWrapper.BOTH ) );
     }
 
     public Iterable<Relationship> getRelationships( NodeManager nodeManager,
@@ -229,7 +231,7 @@ class NodeImpl extends ArrayBasedPrimitive
     {
         DirectionWrapper dir = RelIdArray.wrap( direction );
         return new IntArrayIterator( getAllRelationshipsOfType( nodeManager, dir, types ),
-            this, dir, nodeManager, types, !hasMoreRelationshipsToLoad() );
+            this, dir, nodeManager, types, !hasMoreRelationshipsToLoad( types, dir ) );
     }
 
     public Relationship getSingleRelationship( NodeManager nodeManager, RelationshipType type,
@@ -238,7 +240,8 @@ class NodeImpl extends ArrayBasedPrimitive
         DirectionWrapper direction = RelIdArray.wrap( dir );
         RelationshipType types[] = new RelationshipType[] { type };
         Iterator<Relationship> rels = new IntArrayIterator( getAllRelationshipsOfType( nodeManager,
-                direction, types ), this, direction, nodeManager, types, !hasMoreRelationshipsToLoad() );
+                direction, types ), this, direction, nodeManager, types,
+                !hasMoreRelationshipsToLoad( types, direction ) );
         if ( !rels.hasNext() )
         {
             return null;
@@ -258,7 +261,7 @@ class NodeImpl extends ArrayBasedPrimitive
         RelationshipType types[] = new RelationshipType[] { type };
         DirectionWrapper direction = RelIdArray.wrap( dir );
         return new IntArrayIterator( getAllRelationshipsOfType( nodeManager, direction, types ),
-            this, direction, nodeManager, types, !hasMoreRelationshipsToLoad() );
+            this, direction, nodeManager, types, !hasMoreRelationshipsToLoad( types, direction ) );
     }
 
     public void delete( NodeManager nodeManager, Node proxy )
@@ -337,9 +340,8 @@ class NodeImpl extends ArrayBasedPrimitive
         {
             if ( relationships == null )
             {
-                relChainPosition = nodeManager.getRelationshipChainPosition( this );
                 ArrayMap<String,RelIdArray> tmpRelMap = new ArrayMap<String,RelIdArray>();
-                rels = getMoreRelationships( nodeManager, tmpRelMap );
+                rels = loadInitialRelationships( nodeManager, tmpRelMap );
                 this.relationships = toRelIdArray( tmpRelMap );
                 if ( rels != null )
                 {
@@ -353,6 +355,14 @@ class NodeImpl extends ArrayBasedPrimitive
         }
     }
 
+    // called under synchronization, before any relationships have been loaded
+    Triplet<ArrayMap<String,RelIdArray>,Map<Long,RelationshipImpl>,Long> loadInitialRelationships(
+            NodeManager nodeManager, ArrayMap<String,RelIdArray> tmpRelMap )
+    {
+        relChainPosition = nodeManager.getRelationshipChainPosition( this );
+        return getMoreRelationships( nodeManager, tmpRelMap );
+    }
+
     private RelIdArray[] toRelIdArray( ArrayMap<String, RelIdArray> tmpRelMap )
     {
         if ( tmpRelMap == null || tmpRelMap.size() == 0 )
@@ -383,6 +393,13 @@ class NodeImpl extends ArrayBasedPrimitive
         {
             return null;
         }
+        mergeRelationships( tmpRelMap, addMap );
+        return rels;
+        // nodeManager.putAllInRelCache( pair.other() );
+    }
+
+    static void mergeRelationships( ArrayMap<String,RelIdArray> tmpRelMap, ArrayMap<String,RelIdArray> addMap )
+    {
         for ( String type : addMap.keySet() )
         {
             RelIdArray addRels = addMap.get( type );
@@ -401,8 +418,6 @@ class NodeImpl extends ArrayBasedPrimitive
                 }
             }
         }
-        return rels;
-        // nodeManager.putAllInRelCache( pair.other() );
     }
 
     boolean hasMoreRelationshipsToLoad()
@@ -410,6 +425,28 @@ class NodeImpl extends ArrayBasedPrimitive
         return getRelChainPosition() != Record.NO_NEXT_RELATIONSHIP.intValue();
     }
 
+    /**
+     * @return whether or not there are relationships of the given types and
+     * direction left to load. All relationships are in the same chain so
+     * this is the same as {@link #hasMoreRelationshipsToLoad()}.
+     */
+    boolean hasMoreRelationshipsToLoad( RelationshipType[] types, DirectionWrapper direction )
+    {
+        return hasMoreRelationshipsToLoad();
+    }
+
+    /**
+     * Loads another batch of relationships, of the given types and direction
+     * if that can be done any cheaper than loading the next batch of all
+     * relationships, which is what this implementation does.
+     *
+     * @return whether or not any relationships were loaded.
+     */
+    boolean getMoreRelationships( NodeManager nodeManager, RelationshipType[] types, DirectionWrapper direction )
+    {
+        return getMoreRelationships( nodeManager );
+    }
+
     boolean getMoreRelationships( NodeManager nodeManager )
     {
         Triplet<ArrayMap<String,RelIdArray>,Map<Long,RelationshipImpl>,Long> rels;
@@ -430,25 +467,7 @@ class NodeImpl extends ArrayBasedPrimitive
             {
                 return false;
             }
-            for ( String type : addMap.keySet() )
-            {
-                RelIdArray addRels = addMap.get( type );
-                // IntArray srcRels = tmpRelMap.get( type );
-                RelIdArray srcRels = getRelIdArray( type );
-                if ( srcRels == null )
-                {
-                    putRelIdArray( addRels );
-                }
-                else
-                {
-                    RelIdArray newSrcRels = srcRels.addAll( addRels );
-                    // This can happen if srcRels gets upgraded to a RelIdArrayWithLoops
-                    if ( newSrcRels != srcRels )
-                    {
-                        putRelIdArray( newSrcRels );
-                    }
-                }
-            }
+            addRelationships( addMap );
 
             setRelChainPosition( rels.third() );
         }
@@ -456,6 +475,29 @@ class NodeImpl extends ArrayBasedPrimitive
         return true;
     }
 
+    // precondition: called under synchronization
+    void addRelationships( ArrayMap<String,RelIdArray> addMap )
+    {
+        for ( String type : addMap.keySet() )
+        {
+            RelIdArray addRels = addMap.get( type );
+            RelIdArray srcRels = getRelIdArray( type );
+            if ( srcRels == null )
+            {
+                putRelIdArray( addRels );
+            }
+            else
+            {
+                RelIdArray newSrcRels = srcRels.addAll( addRels );
+                // This can happen if srcRels gets upgraded to a RelIdArrayWithLoops
+                if ( newSrcRels != srcRels )
+                {
+                    putRelIdArray( newSrcRels );
+                }
+            }
+        }
+    }
+
     private RelIdArray getRelIdArray( String type )
     {
         // Concurrency-wise it's ok even if the relationships variable
@@ -637,6 +679,12 @@ class NodeImpl extends ArrayBasedPrimitive
     void setRelChainPosition( long position )
     { // precondition: must be called under synchronization
         relChainPosition = position;
+        shrinkIfFullyLoaded();
+    }
+
+    // precondition: must be called under synchronization
+    void shrinkIfFullyLoaded()
+    {
         // use local reference to avoid multiple read barriers
         RelIdArray[] array = relationships;
         if ( !hasMoreRelationshipsToLoad() && array != null )
@@ -659,6 +707,15 @@ class NodeImpl extends ArrayBasedPrimitive
         return relationships;
     }
 
+    /*
+     * Used when materializing a node from a compact representation, the
+     * relationships must be fully loaded.
+     */
+    void setRelationshipIds( RelIdArray[] relationships )
+    {
+        this.relationships = relationships;
+    }
+
     @Override
     public CowEntityElement getEntityElement( PrimitiveElement element, boolean create )
     {
@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import java.nio.ByteBuffer;
+
+import org.neo4j.helpers.UTF8;
+import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.util.RelIdArray;
+import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
+import org.neo4j.kernel.impl.util.RelIdArrayWithLoops;
+import org.neo4j.kernel.impl.util.RelIdIterator;
+
+/**
+ * Encodes a {@link NodeImpl} for the off heap cache. The relationship ids are
+ * only encoded if all of them are loaded, as delta encoded variable length
+ * longs per type and direction. The relationships of dense nodes are never
+ * encoded since they're loaded per type and direction.
+ */
+class NodeImplCodec extends PrimitiveCodec<NodeImpl>
+{
+    private static final byte DENSE = 0x1;
+    private static final byte RELATIONSHIPS = 0x2;
+
+    @Override
+    public boolean encode( NodeImpl node, ByteBuffer target )
+    {
+        boolean dense = node instanceof DenseNodeImpl;
+        RelIdArray[] relationships = node.getRelationshipIds();
+        boolean encodeRelationships = !dense && relationships != null && !node.hasMoreRelationshipsToLoad();
+        target.put( (byte) ((dense ? DENSE : 0) | (encodeRelationships ? RELATIONSHIPS : 0)) );
+        if ( encodeRelationships )
+        {
+            putVarLong( target, relationships.length );
+            for ( RelIdArray ids : relationships )
+            {
+                byte[] type = UTF8.encode( ids.getType() );
+                putVarLong( target, type.length );
+                target.put( type );
+                boolean loops = ids instanceof RelIdArrayWithLoops;
+                target.put( (byte) (loops ? 1 : 0) );
+                encodeIds( ids, DirectionWrapper.OUTGOING, target );
+                encodeIds( ids, DirectionWrapper.INCOMING, target );
+                if ( loops )
+                {
+                    encodeIds( ids, DirectionWrapper.BOTH, target );
+                }
+            }
+        }
+        encodeProperties( node, target );
+        return true;
+    }
+
+    private static void encodeIds( RelIdArray ids, DirectionWrapper direction, ByteBuffer target )
+    {
+        int countPosition = target.position();
+        target.putInt( 0 );
+        int count = 0;
+        long previous = 0;
+        for ( RelIdIterator iterator = ids.exactIterator( direction ); iterator.hasNext(); )
+        {
+            long id = iterator.next();
+            putVarLong( target, zigZag( id - previous ) );
+            previous = id;
+            count++;
+        }
+        target.putInt( countPosition, count );
+    }
+
+    @Override
+    public NodeImpl decode( long id, ByteBuffer source )
+    {
+        byte flags = source.get();
+        long noRel = Record.NO_NEXT_RELATIONSHIP.intValue();
+        long noProp = Record.NO_NEXT_PROPERTY.intValue();
+        NodeImpl node = (flags & DENSE) != 0 ? new DenseNodeImpl( id, noRel, noProp ) :
+                new NodeImpl( id, noRel, noProp );
+        if ( (flags & RELATIONSHIPS) != 0 )
+        {
+            RelIdArray[] relationships = new RelIdArray[(int) getVarLong( source )];
+            for ( int i = 0; i < relationships.length; i++ )
+            {
+                byte[] typeBytes = new byte[(int) getVarLong( source )];
+                source.get( typeBytes );
+                String type = UTF8.decode( typeBytes );
+                boolean loops = source.get() != 0;
+                RelIdArray ids = loops ? new RelIdArrayWithLoops( type ) : new RelIdArray( type );
+                decodeIds( ids, DirectionWrapper.OUTGOING, source );
+                decodeIds( ids, DirectionWrapper.INCOMING, source );
+                if ( loops )
+                {
+                    decodeIds( ids, DirectionWrapper.BOTH, source );
+                }
+                relationships[i] = ids.shrink();
+            }
+            node.setRelationshipIds( relationships );
+        }
+        decodeProperties( node, source );
+        return node;
+    }
+
+    private static void decodeIds( RelIdArray ids, DirectionWrapper direction, ByteBuffer source )
+    {
+        int count = source.getInt();
+        long id = 0;
+        for ( int i = 0; i < count; i++ )
+        {
+            id += unZigZag( getVarLong( source ) );
+            ids.add( id, direction );
+        }
+    }
+}
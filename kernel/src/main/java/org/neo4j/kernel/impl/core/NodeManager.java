@@ -43,18 +43,24 @@ import org.neo4j.graphdb.index.Index;
 import org.neo4j.helpers.Pair;
 import org.neo4j.helpers.Triplet;
 import org.neo4j.helpers.collection.PrefetchingIterator;
+import org.neo4j.kernel.Config;
 import org.neo4j.kernel.PropertyTracker;
+import org.neo4j.kernel.guard.Guard;
 import org.neo4j.kernel.impl.cache.AdaptiveCacheManager;
 import org.neo4j.kernel.impl.cache.Cache;
+import org.neo4j.kernel.impl.cache.ClockCache;
 import org.neo4j.kernel.impl.cache.LruCache;
 import org.neo4j.kernel.impl.cache.NoCache;
+import org.neo4j.kernel.impl.cache.OffHeapCache;
 import org.neo4j.kernel.impl.cache.SoftLruCache;
 import org.neo4j.kernel.impl.cache.StrongReferenceCache;
 import org.neo4j.kernel.impl.cache.WeakLruCache;
+import org.neo4j.kernel.impl.nioneo.store.InUseRecordScanner;
 import org.neo4j.kernel.impl.nioneo.store.NameData;
 import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyData;
 import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.persistence.EntityIdGenerator;
 import org.neo4j.kernel.impl.persistence.PersistenceManager;
@@ -84,6 +90,7 @@ public class NodeManager
     private final RelationshipTypeHolder relTypeHolder;
     private final PersistenceManager persistenceManager;
     private final EntityIdGenerator idGenerator;
+    private Guard guard;
 
     private final List<PropertyTracker<Node>> nodePropertyTrackers;
     private final List<PropertyTracker<Relationship>> relationshipPropertyTrackers;
@@ -236,8 +243,18 @@ public class NodeManager
     public void start( Map<Object,Object> params )
     {
         parseParams( params );
+        guard = (Guard) params.get( Guard.class );
         nodeCache.resize( maxNodeCacheSize );
         relCache.resize( maxRelCacheSize );
+        if ( nodeCache instanceof OffHeapCache )
+        {
+            configureOffHeapMemory( (OffHeapCache<?>) nodeCache, params, Config.NODE_CACHE_OFFHEAP_MEMORY );
+        }
+        if ( relCache instanceof OffHeapCache )
+        {
+            configureOffHeapMemory( (OffHeapCache<?>) relCache, params,
+                    Config.RELATIONSHIP_CACHE_OFFHEAP_MEMORY );
+        }
         if ( useAdaptiveCache && cacheType.needsCacheManagerRegistration )
         {
             cacheManager.registerCache( nodeCache, adaptiveCacheHeapRatio,
@@ -248,6 +265,41 @@ public class NodeManager
         }
     }
 
+    private void configureOffHeapMemory( OffHeapCache<?> cache, Map<Object,Object> params, String key )
+    {
+        String value = (String) params.get( key );
+        if ( value == null )
+        {
+            return;
+        }
+        String memory = value.trim().toLowerCase();
+        long multiplier = 1;
+        if ( memory.endsWith( "k" ) )
+        {
+            multiplier = 1024;
+        }
+        else if ( memory.endsWith( "m" ) )
+        {
+            multiplier = 1024 * 1024;
+        }
+        else if ( memory.endsWith( "g" ) )
+        {
+            multiplier = 1024 * 1024 * 1024;
+        }
+        if ( multiplier != 1 )
+        {
+            memory = memory.substring( 0, memory.length() - 1 );
+        }
+        try
+        {
+            cache.setMemoryLimit( Long.parseLong( memory ) * multiplier );
+        }
+        catch ( NumberFormatException e )
+        {
+            log.warning( "Unable to parse " + key + " " + value );
+        }
+    }
+
     public void stop()
     {
         if ( useAdaptiveCache && cacheType.needsCacheManagerRegistration )
@@ -403,6 +455,7 @@ public class NodeManager
 
     private Node getNodeByIdOrNull( long nodeId )
     {
+        if ( guard != null ) guard.check();
         NodeImpl node = nodeCache.get( nodeId );
         if ( node != null )
         {
@@ -417,7 +470,7 @@ public class NodeManager
             }
             NodeRecord record = persistenceManager.loadLightNode( nodeId );
             if ( record == null ) return null;
-            node = new NodeImpl( nodeId, record.getCommittedNextRel(), record.getCommittedNextProp() );
+            node = newNodeImpl( record );
             nodeCache.put( nodeId, node );
             return new NodeProxy( nodeId, this );
         }
@@ -439,34 +492,46 @@ public class NodeManager
 
     public Iterator<Node> getAllNodes()
     {
-        final long highId = getHighestPossibleIdInUse( Node.class );
-        return new PrefetchingIterator<Node>()
+        return getAllNodes( 0, 1 );
+    }
+
+    /**
+     * Returns the nodes in one of {@code partitions} equally sized id ranges
+     * of the node store. The partitions can be iterated in parallel, together
+     * they contain all nodes.
+     *
+     * @param partition the partition to return the nodes of, from 0 to
+     *            {@code partitions - 1}.
+     * @param partitions the number of partitions the node ids are split into.
+     * @return the nodes in the given partition.
+     */
+    public Iterator<Node> getAllNodes( int partition, int partitions )
+    {
+        return new StoreScanIterator<Node>( Node.class, partition, partitions )
         {
-            private long currentId;
+            @Override
+            protected Node committed( long id )
+            {
+                return new NodeProxy( id, NodeManager.this );
+            }
 
             @Override
-            protected Node fetchNextOrNull()
+            protected Node uncommitted( long id )
             {
-                while ( currentId <= highId )
-                {
-                    try
-                    {
-                        Node node = getNodeByIdOrNull( currentId );
-                        if ( node != null )
-                        {
-                            return node;
-                        }
-                    }
-                    finally
-                    {
-                        currentId++;
-                    }
-                }
-                return null;
+                return getNodeByIdOrNull( id );
             }
         };
     }
 
+    private NodeImpl newNodeImpl( NodeRecord record )
+    {
+        if ( record.isCommittedDense() )
+        {
+            return new DenseNodeImpl( record.getId(), record.getCommittedNextRel(), record.getCommittedNextProp() );
+        }
+        return new NodeImpl( record.getId(), record.getCommittedNextRel(), record.getCommittedNextProp() );
+    }
+
     NodeImpl getLightNode( long nodeId )
     {
         NodeImpl node = nodeCache.get( nodeId );
@@ -484,7 +549,7 @@ public class NodeManager
             }
             NodeRecord record = persistenceManager.loadLightNode( nodeId );
             if ( record == null ) return null;
-            node = new NodeImpl( nodeId, record.getCommittedNextRel(), record.getCommittedNextProp() );
+            node = newNodeImpl( record );
             nodeCache.put( nodeId, node );
             return node;
         }
@@ -496,6 +561,7 @@ public class NodeManager
 
     NodeImpl getNodeForProxy( NodeProxy proxy, LockType lock )
     {
+        if ( guard != null ) guard.check();
         if ( lock != null ) acquireTxBoundLock( proxy, lock );
         NodeImpl node = getLightNode( proxy.getId() );
         if ( node == null ) throw new NotFoundException( proxy + " not found." );
@@ -518,6 +584,7 @@ public class NodeManager
 
     private Relationship getRelationshipByIdOrNull( long relId )
     {
+        if ( guard != null ) guard.check();
         RelationshipImpl relationship = relCache.get( relId );
         if ( relationship != null )
         {
@@ -568,32 +635,108 @@ public class NodeManager
 
     public Iterator<Relationship> getAllRelationships()
     {
-        final long highId = getHighestPossibleIdInUse( Relationship.class );
-        return new PrefetchingIterator<Relationship>()
+        return getAllRelationships( 0, 1 );
+    }
+
+    /**
+     * Returns the relationships in one of {@code partitions} equally sized id
+     * ranges of the relationship store. The partitions can be iterated in
+     * parallel, together they contain all relationships.
+     *
+     * @param partition the partition to return the relationships of, from 0
+     *            to {@code partitions - 1}.
+     * @param partitions the number of partitions the relationship ids are
+     *            split into.
+     * @return the relationships in the given partition.
+     */
+    public Iterator<Relationship> getAllRelationships( int partition, int partitions )
+    {
+        return new StoreScanIterator<Relationship>( Relationship.class, partition, partitions )
         {
-            private long currentId;
+            @Override
+            protected Relationship committed( long id )
+            {
+                return new RelationshipProxy( id, NodeManager.this );
+            }
 
             @Override
-            protected Relationship fetchNextOrNull()
+            protected Relationship uncommitted( long id )
+            {
+                return getRelationshipByIdOrNull( id );
+            }
+        };
+    }
+
+    /**
+     * Iterates over the entities in a range of ids by scanning the store
+     * sequentially instead of loading every entity through the cache. Records
+     * not in use in the store are only looked up if the current transaction
+     * has changes of its own, since it may have created them.
+     */
+    private abstract class StoreScanIterator<T> extends PrefetchingIterator<T>
+    {
+        private final Class<?> clazz;
+        private final long toId;
+        private long currentId;
+        private InUseRecordScanner scanner;
+        private long nextInUseId;
+        private boolean hasTransactionState;
+
+        StoreScanIterator( Class<?> clazz, int partition, int partitions )
+        {
+            if ( partitions < 1 || partition < 0 || partition >= partitions )
+            {
+                throw new IllegalArgumentException( "Invalid partition " + partition + " of "
+                    + partitions );
+            }
+            long highId = getHighestPossibleIdInUse( clazz ) + 1;
+            long partitionSize = (highId + partitions - 1) / partitions;
+            this.clazz = clazz;
+            this.currentId = Math.min( highId, partition * partitionSize );
+            this.toId = Math.min( highId, currentId + partitionSize );
+        }
+
+        @Override
+        protected T fetchNextOrNull()
+        {
+            if ( guard != null ) guard.check();
+            if ( scanner == null )
+            {
+                scanner = persistenceManager.scanInUseRecords( clazz, currentId, toId );
+                nextInUseId = scanner.next();
+                hasTransactionState = persistenceManager.hasTransactionState();
+            }
+            while ( currentId < toId )
             {
-                while ( currentId <= highId )
+                long id = currentId++;
+                if ( id == nextInUseId )
                 {
-                    try
-                    {
-                        Relationship relationship = getRelationshipByIdOrNull( currentId );
-                        if ( relationship != null )
-                        {
-                            return relationship;
-                        }
-                    }
-                    finally
+                    nextInUseId = scanner.next();
+                    return committed( id );
+                }
+                if ( hasTransactionState )
+                {
+                    T entity = uncommitted( id );
+                    if ( entity != null )
                     {
-                        currentId++;
+                        return entity;
                     }
                 }
-                return null;
+                else if ( nextInUseId == -1 )
+                {
+                    return null;
+                }
+                else
+                {
+                    currentId = nextInUseId;
+                }
             }
-        };
+            return null;
+        }
+
+        protected abstract T committed( long id );
+
+        protected abstract T uncommitted( long id );
     }
 
     RelationshipType getRelationshipTypeById( int id )
@@ -603,6 +746,7 @@ public class NodeManager
 
     RelationshipImpl getRelForProxy( RelationshipProxy proxy, LockType lock )
     {
+        if ( guard != null ) guard.check();
         if ( lock != null ) acquireTxBoundLock( proxy, lock );
         long relId = proxy.getId();
         RelationshipImpl relationship = relCache.get( relId );
@@ -659,10 +803,21 @@ public class NodeManager
         return persistenceManager.getRelationshipChainPosition( node.getId() );
     }
 
+    List<RelationshipGroupRecord> loadRelationshipGroups( NodeImpl node )
+    {
+        return persistenceManager.loadRelationshipGroups( node.getId() );
+    }
+
     Triplet<ArrayMap<String,RelIdArray>,Map<Long,RelationshipImpl>,Long> getMoreRelationships( NodeImpl node )
     {
+        return getMoreRelationships( node, node.getRelChainPosition() );
+    }
+
+    Triplet<ArrayMap<String,RelIdArray>,Map<Long,RelationshipImpl>,Long> getMoreRelationships( NodeImpl node,
+            long position )
+    {
+        if ( guard != null ) guard.check();
         long nodeId = node.getId();
-        long position = node.getRelChainPosition();
         Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> rels =
             persistenceManager.getMoreRelationships( nodeId, position );
         ArrayMap<String,RelIdArray> newRelationshipMap =
@@ -1116,6 +1271,22 @@ public class NodeManager
         return lockReleaser.getOrCreateCowRelationshipAddMap( node, string );
     }
 
+    void committedInCache( NodeImpl node )
+    {
+        if ( cacheType.copiesElements() )
+        {
+            nodeCache.put( node.getId(), node );
+        }
+    }
+
+    void committedInCache( RelationshipImpl relationship )
+    {
+        if ( cacheType.copiesElements() )
+        {
+            relCache.put( relationship.getId(), relationship );
+        }
+    }
+
     public NodeImpl getNodeIfCached( long nodeId )
     {
         return nodeCache.get( nodeId );
@@ -1251,6 +1422,21 @@ public class NodeManager
                         RELATIONSHIP_CACHE_NAME, 3500, cacheManager );
             }
         },
+        clock( true, "concurrent clock lru cache" )
+        {
+            @Override
+            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager )
+            {
+                return new ClockCache<Long,NodeImpl>( NODE_CACHE_NAME, 1500, cacheManager );
+            }
+
+            @Override
+            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager )
+            {
+                return new ClockCache<Long,RelationshipImpl>(
+                        RELATIONSHIP_CACHE_NAME, 3500, cacheManager );
+            }
+        },
         none( false, "no cache" )
         {
             @Override
@@ -1278,10 +1464,33 @@ public class NodeManager
             {
                 return new StrongReferenceCache<Long,RelationshipImpl>( RELATIONSHIP_CACHE_NAME );
             }
+        },
+        offheap( false, "lru cache spilling to compact off heap memory" )
+        {
+            @Override
+            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager )
+            {
+                return new OffHeapCache<NodeImpl>( NODE_CACHE_NAME, 1500,
+                        DEFAULT_OFFHEAP_MEMORY, new NodeImplCodec() );
+            }
+
+            @Override
+            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager )
+            {
+                return new OffHeapCache<RelationshipImpl>( RELATIONSHIP_CACHE_NAME, 3500,
+                        DEFAULT_OFFHEAP_MEMORY, new RelationshipImplCodec() );
+            }
+
+            @Override
+            boolean copiesElements()
+            {
+                return true;
+            }
         };
 
         private static final String NODE_CACHE_NAME = "NodeCache";
         private static final String RELATIONSHIP_CACHE_NAME = "RelationshipCache";
+        private static final long DEFAULT_OFFHEAP_MEMORY = 128 * 1024 * 1024;
 
         final boolean needsCacheManagerRegistration;
         private final String description;
@@ -1296,6 +1505,16 @@ public class NodeManager
 
         abstract Cache<Long,RelationshipImpl> relationship( AdaptiveCacheManager cacheManager );
 
+        /**
+         * @return whether the cache may hand out a new copy of an element
+         *         rather than the instance that was put, in which case changes
+         *         made to a cached element must be put back in the cache.
+         */
+        boolean copiesElements()
+        {
+            return false;
+        }
+
         public String getDescription()
         {
             return this.description;
@@ -0,0 +1,226 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import java.nio.ByteBuffer;
+
+import org.neo4j.helpers.UTF8;
+import org.neo4j.kernel.impl.cache.OffHeapCache;
+import org.neo4j.kernel.impl.nioneo.store.PropertyData;
+import org.neo4j.kernel.impl.nioneo.store.PropertyDatas;
+import org.neo4j.kernel.impl.util.ArrayMap;
+
+/**
+ * Base class for the {@link OffHeapCache.Codec}s of nodes and relationships,
+ * encoding the cached properties. Numbers are written as variable length
+ * longs. Properties are only encoded if all their values are loaded and are
+ * primitives or strings, otherwise they're left to be loaded again on demand.
+ */
+abstract class PrimitiveCodec<E extends ArrayBasedPrimitive> implements OffHeapCache.Codec<E>
+{
+    private static final int MAX_STRING_LENGTH = 4096;
+
+    private static final byte NOT_LOADED = 0;
+    private static final byte LOADED = 1;
+
+    private static final byte BOOLEAN = 1;
+    private static final byte BYTE = 2;
+    private static final byte SHORT = 3;
+    private static final byte CHAR = 4;
+    private static final byte INT = 5;
+    private static final byte LONG = 6;
+    private static final byte FLOAT = 7;
+    private static final byte DOUBLE = 8;
+    private static final byte STRING = 9;
+
+    protected void encodeProperties( E primitive, ByteBuffer target )
+    {
+        PropertyData[] properties = primitive.allProperties();
+        if ( properties == null || !encodable( properties ) )
+        {
+            target.put( NOT_LOADED );
+            return;
+        }
+        target.put( LOADED );
+        putVarLong( target, properties.length );
+        for ( PropertyData property : properties )
+        {
+            putVarLong( target, property.getIndex() );
+            putVarLong( target, property.getId() );
+            encodeValue( property.getValue(), target );
+        }
+    }
+
+    private static boolean encodable( PropertyData[] properties )
+    {
+        for ( PropertyData property : properties )
+        {
+            Object value = property.getValue();
+            if ( value instanceof String )
+            {
+                if ( ((String) value).length() > MAX_STRING_LENGTH ) return false;
+            }
+            else if ( !(value instanceof Integer || value instanceof Long || value instanceof Boolean
+                    || value instanceof Double || value instanceof Float || value instanceof Byte
+                    || value instanceof Short || value instanceof Character) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void encodeValue( Object value, ByteBuffer target )
+    {
+        if ( value instanceof Integer )
+        {
+            target.put( INT );
+            putVarLong( target, zigZag( (Integer) value ) );
+        }
+        else if ( value instanceof Long )
+        {
+            target.put( LONG );
+            putVarLong( target, zigZag( (Long) value ) );
+        }
+        else if ( value instanceof String )
+        {
+            target.put( STRING );
+            byte[] bytes = UTF8.encode( (String) value );
+            putVarLong( target, bytes.length );
+            target.put( bytes );
+        }
+        else if ( value instanceof Boolean )
+        {
+            target.put( BOOLEAN );
+            target.put( (byte) (((Boolean) value) ? 1 : 0) );
+        }
+        else if ( value instanceof Double )
+        {
+            target.put( DOUBLE );
+            target.putDouble( (Double) value );
+        }
+        else if ( value instanceof Float )
+        {
+            target.put( FLOAT );
+            target.putFloat( (Float) value );
+        }
+        else if ( value instanceof Byte )
+        {
+            target.put( BYTE );
+            target.put( (Byte) value );
+        }
+        else if ( value instanceof Short )
+        {
+            target.put( SHORT );
+            target.putShort( (Short) value );
+        }
+        else if ( value instanceof Character )
+        {
+            target.put( CHAR );
+            target.putChar( (Character) value );
+        }
+        else
+        {
+            throw new IllegalArgumentException( "Unable to encode " + value );
+        }
+    }
+
+    protected void decodeProperties( E primitive, ByteBuffer source )
+    {
+        if ( source.get() == NOT_LOADED )
+        {
+            return;
+        }
+        int count = (int) getVarLong( source );
+        ArrayMap<Integer,PropertyData> properties = new ArrayMap<Integer,PropertyData>();
+        for ( int i = 0; i < count; i++ )
+        {
+            int index = (int) getVarLong( source );
+            long id = getVarLong( source );
+            properties.put( index, decodeValue( index, id, source ) );
+        }
+        primitive.setProperties( properties );
+    }
+
+    private static PropertyData decodeValue( int index, long id, ByteBuffer source )
+    {
+        byte type = source.get();
+        switch ( type )
+        {
+        case INT:
+            return PropertyDatas.forInt( index, id, (int) unZigZag( getVarLong( source ) ) );
+        case LONG:
+            return PropertyDatas.forLong( index, id, unZigZag( getVarLong( source ) ) );
+        case STRING:
+            byte[] bytes = new byte[(int) getVarLong( source )];
+            source.get( bytes );
+            return PropertyDatas.forStringOrArray( index, id, UTF8.decode( bytes ) );
+        case BOOLEAN:
+            return PropertyDatas.forBoolean( index, id, source.get() != 0 );
+        case DOUBLE:
+            return PropertyDatas.forDouble( index, id, source.getDouble() );
+        case FLOAT:
+            return PropertyDatas.forFloat( index, id, source.getFloat() );
+        case BYTE:
+            return PropertyDatas.forByte( index, id, source.get() );
+        case SHORT:
+            return PropertyDatas.forShort( index, id, source.getShort() );
+        case CHAR:
+            return PropertyDatas.forChar( index, id, source.getChar() );
+        default:
+            throw new IllegalStateException( "Unknown property type " + type );
+        }
+    }
+
+    static long zigZag( long value )
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag( long value )
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void putVarLong( ByteBuffer target, long value )
+    {
+        while ( (value & ~0x7FL) != 0 )
+        {
+            target.put( (byte) ((value & 0x7F) | 0x80) );
+            value >>>= 7;
+        }
+        target.put( (byte) value );
+    }
+
+    static long getVarLong( ByteBuffer source )
+    {
+        long result = 0;
+        int shift = 0;
+        byte b;
+        do
+        {
+            b = source.get();
+            result |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        }
+        while ( (b & 0x80) != 0 );
+        return result;
+    }
+}
@@ -115,6 +115,8 @@ abstract class RelationshipImpl extends ArrayBasedPrimitive
 
     abstract long getEndNodeId();
 
+    abstract int getTypeId();
+
     public abstract RelationshipType getType( NodeManager nodeManager );
 
     public boolean isType( NodeManager nodeManager, RelationshipType otherType )
@@ -0,0 +1,50 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes a {@link RelationshipImpl} for the off heap cache as its start
+ * node, end node and type followed by its properties.
+ */
+class RelationshipImplCodec extends PrimitiveCodec<RelationshipImpl>
+{
+    @Override
+    public boolean encode( RelationshipImpl relationship, ByteBuffer target )
+    {
+        putVarLong( target, relationship.getStartNodeId() );
+        putVarLong( target, relationship.getEndNodeId() );
+        putVarLong( target, relationship.getTypeId() );
+        encodeProperties( relationship, target );
+        return true;
+    }
+
+    @Override
+    public RelationshipImpl decode( long id, ByteBuffer source )
+    {
+        long startNodeId = getVarLong( source );
+        long endNodeId = getVarLong( source );
+        int typeId = (int) getVarLong( source );
+        RelationshipImpl relationship = new LowRelationshipImpl( id, startNodeId, endNodeId, typeId, false );
+        decodeProperties( relationship, source );
+        return relationship;
+    }
+}
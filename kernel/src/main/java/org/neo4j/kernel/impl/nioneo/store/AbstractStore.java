@@ -183,6 +183,24 @@ public abstract class AbstractStore extends CommonAbstractStore
         return 0;
     }
 
+    /**
+     * Returns a scanner over the ids of the records in use in the range
+     * <CODE>[fromId, toId)</CODE>, reading the store file sequentially in
+     * chunks of about <CODE>chunkSize</CODE> bytes. Changes buffered in the
+     * persistence windows are written out (not forced) first so that the
+     * scan sees everything that has been committed.
+     *
+     * @param fromId the first id to scan, inclusive
+     * @param toId the last id to scan, exclusive
+     * @param chunkSize the number of bytes to read from the file at a time
+     * @return a scanner over the ids in use in the given range
+     */
+    public InUseRecordScanner scanInUseRecords( long fromId, long toId, int chunkSize )
+    {
+        writeOutAll();
+        return new InUseRecordScanner( this, getFileChannel(), fromId, toId, chunkSize );
+    }
+
     protected boolean isRecordInUse(ByteBuffer buffer)
     {
         byte inUse = buffer.get();
@@ -40,8 +40,9 @@ import java.util.logging.Logger;
  */
 public abstract class CommonAbstractStore
 {
-    public static final String ALL_STORES_VERSION = "v0.A.0";
+    public static final String ALL_STORES_VERSION = "v0.A.1";
     public static final String UNKNOWN_VERSION = "Uknown";
+    private static final int DEFAULT_CONCURRENT_ID_BATCH_SIZE = 64;
 
     protected static final Logger logger = Logger
         .getLogger( CommonAbstractStore.class.getName() );
@@ -576,6 +577,15 @@ public abstract class CommonAbstractStore
         windowPool.flushAll();
     }
 
+    /**
+     * Makes changes buffered in the persistence windows visible to readers of
+     * the file channel, without forcing them to disk.
+     */
+    protected void writeOutAll()
+    {
+        windowPool.writeOutAll();
+    }
+
     private boolean isRecovered = false;
 
     public boolean isInRecoveryMode()
@@ -620,8 +630,17 @@ public abstract class CommonAbstractStore
 
     protected IdGenerator openIdGenerator( String fileName, int grabSize, boolean firstTime )
     {
-        return idGeneratorFactory.open( fileName, grabSize, getIdType(),
+        IdGenerator generator = idGeneratorFactory.open( fileName, grabSize, getIdType(),
                 figureOutHighestIdInUse(), firstTime );
+        if ( getConfig() != null &&
+             Boolean.parseBoolean( (String) getConfig().get( Config.CONCURRENT_ID_GENERATION ) ) )
+        {
+            String batchSize = (String) getConfig().get( Config.CONCURRENT_ID_BATCH_SIZE );
+            generator = new ConcurrentIdGenerator( generator,
+                    batchSize != null ? Integer.parseInt( batchSize ) : DEFAULT_CONCURRENT_ID_BATCH_SIZE,
+                    grabSize, getIdType().allowAggressiveReuse() );
+        }
+        return generator;
     }
 
     protected abstract long figureOutHighestIdInUse();
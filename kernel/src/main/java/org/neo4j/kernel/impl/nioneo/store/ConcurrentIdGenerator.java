@@ -0,0 +1,264 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link IdGenerator} which lets threads allocate ids without contending
+ * on the monitor of the generator it wraps. Ids are handed out from a fixed
+ * number of pools, about two per processor, and each thread uses the pool
+ * its thread id maps to. A pool takes ranges of ids from the wrapped
+ * generator with {@link IdGenerator#nextIdBatch(int)}. Freed ids are
+ * collected in a concurrent queue and passed on to the wrapped generator in
+ * batches, so the id file format and how it's written is left to the
+ * wrapped generator.
+ * <p>
+ * Since the pools aren't tied to threads, ids left in a pool by a thread
+ * that is gone are handed out to the next thread using it. What's left in
+ * the pools is given back to the wrapped generator as freed ids on
+ * {@link #close(boolean)}.
+ */
+public class ConcurrentIdGenerator implements IdGenerator
+{
+    private final IdGenerator delegate;
+    private final int batchSize;
+    private final int freeBatchSize;
+    private final boolean aggressiveReuse;
+    private final Queue<Long> freedIds = new ConcurrentLinkedQueue<Long>();
+    private final AtomicInteger freedIdCount = new AtomicInteger();
+    private final IdPool[] pools;
+    // bumped when the high id is lowered so that pools handed out before
+    // that are dropped instead of returning ids above the new high id
+    private volatile int generation;
+
+    /**
+     * @param delegate the generator to take id ranges from and to give freed
+     * ids back to.
+     * @param batchSize number of ids each thread takes from {@code delegate}
+     * at a time.
+     * @param freeBatchSize number of freed ids to collect before passing them
+     * on to {@code delegate}.
+     * @param aggressiveReuse will hand out freed ids again in the same
+     * session, before they have been passed on to {@code delegate}.
+     */
+    public ConcurrentIdGenerator( IdGenerator delegate, int batchSize, int freeBatchSize,
+            boolean aggressiveReuse )
+    {
+        this( delegate, batchSize, freeBatchSize, aggressiveReuse,
+                Runtime.getRuntime().availableProcessors() * 2 );
+    }
+
+    ConcurrentIdGenerator( IdGenerator delegate, int batchSize, int freeBatchSize,
+            boolean aggressiveReuse, int minPools )
+    {
+        if ( batchSize < 1 || freeBatchSize < 1 )
+        {
+            throw new IllegalArgumentException( "batchSize=" + batchSize + ", freeBatchSize=" + freeBatchSize );
+        }
+        this.delegate = delegate;
+        this.batchSize = batchSize;
+        this.freeBatchSize = freeBatchSize;
+        this.aggressiveReuse = aggressiveReuse;
+        int poolCount = 1;
+        while ( poolCount < minPools )
+        {
+            poolCount <<= 1;
+        }
+        pools = new IdPool[poolCount];
+        for ( int i = 0; i < pools.length; i++ )
+        {
+            pools[i] = new IdPool();
+        }
+    }
+
+    public long nextId()
+    {
+        if ( aggressiveReuse )
+        {
+            Long id = freedIds.poll();
+            if ( id != null )
+            {
+                freedIdCount.decrementAndGet();
+                return id.longValue();
+            }
+        }
+        IdPool idPool = pools[(int) Thread.currentThread().getId() & ( pools.length - 1 )];
+        synchronized ( idPool )
+        {
+            long id;
+            while ( ( id = idPool.next( generation ) ) == -1 )
+            {
+                idPool.refill( delegate.nextIdBatch( batchSize ), generation );
+            }
+            return id;
+        }
+    }
+
+    public IdRange nextIdBatch( int size )
+    {
+        return delegate.nextIdBatch( size );
+    }
+
+    public synchronized void setHighId( long id )
+    {
+        if ( id < delegate.getHighId() )
+        {
+            generation++;
+        }
+        delegate.setHighId( id );
+    }
+
+    public long getHighId()
+    {
+        return delegate.getHighId();
+    }
+
+    public void freeId( long id )
+    {
+        if ( id == IdGeneratorImpl.INTEGER_MINUS_ONE )
+        {
+            return;
+        }
+        if ( id < 0 || id >= delegate.getHighId() )
+        {
+            throw new IllegalArgumentException( "Illegal id[" + id + "]" );
+        }
+        freedIds.add( id );
+        if ( freedIdCount.incrementAndGet() >= freeBatchSize )
+        {
+            flushFreedIds();
+        }
+    }
+
+    private void flushFreedIds()
+    {
+        for ( Long id; ( id = freedIds.poll() ) != null; )
+        {
+            freedIdCount.decrementAndGet();
+            delegate.freeId( id );
+        }
+    }
+
+    public synchronized void close( boolean shutdown )
+    {
+        for ( IdPool idPool : pools )
+        {
+            synchronized ( idPool )
+            {
+                idPool.release( generation );
+            }
+        }
+        flushFreedIds();
+        delegate.close( shutdown );
+    }
+
+    public long getNumberOfIdsInUse()
+    {
+        long pooled = 0;
+        for ( IdPool idPool : pools )
+        {
+            synchronized ( idPool )
+            {
+                pooled += idPool.remaining( generation );
+            }
+        }
+        return delegate.getNumberOfIdsInUse() - pooled - freedIdCount.get();
+    }
+
+    public long getDefragCount()
+    {
+        return delegate.getDefragCount() + freedIdCount.get();
+    }
+
+    public void delete()
+    {
+        delegate.delete();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ConcurrentIdGenerator[" + delegate + "]";
+    }
+
+    /**
+     * The ids of an {@link IdRange} not yet handed out. Guarded by its own
+     * monitor.
+     */
+    private class IdPool
+    {
+        private long[] defragIds = new long[0];
+        private int defragIndex;
+        private long next;
+        private long end;
+        private int poolGeneration;
+
+        long next( int currentGeneration )
+        {
+            if ( poolGeneration != currentGeneration )
+            {
+                return -1;
+            }
+            if ( defragIndex < defragIds.length )
+            {
+                return defragIds[defragIndex++];
+            }
+            while ( next < end )
+            {
+                long id = next++;
+                // same as IdGeneratorImpl, -1 as an int is reserved
+                if ( id != IdGeneratorImpl.INTEGER_MINUS_ONE )
+                {
+                    return id;
+                }
+            }
+            return -1;
+        }
+
+        void refill( IdRange range, int currentGeneration )
+        {
+            defragIds = range.getDefragIds();
+            defragIndex = 0;
+            next = range.getRangeStart();
+            end = next + range.getRangeLength();
+            poolGeneration = currentGeneration;
+        }
+
+        long remaining( int currentGeneration )
+        {
+            if ( poolGeneration != currentGeneration )
+            {
+                return 0;
+            }
+            return defragIds.length - defragIndex + end - next;
+        }
+
+        void release( int currentGeneration )
+        {
+            for ( long id; ( id = next( currentGeneration ) ) != -1; )
+            {
+                delegate.freeId( id );
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link RelationshipGroups.RecordAccess} reading straight from the stores,
+ * for use where there are no transactions, like in the batch inserter. The
+ * records handed out for change are kept until {@link #flush()} writes them
+ * back, so that the same record is never changed through two copies.
+ */
+public class DirectRecordAccess implements RelationshipGroups.RecordAccess
+{
+    private final RelationshipStore relStore;
+    private final RelationshipGroupStore groupStore;
+    private final Map<Long,RelationshipRecord> relRecords = new HashMap<Long,RelationshipRecord>();
+    private final Map<Long,RelationshipGroupRecord> groupRecords = new HashMap<Long,RelationshipGroupRecord>();
+
+    public DirectRecordAccess( RelationshipStore relStore, RelationshipGroupStore groupStore )
+    {
+        this.relStore = relStore;
+        this.groupStore = groupStore;
+    }
+
+    public RelationshipRecord loadRelationship( long id )
+    {
+        RelationshipRecord record = relRecords.get( id );
+        return record != null ? record : relStore.getRecord( id );
+    }
+
+    public RelationshipRecord getRelationship( long id )
+    {
+        RelationshipRecord record = relRecords.get( id );
+        if ( record == null )
+        {
+            record = relStore.getRecord( id );
+            relRecords.put( id, record );
+        }
+        return record;
+    }
+
+    public RelationshipGroupRecord loadGroup( long id )
+    {
+        RelationshipGroupRecord record = groupRecords.get( id );
+        return record != null ? record : groupStore.getRecord( id );
+    }
+
+    public RelationshipGroupRecord getGroup( long id )
+    {
+        RelationshipGroupRecord record = groupRecords.get( id );
+        if ( record == null )
+        {
+            record = groupStore.getRecord( id );
+            groupRecords.put( id, record );
+        }
+        return record;
+    }
+
+    public RelationshipGroupRecord createGroup( int type )
+    {
+        RelationshipGroupRecord record = new RelationshipGroupRecord( groupStore.nextId(), type );
+        record.setInUse( true );
+        record.setCreated();
+        groupRecords.put( record.getId(), record );
+        return record;
+    }
+
+    /**
+     * Writes the records changed since the last flush to the stores.
+     */
+    public void flush()
+    {
+        for ( RelationshipRecord record : relRecords.values() )
+        {
+            relStore.updateRecord( record );
+        }
+        for ( RelationshipGroupRecord record : groupRecords.values() )
+        {
+            groupStore.updateRecord( record );
+        }
+        relRecords.clear();
+        groupRecords.clear();
+    }
+}
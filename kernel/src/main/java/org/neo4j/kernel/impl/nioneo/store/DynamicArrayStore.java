@@ -36,7 +36,7 @@ import org.neo4j.kernel.impl.util.Bits;
 public class DynamicArrayStore extends AbstractDynamicStore
 {
     // store version, each store ends with this string (byte encoded)
-    static final String VERSION = "ArrayPropertyStore v0.A.0";
+    static final String VERSION = "ArrayPropertyStore v0.A.1";
     public static final String TYPE_DESCRIPTOR = "ArrayPropertyStore";
 
     public DynamicArrayStore( String fileName, Map<?,?> config, IdType idType )
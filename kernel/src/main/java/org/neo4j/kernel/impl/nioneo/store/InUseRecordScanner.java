@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the records of an {@link AbstractStore} sequentially, straight from
+ * the store file, and returns the ids of the records that are in use. The file
+ * is read with positional reads in large chunks so that the operating system
+ * can read ahead, and neither the persistence windows nor the caches are
+ * touched.
+ * <p>
+ * Ids of records that are created after the scan has read past them are not
+ * seen, and records deleted during the scan may or may not be seen. A scanner
+ * is not thread safe, but a store can be scanned in parallel by giving each
+ * thread its own scanner over a separate id range.
+ */
+public class InUseRecordScanner
+{
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private final AbstractStore store;
+    private final FileChannel fileChannel;
+    private final int recordSize;
+    private final ByteBuffer chunk;
+    private final long toId;
+    private long nextId;
+    private long chunkStartId;
+    private int recordsInChunk;
+
+    InUseRecordScanner( AbstractStore store, FileChannel fileChannel, long fromId, long toId,
+            int chunkSize )
+    {
+        this.store = store;
+        this.fileChannel = fileChannel;
+        this.recordSize = store.getRecordSize();
+        this.toId = toId;
+        this.nextId = fromId;
+        this.chunkStartId = fromId;
+        long records = Math.max( 1, Math.min( chunkSize / recordSize, toId - fromId ) );
+        this.chunk = ByteBuffer.allocate( (int) records * recordSize );
+    }
+
+    /**
+     * @return the id of the next record in use, or -1 if there are no more
+     *         records in use in the scanned range.
+     */
+    public long next()
+    {
+        while ( nextId < toId )
+        {
+            if ( nextId >= chunkStartId + recordsInChunk && !readChunk() )
+            {
+                nextId = toId;
+                break;
+            }
+            long id = nextId++;
+            chunk.position( (int) (id - chunkStartId) * recordSize );
+            if ( store.isRecordInUse( chunk ) )
+            {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    private boolean readChunk()
+    {
+        long position = nextId * recordSize;
+        try
+        {
+            long bytes = Math.min( fileChannel.size() - position, (toId - nextId) * recordSize );
+            chunk.clear();
+            chunk.limit( (int) Math.max( 0, Math.min( chunk.capacity(), bytes ) ) );
+            while ( chunk.hasRemaining() )
+            {
+                if ( fileChannel.read( chunk, position + chunk.position() ) <= 0 )
+                {
+                    break;
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new UnderlyingStorageException( "Unable to read records from "
+                + store.getStorageFileName() + " @[" + position + "]", e );
+        }
+        chunkStartId = nextId;
+        recordsInChunk = chunk.position() / recordSize;
+        return recordsInChunk > 0;
+    }
+}
@@ -98,12 +98,21 @@ abstract class LockableWindow implements PersistenceWindow
         }
     }
     
-    synchronized void lock()
+    /**
+     * Locks this window for the current thread, waiting for other threads
+     * holding it to unlock it first.
+     *
+     * @return <CODE>true</CODE> if the current thread had to wait for another
+     *         thread to release the window
+     */
+    synchronized boolean lock()
     {
         Thread currentThread = Thread.currentThread();
         LockElement le = new LockElement( currentThread );
+        boolean contended = false;
         while ( lockCount > 0 && lockingThread != currentThread )
         {
+            contended = true;
             waitingThreadList.addFirst( le );
             try
             {
@@ -118,6 +127,7 @@ abstract class LockableWindow implements PersistenceWindow
         lockingThread = currentThread;
         le.movedOn = true;
         marked--;
+        return contended;
     }
 
     synchronized void unLock()
@@ -143,6 +153,15 @@ abstract class LockableWindow implements PersistenceWindow
         }
     }
 
+    /**
+     * @return <CODE>true</CODE> if no thread holds, waits for or has marked
+     *         this window, i.e. it can be unmapped
+     */
+    synchronized boolean isFree()
+    {
+        return lockCount == 0 && marked == 0;
+    }
+
     synchronized int getWaitingThreadsCount()
     {
         return waitingThreadList.size();
@@ -30,6 +30,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 
+import org.neo4j.kernel.Config;
 import org.neo4j.kernel.IdGeneratorFactory;
 import org.neo4j.kernel.IdType;
 import org.neo4j.kernel.impl.core.LastCommittedTxIdSetter;
@@ -58,12 +59,14 @@ public class NeoStore extends AbstractStore
      */
     public static final int RECORD_SIZE = 9;
     private static final int DEFAULT_REL_GRAB_SIZE = 100;
+    private static final int DEFAULT_DENSE_NODE_THRESHOLD = 50;
 
     public static final String DEFAULT_NAME = "neostore";
 
     private NodeStore nodeStore;
     private PropertyStore propStore;
     private RelationshipStore relStore;
+    private RelationshipGroupStore relGroupStore;
     private RelationshipTypeStore relTypeStore;
     private final LastCommittedTxIdSetter lastCommittedTxIdSetter;
     private final IdGeneratorFactory idGeneratorFactory;
@@ -72,6 +75,8 @@ public class NeoStore extends AbstractStore
     private long lastCommittedTx = -1;
 
     private final int REL_GRAB_SIZE;
+    private final int denseNodeThreshold;
+    private final RelationshipCountHints relationshipCountHints = new RelationshipCountHints( 16 );
 
     public NeoStore( Map<?,?> config )
     {
@@ -86,6 +91,16 @@ public class NeoStore extends AbstractStore
             }
         }
         REL_GRAB_SIZE = relGrabSize;
+        int threshold = DEFAULT_DENSE_NODE_THRESHOLD;
+        if ( getConfig() != null )
+        {
+            String configuredThreshold = (String) getConfig().get( Config.DENSE_NODE_THRESHOLD );
+            if ( configuredThreshold != null )
+            {
+                threshold = Integer.parseInt( configuredThreshold );
+            }
+        }
+        denseNodeThreshold = threshold;
         lastCommittedTxIdSetter = (LastCommittedTxIdSetter)
                 config.get( LastCommittedTxIdSetter.class );
         idGeneratorFactory = (IdGeneratorFactory) config.get( IdGeneratorFactory.class );
@@ -198,6 +213,7 @@ public class NeoStore extends AbstractStore
         relTypeStore = new RelationshipTypeStore( getStorageFileName() + ".relationshiptypestore.db", getConfig() );
         propStore = new PropertyStore( getStorageFileName() + ".propertystore.db", getConfig() );
         relStore = new RelationshipStore( getStorageFileName() + ".relationshipstore.db", getConfig() );
+        relGroupStore = new RelationshipGroupStore( getStorageFileName() + ".relationshipgroupstore.db", getConfig() );
         nodeStore = new NodeStore( getStorageFileName() + ".nodestore.db", getConfig() );
     }
 
@@ -263,6 +279,11 @@ public class NeoStore extends AbstractStore
             relStore.close();
             relStore = null;
         }
+        if ( relGroupStore != null )
+        {
+            relGroupStore.close();
+            relGroupStore = null;
+        }
         if ( nodeStore != null )
         {
             nodeStore.close();
@@ -274,13 +295,14 @@ public class NeoStore extends AbstractStore
     public void flushAll()
     {
         if ( relTypeStore == null || propStore == null || relStore == null ||
-                nodeStore == null )
+                relGroupStore == null || nodeStore == null )
         {
             return;
         }
         relTypeStore.flushAll();
         propStore.flushAll();
         relStore.flushAll();
+        relGroupStore.flushAll();
         nodeStore.flushAll();
     }
 
@@ -325,6 +347,7 @@ public class NeoStore extends AbstractStore
         createEmptyStore( fileName, buildTypeDescriptorAndVersion( TYPE_DESCRIPTOR ), idGeneratorFactory, fileSystem );
         NodeStore.createStore( fileName + ".nodestore.db", config );
         RelationshipStore.createStore( fileName + ".relationshipstore.db", idGeneratorFactory, fileSystem );
+        RelationshipGroupStore.createStore( fileName + ".relationshipgroupstore.db", idGeneratorFactory, fileSystem );
         PropertyStore.createStore( fileName + ".propertystore.db", config );
         RelationshipTypeStore.createStore( fileName
             + ".relationshiptypestore.db", config );
@@ -602,6 +625,16 @@ public class NeoStore extends AbstractStore
         return relStore;
     }
 
+    /**
+     * The relationship group store.
+     *
+     * @return The relationship group store
+     */
+    public RelationshipGroupStore getRelationshipGroupStore()
+    {
+        return relGroupStore;
+    }
+
     /**
      * Returns the relationship type store.
      *
@@ -628,6 +661,7 @@ public class NeoStore extends AbstractStore
         relTypeStore.makeStoreOk();
         propStore.makeStoreOk();
         relStore.makeStoreOk();
+        relGroupStore.makeStoreOk();
         nodeStore.makeStoreOk();
         super.makeStoreOk();
         isStarted = true;
@@ -639,6 +673,7 @@ public class NeoStore extends AbstractStore
         relTypeStore.rebuildIdGenerators();
         propStore.rebuildIdGenerators();
         relStore.rebuildIdGenerators();
+        relGroupStore.rebuildIdGenerators();
         nodeStore.rebuildIdGenerators();
         super.rebuildIdGenerators();
     }
@@ -649,6 +684,7 @@ public class NeoStore extends AbstractStore
         relTypeStore.updateIdGenerators();
         propStore.updateIdGenerators();
         relStore.updateHighId();
+        relGroupStore.updateHighId();
         nodeStore.updateHighId();
     }
 
@@ -657,6 +693,20 @@ public class NeoStore extends AbstractStore
         return REL_GRAB_SIZE;
     }
 
+    /**
+     * @return the number of relationships a node can have before its
+     * relationships are grouped by type and direction.
+     */
+    public int getDenseNodeThreshold()
+    {
+        return denseNodeThreshold;
+    }
+
+    public RelationshipCountHints getRelationshipCountHints()
+    {
+        return relationshipCountHints;
+    }
+
     @Override
     public List<WindowPoolStats> getAllWindowPoolStats()
     {
@@ -664,6 +714,7 @@ public class NeoStore extends AbstractStore
         list.addAll( nodeStore.getAllWindowPoolStats() );
         list.addAll( propStore.getAllWindowPoolStats() );
         list.addAll( relStore.getAllWindowPoolStats() );
+        list.addAll( relGroupStore.getAllWindowPoolStats() );
         list.addAll( relTypeStore.getAllWindowPoolStats() );
         return list;
     }
@@ -671,7 +722,8 @@ public class NeoStore extends AbstractStore
     public boolean isStoreOk()
     {
         return getStoreOk() && relTypeStore.getStoreOk() &&
-            propStore.getStoreOk() && relStore.getStoreOk() && nodeStore.getStoreOk();
+            propStore.getStoreOk() && relStore.getStoreOk() && relGroupStore.getStoreOk() &&
+            nodeStore.getStoreOk();
     }
 
     @Override
@@ -680,6 +732,7 @@ public class NeoStore extends AbstractStore
         super.logVersions( logger );
         nodeStore.logVersions( logger );
         relStore.logVersions( logger );
+        relGroupStore.logVersions( logger );
         relTypeStore.logVersions( logger );
         propStore.logVersions( logger );
     }
@@ -688,6 +741,7 @@ public class NeoStore extends AbstractStore
     {
         nodeStore.logIdUsage( msgLog );
         relStore.logIdUsage( msgLog );
+        relGroupStore.logIdUsage( msgLog );
         relTypeStore.logIdUsage( msgLog );
         propStore.logIdUsage( msgLog );
     }
@@ -23,11 +23,24 @@ public class NodeRecord extends PrimitiveRecord
 {
     private final long committedNextRel;
     private long nextRel;
+    private final boolean committedDense;
+    private boolean dense;
 
     public NodeRecord( long id, long nextRel, long nextProp )
+    {
+        this( id, false, nextRel, nextProp );
+    }
+
+    /**
+     * @param dense whether or not {@code nextRel} refers to the first
+     * {@link RelationshipGroupRecord relationship group} of this node rather
+     * than to its first relationship.
+     */
+    public NodeRecord( long id, boolean dense, long nextRel, long nextProp )
     {
         super( id, nextProp );
         this.committedNextRel = this.nextRel = nextRel;
+        this.committedDense = this.dense = dense;
     }
 
     public long getNextRel()
@@ -45,10 +58,25 @@ public class NodeRecord extends PrimitiveRecord
         return isCreated() ? Record.NO_NEXT_RELATIONSHIP.intValue() : committedNextRel;
     }
 
+    public boolean isDense()
+    {
+        return dense;
+    }
+
+    public void setDense( boolean dense )
+    {
+        this.dense = dense;
+    }
+
+    public boolean isCommittedDense()
+    {
+        return isCreated() ? false : committedDense;
+    }
+
     @Override
     public String toString()
     {
-        return new StringBuilder( "Node[" ).append( getId() ).append( ",used=" ).append( inUse() ).append( ",rel=" ).append(
+        return new StringBuilder( "Node[" ).append( getId() ).append( ",used=" ).append( inUse() ).append( dense ? ",group=" : ",rel=" ).append(
                 nextRel ).append( ",prop=" ).append( getNextProp() ).append( "]" ).toString();
     }
 
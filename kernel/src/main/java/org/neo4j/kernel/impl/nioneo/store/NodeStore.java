@@ -37,6 +37,9 @@ public class NodeStore extends AbstractStore implements Store, RecordStore<NodeR
     // in_use(byte)+next_rel_id(int)+next_prop_id(int)
     public static final int RECORD_SIZE = 9;
 
+    // [    ,x   ] dense, next_rel_id refers to the first relationship group
+    private static final short DENSE = 0x8;
+
     public NodeStore( String fileName, Map<?,?> config )
     {
         super( fileName, config, IdType.NODE );
@@ -204,7 +207,8 @@ public class NodeStore extends AbstractStore implements Store, RecordStore<NodeR
         Buffer buffer = window.getOffsettedBuffer( id );
 
         // [    ,   x] in use bit
-        // [    ,xxx ] higher bits for rel id
+        // [    , xx ] higher bits for rel id
+        // [    ,x   ] dense
         // [xxxx,    ] higher bits for prop id
         long inUseByte = buffer.get();
 
@@ -223,10 +227,12 @@ public class NodeStore extends AbstractStore implements Store, RecordStore<NodeR
         long nextRel = buffer.getUnsignedInt();
         long nextProp = buffer.getUnsignedInt();
 
-        long relModifier = (inUseByte & 0xEL) << 31;
+        long relModifier = (inUseByte & 0x6L) << 31;
         long propModifier = (inUseByte & 0xF0L) << 28;
+        boolean dense = (inUseByte & DENSE) != 0;
 
-        NodeRecord nodeRecord = new NodeRecord( id, longFromIntAndMod( nextRel, relModifier ), longFromIntAndMod( nextProp, propModifier ) );
+        NodeRecord nodeRecord = new NodeRecord( id, dense, longFromIntAndMod( nextRel, relModifier ),
+                longFromIntAndMod( nextProp, propModifier ) );
         nodeRecord.setInUse( inUse );
         return nodeRecord;
     }
@@ -240,14 +246,19 @@ public class NodeStore extends AbstractStore implements Store, RecordStore<NodeR
             long nextRel = record.getNextRel();
             long nextProp = record.getNextProp();
 
-            short relModifier = nextRel == Record.NO_NEXT_RELATIONSHIP.intValue() ? 0 : (short)((nextRel & 0x700000000L) >> 31);
+            short relModifier = nextRel == Record.NO_NEXT_RELATIONSHIP.intValue() ? 0 : (short)((nextRel & 0x300000000L) >> 31);
             short propModifier = nextProp == Record.NO_NEXT_PROPERTY.intValue() ? 0 : (short)((nextProp & 0xF00000000L) >> 28);
 
             // [    ,   x] in use bit
-            // [    ,xxx ] higher bits for rel id
+            // [    , xx ] higher bits for rel id
+            // [    ,x   ] dense
             // [xxxx,    ] higher bits for prop id
             short inUseUnsignedByte = ( record.inUse() ? Record.IN_USE : Record.NOT_IN_USE ).byteValue();
             inUseUnsignedByte = (short) ( inUseUnsignedByte | relModifier | propModifier );
+            if ( record.isDense() )
+            {
+                inUseUnsignedByte |= DENSE;
+            }
             buffer.put( (byte) inUseUnsignedByte ).putInt( (int) nextRel ).putInt( (int) nextProp );
         }
         else
@@ -26,11 +26,20 @@ import java.nio.channels.FileChannel.MapMode;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.neo4j.helpers.Counter;
+
 /**
  * Manages {@link PersistenceWindow persistence windows} for a store. Each store
  * can configure how much memory it has for
@@ -38,6 +47,11 @@ import java.util.logging.Logger;
  * make the most efficient use of those windows by allocating them in such a way
  * that the most frequently used records/blocks (be it for read or write
  * operations) are encapsulated by a memory mapped persistence window.
+ * <p>
+ * Acquiring a window doesn't lock the pool. The brick array is only replaced,
+ * never modified in place, so it's read without locking and each brick guards
+ * its own window. Windows are remapped according to brick hit counts by a
+ * background thread once enough acquires have missed a mapped window.
  */
 public class PersistenceWindowPool
 {
@@ -46,25 +60,43 @@ public class PersistenceWindowPool
     private final String storeName;
     // == recordSize
     private final int blockSize;
-    private FileChannel fileChannel;
-    private final Map<Integer,PersistenceRow> activeRowWindows =
-        new HashMap<Integer,PersistenceRow>();
+    private volatile FileChannel fileChannel;
+    private final ConcurrentMap<Long,PersistenceRow> activeRowWindows =
+        new ConcurrentHashMap<Long,PersistenceRow>();
     private long availableMem = 0;
     private long memUsed = 0;
-    private int brickCount = 0;
+    private volatile int brickCount = 0;
     private int brickSize = 0;
-    private BrickElement brickArray[] = new BrickElement[0];
-    private int brickMiss = 0;
+    private volatile BrickElement brickArray[] = new BrickElement[0];
+    private final AtomicInteger brickMiss = new AtomicInteger();
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
 
     private static Logger log = Logger.getLogger( PersistenceWindowPool.class
         .getName() );
     private static final int REFRESH_BRICK_COUNT = 50000;
     private final FileChannel.MapMode mapMode;
 
-    private int hit = 0;
-    private int miss = 0;
-    private int switches = 0;
-    private int ooe = 0;
+    // shared by all pools, the thread goes away when there's nothing to refresh
+    private static final Executor REFRESHER = new ThreadPoolExecutor( 0, 1,
+        30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactory()
+        {
+            public Thread newThread( Runnable runnable )
+            {
+                Thread thread = new Thread( runnable, "Neo4j window pool refresher" );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+
+    private final Counter hit = Counter.striped();
+    private final AtomicInteger miss = new AtomicInteger();
+    private final AtomicInteger contended = new AtomicInteger();
+    private volatile int switches = 0;
+    private volatile int ooe = 0;
+    private volatile int refreshCount = 0;
+    private volatile long refreshTime = 0;
+    private volatile long maxRefreshTime = 0;
     private boolean useMemoryMapped = true;
 
     private final boolean readOnly;
@@ -114,76 +146,118 @@ public class PersistenceWindowPool
     {
         LockableWindow window = null;
         boolean readPos = false;
-//        synchronized ( activeRowWindows )
-//        {
-            if ( brickMiss >= REFRESH_BRICK_COUNT )
+        if ( brickSize > 0 )
+        {
+            int brickIndex = (int) (position * blockSize / brickSize);
+            BrickElement[] bricks = brickArray;
+            if ( brickIndex >= bricks.length )
+            {
+                expandBricks( brickIndex + 1 );
+                bricks = brickArray;
+            }
+            BrickElement brick = bricks[brickIndex];
+            window = brick.markWindow();
+            // assert window == null || window.encapsulates( position );
+            brick.setHit();
+        }
+        if ( window == null )
+        {
+            miss.incrementAndGet();
+            if ( brickMiss.incrementAndGet() >= REFRESH_BRICK_COUNT )
+            {
+                scheduleRefresh();
+            }
+            window = markRow( position );
+            if ( operationType == OperationType.READ )
             {
-//                brickMiss = 0;
-                refreshBricks();
+                readPos = true;
             }
-            if ( brickSize > 0 )
+        }
+        else
+        {
+            hit.inc();
+        }
+        if ( window.lock() )
+        {
+            contended.incrementAndGet();
+        }
+        if ( readPos )
+        {
+            ((PersistenceRow) window).readPosition();
+        }
+        window.setOperationType( operationType );
+        return window;
+    }
+
+    /*
+     * Returns the active row for the position, marked. A row is removed from
+     * the active rows by release while holding its monitor and only if it
+     * isn't marked, so checking that the row is still the active one under
+     * the same monitor makes sure we don't mark a row that's been dropped.
+     */
+    private PersistenceRow markRow( long position )
+    {
+        Long key = Long.valueOf( position );
+        while ( true )
+        {
+            PersistenceRow dpw = activeRowWindows.get( key );
+            if ( dpw == null )
             {
-                int brickIndex = (int) (position * blockSize / brickSize);
-                if ( brickIndex < brickArray.length )
+                PersistenceRow newRow = new PersistenceRow( position,
+                    blockSize, fileChannel );
+                dpw = activeRowWindows.putIfAbsent( key, newRow );
+                if ( dpw == null )
                 {
-                    synchronized ( this )
-                    {
-                        window = brickArray[brickIndex].getWindow();
-                        if ( window != null )
-                        {
-                            window.mark();
-                        }
-                    }
-                    // assert window == null || window.encapsulates( position );
-                    brickArray[brickIndex].setHit();
+                    dpw = newRow;
                 }
-                else
+            }
+            synchronized ( dpw )
+            {
+                if ( activeRowWindows.get( key ) == dpw )
                 {
-                    expandBricks( brickIndex + 1 );
-                    window = brickArray[brickIndex].getWindow();
+                    dpw.mark();
+                    return dpw;
                 }
             }
-            if ( window == null )
+        }
+    }
+
+    private void scheduleRefresh()
+    {
+        if ( brickSize <= 0 )
+        {
+            // memory mapped turned off, nothing to refresh
+            brickMiss.set( 0 );
+            return;
+        }
+        if ( refreshScheduled.compareAndSet( false, true ) )
+        {
+            REFRESHER.execute( new Runnable()
             {
-                synchronized ( this )
+                public void run()
                 {
-                    miss++;
-                    brickMiss++;
-
-                    PersistenceRow dpw = activeRowWindows.get( (int) position );
-
-                    if ( dpw == null )
+                    try
+                    {
+                        refreshBricks();
+                    }
+                    catch ( RuntimeException e )
                     {
-                        dpw = new PersistenceRow( position, blockSize,
-                            fileChannel );
+                        logWarn( "Unable to refresh memory mapped windows", e );
                     }
-                    if ( operationType == OperationType.READ )
+                    finally
                     {
-                        readPos = true;
+                        refreshScheduled.set( false );
                     }
-                    window = dpw;
-                    activeRowWindows.put( (int) position, dpw );
-                    window.mark();
                 }
-            }
-            else
-            {
-                hit++;
-            }
-//        }
-        window.lock();
-        if ( readPos )
-        {
-            ((PersistenceRow) window).readPosition();
+            } );
         }
-        window.setOperationType( operationType );
-        return window;
     }
 
     void dumpStatistics()
     {
-        log.finest( storeName + " hit=" + hit + " miss=" + miss + " switches="
-            + switches + " ooe=" + ooe );
+        log.finest( storeName + " hit=" + hit.count() + " miss=" + miss
+            + " switches=" + switches + " ooe=" + ooe + " contended="
+            + contended + " refreshes=" + refreshCount );
     }
 
     /**
@@ -201,12 +275,11 @@ public class PersistenceWindowPool
         {
             PersistenceRow dpw = (PersistenceRow) window;
             dpw.writeOut();
-            synchronized ( this )
+            synchronized ( dpw )
             {
                 if ( dpw.getWaitingThreadsCount() == 0 && !dpw.isMarked() )
                 {
-                    int key = (int) dpw.position();
-                    activeRowWindows.remove( key );
+                    activeRowWindows.remove( dpw.position(), dpw );
                 }
             }
             dpw.unLock();
@@ -263,11 +336,31 @@ public class PersistenceWindowPool
         }
     }
 
+    /**
+     * Writes out the changes buffered in plain windows so that they can be
+     * seen by someone reading the file channel directly. Unlike
+     * {@link #flushAll()} nothing is forced to disk, memory mapped windows
+     * already share the page cache with the file channel.
+     */
+    void writeOutAll()
+    {
+        if ( readOnly ) return;
+
+        for ( BrickElement element : brickArray )
+        {
+            PersistenceWindow window = element.getWindow();
+            if ( window != null && !(window instanceof MappedPersistenceWindow) )
+            {
+                window.force();
+            }
+        }
+    }
+
     private static class BrickElement
     {
         private final int index;
         private int hitCount;
-        private LockableWindow window = null;
+        private volatile LockableWindow window = null;
 
         BrickElement( int index )
         {
@@ -284,6 +377,21 @@ public class PersistenceWindowPool
             return window;
         }
 
+        /*
+         * Marks and returns the window, or returns null if not mapped. Done
+         * under the brick monitor so the window can't be unmapped between
+         * getting and marking it, see unmap.
+         */
+        synchronized LockableWindow markWindow()
+        {
+            LockableWindow result = window;
+            if ( result != null )
+            {
+                result.mark();
+            }
+            return result;
+        }
+
         int index()
         {
             return index;
@@ -421,9 +529,8 @@ public class PersistenceWindowPool
             return;
         }
         ArrayList<BrickElement> mappedBricks = new ArrayList<BrickElement>();
-        for ( int i = 0; i < brickCount; i++ )
+        for ( BrickElement be : brickArray )
         {
-            BrickElement be = brickArray[i];
             if ( be.getWindow() != null )
             {
                 mappedBricks.add( be );
@@ -432,34 +539,69 @@ public class PersistenceWindowPool
         Collections.sort( mappedBricks, new BrickSorter() );
         for ( int i = 0; i < nr && i < mappedBricks.size(); i++ )
         {
-            BrickElement mappedBrick = mappedBricks.get( i );
-            LockableWindow window = mappedBrick.getWindow();
-            if ( window.getWaitingThreadsCount() == 0 && !window.isMarked() )
+            unmap( mappedBricks.get( i ) );
+        }
+    }
+
+    /*
+     * Unmaps the window of a brick unless it's in use. Acquiring threads mark
+     * windows under the brick monitor so once the window has been removed
+     * from the brick here no other thread can get hold of it. Must be called
+     * holding the pool monitor.
+     */
+    private boolean unmap( BrickElement brick )
+    {
+        synchronized ( brick )
+        {
+            LockableWindow window = brick.getWindow();
+            if ( window == null || !window.isFree() )
             {
-                if ( !readOnly ) window.writeOut();
-                mappedBrick.setWindow( null );
-                memUsed -= brickSize;
+                return false;
             }
+            if ( !readOnly ) window.writeOut();
+            brick.setWindow( null );
         }
+        memUsed -= brickSize;
+        return true;
     }
 
-    private synchronized void refreshBricks()
+    synchronized void refreshBricks()
     {
-        if ( brickMiss < REFRESH_BRICK_COUNT )
+        if ( brickMiss.get() < REFRESH_BRICK_COUNT )
         {
             return;
         }
-        brickMiss = 0;
-        if ( brickSize <= 0 )
+        brickMiss.set( 0 );
+        if ( brickSize <= 0 || fileChannel == null )
         {
-            // memory mapped turned off
+            // memory mapped turned off or pool closed
             return;
         }
+        long startTime = System.currentTimeMillis();
+        try
+        {
+            remapBricks();
+        }
+        finally
+        {
+            long time = System.currentTimeMillis() - startTime;
+            refreshTime += time;
+            if ( time > maxRefreshTime )
+            {
+                maxRefreshTime = time;
+            }
+            refreshCount++;
+        }
+    }
+
+    private void remapBricks()
+    {
         ArrayList<BrickElement> nonMappedBricks = new ArrayList<BrickElement>();
         ArrayList<BrickElement> mappedBricks = new ArrayList<BrickElement>();
-        for ( int i = 0; i < brickCount; i++ )
+        BrickElement[] bricks = brickArray;
+        for ( int i = 0; i < bricks.length; i++ )
         {
-            BrickElement be = brickArray[i];
+            BrickElement be = bricks[i];
             if ( be.getWindow() != null )
             {
                 mappedBricks.add( be );
@@ -485,9 +627,7 @@ public class PersistenceWindowPool
             }
             try
             {
-                nonMappedBrick.setWindow(
-                    allocateNewWindow( nonMappedBrick.index() ) );
-                memUsed += brickSize;
+                map( nonMappedBrick );
             }
             catch ( MappedMemException e )
             {
@@ -511,17 +651,11 @@ public class PersistenceWindowPool
             {
                 break;
             }
-            LockableWindow window = mappedBrick.getWindow();
-            if ( window.getWaitingThreadsCount() == 0 && !window.isMarked() )
+            if ( unmap( mappedBrick ) )
             {
-                if ( !readOnly ) window.writeOut();
-                mappedBrick.setWindow( null );
-                memUsed -= brickSize;
                 try
                 {
-                    nonMappedBrick.setWindow(
-                        allocateNewWindow( nonMappedBrick.index() ) );
-                    memUsed += brickSize;
+                    map( nonMappedBrick );
                     switches++;
                 }
                 catch ( MappedMemException e )
@@ -538,6 +672,17 @@ public class PersistenceWindowPool
         }
     }
 
+    // must hold the pool monitor
+    private void map( BrickElement brick )
+    {
+        LockableWindow window = allocateNewWindow( brick.index() );
+        synchronized ( brick )
+        {
+            brick.setWindow( window );
+        }
+        memUsed += brickSize;
+    }
+
     private synchronized void expandBricks( int newBrickCount )
     {
         if ( newBrickCount > brickCount )
@@ -571,8 +716,8 @@ public class PersistenceWindowPool
                     }
                 }
             }
-            brickArray = tmpArray;
             brickCount = tmpArray.length;
+            brickArray = tmpArray;
         }
     }
 
@@ -643,7 +788,10 @@ public class PersistenceWindowPool
 
     WindowPoolStats getStats()
     {
+        int refreshes = refreshCount;
         return new WindowPoolStats( storeName, availableMem, memUsed, brickCount,
-                brickSize, hit, miss, ooe );
+                brickSize, (int) hit.count(), miss.get(), ooe, contended.get(),
+                refreshes, refreshes == 0 ? 0 : refreshTime / refreshes,
+                maxRefreshTime );
     }
 }
\ No newline at end of file
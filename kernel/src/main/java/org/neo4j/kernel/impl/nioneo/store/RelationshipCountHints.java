@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Remembers how many relationships recently seen sparse nodes have, so that
+ * adding a relationship to such a node doesn't have to walk its chain to see
+ * if it has reached the dense node threshold.
+ * <p>
+ * It's a fixed size table where a node shares its slot with every other node
+ * hashing to it, so a count may be gone the next time it's asked for. Counts
+ * are only ever used to decide when to count again, a count that is off just
+ * moves the conversion of a node to dense a bit.
+ */
+public class RelationshipCountHints
+{
+    private static final int COUNT_BITS = 28;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final AtomicLongArray slots;
+    private final int mask;
+
+    public RelationshipCountHints( int sizeExponent )
+    {
+        this.slots = new AtomicLongArray( 1 << sizeExponent );
+        this.mask = (1 << sizeExponent) - 1;
+    }
+
+    /**
+     * @return the number of relationships last set for {@code nodeId}, or
+     * -1 if not known.
+     */
+    public int get( long nodeId )
+    {
+        long slot = slots.get( slotFor( nodeId ) );
+        if ( slot == 0 || (slot >>> COUNT_BITS) != nodeId )
+        {
+            return -1;
+        }
+        return (int) (slot & COUNT_MASK) - 1;
+    }
+
+    public void set( long nodeId, int count )
+    {
+        // count is stored +1 so that an empty slot never looks like a count for node 0
+        long storedCount = Math.min( count + 1L, COUNT_MASK );
+        slots.set( slotFor( nodeId ), (nodeId << COUNT_BITS) | storedCount );
+    }
+
+    public void forget( long nodeId )
+    {
+        int slot = slotFor( nodeId );
+        long current = slots.get( slot );
+        if ( (current >>> COUNT_BITS) == nodeId )
+        {
+            slots.compareAndSet( slot, current, 0 );
+        }
+    }
+
+    private int slotFor( long nodeId )
+    {
+        long hash = nodeId * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & mask;
+    }
+}
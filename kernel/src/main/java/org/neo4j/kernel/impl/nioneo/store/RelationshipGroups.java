@@ -0,0 +1,274 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maintains the relationship chains of dense nodes. The relationships of a
+ * dense node aren't kept in a single chain, but in one chain per relationship
+ * type and direction, the heads of which are kept in the
+ * {@link RelationshipGroupRecord relationship groups} of the node. Records
+ * are read and changed through a {@link RecordAccess} so that the same code
+ * serves transactions, the batch inserter and store migration.
+ */
+public class RelationshipGroups
+{
+    private static final long NO_NEXT = Record.NO_NEXT_RELATIONSHIP.intValue();
+
+    /**
+     * Access to the records of a store, or of a transaction on top of it.
+     */
+    public interface RecordAccess
+    {
+        /**
+         * @return the relationship record with the given id, for reading.
+         */
+        RelationshipRecord loadRelationship( long id );
+
+        /**
+         * @return the relationship record with the given id, which will be
+         * changed by the caller.
+         */
+        RelationshipRecord getRelationship( long id );
+
+        /**
+         * @return the relationship group record with the given id, for
+         * reading.
+         */
+        RelationshipGroupRecord loadGroup( long id );
+
+        /**
+         * @return the relationship group record with the given id, which will
+         * be changed by the caller.
+         */
+        RelationshipGroupRecord getGroup( long id );
+
+        /**
+         * @return a new relationship group record, in use, for the given
+         * relationship type.
+         */
+        RelationshipGroupRecord createGroup( int type );
+    }
+
+    private RelationshipGroups()
+    {
+    }
+
+    /**
+     * Counts the relationships in the chain of a node that isn't dense,
+     * stopping at {@code limit}.
+     *
+     * @return the number of relationships of {@code node}, or {@code limit}
+     * if it has at least that many.
+     */
+    public static int countRelationships( NodeRecord node, int limit, RecordAccess access )
+    {
+        assert !node.isDense() : node;
+        int count = 0;
+        long next = node.getNextRel();
+        while ( next != NO_NEXT && count < limit )
+        {
+            next = getNext( access.loadRelationship( next ), node.getId() );
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Turns {@code node} into a dense node, moving each relationship in its
+     * chain into the chain for its type and direction.
+     */
+    public static void convertToDense( NodeRecord node, RecordAccess access )
+    {
+        assert !node.isDense() : node;
+        long nodeId = node.getId();
+        List<RelationshipRecord> rels = new ArrayList<RelationshipRecord>();
+        for ( long next = node.getNextRel(); next != NO_NEXT; )
+        {
+            RelationshipRecord rel = access.getRelationship( next );
+            rels.add( rel );
+            next = getNext( rel, nodeId );
+        }
+        node.setNextRel( NO_NEXT );
+        node.setDense( true );
+        // added back last to first so that each new chain keeps the order of the old one
+        for ( int i = rels.size() - 1; i >= 0; i-- )
+        {
+            RelationshipRecord rel = rels.get( i );
+            setPrev( rel, nodeId, NO_NEXT );
+            setNext( rel, nodeId, NO_NEXT );
+            connect( node, rel, access );
+        }
+    }
+
+    /**
+     * Links {@code rel} in first in the chain for its type and direction of
+     * the dense {@code node}, creating the relationship group if needed.
+     */
+    public static void connect( NodeRecord node, RelationshipRecord rel, RecordAccess access )
+    {
+        assert node.isDense() : node;
+        long nodeId = node.getId();
+        RelationshipGroupRecord group = getOrCreateGroup( node, rel.getType(), access );
+        long head = getHead( group, rel, nodeId );
+        assert head != rel.getId();
+        setNext( rel, nodeId, head );
+        if ( head != NO_NEXT )
+        {
+            setPrev( access.getRelationship( head ), nodeId, rel.getId() );
+        }
+        setHead( group, rel, nodeId, rel.getId() );
+    }
+
+    /**
+     * Updates the chain head of the dense {@code node} when {@code rel}, the
+     * first relationship in its chain, is removed from it. The relationship
+     * group is deleted if that leaves it empty.
+     *
+     * @param next the relationship following {@code rel} in the chain.
+     */
+    public static void disconnectHead( NodeRecord node, RelationshipRecord rel, long next, RecordAccess access )
+    {
+        assert node.isDense() : node;
+        RelationshipGroupRecord group = findGroup( node, rel.getType(), access );
+        if ( group == null )
+        {
+            throw new InvalidRecordException( node + " has no relationship group for " + rel );
+        }
+        setHead( group, rel, node.getId(), next );
+        if ( group.isEmpty() )
+        {
+            deleteGroup( node, group, access );
+        }
+    }
+
+    /**
+     * @return the relationship group of the given type of the dense
+     * {@code node}, for change, or {@code null} if it has none.
+     */
+    public static RelationshipGroupRecord findGroup( NodeRecord node, int type, RecordAccess access )
+    {
+        for ( long next = node.getNextRel(); next != NO_NEXT; )
+        {
+            RelationshipGroupRecord group = access.loadGroup( next );
+            if ( group.getType() == type )
+            {
+                return access.getGroup( next );
+            }
+            next = group.getNext();
+        }
+        return null;
+    }
+
+    private static RelationshipGroupRecord getOrCreateGroup( NodeRecord node, int type, RecordAccess access )
+    {
+        RelationshipGroupRecord group = findGroup( node, type, access );
+        if ( group == null )
+        {
+            group = access.createGroup( type );
+            group.setOwningNode( node.getId() );
+            group.setNext( node.getNextRel() );
+            node.setNextRel( group.getId() );
+        }
+        return group;
+    }
+
+    private static void deleteGroup( NodeRecord node, RelationshipGroupRecord group, RecordAccess access )
+    {
+        if ( node.getNextRel() == group.getId() )
+        {
+            node.setNextRel( group.getNext() );
+        }
+        else
+        {
+            long previous = node.getNextRel();
+            while ( access.loadGroup( previous ).getNext() != group.getId() )
+            {
+                previous = access.loadGroup( previous ).getNext();
+            }
+            access.getGroup( previous ).setNext( group.getNext() );
+        }
+        group.setInUse( false );
+    }
+
+    private static long getHead( RelationshipGroupRecord group, RelationshipRecord rel, long nodeId )
+    {
+        if ( rel.getFirstNode() == rel.getSecondNode() )
+        {
+            return group.getFirstLoop();
+        }
+        return rel.getFirstNode() == nodeId ? group.getFirstOut() : group.getFirstIn();
+    }
+
+    private static void setHead( RelationshipGroupRecord group, RelationshipRecord rel, long nodeId, long head )
+    {
+        if ( rel.getFirstNode() == rel.getSecondNode() )
+        {
+            group.setFirstLoop( head );
+        }
+        else if ( rel.getFirstNode() == nodeId )
+        {
+            group.setFirstOut( head );
+        }
+        else
+        {
+            group.setFirstIn( head );
+        }
+    }
+
+    private static long getNext( RelationshipRecord rel, long nodeId )
+    {
+        if ( rel.getFirstNode() == nodeId )
+        {
+            return rel.getFirstNextRel();
+        }
+        if ( rel.getSecondNode() == nodeId )
+        {
+            return rel.getSecondNextRel();
+        }
+        throw new InvalidRecordException( "Node[" + nodeId + "] is neither first nor second node of " + rel );
+    }
+
+    private static void setNext( RelationshipRecord rel, long nodeId, long next )
+    {
+        if ( rel.getFirstNode() == nodeId )
+        {
+            rel.setFirstNextRel( next );
+        }
+        if ( rel.getSecondNode() == nodeId )
+        {
+            rel.setSecondNextRel( next );
+        }
+    }
+
+    private static void setPrev( RelationshipRecord rel, long nodeId, long prev )
+    {
+        if ( rel.getFirstNode() == nodeId )
+        {
+            rel.setFirstPrevRel( prev );
+        }
+        if ( rel.getSecondNode() == nodeId )
+        {
+            rel.setSecondPrevRel( prev );
+        }
+    }
+}
@@ -20,7 +20,10 @@
 package org.neo4j.kernel.impl.nioneo.store;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.neo4j.kernel.AbstractGraphDatabase;
@@ -40,6 +43,7 @@ public class StoreAccess
     // Top level stores
     private final RecordStore<NodeRecord> nodeStore;
     private final RecordStore<RelationshipRecord> relStore;
+    private final RecordStore<RelationshipGroupRecord> relGroupStore;
     private final RecordStore<RelationshipTypeRecord> relTypeStore;
     private final RecordStore<PropertyRecord> propStore;
     // Transitive stores
@@ -60,8 +64,18 @@ public class StoreAccess
         params.put( StringLogger.class, StringLogger.SYSTEM );
         // these need to be made ok
         NodeStore nodeStore; RelationshipStore relStore; RelationshipTypeStore relTypeStore; PropertyStore propStore = null;
+        RelationshipGroupStore relGroupStore = null;
         this.nodeStore = wrapStore( nodeStore = new NodeStore( path + "/neostore.nodestore.db", params ) );
         this.relStore = wrapStore( relStore = new RelationshipStore( path + "/neostore.relationshipstore.db", params ) );
+        if ( new File( path + "/neostore.relationshipgroupstore.db" ).exists() )
+        {
+            this.relGroupStore = wrapStore( relGroupStore = new RelationshipGroupStore(
+                    path + "/neostore.relationshipgroupstore.db", params ) );
+        }
+        else
+        {
+            this.relGroupStore = null;
+        }
         this.relTypeStore = wrapStore( relTypeStore = new RelationshipTypeStore(
                 path + "/neostore.relationshiptypestore.db", params ) );
         this.typeNameStore = wrapStore( relTypeStore.getNameStore() );
@@ -84,6 +98,7 @@ public class StoreAccess
         this.closable = true;
         nodeStore.makeStoreOk();
         relStore.makeStoreOk();
+        if ( relGroupStore != null ) relGroupStore.makeStoreOk();
         if ( propStore != null ) propStore.makeStoreOk();
         relTypeStore.makeStoreOk();
     }
@@ -106,15 +121,22 @@ public class StoreAccess
 
     public StoreAccess( NeoStore store )
     {
-        this( store.getNodeStore(), store.getRelationshipStore(), store.getPropertyStore(),
-                store.getRelationshipTypeStore() );
+        this( store.getNodeStore(), store.getRelationshipStore(), store.getRelationshipGroupStore(),
+                store.getPropertyStore(), store.getRelationshipTypeStore() );
     }
 
     public StoreAccess( NodeStore nodeStore, RelationshipStore relStore, PropertyStore propStore,
             RelationshipTypeStore typeStore )
+    {
+        this( nodeStore, relStore, null, propStore, typeStore );
+    }
+
+    public StoreAccess( NodeStore nodeStore, RelationshipStore relStore, RelationshipGroupStore relGroupStore,
+            PropertyStore propStore, RelationshipTypeStore typeStore )
     {
         this.nodeStore = wrapStore( nodeStore );
         this.relStore = wrapStore( relStore );
+        this.relGroupStore = relGroupStore != null ? wrapStore( relGroupStore ) : null;
         this.propStore = wrapStore( propStore );
         this.stringStore = wrapStore( propStore.getStringStore() );
         this.arrayStore = wrapStore( propStore.getArrayStore() );
@@ -134,6 +156,15 @@ public class StoreAccess
         return relStore;
     }
 
+    /**
+     * @return the relationship group store, or {@code null} if the store
+     * predates relationship groups.
+     */
+    public RecordStore<RelationshipGroupRecord> getRelationshipGroupStore()
+    {
+        return relGroupStore;
+    }
+
     public RecordStore<PropertyRecord> getPropertyStore()
     {
         return propStore;
@@ -175,6 +206,7 @@ public class StoreAccess
         {
             nodeStore.close();
             relStore.close();
+            if ( relGroupStore != null ) relGroupStore.close();
             relTypeStore.close();
             if ( propStore != null ) propStore.close();
         }
@@ -193,12 +225,20 @@ public class StoreAccess
 
     protected RecordStore<?>[] allStores()
     {
-        if ( propStore == null ) return new RecordStore<?>[] { // no property stores
-                nodeStore, relStore, relTypeStore, typeNameStore };
-        return new RecordStore<?>[] {
-                nodeStore, relStore, propStore, stringStore, arrayStore, // basic
-                relTypeStore, propIndexStore, typeNameStore, propKeyStore, // internal
-                };
+        List<RecordStore<?>> stores = new ArrayList<RecordStore<?>>();
+        stores.add( nodeStore );
+        stores.add( relStore );
+        if ( relGroupStore != null ) stores.add( relGroupStore );
+        if ( propStore == null ) // no property stores
+        {
+            stores.addAll( Arrays.<RecordStore<?>>asList( relTypeStore, typeNameStore ) );
+        }
+        else
+        {
+            stores.addAll( Arrays.<RecordStore<?>>asList( propStore, stringStore, arrayStore, // basic
+                    relTypeStore, propIndexStore, typeNameStore, propKeyStore ) ); // internal
+        }
+        return stores.toArray( new RecordStore<?>[stores.size()] );
     }
 
     protected <R extends AbstractBaseRecord> RecordStore<R> wrapStore( RecordStore<R> store )
@@ -222,6 +262,7 @@ public class StoreAccess
         params.put( "neostore.propertystore.db.strings.mapped_memory", "130M" );
         params.put( "neostore.propertystore.db.arrays.mapped_memory", "130M" );
         params.put( "neostore.relationshipstore.db.mapped_memory", "100M" );
+        params.put( "neostore.relationshipgroupstore.db.mapped_memory", "10M" );
         // if on windows, default no memory mapping
         String nameOs = System.getProperty( "os.name" );
         if ( nameOs.startsWith( "Windows" ) )
@@ -33,8 +33,21 @@ public class WindowPoolStats
     private final int missCount;
     private final int oomCount;
     
+    private final int contendedCount;
+    private final int refreshCount;
+    private final long avgRefreshTime;
+    private final long maxRefreshTime;
+    
     public WindowPoolStats( String name, long memAvail, long memUsed, int windowCount,
             int windowSize, int hitCount, int missCount, int oomCount )
+    {
+        this( name, memAvail, memUsed, windowCount, windowSize, hitCount, missCount, oomCount,
+                0, 0, 0, 0 );
+    }
+    
+    public WindowPoolStats( String name, long memAvail, long memUsed, int windowCount,
+            int windowSize, int hitCount, int missCount, int oomCount, int contendedCount,
+            int refreshCount, long avgRefreshTime, long maxRefreshTime )
     {
         this.name = name;
         this.memAvail = memAvail;
@@ -44,6 +57,10 @@ public class WindowPoolStats
         this.hitCount = hitCount;
         this.missCount = missCount;
         this.oomCount = oomCount;
+        this.contendedCount = contendedCount;
+        this.refreshCount = refreshCount;
+        this.avgRefreshTime = avgRefreshTime;
+        this.maxRefreshTime = maxRefreshTime;
     }
     
     public String getName()
@@ -85,4 +102,39 @@ public class WindowPoolStats
     {
         return oomCount;
     }
+
+    /**
+     * @return the number of times a thread acquiring a window had to wait
+     * for another thread to release it.
+     */
+    public int getContendedCount()
+    {
+        return contendedCount;
+    }
+
+    /**
+     * @return the number of times the memory mapped windows have been
+     * remapped according to brick hit counts.
+     */
+    public int getRefreshCount()
+    {
+        return refreshCount;
+    }
+
+    /**
+     * @return average time, in milliseconds, a remapping of the windows took.
+     */
+    public long getAvgRefreshTime()
+    {
+        return avgRefreshTime;
+    }
+
+    /**
+     * @return the longest time, in milliseconds, a remapping of the windows
+     * took.
+     */
+    public long getMaxRefreshTime()
+    {
+        return maxRefreshTime;
+    }
 }
@@ -45,6 +45,8 @@ import org.neo4j.kernel.Config;
 import org.neo4j.kernel.impl.core.LockReleaser;
 import org.neo4j.kernel.impl.core.PropertyIndex;
 import org.neo4j.kernel.impl.index.IndexStore;
+import org.neo4j.kernel.impl.nioneo.store.AbstractStore;
+import org.neo4j.kernel.impl.nioneo.store.InUseRecordScanner;
 import org.neo4j.kernel.impl.nioneo.store.NeoStore;
 import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
 import org.neo4j.kernel.impl.nioneo.store.Store;
@@ -484,6 +486,17 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
         return store.getHighestPossibleIdInUse();
     }
 
+    public InUseRecordScanner scanInUseRecords( Class<?> clazz, long fromId, long toId )
+    {
+        Store store = idGenerators.get( clazz );
+        if ( !(store instanceof AbstractStore) )
+        {
+            throw new IllegalArgumentException( "Unable to scan records of: " + clazz );
+        }
+        return ((AbstractStore) store).scanInUseRecords( fromId, toId,
+                InUseRecordScanner.DEFAULT_CHUNK_SIZE );
+    }
+
     public long getNumberOfIdsInUse( Class<?> clazz )
     {
         Store store = idGenerators.get( clazz );
@@ -23,6 +23,7 @@ import javax.transaction.xa.XAResource;
 
 import org.neo4j.kernel.Config;
 import org.neo4j.kernel.impl.core.ReadOnlyDbException;
+import org.neo4j.kernel.impl.nioneo.store.InUseRecordScanner;
 import org.neo4j.kernel.impl.persistence.NeoStoreTransaction;
 import org.neo4j.kernel.impl.persistence.PersistenceSource;
 import org.neo4j.kernel.impl.transaction.XaDataSourceManager;
@@ -132,6 +133,11 @@ public class NioNeoDbPersistenceSource implements PersistenceSource
         return xaDs.getHighestPossibleIdInUse( clazz );
     }
 
+    public InUseRecordScanner scanInUseRecords( Class<?> clazz, long fromId, long toId )
+    {
+        return xaDs.scanInUseRecords( clazz, fromId, toId );
+    }
+
     public long getNumberOfIdsInUse( Class<?> clazz )
     {
         return xaDs.getNumberOfIdsInUse( clazz );
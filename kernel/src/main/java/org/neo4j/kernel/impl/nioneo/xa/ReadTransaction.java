@@ -42,6 +42,8 @@ import org.neo4j.kernel.impl.nioneo.store.PropertyIndexStore;
 import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
 import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupStore;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
 import org.neo4j.kernel.impl.persistence.NeoStoreTransaction;
@@ -171,6 +173,28 @@ class ReadTransaction implements NeoStoreTransaction
         return Pair.of( result, position );
     }
 
+    @Override
+    public List<RelationshipGroupRecord> loadRelationshipGroups( long nodeId )
+    {
+        return loadRelationshipGroups( getNodeStore().getRecord( nodeId ), neoStore.getRelationshipGroupStore() );
+    }
+
+    static List<RelationshipGroupRecord> loadRelationshipGroups( NodeRecord node,
+            RelationshipGroupStore groupStore )
+    {
+        List<RelationshipGroupRecord> groups = new ArrayList<RelationshipGroupRecord>();
+        if ( node.isDense() )
+        {
+            for ( long next = node.getNextRel(); next != Record.NO_NEXT_RELATIONSHIP.intValue(); )
+            {
+                RelationshipGroupRecord group = groupStore.getRecord( next );
+                groups.add( group );
+                next = group.getNext();
+            }
+        }
+        return groups;
+    }
+
     static List<PropertyRecord> getPropertyRecordChain(
             PropertyStore propertyStore, long nextProp )
     {
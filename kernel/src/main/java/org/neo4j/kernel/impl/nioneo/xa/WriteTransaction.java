@@ -23,6 +23,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -55,6 +56,10 @@ import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
 import org.neo4j.kernel.impl.nioneo.store.PropertyType;
 import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipCountHints;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupStore;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroups;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
@@ -68,6 +73,7 @@ import org.neo4j.kernel.impl.transaction.xaframework.XaConnection;
 import org.neo4j.kernel.impl.transaction.xaframework.XaLogicalLog;
 import org.neo4j.kernel.impl.transaction.xaframework.XaTransaction;
 import org.neo4j.kernel.impl.util.ArrayMap;
+import org.neo4j.kernel.impl.util.LongObjectHashMap;
 import org.neo4j.kernel.impl.util.RelIdArray;
 import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
 
@@ -79,9 +85,15 @@ import static org.neo4j.kernel.impl.nioneo.store.PropertyStore.encodeString;
  */
 public class WriteTransaction extends XaTransaction implements NeoStoreTransaction
 {
-    private final Map<Long,NodeRecord> nodeRecords = new HashMap<Long,NodeRecord>();
-    private final Map<Long,PropertyRecord> propertyRecords = new HashMap<Long,PropertyRecord>();
-    private final Map<Long,RelationshipRecord> relRecords = new HashMap<Long,RelationshipRecord>();
+    // keyed by primitive ids, a transaction touching millions of records
+    // shouldn't also pay for a boxed key and a map entry per record
+    private final LongObjectHashMap<NodeRecord> nodeRecords = new LongObjectHashMap<NodeRecord>();
+    private final LongObjectHashMap<PropertyRecord> propertyRecords = new LongObjectHashMap<PropertyRecord>();
+    private final LongObjectHashMap<RelationshipRecord> relRecords = new LongObjectHashMap<RelationshipRecord>();
+    private final LongObjectHashMap<RelationshipGroupRecord> relGroupRecords =
+            new LongObjectHashMap<RelationshipGroupRecord>();
+    // relationship counts, up to the dense node threshold, of the nodes that got relationships in this tx
+    private final LongObjectHashMap<Integer> relationshipCounts = new LongObjectHashMap<Integer>();
     private Map<Integer,RelationshipTypeRecord> relTypeRecords;
     private Map<Integer,PropertyIndexRecord> propIndexRecords;
     private NeoStoreRecord neoStoreRecord;
@@ -89,6 +101,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     private final ArrayList<Command.NodeCommand> nodeCommands = new ArrayList<Command.NodeCommand>();
     private final ArrayList<Command.PropertyCommand> propCommands = new ArrayList<Command.PropertyCommand>();
     private final ArrayList<Command.RelationshipCommand> relCommands = new ArrayList<Command.RelationshipCommand>();
+    private final ArrayList<Command.RelationshipGroupCommand> relGroupCommands = new ArrayList<Command.RelationshipGroupCommand>();
     private ArrayList<Command.RelationshipTypeCommand> relTypeCommands;
     private ArrayList<Command.PropertyIndexCommand> propIndexCommands;
     private Command.NeoStoreCommand neoStoreCommand;
@@ -116,11 +129,11 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         if ( isRecovered() )
         {
             return nodeCommands.size() == 0 && propCommands.size() == 0 &&
-                relCommands.size() == 0 && relTypeCommands == null &&
-                propIndexCommands == null;
+                relCommands.size() == 0 && relGroupCommands.size() == 0 &&
+                relTypeCommands == null && propIndexCommands == null;
         }
         return nodeRecords.size() == 0 && relRecords.size() == 0 &&
-            propertyRecords.size() == 0 && relTypeRecords == null &&
+            relGroupRecords.size() == 0 && propertyRecords.size() == 0 && relTypeRecords == null &&
             propIndexRecords == null;
     }
 
@@ -135,6 +148,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     {
         int noOfCommands = nodeRecords.size() +
                            relRecords.size() +
+                           relGroupRecords.size() +
                            propertyRecords.size() +
                            (propIndexRecords != null ? propIndexRecords.size() : 0) +
                            (relTypeRecords != null ? relTypeRecords.size() : 0);
@@ -195,6 +209,14 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
             }
             commands.add( command );
         }
+        for ( RelationshipGroupRecord record : relGroupRecords.values() )
+        {
+            Command.RelationshipGroupCommand command =
+                new Command.RelationshipGroupCommand(
+                    neoStore.getRelationshipGroupStore(), record );
+            relGroupCommands.add( command );
+            commands.add( command );
+        }
         if ( neoStoreRecord != null )
         {
             neoStoreCommand = new Command.NeoStoreCommand( neoStore, neoStoreRecord );
@@ -246,6 +268,10 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         {
             relCommands.add( (Command.RelationshipCommand) xaCommand );
         }
+        else if ( xaCommand instanceof Command.RelationshipGroupCommand )
+        {
+            relGroupCommands.add( (Command.RelationshipGroupCommand) xaCommand );
+        }
         else if ( xaCommand instanceof Command.PropertyCommand )
         {
             propCommands.add( (Command.PropertyCommand) xaCommand );
@@ -315,6 +341,13 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
                 }
                 removeRelationshipFromCache( record.getId() );
             }
+            for ( RelationshipGroupRecord record : relGroupRecords.values() )
+            {
+                if ( freeIds && record.isCreated() )
+                {
+                    getRelationshipGroupStore().freeId( record.getId() );
+                }
+            }
             if ( neoStoreRecord != null )
             {
                 removeGraphPropertiesFromCache();
@@ -461,13 +494,15 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
             // primitives
             java.util.Collections.sort( nodeCommands, sorter );
             java.util.Collections.sort( relCommands, sorter );
+            java.util.Collections.sort( relGroupCommands, sorter );
             java.util.Collections.sort( propCommands, sorter );
-            executeCreated( propCommands, relCommands, nodeCommands );
-            executeModified( propCommands, relCommands, nodeCommands );
+            executeCreated( propCommands, relCommands, relGroupCommands, nodeCommands );
+            executeModified( propCommands, relCommands, relGroupCommands, nodeCommands );
             if ( neoStoreCommand != null ) neoStoreCommand.execute();
-            executeDeleted( propCommands, relCommands, nodeCommands );
+            executeDeleted( propCommands, relCommands, relGroupCommands, nodeCommands );
             updateFirstRelationships();
             lockReleaser.commitCows(); // updates the cached primitives
+            removeConvertedNodesFromCache();
             neoStore.setLastCommittedTx( getCommitTxId() );
         }
         finally
@@ -476,6 +511,22 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         }
     }
 
+    /*
+     * The relationship chains of nodes that became dense in this transaction
+     * have been rearranged, so any cached relationship loading state for them
+     * is no longer valid.
+     */
+    private void removeConvertedNodesFromCache()
+    {
+        for ( NodeRecord record : nodeRecords.values() )
+        {
+            if ( record.isDense() && !record.isCommittedDense() )
+            {
+                removeNodeFromCache( record.getId() );
+            }
+        }
+    }
+
     private void updateFirstRelationships()
     {
         for ( NodeRecord record : nodeRecords.values() )
@@ -563,6 +614,12 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
                     removeNodeFromCache( command.getSecondNode() );
                 }
             }
+            // relationship groups
+            java.util.Collections.sort( relGroupCommands, sorter );
+            for ( Command.RelationshipGroupCommand command : relGroupCommands )
+            {
+                command.execute();
+            }
             // nodes
             java.util.Collections.sort( nodeCommands, sorter );
             for ( Command.NodeCommand command : nodeCommands )
@@ -597,6 +654,8 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         nodeRecords.clear();
         propertyRecords.clear();
         relRecords.clear();
+        relGroupRecords.clear();
+        relationshipCounts.clear();
         if ( relTypeRecords != null ) relTypeRecords.clear();
         if ( propIndexRecords != null ) propIndexRecords.clear();
         neoStoreRecord = null;
@@ -605,6 +664,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         propCommands.clear();
         if ( propIndexCommands != null ) propIndexCommands.clear();
         relCommands.clear();
+        relGroupCommands.clear();
         if ( relTypeCommands != null ) relTypeCommands.clear();
         neoStoreCommand = null;
     }
@@ -645,6 +705,11 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         return neoStore.getRelationshipStore();
     }
 
+    private RelationshipGroupStore getRelationshipGroupStore()
+    {
+        return neoStore.getRelationshipGroupStore();
+    }
+
     private PropertyStore getPropertyStore()
     {
         return neoStore.getPropertyStore();
@@ -715,6 +780,11 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         ArrayMap<Integer, PropertyData> propertyMap = getAndDeletePropertyChain( record );
         disconnectRelationship( record );
         updateNodes( record );
+        decrementRelationshipCount( record.getFirstNode() );
+        if ( record.getFirstNode() != record.getSecondNode() )
+        {
+            decrementRelationshipCount( record.getSecondNode() );
+        }
         record.setInUse( false );
         return propertyMap;
     }
@@ -914,6 +984,17 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         return ReadTransaction.getMoreRelationships( nodeId, position, getRelGrabSize(), getRelationshipStore() );
     }
 
+    public List<RelationshipGroupRecord> loadRelationshipGroups( long nodeId )
+    {
+        NodeRecord nodeRecord = getNodeRecord( nodeId );
+        if ( nodeRecord != null && nodeRecord.isCreated() )
+        {
+            return Collections.emptyList();
+        }
+        return ReadTransaction.loadRelationshipGroups( getNodeStore().getRecord( nodeId ),
+                getRelationshipGroupStore() );
+    }
+
     private void updateNodes( RelationshipRecord rel )
     {
         if ( rel.getFirstPrevRel() == Record.NO_PREV_RELATIONSHIP.intValue() )
@@ -924,7 +1005,14 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
                 firstNode = getNodeStore().getRecord( rel.getFirstNode() );
                 addNodeRecord( firstNode );
             }
-            firstNode.setNextRel( rel.getFirstNextRel() );
+            if ( firstNode.isDense() )
+            {
+                RelationshipGroups.disconnectHead( firstNode, rel, rel.getFirstNextRel(), recordAccess );
+            }
+            else
+            {
+                firstNode.setNextRel( rel.getFirstNextRel() );
+            }
         }
         if ( rel.getSecondPrevRel() == Record.NO_PREV_RELATIONSHIP.intValue() )
         {
@@ -934,7 +1022,18 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
                 secondNode = getNodeStore().getRecord( rel.getSecondNode() );
                 addNodeRecord( secondNode );
             }
-            secondNode.setNextRel( rel.getSecondNextRel() );
+            if ( secondNode.isDense() )
+            {
+                // a loop has already been removed from its group above
+                if ( rel.getFirstNode() != rel.getSecondNode() )
+                {
+                    RelationshipGroups.disconnectHead( secondNode, rel, rel.getSecondNextRel(), recordAccess );
+                }
+            }
+            else
+            {
+                secondNode.setNextRel( rel.getSecondNextRel() );
+            }
         }
     }
 
@@ -1376,14 +1475,94 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     private void connectRelationship( NodeRecord firstNode,
         NodeRecord secondNode, RelationshipRecord rel )
     {
-        assert firstNode.getNextRel() != rel.getId();
-        assert secondNode.getNextRel() != rel.getId();
-        rel.setFirstNextRel( firstNode.getNextRel() );
-        rel.setSecondNextRel( secondNode.getNextRel() );
-        connect( firstNode, rel );
-        connect( secondNode, rel );
-        firstNode.setNextRel( rel.getId() );
-        secondNode.setNextRel( rel.getId() );
+        convertToDenseIfNeeded( firstNode );
+        if ( secondNode != firstNode )
+        {
+            convertToDenseIfNeeded( secondNode );
+        }
+        if ( !firstNode.isDense() )
+        {
+            assert firstNode.getNextRel() != rel.getId();
+            rel.setFirstNextRel( firstNode.getNextRel() );
+        }
+        if ( !secondNode.isDense() )
+        {
+            assert secondNode.getNextRel() != rel.getId();
+            rel.setSecondNextRel( secondNode.getNextRel() );
+        }
+        if ( firstNode.isDense() )
+        {
+            RelationshipGroups.connect( firstNode, rel, recordAccess );
+        }
+        else
+        {
+            connect( firstNode, rel );
+        }
+        if ( secondNode.isDense() )
+        {
+            // a loop is in a single chain of a dense node, already linked in above
+            if ( secondNode != firstNode )
+            {
+                RelationshipGroups.connect( secondNode, rel, recordAccess );
+            }
+        }
+        else
+        {
+            connect( secondNode, rel );
+        }
+        if ( !firstNode.isDense() )
+        {
+            firstNode.setNextRel( rel.getId() );
+        }
+        if ( !secondNode.isDense() )
+        {
+            secondNode.setNextRel( rel.getId() );
+        }
+    }
+
+    /*
+     * Keeps track of how many relationships the node has, from its chain and
+     * from this transaction, and turns it into a dense node when the
+     * relationship about to be added to it reaches the dense node threshold.
+     * The chain is only walked if there's no count for the node from an
+     * earlier transaction, or if that count says it may be about to reach
+     * the threshold.
+     */
+    private void convertToDenseIfNeeded( NodeRecord node )
+    {
+        if ( node.isDense() )
+        {
+            return;
+        }
+        int threshold = neoStore.getDenseNodeThreshold();
+        RelationshipCountHints hints = neoStore.getRelationshipCountHints();
+        Integer count = relationshipCounts.get( node.getId() );
+        if ( count == null )
+        {
+            int hint = hints.get( node.getId() );
+            count = hint != -1 && hint + 1 < threshold ? hint :
+                    RelationshipGroups.countRelationships( node, threshold, recordAccess );
+        }
+        if ( count + 1 >= threshold )
+        {
+            RelationshipGroups.convertToDense( node, recordAccess );
+            relationshipCounts.remove( node.getId() );
+            hints.forget( node.getId() );
+        }
+        else
+        {
+            relationshipCounts.put( node.getId(), count + 1 );
+            hints.set( node.getId(), count + 1 );
+        }
+    }
+
+    private void decrementRelationshipCount( long nodeId )
+    {
+        Integer count = relationshipCounts.get( nodeId );
+        if ( count != null )
+        {
+            relationshipCounts.put( nodeId, count - 1 );
+        }
     }
 
     private void connect( NodeRecord node, RelationshipRecord rel )
@@ -1544,6 +1723,59 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         return relRecords.get( relId );
     }
 
+    private final RelationshipGroups.RecordAccess recordAccess = new RelationshipGroups.RecordAccess()
+    {
+        @Override
+        public RelationshipRecord loadRelationship( long id )
+        {
+            RelationshipRecord record = getRelationshipRecord( id );
+            return record != null ? record : getRelationshipStore().getRecord( id );
+        }
+
+        @Override
+        public RelationshipRecord getRelationship( long id )
+        {
+            getWriteLock( new LockableRelationship( id ) );
+            RelationshipRecord record = getRelationshipRecord( id );
+            if ( record == null )
+            {
+                record = getRelationshipStore().getRecord( id );
+                addRelationshipRecord( record );
+            }
+            return record;
+        }
+
+        @Override
+        public RelationshipGroupRecord loadGroup( long id )
+        {
+            RelationshipGroupRecord record = relGroupRecords.get( id );
+            return record != null ? record : getRelationshipGroupStore().getRecord( id );
+        }
+
+        @Override
+        public RelationshipGroupRecord getGroup( long id )
+        {
+            RelationshipGroupRecord record = relGroupRecords.get( id );
+            if ( record == null )
+            {
+                record = getRelationshipGroupStore().getRecord( id );
+                relGroupRecords.put( id, record );
+            }
+            return record;
+        }
+
+        @Override
+        public RelationshipGroupRecord createGroup( int type )
+        {
+            RelationshipGroupRecord record = new RelationshipGroupRecord(
+                    getRelationshipGroupStore().nextId(), type );
+            record.setInUse( true );
+            record.setCreated();
+            relGroupRecords.put( record.getId(), record );
+            return record;
+        }
+    };
+
     void addPropertyRecord( PropertyRecord record )
     {
         propertyRecords.put( record.getId(), record );
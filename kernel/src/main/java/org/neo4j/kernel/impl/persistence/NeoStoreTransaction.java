@@ -19,6 +19,7 @@
  */
 package org.neo4j.kernel.impl.persistence;
 
+import java.util.List;
 import java.util.Map;
 
 import javax.transaction.xa.XAResource;
@@ -28,6 +29,7 @@ import org.neo4j.kernel.impl.core.PropertyIndex;
 import org.neo4j.kernel.impl.nioneo.store.NameData;
 import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyData;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.transaction.xaframework.XaConnection;
 import org.neo4j.kernel.impl.util.ArrayMap;
@@ -305,6 +307,18 @@ public interface NeoStoreTransaction
     public Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> getMoreRelationships(
             long nodeId, long position );
 
+    /**
+     * Loads the relationship groups of a dense node, as they are in the
+     * store. Each group holds the heads of the relationship chains of one
+     * relationship type, which can be loaded with
+     * {@link #getMoreRelationships(long, long)}.
+     *
+     * @param nodeId the id of the node.
+     * @return the relationship groups of the node, or an empty list if the
+     * node isn't dense.
+     */
+    public List<RelationshipGroupRecord> loadRelationshipGroups( long nodeId );
+
     /**
      * Returns an array view of the ids of the nodes that have been created in
      * this transaction.
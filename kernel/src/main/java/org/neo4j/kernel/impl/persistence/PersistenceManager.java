@@ -19,6 +19,7 @@
  */
 package org.neo4j.kernel.impl.persistence;
 
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -38,9 +39,11 @@ import org.neo4j.kernel.impl.core.LockReleaser;
 import org.neo4j.kernel.impl.core.PropertyIndex;
 import org.neo4j.kernel.impl.core.TransactionEventsSyncHook;
 import org.neo4j.kernel.impl.core.TxEventSyncHookFactory;
+import org.neo4j.kernel.impl.nioneo.store.InUseRecordScanner;
 import org.neo4j.kernel.impl.nioneo.store.NameData;
 import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyData;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.xa.NioNeoDbPersistenceSource;
 import org.neo4j.kernel.impl.transaction.xaframework.XaConnection;
@@ -82,6 +85,21 @@ public class PersistenceManager
         return getReadOnlyResourceIfPossible().nodeLoadLight( id );
     }
 
+    public InUseRecordScanner scanInUseRecords( Class<?> clazz, long fromId, long toId )
+    {
+        return persistenceSource.scanInUseRecords( clazz, fromId, toId );
+    }
+
+    /**
+     * @return whether or not the current transaction has made any changes
+     *         that aren't visible outside of it yet.
+     */
+    public boolean hasTransactionState()
+    {
+        Transaction tx = this.getCurrentTransaction();
+        return tx != null && txConnectionMap.get( tx ) != null;
+    }
+
     public Object loadPropertyValue( PropertyData property )
     {
         return getReadOnlyResource().loadPropertyValue( property );
@@ -108,6 +126,11 @@ public class PersistenceManager
         return getReadOnlyResource().getMoreRelationships( nodeId, position );
     }
 
+    public List<RelationshipGroupRecord> loadRelationshipGroups( long nodeId )
+    {
+        return getReadOnlyResourceIfPossible().loadRelationshipGroups( nodeId );
+    }
+
     public ArrayMap<Integer,PropertyData> loadNodeProperties( long nodeId, boolean light )
     {
         return getReadOnlyResourceIfPossible().nodeLoadProperties( nodeId, light );
@@ -19,6 +19,7 @@
  */
 package org.neo4j.kernel.impl.persistence;
 
+import org.neo4j.kernel.impl.nioneo.store.InUseRecordScanner;
 import org.neo4j.kernel.impl.transaction.xaframework.XaConnection;
 import org.neo4j.kernel.impl.transaction.xaframework.XaDataSource;
 
@@ -50,6 +51,17 @@ public interface PersistenceSource
     public long getHighestPossibleIdInUse( Class<?> clazz );
 
     public long getNumberOfIdsInUse( Class<?> clazz );
+
+    /**
+     * Scans the committed records of the data structure for {@code clazz},
+     * bypassing any caching, and returns the ids of the ones in use.
+     *
+     * @param clazz the data structure to scan
+     * @param fromId the first id to scan, inclusive
+     * @param toId the last id to scan, exclusive
+     * @return a scanner over the ids in use in the given range
+     */
+    public InUseRecordScanner scanInUseRecords( Class<?> clazz, long fromId, long toId );
     
     public XaDataSource getXaDataSource();
 }
\ No newline at end of file
@@ -0,0 +1,208 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.storemigration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.neo4j.helpers.UTF8;
+import org.neo4j.kernel.CommonFactories;
+import org.neo4j.kernel.IdGeneratorFactory;
+import org.neo4j.kernel.IdType;
+import org.neo4j.kernel.impl.nioneo.store.CommonAbstractStore;
+import org.neo4j.kernel.impl.nioneo.store.DirectRecordAccess;
+import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
+import org.neo4j.kernel.impl.nioneo.store.NeoStore;
+import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
+import org.neo4j.kernel.impl.nioneo.store.NodeStore;
+import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupStore;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroups;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
+import org.neo4j.kernel.impl.util.FileUtils;
+
+/**
+ * Upgrades a store of {@link UpgradableDatabase#PREVIOUS_VERSION}, which only
+ * differs from the current one in that there is no relationship group store
+ * and that the highest of the three relationship id bits in the in-use byte
+ * of a node record now marks a dense node. Store files are copied with their
+ * version trailer changed, after checking that no relationship id needs that
+ * bit, which would have made the node dense and cut its relationship id.
+ */
+public class DenseNodeMigrator
+{
+    private static final String NODE_STORE = "neostore.nodestore.db";
+    private static final String RELATIONSHIP_STORE = "neostore.relationshipstore.db";
+    // [    ,x   ] the highest relationship id bit before, the dense flag now
+    private static final int RELATIONSHIP_ID_BIT_35 = 0x8;
+    private static final int RECORDS_PER_BATCH = 10000;
+
+    public void migrate( File fromDirectory, File toDirectory, Map<?, ?> config ) throws IOException
+    {
+        checkRelationshipIdsFit( new File( fromDirectory, RELATIONSHIP_STORE ),
+                new File( fromDirectory, NODE_STORE ) );
+        for ( String fileName : UpgradableDatabase.fileNamesToPreviousVersions.keySet() )
+        {
+            File from = new File( fromDirectory, fileName );
+            File to = new File( toDirectory, fileName );
+            FileUtils.copyFile( from, to );
+            changeVersionTrailer( to, UpgradableDatabase.fileNamesToPreviousVersions.get( fileName ) );
+            File idFile = new File( fromDirectory, fileName + ".id" );
+            if ( idFile.exists() )
+            {
+                FileUtils.copyFile( idFile, new File( toDirectory, fileName + ".id" ) );
+            }
+        }
+        IdGeneratorFactory idGeneratorFactory = (IdGeneratorFactory) config.get( IdGeneratorFactory.class );
+        FileSystemAbstraction fileSystem = (FileSystemAbstraction) config.get( FileSystemAbstraction.class );
+        RelationshipGroupStore.createStore(
+                new File( toDirectory, NeoStore.DEFAULT_NAME + ".relationshipgroupstore.db" ).getPath(),
+                idGeneratorFactory != null ? idGeneratorFactory : CommonFactories.defaultIdGeneratorFactory(),
+                fileSystem != null ? fileSystem : CommonFactories.defaultFileSystemAbstraction() );
+    }
+
+    /**
+     * Turns the nodes of {@code neoStore} which have at least as many
+     * relationships as the dense node threshold into dense nodes.
+     */
+    public void convertDenseNodes( NeoStore neoStore )
+    {
+        NodeStore nodeStore = neoStore.getNodeStore();
+        int threshold = neoStore.getDenseNodeThreshold();
+        long highId = nodeStore.getHighId();
+        for ( long id = 0; id < highId; id++ )
+        {
+            NodeRecord node = nodeStore.loadLightNode( id );
+            if ( node == null || node.isDense() )
+            {
+                continue;
+            }
+            DirectRecordAccess access = new DirectRecordAccess( neoStore.getRelationshipStore(),
+                    neoStore.getRelationshipGroupStore() );
+            if ( RelationshipGroups.countRelationships( node, threshold, access ) >= threshold )
+            {
+                RelationshipGroups.convertToDense( node, access );
+                access.flush();
+                nodeStore.updateRecord( node );
+            }
+        }
+    }
+
+    private void changeVersionTrailer( File file, String previousTrailer ) throws IOException
+    {
+        byte[] expected = UTF8.encode( previousTrailer );
+        byte[] current = UTF8.encode( currentTrailer( previousTrailer ) );
+        FileChannel channel = new RandomAccessFile( file, "rw" ).getChannel();
+        try
+        {
+            byte[] found = new byte[expected.length];
+            channel.position( channel.size() - found.length );
+            readFully( channel, ByteBuffer.wrap( found ) );
+            if ( !Arrays.equals( expected, found ) )
+            {
+                throw new StoreUpgrader.UnableToUpgradeException( "Expected " + previousTrailer + " at the end of "
+                        + file + " but found " + UTF8.decode( found ) );
+            }
+            channel.truncate( channel.size() - found.length );
+            channel.position( channel.size() );
+            writeFully( channel, ByteBuffer.wrap( current ) );
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    private void checkRelationshipIdsFit( File relationshipStore, File nodeStore ) throws IOException
+    {
+        long maxRelationships = IdType.RELATIONSHIP.getMaxValue() + 1;
+        long relationships = ( relationshipStore.length() - trailerLength( RELATIONSHIP_STORE ) )
+                / RelationshipStore.RECORD_SIZE;
+        if ( relationships > maxRelationships )
+        {
+            throw new StoreUpgrader.UnableToUpgradeException( "Store has " + relationships
+                    + " relationship records, but at most " + maxRelationships + " are supported" );
+        }
+
+        FileChannel in = new RandomAccessFile( nodeStore, "r" ).getChannel();
+        try
+        {
+            long records = ( in.size() - trailerLength( NODE_STORE ) ) / NodeStore.RECORD_SIZE;
+            ByteBuffer buffer = ByteBuffer.allocate( NodeStore.RECORD_SIZE * RECORDS_PER_BATCH );
+            for ( long done = 0; done < records; )
+            {
+                int batch = (int) Math.min( RECORDS_PER_BATCH, records - done );
+                buffer.clear();
+                buffer.limit( batch * NodeStore.RECORD_SIZE );
+                readFully( in, buffer );
+                for ( int i = 0; i < batch; i++ )
+                {
+                    byte inUseByte = buffer.get( i * NodeStore.RECORD_SIZE );
+                    if ( ( inUseByte & Record.IN_USE.intValue() ) != 0 && ( inUseByte & RELATIONSHIP_ID_BIT_35 ) != 0 )
+                    {
+                        throw new StoreUpgrader.UnableToUpgradeException( "Node[" + ( done + i )
+                                + "] has a relationship id above " + IdType.RELATIONSHIP.getMaxValue()
+                                + ", which is not supported" );
+                    }
+                }
+                done += batch;
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static int trailerLength( String fileName )
+    {
+        return UTF8.encode( UpgradableDatabase.fileNamesToPreviousVersions.get( fileName ) ).length;
+    }
+
+    private static String currentTrailer( String previousTrailer )
+    {
+        return previousTrailer.substring( 0, previousTrailer.length() - UpgradableDatabase.PREVIOUS_VERSION.length() )
+                + CommonAbstractStore.ALL_STORES_VERSION;
+    }
+
+    private static void readFully( FileChannel channel, ByteBuffer buffer ) throws IOException
+    {
+        while ( buffer.hasRemaining() )
+        {
+            if ( channel.read( buffer ) == -1 )
+            {
+                throw new IOException( "Unexpected end of file" );
+            }
+        }
+    }
+
+    private static void writeFully( FileChannel channel, ByteBuffer buffer ) throws IOException
+    {
+        while ( buffer.hasRemaining() )
+        {
+            channel.write( buffer );
+        }
+    }
+}
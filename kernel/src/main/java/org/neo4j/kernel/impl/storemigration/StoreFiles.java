@@ -36,6 +36,7 @@ public class StoreFiles
             "neostore.propertystore.db.index.keys",
             "neostore.propertystore.db.strings",
             "neostore.relationshipstore.db",
+            "neostore.relationshipgroupstore.db",
             "neostore.relationshiptypestore.db",
             "neostore.relationshiptypestore.db.names",
     };
@@ -55,6 +56,11 @@ public class StoreFiles
         // TODO: change the order that files are moved to handle failure conditions properly
         for ( String fileName : fileNames )
         {
+            if ( !new File( fromDirectory, fileName ).exists() )
+            {
+                // stores of older versions don't have all of the files
+                continue;
+            }
             moveFile( fileName, fromDirectory, toDirectory );
             moveFile( fileName + ".id", fromDirectory, toDirectory );
         }
@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.neo4j.kernel.impl.nioneo.store.CommonAbstractStore;
 import org.neo4j.kernel.impl.nioneo.store.NeoStore;
 import org.neo4j.kernel.impl.storemigration.legacystore.LegacyStore;
 import org.neo4j.kernel.impl.util.FileUtils;
@@ -35,6 +36,7 @@ public class StoreUpgrader
     private UpgradableDatabase upgradableDatabase;
     private StoreMigrator storeMigrator;
     private DatabaseFiles databaseFiles;
+    private final DenseNodeMigrator denseNodeMigrator = new DenseNodeMigrator();
 
     public StoreUpgrader( Map<?, ?> originalConfig, UpgradeConfiguration upgradeConfiguration, UpgradableDatabase upgradableDatabase, StoreMigrator storeMigrator, DatabaseFiles databaseFiles )
     {
@@ -92,11 +94,35 @@ public class StoreUpgrader
         Map<Object, Object> upgradeConfig = new HashMap<Object, Object>( originalConfig );
         upgradeConfig.put( "neo_store", upgradeFileName );
 
-        NeoStore.createStore( upgradeFileName, upgradeConfig );
+        boolean legacyStore = upgradableDatabase.storeFilesOfLegacyVersion( new File( storageFileName ) );
+        if ( legacyStore )
+        {
+            NeoStore.createStore( upgradeFileName, upgradeConfig );
+        }
+        else
+        {
+            try
+            {
+                denseNodeMigrator.migrate( new File( storageFileName ).getParentFile(), upgradeDirectory,
+                        upgradeConfig );
+            }
+            catch ( IOException e )
+            {
+                throw new UnableToUpgradeException( e );
+            }
+        }
         NeoStore neoStore = new NeoStore( upgradeConfig );
         try
         {
-            storeMigrator.migrate( new LegacyStore( storageFileName ), neoStore );
+            if ( legacyStore )
+            {
+                storeMigrator.migrate( new LegacyStore( storageFileName ), neoStore );
+            }
+            else
+            {
+                neoStore.setStoreVersion( NeoStore.versionStringToLong( CommonAbstractStore.ALL_STORES_VERSION ) );
+            }
+            denseNodeMigrator.convertDenseNodes( neoStore );
         }
         catch ( IOException e )
         {
@@ -29,7 +29,14 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.neo4j.helpers.UTF8;
+import org.neo4j.kernel.impl.nioneo.store.DynamicArrayStore;
+import org.neo4j.kernel.impl.nioneo.store.DynamicStringStore;
 import org.neo4j.kernel.impl.nioneo.store.NeoStore;
+import org.neo4j.kernel.impl.nioneo.store.NodeStore;
+import org.neo4j.kernel.impl.nioneo.store.PropertyIndexStore;
+import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeStore;
 import org.neo4j.kernel.impl.storemigration.legacystore.LegacyDynamicStoreReader;
 import org.neo4j.kernel.impl.storemigration.legacystore.LegacyNodeStoreReader;
 import org.neo4j.kernel.impl.storemigration.legacystore.LegacyPropertyIndexStoreReader;
@@ -69,6 +76,36 @@ public class UpgradableDatabase
         fileNamesToExpectedVersions = Collections.unmodifiableMap( before );
     }
 
+    /**
+     * The version of stores which keep all relationships of a node in one
+     * chain. Their records are laid out as in the current version, but the
+     * bit of a node record that now marks a dense node is the highest bit of
+     * its first relationship id.
+     */
+    public static final String PREVIOUS_VERSION = "v0.A.0";
+
+    public static final Map<String, String> fileNamesToPreviousVersions;
+
+    static
+    {
+        Map<String, String> before = new HashMap<String, String>();
+        before.put( NeoStore.DEFAULT_NAME, NeoStore.TYPE_DESCRIPTOR );
+        before.put( "neostore.nodestore.db", NodeStore.TYPE_DESCRIPTOR );
+        before.put( "neostore.propertystore.db", PropertyStore.TYPE_DESCRIPTOR );
+        before.put( "neostore.propertystore.db.arrays", DynamicArrayStore.TYPE_DESCRIPTOR );
+        before.put( "neostore.propertystore.db.index", PropertyIndexStore.TYPE_DESCRIPTOR );
+        before.put( "neostore.propertystore.db.index.keys", DynamicStringStore.TYPE_DESCRIPTOR );
+        before.put( "neostore.propertystore.db.strings", DynamicStringStore.TYPE_DESCRIPTOR );
+        before.put( "neostore.relationshipstore.db", RelationshipStore.TYPE_DESCRIPTOR );
+        before.put( "neostore.relationshiptypestore.db", RelationshipTypeStore.TYPE_DESCRIPTOR );
+        before.put( "neostore.relationshiptypestore.db.names", DynamicStringStore.TYPE_DESCRIPTOR );
+        for ( Map.Entry<String, String> entry : before.entrySet() )
+        {
+            entry.setValue( entry.getValue() + " " + PREVIOUS_VERSION );
+        }
+        fileNamesToPreviousVersions = Collections.unmodifiableMap( before );
+    }
+
     public void checkUpgradeable( File neoStoreFile )
     {
         if (!storeFilesUpgradeable( neoStoreFile ))
@@ -78,11 +115,26 @@ public class UpgradableDatabase
     }
 
     public boolean storeFilesUpgradeable( File neoStoreFile )
+    {
+        return storeFilesOfLegacyVersion( neoStoreFile ) || storeFilesOfPreviousVersion( neoStoreFile );
+    }
+
+    public boolean storeFilesOfLegacyVersion( File neoStoreFile )
+    {
+        return storeFilesMatch( neoStoreFile, fileNamesToExpectedVersions );
+    }
+
+    public boolean storeFilesOfPreviousVersion( File neoStoreFile )
+    {
+        return storeFilesMatch( neoStoreFile, fileNamesToPreviousVersions );
+    }
+
+    private boolean storeFilesMatch( File neoStoreFile, Map<String, String> fileNamesToVersions )
     {
         File storeDirectory = neoStoreFile.getParentFile();
-        for ( String fileName : fileNamesToExpectedVersions.keySet() )
+        for ( String fileName : fileNamesToVersions.keySet() )
         {
-            String expectedVersion = fileNamesToExpectedVersions.get( fileName );
+            String expectedVersion = fileNamesToVersions.get( fileName );
             FileChannel fileChannel = null;
             byte[] expectedVersionBytes = UTF8.encode( expectedVersion );
             try
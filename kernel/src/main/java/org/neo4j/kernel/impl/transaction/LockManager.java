@@ -49,19 +49,78 @@ import org.neo4j.kernel.info.WaitingThread;
  * <p>
  * LockManager just maps locks to resources and they do all the hard work
  * together with a resource allocation graph.
+ * <p>
+ * The resource to lock mapping is split into a number of stripes, each one
+ * guarded by its own monitor, so that transactions locking unrelated
+ * resources don't serialize on a single map. A resource always hashes to the
+ * same stripe which means the mark/remove protocol between the lock table and
+ * the {@link RWLock}s is the same as it would be with one big map.
  */
 public class LockManager
 {
-    private final Map<Object,RWLock> resourceLockMap =
-        new HashMap<Object,RWLock>();
+    static final int DEFAULT_STRIPE_COUNT = 64;
+
+    private final LockStripe[] stripes;
+    private final int stripeMask;
 
     private final RagManager ragManager;
 
     public LockManager( TransactionManager tm )
     {
+        this( tm, DEFAULT_STRIPE_COUNT );
+    }
+
+    /**
+     * @param tm the transaction manager used to figure out the current
+     * transaction.
+     * @param stripeCount the number of stripes to split the lock table into,
+     * will be rounded up to the nearest power of two.
+     */
+    public LockManager( TransactionManager tm, int stripeCount )
+    {
+        if ( stripeCount < 1 )
+        {
+            throw new IllegalArgumentException( "Stripe count must be positive, was " + stripeCount );
+        }
+        int size = Integer.highestOneBit( stripeCount );
+        if ( size < stripeCount )
+        {
+            size <<= 1;
+        }
+        stripes = new LockStripe[size];
+        for ( int i = 0; i < size; i++ )
+        {
+            stripes[i] = new LockStripe();
+        }
+        stripeMask = size - 1;
         ragManager = new RagManager( tm );
     }
 
+    private LockStripe stripeFor( Object resource )
+    {
+        // spread the hash code since resources often have sequential ids
+        int hash = resource.hashCode();
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        hash ^= (hash >>> 7) ^ (hash >>> 4);
+        return stripes[hash & stripeMask];
+    }
+
+    private RWLock getMarkedLock( Object resource )
+    {
+        LockStripe stripe = stripeFor( resource );
+        synchronized ( stripe )
+        {
+            RWLock lock = stripe.locks.get( resource );
+            if ( lock == null )
+            {
+                lock = new RWLock( resource, ragManager );
+                stripe.locks.put( resource, lock );
+            }
+            lock.mark();
+            return lock;
+        }
+    }
+
     public long getDetectedDeadlockCount()
     {
         return ragManager.getDeadlockCount();
@@ -87,18 +146,7 @@ public class LockManager
             throw new IllegalResourceException( "Null parameter" );
         }
 
-        RWLock lock = null;
-        synchronized ( resourceLockMap )
-        {
-            lock = resourceLockMap.get( resource );
-            if ( lock == null )
-            {
-                lock = new RWLock( resource, ragManager );
-                resourceLockMap.put( resource, lock );
-            }
-            lock.mark();
-        }
-        lock.acquireReadLock();
+        getMarkedLock( resource ).acquireReadLock();
     }
 
     /**
@@ -121,18 +169,7 @@ public class LockManager
             throw new IllegalResourceException( "Null parameter" );
         }
 
-        RWLock lock = null;
-        synchronized ( resourceLockMap )
-        {
-            lock = resourceLockMap.get( resource );
-            if ( lock == null )
-            {
-                lock = new RWLock( resource, ragManager );
-                resourceLockMap.put( resource, lock );
-            }
-            lock.mark();
-        }
-        lock.acquireWriteLock();
+        getMarkedLock( resource ).acquireWriteLock();
     }
 
     /**
@@ -153,10 +190,10 @@ public class LockManager
             throw new IllegalResourceException( "Null parameter" );
         }
 
-        RWLock lock = null;
-        synchronized ( resourceLockMap )
+        LockStripe stripe = stripeFor( resource );
+        synchronized ( stripe )
         {
-            lock = resourceLockMap.get( resource );
+            RWLock lock = stripe.locks.get( resource );
             if ( lock == null )
             {
                 throw new LockNotFoundException( "Lock not found for: "
@@ -166,7 +203,7 @@ public class LockManager
                 lock.getWriteCount() == 0 &&
                 lock.getWaitingThreadsCount() == 0 )
             {
-                resourceLockMap.remove( resource );
+                stripe.locks.remove( resource );
             }
             lock.releaseReadLock(tx);
         }
@@ -190,10 +227,10 @@ public class LockManager
             throw new IllegalResourceException( "Null parameter" );
         }
 
-        RWLock lock = null;
-        synchronized ( resourceLockMap )
+        LockStripe stripe = stripeFor( resource );
+        synchronized ( stripe )
         {
-            lock = resourceLockMap.get( resource );
+            RWLock lock = stripe.locks.get( resource );
             if ( lock == null )
             {
                 throw new LockNotFoundException( "Lock not found for: "
@@ -203,7 +240,7 @@ public class LockManager
                 lock.getWriteCount() == 1 &&
                 lock.getWaitingThreadsCount() == 0 )
             {
-                resourceLockMap.remove( resource );
+                stripe.locks.remove( resource );
             }
             lock.releaseWriteLock(tx);
         }
@@ -219,14 +256,15 @@ public class LockManager
     public void dumpLocksOnResource( Object resource )
     {
         RWLock lock = null;
-        synchronized ( resourceLockMap )
+        LockStripe stripe = stripeFor( resource );
+        synchronized ( stripe )
         {
-            if ( !resourceLockMap.containsKey( resource ) )
-            {
-                System.out.println( "No locks on " + resource );
-                return;
-            }
-            lock = resourceLockMap.get( resource );
+            lock = stripe.locks.get( resource );
+        }
+        if ( lock == null )
+        {
+            System.out.println( "No locks on " + resource );
+            return;
         }
         lock.dumpStack();
     }
@@ -242,7 +280,8 @@ public class LockManager
     }
 
     /**
-     * Visit all locks.
+     * Visit all locks. Stripes are visited one at a time, so the result isn't
+     * an atomic snapshot of the whole lock table.
      * 
      * The supplied visitor may not block.
      * 
@@ -250,11 +289,14 @@ public class LockManager
      */
     private <V extends Visitor<LockInfo>> V eachLock( V visitor )
     {
-        synchronized ( resourceLockMap )
+        for ( LockStripe stripe : stripes )
         {
-            for ( RWLock lock : resourceLockMap.values() )
+            synchronized ( stripe )
             {
-                if ( visitor.visit( lock.info() ) ) break;
+                for ( RWLock lock : stripe.locks.values() )
+                {
+                    if ( visitor.visit( lock.info() ) ) return visitor;
+                }
             }
         }
         return visitor;
@@ -274,11 +316,14 @@ public class LockManager
     private <V extends Visitor<LockInfo>> V eachAwaitedLock( V visitor, long minWaitTime )
     {
         long waitStart = System.currentTimeMillis() - minWaitTime;
-        synchronized ( resourceLockMap )
+        for ( LockStripe stripe : stripes )
         {
-            for ( RWLock lock : resourceLockMap.values() )
+            synchronized ( stripe )
             {
-                if ( lock.acceptVisitorIfWaitedSinceBefore( visitor, waitStart ) ) break;
+                for ( RWLock lock : stripe.locks.values() )
+                {
+                    if ( lock.acceptVisitorIfWaitedSinceBefore( visitor, waitStart ) ) return visitor;
+                }
             }
         }
         return visitor;
@@ -303,6 +348,11 @@ public class LockManager
         dump.done();
     }
 
+    private static class LockStripe
+    {
+        private final Map<Object,RWLock> locks = new HashMap<Object,RWLock>();
+    }
+
     private static class ListAppendingVisitor implements Visitor<LockInfo>
     {
         private final List<LockInfo> result = new ArrayList<LockInfo>();
@@ -75,8 +75,9 @@ class RWLock
     private final LinkedList<WaitElement> waitingThreadList = 
         new LinkedList<WaitElement>();
 
+    // most resources are only ever locked by one transaction at a time
     private final ArrayMap<Transaction,TxLockElement> txLockElementMap = 
-        new ArrayMap<Transaction,TxLockElement>( 5, false, true );
+        new ArrayMap<Transaction,TxLockElement>( 1, 5, false, true );
 
     private final RagManager ragManager;
 
@@ -26,6 +26,7 @@ import org.neo4j.kernel.impl.util.ArrayMap;
 import javax.transaction.SystemException;
 import javax.transaction.Transaction;
 import javax.transaction.TransactionManager;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -102,7 +103,7 @@ class RagManager
         }
         else
         {
-            lockingTxList = new LinkedList<Transaction>();
+            lockingTxList = new ArrayList<Transaction>( 1 );
             lockingTxList.add( tx );
             resourceMap.put( resource, lockingTxList );
         }
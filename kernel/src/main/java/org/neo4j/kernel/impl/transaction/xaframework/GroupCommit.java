@@ -0,0 +1,243 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.kernel.Config;
+
+/**
+ * Coordinates forcing of commit entries in a {@link XaLogicalLog} so that
+ * committers which append their commit entries close in time share a single
+ * force of the log file.
+ * <p>
+ * Each commit entry appended to the log gets a ticket, a sequence number that
+ * grows with each append. A committer then waits for its ticket to be forced.
+ * The first waiter that finds no force in progress becomes the leader, it may
+ * wait a short while for more commit entries to arrive and then forces
+ * everything appended so far, releasing all committers whose tickets were
+ * covered by that force.
+ */
+class GroupCommit
+{
+    static final long NO_TICKET = 0;
+
+    static final int DEFAULT_MAX_BATCH_SIZE = 100;
+    static final long DEFAULT_MAX_BATCH_WAIT_MILLIS = 0;
+
+    interface Forcer
+    {
+        /**
+         * Forces all commit entries appended so far.
+         *
+         * @return the highest ticket covered by the force.
+         * @throws IOException if the force failed.
+         */
+        long forceAppended() throws IOException;
+    }
+
+    private final int maxBatchSize;
+    private final long maxBatchWaitNanos;
+
+    private long appended = NO_TICKET;
+    private long forced = NO_TICKET;
+    private boolean forcing;
+
+    private long forceCount;
+    private long forcedCommitCount;
+
+    GroupCommit( int maxBatchSize, long maxBatchWait, TimeUnit unit )
+    {
+        if ( maxBatchSize < 1 )
+        {
+            throw new IllegalArgumentException( "Max batch size must be positive, was " + maxBatchSize );
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchWaitNanos = unit.toNanos( maxBatchWait );
+    }
+
+    /**
+     * @return a {@link GroupCommit} configured from the supplied config, or
+     * {@code null} if group commit isn't enabled.
+     */
+    static GroupCommit fromConfig( Map<?,?> config )
+    {
+        if ( config == null || !Boolean.parseBoolean( (String) config.get( Config.GROUP_COMMIT ) ) )
+        {
+            return null;
+        }
+        int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+        String batchSize = (String) config.get( Config.GROUP_COMMIT_MAX_BATCH_SIZE );
+        if ( batchSize != null )
+        {
+            maxBatchSize = Integer.parseInt( batchSize );
+        }
+        long maxBatchWait = DEFAULT_MAX_BATCH_WAIT_MILLIS;
+        String batchWait = (String) config.get( Config.GROUP_COMMIT_MAX_BATCH_WAIT );
+        if ( batchWait != null )
+        {
+            maxBatchWait = Long.parseLong( batchWait );
+        }
+        return new GroupCommit( maxBatchSize, maxBatchWait, TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Called when a commit entry has been appended to the log, from within
+     * the log monitor so that tickets are handed out in log order.
+     *
+     * @return the ticket to wait for with {@link #awaitForced(long, Forcer)}.
+     */
+    synchronized long appended()
+    {
+        appended++;
+        if ( forcing && appended - forced >= maxBatchSize )
+        {
+            // the leader may be waiting for the batch to fill up
+            notifyAll();
+        }
+        return appended;
+    }
+
+    synchronized long appendedSoFar()
+    {
+        return appended;
+    }
+
+    /**
+     * Called when everything up to and including {@code ticket} is known to
+     * have been forced by some other means, f.ex. a log rotation.
+     */
+    synchronized void forcedUpTo( long ticket )
+    {
+        if ( ticket > forced )
+        {
+            forced = ticket;
+            notifyAll();
+        }
+    }
+
+    synchronized boolean isForced( long ticket )
+    {
+        return forced >= ticket;
+    }
+
+    /**
+     * Blocks until the commit entry with the given ticket has been forced,
+     * either by this thread as the leader of a batch or by another leader.
+     *
+     * @throws IOException if this thread was the leader and the force failed.
+     */
+    void awaitForced( long ticket, Forcer forcer ) throws IOException
+    {
+        if ( ticket == NO_TICKET )
+        {
+            return;
+        }
+        synchronized ( this )
+        {
+            while ( true )
+            {
+                if ( forced >= ticket )
+                {
+                    return;
+                }
+                if ( !forcing )
+                {
+                    forcing = true;
+                    break;
+                }
+                waitUninterruptibly( 0 );
+            }
+            awaitBatch();
+        }
+
+        boolean success = false;
+        try
+        {
+            long forcedTicket = forcer.forceAppended();
+            success = true;
+            synchronized ( this )
+            {
+                forceCount++;
+                if ( forcedTicket > forced )
+                {
+                    forcedCommitCount += forcedTicket - forced;
+                    forced = forcedTicket;
+                }
+            }
+        }
+        finally
+        {
+            synchronized ( this )
+            {
+                forcing = false;
+                // wake up the committers in this batch, or on failure let
+                // one of them retry as the new leader
+                notifyAll();
+            }
+            assert !success || isForced( ticket );
+        }
+    }
+
+    private void awaitBatch()
+    {
+        if ( maxBatchWaitNanos <= 0 )
+        {
+            return;
+        }
+        long deadline = System.nanoTime() + maxBatchWaitNanos;
+        while ( appended - forced < maxBatchSize )
+        {
+            long remaining = deadline - System.nanoTime();
+            if ( remaining <= 0 )
+            {
+                break;
+            }
+            waitUninterruptibly( Math.max( 1, TimeUnit.NANOSECONDS.toMillis( remaining ) ) );
+        }
+    }
+
+    private void waitUninterruptibly( long millis )
+    {
+        try
+        {
+            wait( millis );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * @return the average number of commits covered by each group force.
+     */
+    synchronized double getAverageBatchSize()
+    {
+        return forceCount == 0 ? 0 : (double) forcedCommitCount / forceCount;
+    }
+
+    synchronized long getForceCount()
+    {
+        return forceCount;
+    }
+}
@@ -22,6 +22,7 @@ package org.neo4j.kernel.impl.transaction.xaframework;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.util.HashMap;
@@ -71,6 +72,12 @@ import static org.neo4j.kernel.impl.transaction.xaframework.LogExtractor.newLogR
  * will be held in memory until the transaction manager tells them to commit.
  * Transaction that already started commit but didn't get flagged as done will
  * be re-committed.
+ * <p>
+ * If group commit is enabled (see {@link org.neo4j.kernel.Config#GROUP_COMMIT})
+ * forced commits don't force the log when the commit entry is written. Instead
+ * the commit methods return a ticket which the committer passes to
+ * {@link #awaitForced(long)}, outside of any monitor, so that transactions
+ * committing at the same time share one force of the log.
  */
 public class XaLogicalLog implements LogLoader
 {
@@ -111,6 +118,14 @@ public class XaLogicalLog implements LogLoader
 
     private final LogPositionCache positionCache = new LogPositionCache();
     private final FileSystemAbstraction fileSystem;
+    private final GroupCommit groupCommit;
+    private final GroupCommit.Forcer groupForcer = new GroupCommit.Forcer()
+    {
+        public long forceAppended() throws IOException
+        {
+            return forceAppendedCommits();
+        }
+    };
 
     XaLogicalLog( String fileName, XaResourceManager xaRm, XaCommandFactory cf,
             XaTransactionFactory xaTf, Map<Object, Object> config )
@@ -126,6 +141,7 @@ public class XaLogicalLog implements LogLoader
         sharedBuffer = ByteBuffer.allocateDirect( 9 + Xid.MAXGTRIDSIZE
             + Xid.MAXBQUALSIZE * 10 );
         msgLog = (StringLogger) config.get( StringLogger.class );
+        groupCommit = GroupCommit.fromConfig( config );
 
         // We should turn keep-logs on if there are previous logs around,
         // this so that e.g. temporary shell sessions or operations don't create
@@ -336,7 +352,11 @@ public class XaLogicalLog implements LogLoader
     }
 
     // [TX_1P_COMMIT][identifier]
-    public synchronized void commitOnePhase( int identifier, long txId, ForceMode forceMode )
+    /**
+     * @return a ticket for {@link #awaitForced(long)} if group commit is
+     * enabled and the force was deferred.
+     */
+    public synchronized long commitOnePhase( int identifier, long txId, ForceMode forceMode )
         throws XAException
     {
         LogEntry.Start startEntry = xidIdentMap.get( identifier );
@@ -346,7 +366,7 @@ public class XaLogicalLog implements LogLoader
         {
             cacheTxStartPosition( txId, startEntry );
             LogIoUtils.writeCommit( false, writeBuffer, identifier, txId, System.currentTimeMillis() );
-            forceMode.force( writeBuffer );
+            return forceOrDefer( forceMode );
         }
         catch ( IOException e )
         {
@@ -355,6 +375,84 @@ public class XaLogicalLog implements LogLoader
         }
     }
 
+    private long forceOrDefer( ForceMode forceMode ) throws IOException
+    {
+        if ( groupCommit != null && forceMode == ForceMode.forced )
+        {
+            return groupCommit.appended();
+        }
+        forceMode.force( writeBuffer );
+        return GroupCommit.NO_TICKET;
+    }
+
+    public boolean isGroupCommitEnabled()
+    {
+        return groupCommit != null;
+    }
+
+    /**
+     * Waits for the commit entry which got the supplied ticket from
+     * {@link #commitOnePhase(int, long, ForceMode)} or
+     * {@link #commitTwoPhase(int, long, ForceMode)} to be forced to disk.
+     * Must not be called while holding the monitor of this log.
+     */
+    public void awaitForced( long ticket ) throws XAException
+    {
+        if ( ticket == GroupCommit.NO_TICKET )
+        {
+            return;
+        }
+        assert !Thread.holdsLock( this );
+        try
+        {
+            groupCommit.awaitForced( ticket, groupForcer );
+        }
+        catch ( IOException e )
+        {
+            throw Exceptions.withCause( new XAException( "Logical log unable to force commit batch" ), e );
+        }
+    }
+
+    private long forceAppendedCommits() throws IOException
+    {
+        long ticket;
+        FileChannel channel;
+        synchronized ( this )
+        {
+            ticket = groupCommit.appendedSoFar();
+            if ( fileChannel == null || !fileChannel.isOpen() )
+            {
+                // closed or rotated, which forces everything appended
+                return ticket;
+            }
+            writeBuffer.writeOut();
+            channel = writeBuffer.getFileChannel();
+        }
+        // the actual force is done outside the monitor so that other
+        // transactions can append their entries to the next batch
+        try
+        {
+            channel.force( false );
+        }
+        catch ( ClosedChannelException e )
+        {
+            // rotated or closed during the force, that forced this batch
+            if ( !groupCommit.isForced( ticket ) )
+            {
+                throw e;
+            }
+        }
+        return ticket;
+    }
+
+    private void markAppendedAsForced()
+    {
+        if ( groupCommit != null )
+        {
+            groupCommit.forcedUpTo( groupCommit.appendedSoFar() );
+        }
+    }
+
     private synchronized void cacheTxStartPosition( long txId, LogEntry.Start startEntry )
     {
         cacheTxStartPosition( txId, startEntry, logVersion );
@@ -411,7 +509,11 @@ public class XaLogicalLog implements LogLoader
     }
 
     // [TX_2P_COMMIT][identifier]
-    public synchronized void commitTwoPhase( int identifier, long txId, ForceMode forceMode )
+    /**
+     * @return a ticket for {@link #awaitForced(long)} if group commit is
+     * enabled and the force was deferred.
+     */
+    public synchronized long commitTwoPhase( int identifier, long txId, ForceMode forceMode )
         throws XAException
     {
         LogEntry.Start startEntry = xidIdentMap.get( identifier );
@@ -421,7 +523,7 @@ public class XaLogicalLog implements LogLoader
         {
             cacheTxStartPosition( txId, startEntry );
             LogIoUtils.writeCommit( true, writeBuffer, identifier, txId, System.currentTimeMillis() );
-            forceMode.force( writeBuffer );
+            return forceOrDefer( forceMode );
         }
         catch ( IOException e )
         {
@@ -711,6 +813,7 @@ public class XaLogicalLog implements LogLoader
         if ( writeBuffer != null )
         {
             writeBuffer.force();
+            markAppendedAsForced();
         }
         fileChannel.close();
         fileChannel = null;
@@ -729,6 +832,7 @@ public class XaLogicalLog implements LogLoader
             log.info( "Close invoked with " + xidIdentMap.size() +
                 " running transaction(s). " );
             writeBuffer.force();
+            markAppendedAsForced();
             fileChannel.close();
             log.info( "Dirty log: " + fileName + "." + currentLog +
                 " now closed. Recovery will be started automatically next " +
@@ -1413,6 +1517,7 @@ public class XaLogicalLog implements LogLoader
                 writeBuffer.getFileChannelPosition(), true );
         long endPosition = writeBuffer.getFileChannelPosition();
         writeBuffer.force();
+        markAppendedAsForced();
         FileChannel newLog = fileSystem.open( newLogFile, "rw" );
         long lastTx = xaTf.getLastCommittedTx();
         LogIoUtils.writeLogHeader( sharedBuffer, (currentVersion + 1), lastTx );
@@ -31,12 +31,14 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.logging.Logger;
 
 import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
 import javax.transaction.xa.Xid;
 
+import org.neo4j.helpers.Exceptions;
 import org.neo4j.kernel.impl.transaction.AbstractTransactionManager;
 import org.neo4j.kernel.impl.util.ArrayMap;
 import org.neo4j.kernel.impl.util.StringLogger;
@@ -59,6 +61,12 @@ public class XaResourceManager
     private StringLogger msgLog;
     private final AbstractTransactionManager transactionManager;
 
+    // txs that have written their commit entry, but not yet applied, when
+    // group commit is enabled. They are applied in tx id order.
+    private final TreeSet<Long> pendingCommits = new TreeSet<Long>();
+    // set when the log failed to force a group commit batch, see assertNotFailed()
+    private XAException forceFailure;
+
     XaResourceManager( XaDataSource dataSource, XaTransactionFactory tf,
             TxIdGenerator txIdGenerator, AbstractTransactionManager transactionManager, String name )
     {
@@ -101,6 +109,10 @@ public class XaResourceManager
             throw new XAException( "Resource[" + xaResource
                 + "] already enlisted or suspended" );
         }
+        if ( xidMap.get( xid ) == null )
+        {
+            assertNotFailed();
+        }
         xaResourceMap.put( xaResource, xid );
         if ( xidMap.get( xid ) == null )
         {
@@ -306,6 +318,7 @@ public class XaResourceManager
 
     synchronized int prepare( Xid xid ) throws XAException
     {
+        assertNotFailed();
         XidStatus status = xidMap.get( xid );
         if ( status == null )
         {
@@ -410,7 +423,188 @@ public class XaResourceManager
         return xaTransaction;
     }
 
-    synchronized XaTransaction commit( Xid xid, boolean onePhase )
+    XaTransaction commit( Xid xid, boolean onePhase ) throws XAException
+    {
+        PendingCommit pending = writeCommitEntry( xid, onePhase );
+        if ( pending == null )
+        {
+            return commitInOneGo( xid, onePhase );
+        }
+        try
+        {
+            log.awaitForced( pending.forceTicket );
+        }
+        catch ( XAException e )
+        {
+            failed( e );
+            throw e;
+        }
+        return applyPendingCommit( xid, pending );
+    }
+
+    /**
+     * Called when the log failed to force a batch of commit entries. Whether
+     * they made it to disk, all of them, some or none, isn't known until the
+     * log is read by recovery. Neither this nor any later pending commit can
+     * be applied, and a tx id can't be handed back either, so the data source
+     * stops taking transactions and has to be restarted. Transactions already
+     * started can still be rolled back.
+     */
+    private synchronized void failed( XAException cause )
+    {
+        if ( forceFailure == null )
+        {
+            forceFailure = cause;
+            msgLog.logMessage( "Logical log of " + name + " failed to force a batch of commits, "
+                    + "no more transactions are accepted until restart and recovery", cause );
+        }
+        notifyAll();
+    }
+
+    private void assertNotFailed() throws XAException
+    {
+        if ( forceFailure != null )
+        {
+            throw Exceptions.withCause( new XAException( "Logical log of " + name
+                    + " failed to force commits, restart to recover" ), forceFailure );
+        }
+    }
+
+    private static class PendingCommit
+    {
+        final long txId;
+        final long forceTicket;
+
+        PendingCommit( long txId, long forceTicket )
+        {
+            this.txId = txId;
+            this.forceTicket = forceTicket;
+        }
+    }
+
+    /**
+     * First half of a group commit. Prepares the transaction and writes its
+     * commit entry to the log, but leaves the force of the log and applying
+     * the transaction to {@link #applyPendingCommit(Xid, PendingCommit)}
+     * so that the force can be awaited without holding this monitor.
+     *
+     * @return the pending commit or {@code null} if group commit isn't
+     * enabled or the transaction doesn't write a commit entry, in which case
+     * it should go through the ordinary commit.
+     */
+    private synchronized PendingCommit writeCommitEntry( Xid xid, boolean onePhase )
+        throws XAException
+    {
+        if ( !log.isGroupCommitEnabled() )
+        {
+            return null;
+        }
+        assertNotFailed();
+        XidStatus status = xidMap.get( xid );
+        if ( status == null )
+        {
+            throw new XAException( "Unknown xid[" + xid + "]" );
+        }
+        TransactionStatus txStatus = status.getTransactionStatus();
+        XaTransaction xaTransaction = txStatus.getTransaction();
+        if ( xaTransaction.isReadOnly() || xaTransaction.isRecovered() )
+        {
+            return null;
+        }
+        checkStartWritten( txStatus, xaTransaction );
+        if ( onePhase )
+        {
+            txStatus.markAsPrepared();
+            xaTransaction.prepare();
+        }
+        if ( !txStatus.prepared() || txStatus.rollback() )
+        {
+            throw new XAException( "Transaction not prepared or "
+                + "(marked as) rolledbacked" );
+        }
+        long txId = generateTxId( xaTransaction );
+        xaTransaction.setCommitTxId( txId );
+        long ticket = onePhase ?
+                log.commitOnePhase( xaTransaction.getIdentifier(), txId, getForceMode() ) :
+                log.commitTwoPhase( xaTransaction.getIdentifier(), txId, getForceMode() );
+        pendingCommits.add( txId );
+        return new PendingCommit( txId, ticket );
+    }
+
+    /**
+     * Tx ids are based on the last committed tx, which doesn't include the
+     * pending commits. The default generator's next id is the one after the
+     * last pending commit, other generators (like the ones for HA) are asked
+     * for their id once all pending commits are applied, and it's used as is.
+     */
+    private long generateTxId( XaTransaction xaTransaction ) throws XAException
+    {
+        if ( !pendingCommits.isEmpty() )
+        {
+            if ( txIdGenerator == TxIdGenerator.DEFAULT )
+            {
+                return pendingCommits.last().longValue() + 1;
+            }
+            while ( forceFailure == null && !pendingCommits.isEmpty() )
+            {
+                try
+                {
+                    wait();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.interrupted();
+                }
+            }
+            assertNotFailed();
+        }
+        return txIdGenerator.generate( dataSource, xaTransaction.getIdentifier() );
+    }
+
+    /**
+     * Second half of a group commit, applies the transaction once its commit
+     * entry has been forced and all transactions with lower tx ids have been
+     * applied.
+     */
+    private synchronized XaTransaction applyPendingCommit( Xid xid, PendingCommit pending )
+        throws XAException
+    {
+        try
+        {
+            while ( forceFailure == null && pendingCommits.first().longValue() != pending.txId )
+            {
+                try
+                {
+                    wait();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.interrupted();
+                }
+            }
+            // a later force may have covered this commit, but one before it may be missing
+            assertNotFailed();
+            XidStatus status = xidMap.get( xid );
+            if ( status == null )
+            {
+                throw new XAException( "Unknown xid[" + xid + "]" );
+            }
+            TransactionStatus txStatus = status.getTransactionStatus();
+            XaTransaction xaTransaction = txStatus.getTransaction();
+            txStatus.markCommitStarted();
+            xaTransaction.commit();
+            log.done( xaTransaction.getIdentifier() );
+            xidMap.remove( xid );
+            return xaTransaction;
+        }
+        finally
+        {
+            pendingCommits.remove( pending.txId );
+            notifyAll();
+        }
+    }
+
+    private synchronized XaTransaction commitInOneGo( Xid xid, boolean onePhase )
         throws XAException
     {
         XidStatus status = xidMap.get( xid );
@@ -498,12 +692,25 @@ public class XaResourceManager
     synchronized XaTransaction rollback( Xid xid ) throws XAException
     {
         XidStatus status = xidMap.get( xid );
+        if ( status == null && forceFailure != null )
+        {
+            // refused by start(), there's nothing to roll back
+            return null;
+        }
         if ( status == null )
         {
             throw new XAException( "Unknown xid[" + xid + "]" );
         }
         TransactionStatus txStatus = status.getTransactionStatus();
         XaTransaction xaTransaction = txStatus.getTransaction();
+        if ( forceFailure != null )
+        {
+            // only undone in memory, what's in the log is up to recovery on restart
+            txStatus.markAsRollback();
+            xaTransaction.rollback();
+            xidMap.remove( xid );
+            return xaTransaction;
+        }
         checkStartWritten( txStatus, xaTransaction );
         if ( txStatus.commitStarted() )
         {
@@ -682,7 +889,8 @@ public class XaResourceManager
                 {
                     if ( !recoveredTx.isOnePhase() )
                     {
-                        log.commitTwoPhase( recoveredTx.getIdentifier(), recoveredTx.getTxId(), ForceMode.forced );
+                        log.awaitForced( log.commitTwoPhase( recoveredTx.getIdentifier(),
+                                recoveredTx.getTxId(), ForceMode.forced ) );
                     }
                     log.doneInternal( recoveredTx.getIdentifier() );
                 }
@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.traversal;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.traversal.BranchSelector;
+import org.neo4j.graphdb.traversal.SideSelector;
+import org.neo4j.graphdb.traversal.TraversalBranch;
+
+/**
+ * Selects branches from the two sides of a bidirectional traversal, leaving
+ * it to subclasses when to switch side. The sides are expanded breadth
+ * first, so when a side returns a branch every shallower level of it has
+ * been returned. A side is done when it runs out of branches or returns a
+ * branch which together with the levels completed on the other side would
+ * exceed the max depth. Every path within the max depth has then already
+ * been formed by branches of those completed levels.
+ */
+public abstract class AbstractSelectorOrderer implements SideSelector
+{
+    private static final int START = 0;
+    private static final int END = 1;
+
+    private final BranchSelector[] selectors;
+    private final TraversalBranch[] peeked = new TraversalBranch[2];
+    private final int[] depths = new int[2];
+    // the deepest level of each side of which every branch has been returned
+    private final int[] completed = { -1, -1 };
+    private final boolean[] done = new boolean[2];
+    private final int maxDepth;
+    private int current = START;
+    private int currentSide = START;
+
+    protected AbstractSelectorOrderer( BranchSelector start, BranchSelector end, int maxDepth )
+    {
+        this.selectors = new BranchSelector[] { start, end };
+        this.maxDepth = maxDepth;
+    }
+
+    public TraversalBranch next()
+    {
+        while ( !done[START] || !done[END] )
+        {
+            int side = done[current] ? other( current ) : current;
+            TraversalBranch branch = peeked[side] != null ? peeked[side] : selectors[side].next();
+            peeked[side] = null;
+            if ( branch == null )
+            {
+                completed[side] = depths[side];
+                done[side] = true;
+                continue;
+            }
+            completed[side] = branch.depth() - 1;
+            if ( branch.depth() + completed[other( side )] > maxDepth )
+            {
+                done[side] = true;
+                continue;
+            }
+            if ( branch.depth() > depths[side] && !done[other( side )] && switchBeforeDeeperBranch() )
+            {
+                depths[side] = branch.depth();
+                peeked[side] = branch;
+                current = other( side );
+                continue;
+            }
+
+            depths[side] = Math.max( depths[side], branch.depth() );
+            current = switchAfterEveryBranch() ? other( side ) : side;
+            currentSide = side;
+            return branch;
+        }
+        return null;
+    }
+
+    /**
+     * @return whether to switch side when a side reaches a new depth.
+     */
+    protected abstract boolean switchBeforeDeeperBranch();
+
+    /**
+     * @return whether to switch side after every branch.
+     */
+    protected abstract boolean switchAfterEveryBranch();
+
+    private static int other( int side )
+    {
+        return side == START ? END : START;
+    }
+
+    public Direction currentSide()
+    {
+        return currentSide == START ? Direction.OUTGOING : Direction.INCOMING;
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.traversal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.traversal.TraversalBranch;
+import org.neo4j.kernel.Traversal;
+
+/**
+ * The path from the start node to the end node of a bidirectional
+ * traversal, joining a branch of each side which end in the same node.
+ */
+class BidirectionalTraversalPath implements Path
+{
+    private final List<Node> nodes = new ArrayList<Node>();
+    private final List<Relationship> relationships = new ArrayList<Relationship>();
+
+    BidirectionalTraversalPath( TraversalBranch start, TraversalBranch end )
+    {
+        for ( Node node : start.position().nodes() )
+        {
+            nodes.add( node );
+        }
+        for ( Relationship relationship : start.position().relationships() )
+        {
+            relationships.add( relationship );
+        }
+
+        List<Node> endNodes = new ArrayList<Node>();
+        for ( Node node : end.position().nodes() )
+        {
+            endNodes.add( node );
+        }
+        // The last node of the end side is the node where the sides meet
+        for ( int i = endNodes.size() - 2; i >= 0; i-- )
+        {
+            nodes.add( endNodes.get( i ) );
+        }
+        List<Relationship> endRelationships = new ArrayList<Relationship>();
+        for ( Relationship relationship : end.position().relationships() )
+        {
+            endRelationships.add( relationship );
+        }
+        Collections.reverse( endRelationships );
+        relationships.addAll( endRelationships );
+    }
+
+    boolean hasRepeatedNodes()
+    {
+        return new HashSet<Node>( nodes ).size() != nodes.size();
+    }
+
+    public Node startNode()
+    {
+        return nodes.get( 0 );
+    }
+
+    public Node endNode()
+    {
+        return nodes.get( nodes.size() - 1 );
+    }
+
+    public Relationship lastRelationship()
+    {
+        return relationships.isEmpty() ? null : relationships.get( relationships.size() - 1 );
+    }
+
+    public Iterable<Relationship> relationships()
+    {
+        return Collections.unmodifiableList( relationships );
+    }
+
+    public Iterable<Node> nodes()
+    {
+        return Collections.unmodifiableList( nodes );
+    }
+
+    public int length()
+    {
+        return relationships.size();
+    }
+
+    public Iterator<PropertyContainer> iterator()
+    {
+        List<PropertyContainer> entities = new ArrayList<PropertyContainer>( nodes.size() * 2 );
+        for ( int i = 0; i < relationships.size(); i++ )
+        {
+            entities.add( nodes.get( i ) );
+            entities.add( relationships.get( i ) );
+        }
+        entities.add( endNode() );
+        return entities.iterator();
+    }
+
+    @Override
+    public String toString()
+    {
+        return Traversal.defaultPathToString( this );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return relationships.isEmpty() ? startNode().hashCode() : relationships.hashCode();
+    }
+
+    @Override
+    public boolean equals( Object obj )
+    {
+        if ( this == obj )
+        {
+            return true;
+        }
+        if ( !( obj instanceof Path ) )
+        {
+            return false;
+        }
+        Path other = (Path) obj;
+        if ( !startNode().equals( other.startNode() ) )
+        {
+            return false;
+        }
+        Iterator<Relationship> those = other.relationships().iterator();
+        for ( Relationship relationship : relationships )
+        {
+            if ( !those.hasNext() || !relationship.equals( those.next() ) )
+            {
+                return false;
+            }
+        }
+        return !those.hasNext();
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.traversal;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.traversal.BranchCollisionDetector;
+import org.neo4j.graphdb.traversal.SideSelector;
+import org.neo4j.graphdb.traversal.TraversalBranch;
+import org.neo4j.helpers.collection.PrefetchingIterator;
+
+class BidirectionalTraverserImpl extends AbstractTraverser
+{
+    private final BidirectionalTraversalDescriptionImpl description;
+    private final Node startNode;
+    private final Node endNode;
+
+    BidirectionalTraverserImpl( BidirectionalTraversalDescriptionImpl description, Node startNode, Node endNode )
+    {
+        this.description = description;
+        this.startNode = startNode;
+        this.endNode = endNode;
+    }
+
+    public Iterator<Path> iterator()
+    {
+        return new BidirectionalTraverserIterator();
+    }
+
+    private class BidirectionalTraverserIterator extends PrefetchingIterator<Path>
+    {
+        private final SideSelector selector;
+        private final BranchCollisionDetector collisionDetector;
+        private final LinkedList<Path> found = new LinkedList<Path>();
+
+        BidirectionalTraverserIterator()
+        {
+            TraverserImpl.TraverserIterator start =
+                    new TraverserImpl( description.start, startNode ).new TraverserIterator();
+            TraverserImpl.TraverserIterator end =
+                    new TraverserImpl( description.end, endNode ).new TraverserIterator();
+            this.selector = description.sideSelector.create( start.branches(), end.branches(),
+                    description.maxDepth );
+            this.collisionDetector = description.collisionPolicy.create( description.collisionEvaluator );
+        }
+
+        @Override
+        protected Path fetchNextOrNull()
+        {
+            while ( found.isEmpty() )
+            {
+                TraversalBranch branch = selector.next();
+                if ( branch == null )
+                {
+                    return null;
+                }
+                for ( Path path : collisionDetector.evaluate( branch, selector.currentSide() ) )
+                {
+                    // Branches accepted earlier may meet branches deeper than
+                    // the other side had reached at the time
+                    if ( path.length() <= description.maxDepth )
+                    {
+                        found.add( path );
+                    }
+                }
+            }
+            return found.removeFirst();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.traversal;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.neo4j.graphdb.traversal.TraversalBranch;
+import org.neo4j.graphdb.traversal.UniquenessFactory;
+import org.neo4j.graphdb.traversal.UniquenessFilter;
+import org.neo4j.kernel.Uniqueness;
+
+/**
+ * The uniqueness filters that can be shared by the threads of a parallel
+ * traversal: {@link Uniqueness#NODE_GLOBAL},
+ * {@link Uniqueness#RELATIONSHIP_GLOBAL} and {@link Uniqueness#NONE}.
+ */
+class ConcurrentUniqueness implements UniquenessFilter
+{
+    private final boolean relationships;
+    private final Set<Long> visited;
+
+    private ConcurrentUniqueness( boolean relationships, boolean unique )
+    {
+        this.relationships = relationships;
+        this.visited = unique ? Collections.newSetFromMap( new ConcurrentHashMap<Long, Boolean>() ) : null;
+    }
+
+    static void checkSupported( UniquenessFactory uniqueness )
+    {
+        if ( uniqueness != Uniqueness.NODE_GLOBAL && uniqueness != Uniqueness.RELATIONSHIP_GLOBAL
+             && uniqueness != Uniqueness.NONE )
+        {
+            throw new IllegalArgumentException( "Parallel traversals only support " + Uniqueness.NODE_GLOBAL
+                                                + ", " + Uniqueness.RELATIONSHIP_GLOBAL + " and "
+                                                + Uniqueness.NONE + " uniqueness, not " + uniqueness );
+        }
+    }
+
+    static UniquenessFilter create( UniquenessFactory uniqueness )
+    {
+        checkSupported( uniqueness );
+        return new ConcurrentUniqueness( uniqueness == Uniqueness.RELATIONSHIP_GLOBAL,
+                uniqueness != Uniqueness.NONE );
+    }
+
+    public boolean checkFirst( TraversalBranch branch )
+    {
+        return relationships ? true : check( branch );
+    }
+
+    public boolean check( TraversalBranch branch )
+    {
+        if ( visited == null )
+        {
+            return true;
+        }
+        return visited.add( relationships ? branch.relationship().getId() : branch.node().getId() );
+    }
+}
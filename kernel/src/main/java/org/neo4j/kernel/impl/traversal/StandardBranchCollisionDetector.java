@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.traversal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.traversal.BranchCollisionDetector;
+import org.neo4j.graphdb.traversal.Evaluator;
+import org.neo4j.graphdb.traversal.TraversalBranch;
+
+/**
+ * Keeps the branches of both sides by the node they end in. A new branch
+ * meeting branches of the other side forms one path with each of them,
+ * paths with repeated nodes and paths already returned are skipped.
+ */
+public class StandardBranchCollisionDetector implements BranchCollisionDetector
+{
+    private final Evaluator evaluator;
+    private final Map<Node, List<TraversalBranch>[]> branches = new HashMap<Node, List<TraversalBranch>[]>();
+    private final Set<Path> returnedPaths = new HashSet<Path>();
+
+    public StandardBranchCollisionDetector( Evaluator evaluator )
+    {
+        this.evaluator = evaluator;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    public Collection<Path> evaluate( TraversalBranch branch, Direction direction )
+    {
+        int side = direction == Direction.OUTGOING ? 0 : 1;
+        List<TraversalBranch>[] branchesHere = branches.get( branch.node() );
+        if ( branchesHere == null )
+        {
+            branchesHere = new List[] { new ArrayList<TraversalBranch>(), new ArrayList<TraversalBranch>() };
+            branches.put( branch.node(), branchesHere );
+        }
+        branchesHere[side].add( branch );
+
+        List<TraversalBranch> otherSide = branchesHere[1 - side];
+        if ( otherSide.isEmpty() )
+        {
+            return Collections.emptyList();
+        }
+        Collection<Path> paths = new ArrayList<Path>();
+        for ( TraversalBranch other : otherSide )
+        {
+            BidirectionalTraversalPath path = side == 0 ?
+                    new BidirectionalTraversalPath( branch, other ) : new BidirectionalTraversalPath( other, branch );
+            if ( !path.hasRepeatedNodes() && includePath( path ) && returnedPaths.add( path ) )
+            {
+                paths.add( path );
+            }
+        }
+        return paths;
+    }
+
+    protected boolean includePath( Path path )
+    {
+        return evaluator.evaluate( path ).includes();
+    }
+}
@@ -19,6 +19,8 @@
  */
 package org.neo4j.kernel.impl.traversal;
 
+import java.util.concurrent.ExecutorService;
+
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Expander;
 import org.neo4j.graphdb.Node;
@@ -43,7 +45,7 @@ public final class TraversalDescriptionImpl implements TraversalDescription
     public TraversalDescriptionImpl()
     {
         this( StandardExpander.DEFAULT, Uniqueness.NODE_GLOBAL, null,
-                Evaluators.all(), Traversal.preorderDepthFirst() );
+                Evaluators.all(), Traversal.preorderDepthFirst(), null );
     }
 
     final Expander expander;
@@ -51,16 +53,19 @@ public final class TraversalDescriptionImpl implements TraversalDescription
     final Object uniquenessParameter;
     final Evaluator evaluator;
     final BranchOrderingPolicy branchSelector;
+    final ExecutorService executor;
 
     private TraversalDescriptionImpl( Expander expander,
             UniquenessFactory uniqueness, Object uniquenessParameter,
-            Evaluator evaluator, BranchOrderingPolicy branchSelector )
+            Evaluator evaluator, BranchOrderingPolicy branchSelector,
+            ExecutorService executor )
     {
         this.expander = expander;
         this.uniqueness = uniqueness;
         this.uniquenessParameter = uniquenessParameter;
         this.evaluator = evaluator;
         this.branchSelector = branchSelector;
+        this.executor = executor;
     }
 
     /* (non-Javadoc)
@@ -68,6 +73,10 @@ public final class TraversalDescriptionImpl implements TraversalDescription
      */
     public Traverser traverse( Node startNode )
     {
+        if ( executor != null )
+        {
+            ConcurrentUniqueness.checkSupported( uniqueness );
+        }
         return new TraverserImpl( this, startNode );
     }
 
@@ -77,7 +86,7 @@ public final class TraversalDescriptionImpl implements TraversalDescription
     public TraversalDescription uniqueness( UniquenessFactory uniqueness )
     {
         return new TraversalDescriptionImpl( expander, uniqueness, null,
-                evaluator, branchSelector );
+                evaluator, branchSelector, executor );
     }
 
     /* (non-Javadoc)
@@ -96,7 +105,7 @@ public final class TraversalDescriptionImpl implements TraversalDescription
         }
 
         return new TraversalDescriptionImpl( expander, uniqueness, parameter,
-                evaluator, branchSelector );
+                evaluator, branchSelector, executor );
     }
     
     public TraversalDescription prune( PruneEvaluator pruning )
@@ -131,7 +140,7 @@ public final class TraversalDescriptionImpl implements TraversalDescription
         }
         nullCheck( evaluator, Evaluator.class, "RETURN_ALL" );
         return new TraversalDescriptionImpl( expander, uniqueness, uniquenessParameter,
-                addBlaEvaluator( evaluator ), branchSelector );
+                addBlaEvaluator( evaluator ), branchSelector, executor );
     }
     
     private Evaluator addBlaEvaluator( Evaluator evaluator )
@@ -176,7 +185,7 @@ public final class TraversalDescriptionImpl implements TraversalDescription
             return this;
         }
         return new TraversalDescriptionImpl( expander, uniqueness, uniquenessParameter,
-                evaluator, selector );
+                evaluator, selector, executor );
     }
 
     public TraversalDescription depthFirst()
@@ -216,7 +225,17 @@ public final class TraversalDescriptionImpl implements TraversalDescription
             return this;
         }
         return new TraversalDescriptionImpl( Traversal.expander( expander ), uniqueness,
-                uniquenessParameter, evaluator, branchSelector );
+                uniquenessParameter, evaluator, branchSelector, executor );
+    }
+
+    public TraversalDescription parallel( ExecutorService executor )
+    {
+        if ( this.executor == executor )
+        {
+            return this;
+        }
+        return new TraversalDescriptionImpl( expander, uniqueness, uniquenessParameter,
+                evaluator, branchSelector, executor );
     }
     
     private static class WrappedPruneEvaluator implements Evaluator
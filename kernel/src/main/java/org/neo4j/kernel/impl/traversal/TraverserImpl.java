@@ -19,20 +19,27 @@
  */
 package org.neo4j.kernel.impl.traversal;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Path;
-import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.traversal.BranchSelector;
 import org.neo4j.graphdb.traversal.TraversalBranch;
-import org.neo4j.graphdb.traversal.Traverser;
 import org.neo4j.graphdb.traversal.UniquenessFilter;
-import org.neo4j.helpers.collection.CombiningIterator;
-import org.neo4j.helpers.collection.IterableWrapper;
+import org.neo4j.helpers.collection.ClosableIterator;
 import org.neo4j.helpers.collection.PrefetchingIterator;
 
-class TraverserImpl implements Traverser
+class TraverserImpl extends AbstractTraverser
 {
     private final TraversalDescriptionImpl description;
     private final Node startNode;
@@ -45,69 +52,37 @@ class TraverserImpl implements Traverser
 
     public Iterator<Path> iterator()
     {
-        return new TraverserIterator();
-    }
-
-    public Iterable<Node> nodes()
-    {
-        return new IterableWrapper<Node, Path>( this )
-        {
-            @Override
-            protected Node underlyingObjectToObject( Path position )
-            {
-                return position.endNode();
-            }
-        };
-    }
-
-    public Iterable<Relationship> relationships()
-    {
-        return new IterableWrapper<Relationship, Path>( this )
-        {
-            @Override
-            public Iterator<Relationship> iterator()
-            {
-                Iterator<Relationship> iter = super.iterator();
-                if ( iter.hasNext() )
-                {
-                    Relationship first = iter.next();
-                    // If the first position represents the start node, the
-                    // first relationship will be null, in that case skip it.
-                    if ( first == null ) return iter;
-                    // Otherwise re-include it.
-                    return new CombiningIterator<Relationship>( first, iter );
-                }
-                else
-                {
-                    return iter;
-                }
-            }
-
-            @Override
-            protected Relationship underlyingObjectToObject( Path position )
-            {
-                return position.lastRelationship();
-            }
-        };
+        return description.executor != null ? new ParallelTraverserIterator() : new TraverserIterator();
     }
 
     class TraverserIterator extends PrefetchingIterator<Path>
     {
         final UniquenessFilter uniquness;
-        private final BranchSelector sourceSelector;
+        private BranchSelector sourceSelector;
         final TraversalDescriptionImpl description;
         final Node startNode;
 
         TraverserIterator()
         {
-            this.description = TraverserImpl.this.description;
-            this.uniquness = description.uniqueness.create( description.uniquenessParameter );
-            this.startNode = TraverserImpl.this.startNode;
+            this( TraverserImpl.this.description.uniqueness.create(
+                    TraverserImpl.this.description.uniquenessParameter ) );
             this.sourceSelector = description.branchSelector.create(
                     new StartNodeTraversalBranch( this, startNode,
                             description.expander ) );
         }
 
+        TraverserIterator( UniquenessFilter uniqueness )
+        {
+            this.description = TraverserImpl.this.description;
+            this.uniquness = uniqueness;
+            this.startNode = TraverserImpl.this.startNode;
+        }
+
+        BranchSelector branches()
+        {
+            return sourceSelector;
+        }
+
         boolean okToProceedFirst( TraversalBranch source )
         {
             return this.uniquness.checkFirst( source );
@@ -136,4 +111,199 @@ class TraverserImpl implements Traverser
             }
         }
     }
+
+    /**
+     * Expands branches as tasks on the executor of the description, one depth
+     * at a time. Each task expands one branch and collects the child branches
+     * the traversal continues from, and those are only submitted once every
+     * branch at the current depth has been expanded. So, like a breadth first
+     * traversal, a node is always reached first at its lowest depth, which
+     * global uniqueness combined with depth based evaluators relies on.
+     * Paths are handed to the caller through a bounded queue as soon as they
+     * are found, in no particular order within a depth, so the tasks can't get
+     * further ahead of the caller than the size of the queue. Closing the
+     * iterator cancels the tasks that are still expanding.
+     */
+    class ParallelTraverserIterator extends TraverserIterator implements ClosableIterator<Path>
+    {
+        private static final int MAX_FOUND = 1000;
+
+        private final Object end = new Object();
+        private final BlockingQueue<Object> found = new LinkedBlockingQueue<Object>( MAX_FOUND );
+        private final AtomicInteger pending = new AtomicInteger();
+        private final Queue<TraversalBranch> nextDepth = new ConcurrentLinkedQueue<TraversalBranch>();
+        private volatile boolean failed;
+        private volatile boolean cancelled;
+        private boolean started;
+        private boolean done;
+
+        ParallelTraverserIterator()
+        {
+            super( ConcurrentUniqueness.create( TraverserImpl.this.description.uniqueness ) );
+        }
+
+        @Override
+        protected Path fetchNextOrNull()
+        {
+            if ( done )
+            {
+                return null;
+            }
+            if ( !started )
+            {
+                started = true;
+                submit( Collections.<TraversalBranch>singletonList(
+                        new StartNodeTraversalBranch( this, startNode, description.expander ) ) );
+            }
+
+            Object next;
+            try
+            {
+                next = found.take();
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                close();
+                throw new RuntimeException( "Interrupted while waiting for the parallel traversal", e );
+            }
+            if ( next == end )
+            {
+                done = true;
+                return null;
+            }
+            if ( next instanceof Throwable )
+            {
+                close();
+                if ( next instanceof RuntimeException ) throw (RuntimeException) next;
+                if ( next instanceof Error ) throw (Error) next;
+                throw new RuntimeException( (Throwable) next );
+            }
+            return (Path) next;
+        }
+
+        /**
+         * Stops the traversal if it hasn't reached its end. Tasks blocked on
+         * handing over paths give up and no further branches are expanded.
+         */
+        public void close()
+        {
+            done = true;
+            cancelled = true;
+            found.clear();
+        }
+
+        /*
+         * Submits the branches of one depth, all of which are counted as
+         * pending before any of them is expanded.
+         */
+        private void submit( List<TraversalBranch> branches )
+        {
+            pending.addAndGet( branches.size() );
+            for ( int i = 0; i < branches.size(); i++ )
+            {
+                final TraversalBranch branch = branches.get( i );
+                try
+                {
+                    description.executor.execute( new Runnable()
+                    {
+                        public void run()
+                        {
+                            expand( branch );
+                        }
+                    } );
+                }
+                catch ( RejectedExecutionException e )
+                {
+                    fail( e );
+                    for ( ; i < branches.size(); i++ )
+                    {
+                        finish();
+                    }
+                }
+            }
+        }
+
+        private void expand( TraversalBranch branch )
+        {
+            try
+            {
+                for ( TraversalBranch child = branch.next(); child != null && !failed && !cancelled;
+                        child = branch.next() )
+                {
+                    if ( child.evaluation().includes() )
+                    {
+                        hand( child.position() );
+                    }
+                    // The start branch returns itself first
+                    if ( child != branch && child.evaluation().continues() )
+                    {
+                        nextDepth.add( child );
+                    }
+                }
+            }
+            catch ( Throwable e )
+            {
+                fail( e );
+            }
+            finally
+            {
+                finish();
+            }
+        }
+
+        /*
+         * Blocks while the queue is full, checking now and then whether the
+         * caller has gone away in the meantime.
+         */
+        private void hand( Object item )
+        {
+            try
+            {
+                while ( !cancelled )
+                {
+                    if ( found.offer( item, 100, TimeUnit.MILLISECONDS ) )
+                    {
+                        return;
+                    }
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                cancelled = true;
+            }
+        }
+
+        private void fail( Throwable e )
+        {
+            if ( !failed )
+            {
+                failed = true;
+                hand( e );
+            }
+        }
+
+        /*
+         * The last branch of a depth to finish moves the traversal on to the
+         * next depth, or ends it.
+         */
+        private void finish()
+        {
+            if ( pending.decrementAndGet() != 0 )
+            {
+                return;
+            }
+            List<TraversalBranch> branches = new ArrayList<TraversalBranch>( nextDepth );
+            nextDepth.clear();
+            if ( branches.isEmpty() || failed || cancelled )
+            {
+                hand( end );
+            }
+            else
+            {
+                submit( branches );
+            }
+        }
+    }
 }
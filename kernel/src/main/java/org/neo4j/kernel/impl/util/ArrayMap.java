@@ -44,11 +44,22 @@ public class ArrayMap<K,V>
     }
 
     public ArrayMap( int mapThreshold, boolean threadSafe, boolean shrinkToArray )
+    {
+        this( mapThreshold, mapThreshold, threadSafe, shrinkToArray );
+    }
+
+    /**
+     * Starts out with room for {@code initialCapacity} entries and grows the
+     * array up to {@code mapThreshold} entries before switching to a map. Good
+     * for the many maps that only ever get one or two entries, like the
+     * property changes of a single entity in a transaction.
+     */
+    public ArrayMap( int initialCapacity, int mapThreshold, boolean threadSafe, boolean shrinkToArray )
     {
         this.toMapThreshold = (byte)mapThreshold;
         this.useThreadSafeMap = threadSafe;
         this.switchBackToArray = shrinkToArray;
-        data = new ArrayEntry[toMapThreshold];
+        data = new ArrayEntry[Math.min( initialCapacity, mapThreshold )];
     }
 
     @Override
@@ -103,6 +114,11 @@ public class ArrayMap<K,V>
         }
         if ( arrayCount != -1 )
         {
+            if ( arrayCount == ((ArrayEntry[])data).length && arrayCount < toMapThreshold )
+            {
+                data = Arrays.copyOf( (ArrayEntry[])data,
+                        Math.min( Math.max( arrayCount * 2, 1 ), toMapThreshold ) );
+            }
             if ( arrayCount < ((ArrayEntry[])data).length )
             {
                 ((ArrayEntry[])data)[arrayCount++] = new ArrayEntry<K,V>( key, value );
@@ -137,6 +153,11 @@ public class ArrayMap<K,V>
         }
         if ( arrayCount != -1 )
         {
+            if ( arrayCount == ((ArrayEntry[])data).length && arrayCount < toMapThreshold )
+            {
+                data = Arrays.copyOf( (ArrayEntry[])data,
+                        Math.min( Math.max( arrayCount * 2, 1 ), toMapThreshold ) );
+            }
             if ( arrayCount < ((ArrayEntry[])data).length )
             {
                 ((ArrayEntry[])data)[arrayCount++] = new ArrayEntry<K,V>( key, value );
@@ -0,0 +1,256 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * A set of primitive longs using open addressing with linear probing, so
+ * that adding an id doesn't box it or allocate an entry object. The table
+ * can either live on the java heap or in a direct buffer outside of it, the
+ * latter keeping large sets (e.g. visited nodes of a deep traversal) away
+ * from the garbage collector.
+ * <p>
+ * Not thread safe.
+ */
+public class LongHashSet
+{
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final long FREE = -1;
+    // low enough to keep probe sequences of missing values short
+    static final float LOAD_FACTOR = 0.5f;
+
+    private final boolean offHeap;
+    private LongBuffer table;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+    // FREE marks empty slots, so whether it's a member is kept on the side
+    private boolean containsFree;
+
+    public LongHashSet()
+    {
+        this( DEFAULT_CAPACITY, false );
+    }
+
+    public LongHashSet( int initialCapacity, boolean offHeap )
+    {
+        this.offHeap = offHeap;
+        allocate( tableSizeFor( initialCapacity ) );
+    }
+
+    public boolean add( long value )
+    {
+        if ( value == FREE )
+        {
+            if ( containsFree )
+            {
+                return false;
+            }
+            containsFree = true;
+            size++;
+            return true;
+        }
+        int slot = hash( value ) & mask;
+        for ( long current; ( current = table.get( slot ) ) != FREE; slot = ( slot + 1 ) & mask )
+        {
+            if ( current == value )
+            {
+                return false;
+            }
+        }
+        table.put( slot, value );
+        if ( ++size > resizeThreshold )
+        {
+            rehash( ( mask + 1 ) * 2 );
+        }
+        return true;
+    }
+
+    public boolean contains( long value )
+    {
+        if ( value == FREE )
+        {
+            return containsFree;
+        }
+        return slotOf( value ) != -1;
+    }
+
+    public boolean remove( long value )
+    {
+        if ( value == FREE )
+        {
+            if ( !containsFree )
+            {
+                return false;
+            }
+            containsFree = false;
+            size--;
+            return true;
+        }
+        int slot = slotOf( value );
+        if ( slot == -1 )
+        {
+            return false;
+        }
+        // shift following entries of the same probe sequence back so that
+        // lookups never stop too early at the hole we leave
+        int next = slot;
+        while ( true )
+        {
+            next = ( next + 1 ) & mask;
+            long current = table.get( next );
+            if ( current == FREE )
+            {
+                break;
+            }
+            int home = hash( current ) & mask;
+            if ( ( next > slot && ( home <= slot || home > next ) ) ||
+                 ( next < slot && ( home <= slot && home > next ) ) )
+            {
+                table.put( slot, current );
+                slot = next;
+            }
+        }
+        table.put( slot, FREE );
+        size--;
+        return true;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public void clear()
+    {
+        for ( int i = 0; i <= mask; i++ )
+        {
+            table.put( i, FREE );
+        }
+        containsFree = false;
+        size = 0;
+    }
+
+    /**
+     * @return all values in this set, in no particular order.
+     */
+    public long[] toArray()
+    {
+        long[] result = new long[size];
+        int index = 0;
+        if ( containsFree )
+        {
+            result[index++] = FREE;
+        }
+        for ( int i = 0; i <= mask; i++ )
+        {
+            long value = table.get( i );
+            if ( value != FREE )
+            {
+                result[index++] = value;
+            }
+        }
+        return result;
+    }
+
+    private int slotOf( long value )
+    {
+        int slot = hash( value ) & mask;
+        for ( long current; ( current = table.get( slot ) ) != FREE; slot = ( slot + 1 ) & mask )
+        {
+            if ( current == value )
+            {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void rehash( int newTableSize )
+    {
+        LongBuffer oldTable = table;
+        int oldTableSize = mask + 1;
+        allocate( newTableSize );
+        for ( int i = 0; i < oldTableSize; i++ )
+        {
+            long value = oldTable.get( i );
+            if ( value != FREE )
+            {
+                int slot = hash( value ) & mask;
+                while ( table.get( slot ) != FREE )
+                {
+                    slot = ( slot + 1 ) & mask;
+                }
+                table.put( slot, value );
+            }
+        }
+    }
+
+    private void allocate( int tableSize )
+    {
+        if ( offHeap )
+        {
+            table = ByteBuffer.allocateDirect( tableSize * 8 ).order( ByteOrder.nativeOrder() ).asLongBuffer();
+        }
+        else
+        {
+            table = LongBuffer.allocate( tableSize );
+        }
+        for ( int i = 0; i < tableSize; i++ )
+        {
+            table.put( i, FREE );
+        }
+        mask = tableSize - 1;
+        resizeThreshold = (int) ( tableSize * LOAD_FACTOR );
+    }
+
+    static int tableSizeFor( int capacity )
+    {
+        int tableSize = 2;
+        while ( tableSize * LOAD_FACTOR < capacity )
+        {
+            if ( tableSize >= 1 << 29 )
+            {
+                throw new IllegalArgumentException( "Capacity " + capacity + " too large" );
+            }
+            tableSize <<= 1;
+        }
+        return tableSize;
+    }
+
+    /**
+     * Spreads the bits of {@code value} since ids are mostly sequential.
+     */
+    static int hash( long value )
+    {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        return (int) value;
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+/**
+ * A bounded set of primitive longs which evicts the least recently added or
+ * re-added value when full. It behaves like an access ordered LRU map used
+ * as a set, but without boxing or an entry object per value.
+ * <p>
+ * Not thread safe.
+ */
+public class LongLruSet
+{
+    private static final int NONE = -1;
+
+    private final long[] values;
+    private final int[] previous;
+    private final int[] next;
+    // entry index + 1 per slot, 0 marks an empty slot
+    private final int[] table;
+    private final int mask;
+    private int head = NONE;
+    private int tail = NONE;
+    private int size;
+
+    public LongLruSet( int capacity )
+    {
+        if ( capacity < 1 )
+        {
+            throw new IllegalArgumentException( "capacity=" + capacity );
+        }
+        values = new long[capacity];
+        previous = new int[capacity];
+        next = new int[capacity];
+        table = new int[LongHashSet.tableSizeFor( capacity )];
+        mask = table.length - 1;
+    }
+
+    /**
+     * Adds {@code value} as the most recent value of this set.
+     *
+     * @return {@code true} if {@code value} wasn't already in the set.
+     */
+    public boolean add( long value )
+    {
+        int slot = LongHashSet.hash( value ) & mask;
+        for ( int entry; ( entry = table[slot] ) != 0; slot = ( slot + 1 ) & mask )
+        {
+            if ( values[entry - 1] == value )
+            {
+                if ( entry - 1 != head )
+                {
+                    unlink( entry - 1 );
+                    linkFirst( entry - 1 );
+                }
+                return false;
+            }
+        }
+        int entry;
+        if ( size == values.length )
+        {
+            entry = tail;
+            unlink( entry );
+            removeFromTable( values[entry] );
+            slot = LongHashSet.hash( value ) & mask;
+            while ( table[slot] != 0 )
+            {
+                slot = ( slot + 1 ) & mask;
+            }
+        }
+        else
+        {
+            entry = size++;
+        }
+        values[entry] = value;
+        table[slot] = entry + 1;
+        linkFirst( entry );
+        return true;
+    }
+
+    public boolean contains( long value )
+    {
+        return slotOf( value ) != -1;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    private int slotOf( long value )
+    {
+        int slot = LongHashSet.hash( value ) & mask;
+        for ( int entry; ( entry = table[slot] ) != 0; slot = ( slot + 1 ) & mask )
+        {
+            if ( values[entry - 1] == value )
+            {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void removeFromTable( long value )
+    {
+        int slot = slotOf( value );
+        int following = slot;
+        while ( true )
+        {
+            following = ( following + 1 ) & mask;
+            int entry = table[following];
+            if ( entry == 0 )
+            {
+                break;
+            }
+            int home = LongHashSet.hash( values[entry - 1] ) & mask;
+            if ( ( following > slot && ( home <= slot || home > following ) ) ||
+                 ( following < slot && ( home <= slot && home > following ) ) )
+            {
+                table[slot] = entry;
+                slot = following;
+            }
+        }
+        table[slot] = 0;
+    }
+
+    private void unlink( int entry )
+    {
+        int before = previous[entry];
+        int after = next[entry];
+        if ( before == NONE )
+        {
+            head = after;
+        }
+        else
+        {
+            next[before] = after;
+        }
+        if ( after == NONE )
+        {
+            tail = before;
+        }
+        else
+        {
+            previous[after] = before;
+        }
+    }
+
+    private void linkFirst( int entry )
+    {
+        previous[entry] = NONE;
+        next[entry] = head;
+        if ( head != NONE )
+        {
+            previous[head] = entry;
+        }
+        head = entry;
+        if ( tail == NONE )
+        {
+            tail = entry;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A map from primitive longs to objects, with the same open addressing
+ * scheme as {@link LongHashSet}. Null values aren't allowed.
+ * <p>
+ * Not thread safe.
+ */
+public class LongObjectHashMap<V>
+{
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] keys;
+    // a null value marks an empty slot
+    private Object[] values;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    public LongObjectHashMap()
+    {
+        this( DEFAULT_CAPACITY );
+    }
+
+    public LongObjectHashMap( int initialCapacity )
+    {
+        allocate( LongHashSet.tableSizeFor( initialCapacity ) );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    public V get( long key )
+    {
+        int slot = slotOf( key );
+        return slot == -1 ? null : (V) values[slot];
+    }
+
+    public boolean containsKey( long key )
+    {
+        return slotOf( key ) != -1;
+    }
+
+    /**
+     * @return the previous value for {@code key}, or {@code null} if there
+     * was none.
+     */
+    @SuppressWarnings( "unchecked" )
+    public V put( long key, V value )
+    {
+        if ( value == null )
+        {
+            throw new IllegalArgumentException( "Null value for " + key );
+        }
+        int slot = LongHashSet.hash( key ) & mask;
+        for ( ; values[slot] != null; slot = ( slot + 1 ) & mask )
+        {
+            if ( keys[slot] == key )
+            {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if ( ++size > resizeThreshold )
+        {
+            rehash( keys.length * 2 );
+        }
+        return null;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    public V remove( long key )
+    {
+        int slot = slotOf( key );
+        if ( slot == -1 )
+        {
+            return null;
+        }
+        V removed = (V) values[slot];
+        int next = slot;
+        while ( true )
+        {
+            next = ( next + 1 ) & mask;
+            if ( values[next] == null )
+            {
+                break;
+            }
+            int home = LongHashSet.hash( keys[next] ) & mask;
+            if ( ( next > slot && ( home <= slot || home > next ) ) ||
+                 ( next < slot && ( home <= slot && home > next ) ) )
+            {
+                keys[slot] = keys[next];
+                values[slot] = values[next];
+                slot = next;
+            }
+        }
+        values[slot] = null;
+        size--;
+        return removed;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public void clear()
+    {
+        Arrays.fill( values, null );
+        size = 0;
+    }
+
+    /**
+     * @return all keys in this map, in no particular order.
+     */
+    public long[] keys()
+    {
+        long[] result = new long[size];
+        int index = 0;
+        for ( int i = 0; i < values.length; i++ )
+        {
+            if ( values[i] != null )
+            {
+                result[index++] = keys[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a view of the values in this map, in no particular order. The
+     * map mustn't be modified while iterating over it.
+     */
+    public Iterable<V> values()
+    {
+        return new Iterable<V>()
+        {
+            public Iterator<V> iterator()
+            {
+                return new Iterator<V>()
+                {
+                    private int slot = nextSlot( 0 );
+
+                    public boolean hasNext()
+                    {
+                        return slot < values.length;
+                    }
+
+                    @SuppressWarnings( "unchecked" )
+                    public V next()
+                    {
+                        if ( !hasNext() )
+                        {
+                            throw new NoSuchElementException();
+                        }
+                        V result = (V) values[slot];
+                        slot = nextSlot( slot + 1 );
+                        return result;
+                    }
+
+                    public void remove()
+                    {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    private int nextSlot( int from )
+    {
+        while ( from < values.length && values[from] == null )
+        {
+            from++;
+        }
+        return from;
+    }
+
+    private int slotOf( long key )
+    {
+        int slot = LongHashSet.hash( key ) & mask;
+        for ( ; values[slot] != null; slot = ( slot + 1 ) & mask )
+        {
+            if ( keys[slot] == key )
+            {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void rehash( int newTableSize )
+    {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate( newTableSize );
+        for ( int i = 0; i < oldValues.length; i++ )
+        {
+            if ( oldValues[i] != null )
+            {
+                int slot = LongHashSet.hash( oldKeys[i] ) & mask;
+                while ( values[slot] != null )
+                {
+                    slot = ( slot + 1 ) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate( int tableSize )
+    {
+        keys = new long[tableSize];
+        values = new Object[tableSize];
+        mask = tableSize - 1;
+        resizeThreshold = (int) ( tableSize * LongHashSet.LOAD_FACTOR );
+    }
+}
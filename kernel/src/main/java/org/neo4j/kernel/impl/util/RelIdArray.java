@@ -252,6 +252,16 @@ public class RelIdArray
     {
         return direction.iterator( this );
     }
+
+    /**
+     * Unlike {@link #iterator(DirectionWrapper)} this only returns the ids
+     * which were added with exactly the given direction, so loops are only
+     * returned for {@link DirectionWrapper#BOTH}.
+     */
+    public RelIdIterator exactIterator( DirectionWrapper direction )
+    {
+        return new RelIdIteratorImpl( this, new DirectionWrapper[] { direction } );
+    }
     
     public RelIdArray newSimilarInstance()
     {
@@ -93,6 +93,52 @@ public class GlobalGraphOperations
         };
     }
 
+    /**
+     * Returns the nodes in one of {@code partitions} equally sized ranges of
+     * node ids. Each partition can be iterated by a separate thread, together
+     * the partitions contain all nodes in the graph.
+     *
+     * @param partition the partition to return, from 0 to
+     *            {@code partitions - 1}.
+     * @param partitions the number of partitions to split the nodes into.
+     * @return the nodes in the given partition.
+     */
+    public Iterable<Node> getAllNodes( final int partition, final int partitions )
+    {
+        return new Iterable<Node>()
+        {
+            @Override
+            public Iterator<Node> iterator()
+            {
+                return nodeManager.getAllNodes( partition, partitions );
+            }
+        };
+    }
+
+    /**
+     * Returns the relationships in one of {@code partitions} equally sized
+     * ranges of relationship ids. Each partition can be iterated by a
+     * separate thread, together the partitions contain all relationships in
+     * the graph.
+     *
+     * @param partition the partition to return, from 0 to
+     *            {@code partitions - 1}.
+     * @param partitions the number of partitions to split the relationships
+     *            into.
+     * @return the relationships in the given partition.
+     */
+    public Iterable<Relationship> getAllRelationships( final int partition, final int partitions )
+    {
+        return new Iterable<Relationship>()
+        {
+            @Override
+            public Iterator<Relationship> iterator()
+            {
+                return nodeManager.getAllRelationships( partition, partitions );
+            }
+        };
+    }
+
     /**
      * Returns all relationship types currently in the underlying store. Relationship types are
      * added to the underlying store the first time they are used in a successfully commited
@@ -40,12 +40,14 @@ import org.neo4j.kernel.AbstractGraphDatabase;
 import org.neo4j.kernel.Config;
 import org.neo4j.kernel.KernelData;
 import org.neo4j.kernel.TransactionBuilder;
+import org.neo4j.kernel.impl.batchinsert.ImportProgressMonitor;
 import org.neo4j.kernel.impl.util.StringLogger;
 
 import java.util.Collection;
 import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 public abstract class WrappedGraphDatabase extends AbstractGraphDatabase
 {
@@ -454,6 +456,30 @@ public abstract class WrappedGraphDatabase extends AbstractGraphDatabase
         {
             return actual().getAutoIndexedProperties();
         }
+
+        @Override
+        public void rebuildAutoIndex( int threads, ImportProgressMonitor monitor )
+        {
+            actual().rebuildAutoIndex( threads, monitor );
+        }
+
+        @Override
+        public long getLastIndexedTxId()
+        {
+            return actual().getLastIndexedTxId();
+        }
+
+        @Override
+        public long getIndexingLag()
+        {
+            return actual().getIndexingLag();
+        }
+
+        @Override
+        public boolean waitForIndexing( long txId, long timeout, TimeUnit unit )
+        {
+            return actual().waitForIndexing( txId, timeout, unit );
+        }
     }
 
     private class WrappedRelationshipAutoIndex extends WrappedAutoIndexer<Relationship> implements
@@ -29,6 +29,7 @@ import org.neo4j.graphdb.event.TransactionEventHandler;
 import org.neo4j.graphdb.index.IndexManager;
 import org.neo4j.helpers.collection.MapUtil;
 import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
+import org.neo4j.kernel.impl.transaction.xaframework.TxIdGeneratorFactory;
 
 /**
  * Used in testing and makes some internals configurable, f.ex {@link FileSystemAbstraction}
@@ -42,12 +43,18 @@ public class GraphDatabaseTestAccess extends AbstractGraphDatabase
 
     public GraphDatabaseTestAccess( String storeDir, Map<String, String> config,
             IdGeneratorFactory idGenerators, FileSystemAbstraction fileSystem )
+    {
+        this( storeDir, config, idGenerators, CommonFactories.defaultTxIdGeneratorFactory(), fileSystem );
+    }
+
+    public GraphDatabaseTestAccess( String storeDir, Map<String, String> config,
+            IdGeneratorFactory idGenerators, TxIdGeneratorFactory txIdGenerators, FileSystemAbstraction fileSystem )
     {
         super( storeDir );
         config = config != null ? config : MapUtil.stringMap();
         impl = new EmbeddedGraphDbImpl( getStoreDir(), null, config, this, CommonFactories.defaultLockManagerFactory(),
                 idGenerators, CommonFactories.defaultRelationshipTypeCreator(),
-                CommonFactories.defaultTxIdGeneratorFactory(),
+                txIdGenerators,
                 CommonFactories.defaultTxHook(),
                 CommonFactories.defaultLastCommittedTxIdSetter(), fileSystem );
         this.fileSystem = fileSystem;
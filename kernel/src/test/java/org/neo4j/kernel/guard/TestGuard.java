@@ -0,0 +1,236 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.guard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.impl.core.NodeManager;
+import org.neo4j.tooling.GlobalGraphOperations;
+import org.neo4j.test.ImpermanentGraphDatabase;
+
+public class TestGuard
+{
+    private ImpermanentGraphDatabase db;
+    private Guard guard;
+
+    @Before
+    public void doBefore() throws Exception
+    {
+        db = new ImpermanentGraphDatabase( stringMap( Config.EXECUTION_GUARD_ENABLED, "true" ) );
+        guard = db.getGuard();
+        Transaction tx = db.beginTx();
+        for ( int i = 0; i < 100; i++ )
+        {
+            db.createNode();
+        }
+        tx.success();
+        tx.finish();
+    }
+
+    @After
+    public void doAfter() throws Exception
+    {
+        guard.stop();
+        db.shutdown();
+    }
+
+    @Test
+    public void timeoutsOfStoppedOperationsArePurged() throws Exception
+    {
+        for ( int i = 0; i < Guard.PURGE_INTERVAL; i++ )
+        {
+            guard.start( 60 * 60 * 1000, 0, 0 );
+            guard.stop();
+        }
+        assertEquals( 0, guard.purge() );
+    }
+
+    @Test
+    public void guardIsOnlyAvailableWhenEnabled() throws Exception
+    {
+        assertNotNull( guard );
+        ImpermanentGraphDatabase unguarded = new ImpermanentGraphDatabase();
+        try
+        {
+            assertNull( unguarded.getGuard() );
+        }
+        finally
+        {
+            unguarded.shutdown();
+        }
+    }
+
+    @Test
+    public void unguardedThreadsAreNotLimited() throws Exception
+    {
+        assertEquals( 101, countNodes() );
+        assertEquals( 0, guard.getStartedCount() );
+    }
+
+    @Test
+    public void operationLimitAbortsNodeIteration() throws Exception
+    {
+        guard.start( 0, 10, 0 );
+        try
+        {
+            countNodes();
+            fail( "Should have passed the operation limit" );
+        }
+        catch ( GuardException e )
+        {
+            assertEquals( Guard.Limit.OPERATIONS, e.getLimit() );
+            assertEquals( 11, e.getOperations() );
+        }
+        guard.stop();
+        assertEquals( 1, guard.getAbortedCount( Guard.Limit.OPERATIONS ) );
+        assertEquals( 101, countNodes() );
+    }
+
+    @Test
+    public void rowLimitAbortsAtTheNextRow() throws Exception
+    {
+        guard.start( 0, 0, 2 );
+        guard.checkRow();
+        guard.checkRow();
+        try
+        {
+            guard.checkRow();
+            fail( "Should have passed the row limit" );
+        }
+        catch ( GuardException e )
+        {
+            assertEquals( Guard.Limit.ROWS, e.getLimit() );
+        }
+        guard.stop();
+        assertEquals( 3, guard.getTotalRows() );
+    }
+
+    @Test
+    public void timeLimitAbortsAtTheNextCheckPoint() throws Exception
+    {
+        guard.start( 10, 0, 0 );
+        Thread.sleep( 200 );
+        try
+        {
+            db.getReferenceNode();
+            fail( "Should have passed the time limit" );
+        }
+        catch ( GuardException e )
+        {
+            assertEquals( Guard.Limit.TIME, e.getLimit() );
+            assertTrue( e.getElapsedMillis() >= 10 );
+        }
+        guard.stop();
+        assertEquals( 1, guard.getAbortedCount( Guard.Limit.TIME ) );
+    }
+
+    @Test
+    public void timeLimitStillAppliesAfterTheNodeManagerIsRestarted() throws Exception
+    {
+        NodeManager nodeManager = db.getConfig().getGraphDbModule().getNodeManager();
+        nodeManager.stop();
+        nodeManager.start( db.getConfig().getParams() );
+
+        guard.start( 10, 0, 0 );
+        Thread.sleep( 200 );
+        try
+        {
+            db.getReferenceNode();
+            fail( "Should have passed the time limit" );
+        }
+        catch ( GuardException e )
+        {
+            assertEquals( Guard.Limit.TIME, e.getLimit() );
+        }
+        guard.stop();
+    }
+
+    @Test
+    public void completedOperationsAreCounted() throws Exception
+    {
+        guard.start( 60000, 1000, 0 );
+        assertEquals( 1, guard.getRunningCount() );
+        assertEquals( 101, countNodes() );
+        guard.stop();
+        assertEquals( 0, guard.getRunningCount() );
+        assertEquals( 1, guard.getCompletedCount() );
+        assertTrue( guard.getTotalOperations() >= 101 );
+    }
+
+    @Test
+    public void cancelledOperationIsAbortedInItsOwnThread() throws Exception
+    {
+        Transaction tx = db.beginTx();
+        Node node = db.getReferenceNode();
+        for ( int i = 0; i < 10; i++ )
+        {
+            node.createRelationshipTo( db.createNode(), TestTypes.LINK );
+        }
+        tx.success();
+        tx.finish();
+        db.getConfig().getGraphDbModule().getNodeManager().clearCache();
+
+        guard.start( 0, 0, 0 );
+        assertTrue( guard.cancel( Thread.currentThread() ) );
+        try
+        {
+            for ( Relationship relationship : db.getReferenceNode().getRelationships() )
+            {
+                relationship.getEndNode();
+            }
+            fail( "Should have been cancelled" );
+        }
+        catch ( GuardException e )
+        {
+            assertEquals( Guard.Limit.CANCELLED, e.getLimit() );
+        }
+        guard.stop();
+        assertEquals( 1, guard.getAbortedCount( Guard.Limit.CANCELLED ) );
+        assertEquals( 0, guard.cancelAll() );
+    }
+
+    private int countNodes()
+    {
+        int count = 0;
+        for ( @SuppressWarnings( "unused" ) Node node : GlobalGraphOperations.at( db ).getAllNodes() )
+        {
+            count++;
+        }
+        return count;
+    }
+
+    private static enum TestTypes implements RelationshipType
+    {
+        LINK
+    }
+}
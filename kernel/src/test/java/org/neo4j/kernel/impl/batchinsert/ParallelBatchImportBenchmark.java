@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.batchinsert;
+
+import static org.neo4j.helpers.collection.MapUtil.map;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.helpers.collection.PrefetchingIterator;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+
+/**
+ * Compares importing a generated graph through the plain
+ * {@link BatchInserter} API with importing it through the
+ * {@link ParallelBatchImporter}. Run it with the main method, it's not part
+ * of the test suite.
+ */
+public class ParallelBatchImportBenchmark
+{
+    private static final RelationshipType[] TYPES = {
+        DynamicRelationshipType.withName( "KNOWS" ),
+        DynamicRelationshipType.withName( "LIKES" ),
+        DynamicRelationshipType.withName( "WORKS_WITH" ) };
+
+    public static void main( String[] args )
+    {
+        int nodeCount = args.length > 0 ? Integer.parseInt( args[0] ) : 1000000;
+        int relsPerNode = args.length > 1 ? Integer.parseInt( args[1] ) : 5;
+        int workers = args.length > 2 ? Integer.parseInt( args[2] ) :
+                Runtime.getRuntime().availableProcessors();
+
+        System.out.println( "Sequential import of " + nodeCount + " nodes, " +
+                nodeCount * relsPerNode + " relationships" );
+        BatchInserter inserter = newBatchInserter();
+        long start = System.currentTimeMillis();
+        long[] ids = new long[nodeCount];
+        Iterator<Map<String,Object>> nodes = nodes( nodeCount );
+        for ( int i = 0; nodes.hasNext(); i++ )
+        {
+            ids[i] = inserter.createNode( nodes.next() );
+        }
+        long nodeTime = System.currentTimeMillis() - start;
+        Iterator<InputRelationship> rels = relationships( ids, relsPerNode );
+        while ( rels.hasNext() )
+        {
+            InputRelationship rel = rels.next();
+            inserter.createRelationship( rel.getStartNode(), rel.getEndNode(), rel.getType(),
+                    rel.getProperties() );
+        }
+        long totalTime = System.currentTimeMillis() - start;
+        inserter.shutdown();
+        System.out.println( "  nodes " + nodeTime + "ms, relationships " + ( totalTime - nodeTime ) +
+                "ms, total " + totalTime + "ms" );
+
+        System.out.println( "Parallel import with " + workers + " workers" );
+        inserter = newBatchInserter();
+        ParallelBatchImporter importer = new ParallelBatchImporter( inserter, workers,
+                ParallelBatchImporter.DEFAULT_BATCH_SIZE, new VisibleImportProgressMonitor( System.out ) );
+        start = System.currentTimeMillis();
+        final long[] importedIds = new long[nodeCount];
+        importer.importNodes( nodes( nodeCount ), new ParallelBatchImporter.NodeIds()
+        {
+            private int i;
+
+            public void assigned( long nodeId )
+            {
+                importedIds[i++] = nodeId;
+            }
+        } );
+        importer.importRelationships( relationships( importedIds, relsPerNode ) );
+        totalTime = System.currentTimeMillis() - start;
+        inserter.shutdown();
+        System.out.println( "  total " + totalTime + "ms" );
+    }
+
+    private static BatchInserter newBatchInserter()
+    {
+        String storePath = AbstractNeo4jTestCase.getStorePath( "parallel-batch-import-benchmark" );
+        AbstractNeo4jTestCase.deleteFileOrDirectory( new File( storePath ) );
+        return new BatchInserterImpl( storePath );
+    }
+
+    private static Iterator<Map<String,Object>> nodes( final int count )
+    {
+        return new PrefetchingIterator<Map<String,Object>>()
+        {
+            private int i;
+
+            @Override
+            protected Map<String,Object> fetchNextOrNull()
+            {
+                if ( i == count )
+                {
+                    return null;
+                }
+                int id = i++;
+                return map( "id", id, "name", "Person " + id, "score", id * 0.5d );
+            }
+        };
+    }
+
+    private static Iterator<InputRelationship> relationships( final long[] nodes, final int perNode )
+    {
+        final Random random = new Random( 42 );
+        return new PrefetchingIterator<InputRelationship>()
+        {
+            private int i;
+
+            @Override
+            protected InputRelationship fetchNextOrNull()
+            {
+                if ( i == nodes.length * perNode )
+                {
+                    return null;
+                }
+                int start = i++ / perNode;
+                // skewed end nodes so that some of them become dense
+                int end = (int) ( nodes.length * Math.pow( random.nextDouble(), 3 ) );
+                return new InputRelationship( nodes[start], nodes[end], TYPES[i % TYPES.length],
+                        map( "since", 2000 + random.nextInt( 12 ) ) );
+            }
+        };
+    }
+}
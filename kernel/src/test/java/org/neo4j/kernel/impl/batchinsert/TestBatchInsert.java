@@ -44,6 +44,7 @@ import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.helpers.collection.IteratorUtil;
 import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.kernel.Config;
 import org.neo4j.kernel.EmbeddedGraphDatabase;
 import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
 import org.neo4j.kernel.impl.util.StringLogger;
@@ -610,6 +611,63 @@ public class TestBatchInsert
         db.shutdown();
     }
 
+    @Test
+    public void relationshipsOfDenseNodesAreGrouped() throws Exception
+    {
+        Map<String,String> config = MapUtil.stringMap( Config.DENSE_NODE_THRESHOLD, "10" );
+        BatchInserter inserter = newBatchInserter();
+        String storeDir = ( (BatchInserterImpl) inserter ).getStore();
+        long denseNode = inserter.createNode( null );
+        long otherDenseNode = inserter.createNode( null );
+        Set<Long> relIds = new HashSet<Long>();
+        for ( int i = 0; i < 8; i++ )
+        {
+            relIds.add( inserter.createRelationship( otherDenseNode, inserter.createNode( null ),
+                    RelTypes.REL_TYPE1, null ) );
+        }
+        inserter.shutdown();
+
+        // the first node gets dense while inserting, the second one when shutting down
+        inserter = new BatchInserterImpl( storeDir, config );
+        for ( int i = 0; i < 12; i++ )
+        {
+            relIds.add( inserter.createRelationship( denseNode, inserter.createNode( null ),
+                    RelTypes.REL_TYPE1, null ) );
+            relIds.add( inserter.createRelationship( inserter.createNode( null ), denseNode,
+                    RelTypes.REL_TYPE2, null ) );
+        }
+        relIds.add( inserter.createRelationship( denseNode, denseNode, RelTypes.REL_TYPE1, null ) );
+        relIds.add( inserter.createRelationship( denseNode, otherDenseNode, RelTypes.REL_TYPE2, null ) );
+        relIds.add( inserter.createRelationship( otherDenseNode, inserter.createNode( null ),
+                RelTypes.REL_TYPE1, null ) );
+        assertEquals( 26, IteratorUtil.count( inserter.getRelationshipIds( denseNode ) ) );
+        assertEquals( 26, IteratorUtil.count( inserter.getRelationships( denseNode ) ) );
+        inserter.shutdown();
+
+        GraphDatabaseService db = new EmbeddedGraphDatabase( storeDir, config );
+        try
+        {
+            Node node = db.getNodeById( denseNode );
+            assertEquals( 13, IteratorUtil.count( node.getRelationships( RelTypes.REL_TYPE1, Direction.OUTGOING ) ) );
+            assertEquals( 1, IteratorUtil.count( node.getRelationships( RelTypes.REL_TYPE1, Direction.INCOMING ) ) );
+            assertEquals( 12, IteratorUtil.count( node.getRelationships( RelTypes.REL_TYPE2, Direction.INCOMING ) ) );
+            assertEquals( 10, IteratorUtil.count( db.getNodeById( otherDenseNode ).getRelationships() ) );
+            Transaction tx = db.beginTx();
+            for ( long relId : relIds )
+            {
+                db.getRelationshipById( relId ).delete();
+            }
+            tx.success();
+            tx.finish();
+            assertFalse( node.hasRelationship() );
+            assertFalse( db.getNodeById( otherDenseNode ).hasRelationship() );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+    }
+
     @Test
     public void messagesLogGetsClosed() throws Exception
     {
@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.batchinsert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.neo4j.helpers.collection.MapUtil.map;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+
+public class TestParallelBatchImporter
+{
+    private static final RelationshipType KNOWS = DynamicRelationshipType.withName( "KNOWS" );
+
+    private BatchInserter newBatchInserter()
+    {
+        String storePath = AbstractNeo4jTestCase.getStorePath( "neo-parallel-batch" );
+        AbstractNeo4jTestCase.deleteFileOrDirectory( new File( storePath ) );
+        return new BatchInserterImpl( storePath );
+    }
+
+    @Test
+    public void importsNodesAndRelationshipsInInputOrder()
+    {
+        BatchInserter inserter = newBatchInserter();
+        ParallelBatchImporter importer = new ParallelBatchImporter( inserter, 3, 7,
+                new SilentImportProgressMonitor() );
+        List<Map<String,Object>> nodes = new ArrayList<Map<String,Object>>();
+        for ( int i = 0; i < 100; i++ )
+        {
+            nodes.add( map( "index", i, "name", "node" + i ) );
+        }
+        IdCollector ids = new IdCollector();
+        assertEquals( 100, importer.importNodes( nodes.iterator(), ids ) );
+        assertEquals( 100, ids.size() );
+
+        List<InputRelationship> rels = new ArrayList<InputRelationship>();
+        for ( int i = 1; i < 100; i++ )
+        {
+            rels.add( new InputRelationship( ids.get( 0 ), ids.get( i ), KNOWS, map( "index", i ) ) );
+            rels.add( new InputRelationship( ids.get( i ), ids.get( i - 1 ), KNOWS, null ) );
+        }
+        assertEquals( rels.size(), importer.importRelationships( rels.iterator() ) );
+
+        for ( int i = 0; i < ids.size(); i++ )
+        {
+            assertEquals( i, inserter.getNodeProperties( ids.get( i ) ).get( "index" ) );
+        }
+        Set<Long> hubRelationships = new HashSet<Long>();
+        for ( SimpleRelationship rel : inserter.getRelationships( ids.get( 0 ) ) )
+        {
+            hubRelationships.add( rel.getId() );
+        }
+        assertEquals( 100, hubRelationships.size() );
+        int seen = 0;
+        for ( SimpleRelationship rel : inserter.getRelationships( ids.get( 50 ) ) )
+        {
+            if ( rel.getStartNode() == ids.get( 0 ) )
+            {
+                assertEquals( 50, inserter.getRelationshipProperties( rel.getId() ).get( "index" ) );
+            }
+            seen++;
+        }
+        assertEquals( 3, seen );
+        inserter.shutdown();
+    }
+
+    @Test
+    public void failureInOneBatchIsRethrown()
+    {
+        BatchInserter inserter = newBatchInserter();
+        ParallelBatchImporter importer = new ParallelBatchImporter( inserter, 2, 5,
+                new SilentImportProgressMonitor() );
+        IdCollector ids = new IdCollector();
+        importer.importNodes( Arrays.<Map<String,Object>>asList(
+                map( "name", "a" ), map( "name", "b" ) ).iterator(), ids );
+        List<InputRelationship> rels = new ArrayList<InputRelationship>();
+        for ( int i = 0; i < 20; i++ )
+        {
+            rels.add( new InputRelationship( ids.get( 0 ), ids.get( 1 ), KNOWS, null ) );
+        }
+        rels.add( new InputRelationship( ids.get( 0 ), ids.get( 1 ) + 1000, KNOWS, null ) );
+        try
+        {
+            importer.importRelationships( rels.iterator() );
+            fail( "Should not be able to connect to a missing node" );
+        }
+        catch ( RuntimeException e )
+        { // Good
+        }
+        inserter.shutdown();
+    }
+
+    private static class IdCollector implements ParallelBatchImporter.NodeIds
+    {
+        private final List<Long> ids = new ArrayList<Long>();
+
+        public void assigned( long nodeId )
+        {
+            ids.add( nodeId );
+        }
+
+        long get( int index )
+        {
+            return ids.get( index );
+        }
+
+        int size()
+        {
+            return ids.size();
+        }
+    }
+}
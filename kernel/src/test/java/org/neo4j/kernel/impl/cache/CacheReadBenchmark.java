@@ -0,0 +1,157 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures read throughput of the node/relationship cache implementations
+ * when many threads read a mostly cached working set, which is where the
+ * synchronized {@link LruCache} serializes all readers. Run it with the main
+ * method, it's not part of the test suite.
+ */
+public class CacheReadBenchmark
+{
+    private static final long DURATION_MILLIS = 5000;
+    private static final int CACHE_SIZE = 100000;
+    private static final int KEY_SPACE = 110000;
+
+    private interface CacheFactory
+    {
+        Cache<Long,Object> create();
+    }
+
+    private static final String[] NAMES = { "lru", "soft", "strong", "clock" };
+    private static final CacheFactory[] FACTORIES = {
+        new CacheFactory()
+        {
+            public Cache<Long,Object> create()
+            {
+                return new LruCache<Long,Object>( "lru", CACHE_SIZE, null );
+            }
+        },
+        new CacheFactory()
+        {
+            public Cache<Long,Object> create()
+            {
+                return new SoftLruCache<Long,Object>( "soft" );
+            }
+        },
+        new CacheFactory()
+        {
+            public Cache<Long,Object> create()
+            {
+                return new StrongReferenceCache<Long,Object>( "strong" );
+            }
+        },
+        new CacheFactory()
+        {
+            public Cache<Long,Object> create()
+            {
+                return new ClockCache<Long,Object>( "clock", CACHE_SIZE, null );
+            }
+        },
+    };
+
+    public static void main( String[] args ) throws Exception
+    {
+        int maxThreads = args.length > 0 ? Integer.parseInt( args[0] ) :
+                Runtime.getRuntime().availableProcessors();
+        // warm up
+        for ( CacheFactory factory : FACTORIES )
+        {
+            run( factory.create(), 1, 1000 );
+        }
+
+        StringBuilder header = new StringBuilder( "threads" );
+        for ( String name : NAMES )
+        {
+            header.append( "\t" ).append( name ).append( " ops/s" );
+        }
+        System.out.println( header );
+        for ( int threads = 1; threads <= maxThreads; threads *= 2 )
+        {
+            StringBuilder line = new StringBuilder( "" + threads );
+            for ( CacheFactory factory : FACTORIES )
+            {
+                line.append( String.format( "\t%.0f", run( factory.create(), threads, DURATION_MILLIS ) ) );
+            }
+            System.out.println( line );
+        }
+    }
+
+    private static double run( final Cache<Long,Object> cache, int threadCount, long durationMillis )
+            throws Exception
+    {
+        for ( long key = 0; key < CACHE_SIZE; key++ )
+        {
+            cache.put( key, new Object() );
+        }
+        final AtomicLong operations = new AtomicLong();
+        final CountDownLatch startSignal = new CountDownLatch( 1 );
+        final long endTime[] = new long[1];
+        Thread[] threads = new Thread[threadCount];
+        for ( int i = 0; i < threadCount; i++ )
+        {
+            final Random random = new Random( i );
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        startSignal.await();
+                        long count = 0;
+                        while ( System.currentTimeMillis() < endTime[0] )
+                        {
+                            for ( int op = 0; op < 1000; op++ )
+                            {
+                                Long key = Long.valueOf( random.nextInt( KEY_SPACE ) );
+                                if ( cache.get( key ) == null )
+                                {
+                                    cache.put( key, new Object() );
+                                }
+                            }
+                            count += 1000;
+                        }
+                        operations.addAndGet( count );
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        Thread.interrupted();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        long start = System.currentTimeMillis();
+        endTime[0] = start + durationMillis;
+        startSignal.countDown();
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        long time = System.currentTimeMillis() - start;
+        return operations.get() * 1000d / time;
+    }
+}
@@ -0,0 +1,256 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TestClockCache
+{
+    @Test
+    public void testCreate()
+    {
+        try
+        {
+            new ClockCache<Object,Object>( "TestCache", 0, null );
+            fail( "Illegal maxSize should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        ClockCache<Object,Object> cache = new ClockCache<Object,Object>( "TestCache", 70, null );
+        try
+        {
+            cache.put( null, new Object() );
+            fail( "Null key should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        try
+        {
+            cache.put( new Object(), null );
+            fail( "Null element should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        try
+        {
+            cache.get( null );
+            fail( "Null key should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        try
+        {
+            cache.remove( null );
+            fail( "Null key should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        cache.put( new Object(), new Object() );
+        cache.clear();
+    }
+
+    private static class ClockCacheTest<K,E> extends ClockCache<K,E>
+    {
+        private Object cleanedElement = null;
+        private final AtomicInteger cleanedCount = new AtomicInteger();
+
+        ClockCacheTest( String name, int maxSize )
+        {
+            super( name, maxSize, null );
+        }
+
+        @Override
+        public void elementCleaned( E element )
+        {
+            cleanedElement = element;
+            cleanedCount.incrementAndGet();
+        }
+
+        Object getLastCleanedElement()
+        {
+            return cleanedElement;
+        }
+    }
+
+    @Test
+    public void testSimple()
+    {
+        ClockCacheTest<Object,Object> cache = new ClockCacheTest<Object,Object>( "TestCache", 3 );
+        String s1 = new String( "1" );
+        Integer key1 = new Integer( 1 );
+        String s2 = new String( "2" );
+        Integer key2 = new Integer( 2 );
+        String s3 = new String( "3" );
+        Integer key3 = new Integer( 3 );
+        String s4 = new String( "4" );
+        Integer key4 = new Integer( 4 );
+        String s5 = new String( "5" );
+        Integer key5 = new Integer( 5 );
+        cache.put( key1, s1 );
+        cache.put( key2, s2 );
+        cache.put( key3, s3 );
+        cache.get( key2 );
+        assertEquals( null, cache.getLastCleanedElement() );
+        cache.put( key4, s4 );
+        assertEquals( s1, cache.getLastCleanedElement() );
+        cache.put( key5, s5 );
+        // key2 was referenced so it gets a second chance
+        assertEquals( s3, cache.getLastCleanedElement() );
+        assertEquals( 3, cache.size() );
+        assertEquals( null, cache.get( key1 ) );
+        assertEquals( s2, cache.get( key2 ) );
+        assertEquals( null, cache.get( key3 ) );
+        assertEquals( s4, cache.get( key4 ) );
+        assertEquals( s5, cache.get( key5 ) );
+        cache.clear();
+        assertEquals( 0, cache.size() );
+        assertEquals( 3, cache.maxSize() );
+    }
+
+    @Test
+    public void testResize()
+    {
+        ClockCacheTest<Object,Object> cache = new ClockCacheTest<Object,Object>( "TestCache", 3 );
+        String s1 = new String( "1" );
+        Integer key1 = new Integer( 1 );
+        String s2 = new String( "2" );
+        Integer key2 = new Integer( 2 );
+        String s3 = new String( "3" );
+        Integer key3 = new Integer( 3 );
+        String s4 = new String( "4" );
+        Integer key4 = new Integer( 4 );
+        String s5 = new String( "5" );
+        Integer key5 = new Integer( 5 );
+        cache.put( key1, s1 );
+        cache.put( key2, s2 );
+        cache.put( key3, s3 );
+        cache.get( key2 );
+        assertEquals( null, cache.getLastCleanedElement() );
+        assertEquals( cache.maxSize(), cache.size() );
+        cache.resize( 5 );
+        assertEquals( 5, cache.maxSize() );
+        assertEquals( 3, cache.size() );
+        cache.put( key4, s4 );
+        assertEquals( null, cache.getLastCleanedElement() );
+        cache.put( key5, s5 );
+        assertEquals( null, cache.getLastCleanedElement() );
+        assertEquals( cache.maxSize(), cache.size() );
+        cache.resize( 4 );
+        assertEquals( s1, cache.getLastCleanedElement() );
+        assertEquals( cache.maxSize(), cache.size() );
+        cache.resize( 3 );
+        assertEquals( s3, cache.getLastCleanedElement() );
+        assertEquals( 3, cache.maxSize() );
+        assertEquals( 3, cache.size() );
+    }
+
+    @Test
+    public void testRemoveAndReplace()
+    {
+        ClockCacheTest<Object,Object> cache = new ClockCacheTest<Object,Object>( "TestCache", 2 );
+        cache.put( 1, "1" );
+        cache.put( 1, "one" );
+        assertEquals( 1, cache.size() );
+        assertEquals( "one", cache.get( 1 ) );
+        assertEquals( "one", cache.remove( 1 ) );
+        assertNull( cache.remove( 1 ) );
+        assertEquals( 0, cache.size() );
+        for ( int i = 0; i < 1000; i++ )
+        {
+            cache.put( 2, "" + i );
+            cache.remove( 2 );
+        }
+        cache.put( 3, "3" );
+        cache.put( 4, "4" );
+        assertEquals( null, cache.getLastCleanedElement() );
+        cache.put( 5, "5" );
+        assertEquals( "3", cache.getLastCleanedElement() );
+        assertEquals( 2, cache.size() );
+    }
+
+    @Test
+    public void testConcurrentAccessKeepsSizeWithinBounds() throws Exception
+    {
+        final int maxSize = 100;
+        final ClockCacheTest<Integer,Object> cache = new ClockCacheTest<Integer,Object>( "TestCache", maxSize );
+        final AtomicInteger puts = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for ( int i = 0; i < threads.length; i++ )
+        {
+            final Random random = new Random( i );
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for ( int op = 0; op < 10000; op++ )
+                    {
+                        int key = random.nextInt( 500 );
+                        if ( cache.get( key ) == null )
+                        {
+                            cache.put( key, "" + key );
+                            puts.incrementAndGet();
+                        }
+                        if ( op % 10 == 0 )
+                        {
+                            cache.remove( random.nextInt( 500 ) );
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        // a put racing with an eviction in progress may leave the cache
+        // slightly over, the next put will bring it back
+        cache.put( -1, "last" );
+        assertTrue( "size " + cache.size(), cache.size() <= maxSize );
+        assertEquals( cache.size(), countCached( cache, 500 ) );
+    }
+
+    private int countCached( Cache<Integer,Object> cache, int keys )
+    {
+        int count = cache.get( -1 ) != null ? 1 : 0;
+        for ( int i = 0; i < keys; i++ )
+        {
+            if ( cache.get( i ) != null )
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,239 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestOffHeapCache
+{
+    private static final OffHeapCache.Codec<String> CODEC = new OffHeapCache.Codec<String>()
+    {
+        @Override
+        public boolean encode( String element, ByteBuffer target )
+        {
+            if ( element.startsWith( "heap only" ) )
+            {
+                return false;
+            }
+            target.putInt( element.length() );
+            for ( int i = 0; i < element.length(); i++ )
+            {
+                target.putChar( element.charAt( i ) );
+            }
+            return true;
+        }
+
+        @Override
+        public String decode( long key, ByteBuffer source )
+        {
+            char[] chars = new char[source.getInt()];
+            for ( int i = 0; i < chars.length; i++ )
+            {
+                chars[i] = source.getChar();
+            }
+            return new String( chars );
+        }
+    };
+
+    @Test
+    public void testCreate()
+    {
+        try
+        {
+            new OffHeapCache<String>( "TestCache", 0, 1024, CODEC );
+            fail( "Illegal maxSize should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        OffHeapCache<String> cache = new OffHeapCache<String>( "TestCache", 10, 1024, CODEC );
+        try
+        {
+            cache.put( null, "a" );
+            fail( "Null key should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        try
+        {
+            cache.put( 1L, null );
+            fail( "Null element should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+    }
+
+    @Test
+    public void elementsPushedOffHeapAreDecodedOnGet()
+    {
+        OffHeapCache<String> cache = new OffHeapCache<String>( "TestCache", 3, 64 * 1024, CODEC );
+        for ( long i = 0; i < 10; i++ )
+        {
+            cache.put( i, "element " + i );
+        }
+        assertEquals( 3, cache.heapSize() );
+        assertEquals( 7, cache.offHeapSize() );
+        assertEquals( 10, cache.size() );
+
+        String element = cache.get( 0L );
+        assertEquals( "element 0", element );
+        assertEquals( 1, cache.offHeapHitCount() );
+        // Now it's on heap, the same instance is returned
+        assertTrue( element == cache.get( 0L ) );
+        assertEquals( 3, cache.heapSize() );
+        assertEquals( 10, cache.size() );
+        for ( long i = 0; i < 10; i++ )
+        {
+            assertEquals( "element " + i, cache.get( i ) );
+        }
+    }
+
+    @Test
+    public void changedElementsReplaceTheirOffHeapCopy()
+    {
+        OffHeapCache<String> cache = new OffHeapCache<String>( "TestCache", 1, 64 * 1024, CODEC );
+        cache.put( 1L, "first" );
+        cache.put( 2L, "other" );
+        cache.put( 1L, "second" );
+        cache.put( 2L, "other" );
+        assertEquals( "second", cache.get( 1L ) );
+        assertEquals( 2, cache.size() );
+    }
+
+    @Test
+    public void removeAndClearAffectBothHeapAndOffHeap()
+    {
+        OffHeapCache<String> cache = new OffHeapCache<String>( "TestCache", 2, 64 * 1024, CODEC );
+        for ( long i = 0; i < 5; i++ )
+        {
+            cache.put( i, "element " + i );
+        }
+        assertEquals( "element 0", cache.remove( 0L ) );
+        assertEquals( "element 4", cache.remove( 4L ) );
+        assertNull( cache.get( 0L ) );
+        assertNull( cache.get( 4L ) );
+        assertEquals( 3, cache.size() );
+        cache.clear();
+        assertEquals( 0, cache.size() );
+        for ( long i = 0; i < 5; i++ )
+        {
+            assertNull( cache.get( i ) );
+        }
+    }
+
+    @Test
+    public void elementsWhichCantBeEncodedAreDropped()
+    {
+        OffHeapCache<String> cache = new OffHeapCache<String>( "TestCache", 1, 64 * 1024, CODEC );
+        cache.put( 1L, "heap only" );
+        cache.put( 2L, "other" );
+        assertNull( cache.get( 1L ) );
+    }
+
+    @Test
+    public void oldestSegmentIsEvictedWhenMemoryIsUsedUp()
+    {
+        // Each entry is 12 header bytes + 4 + 2*8 chars = 32 bytes, five per segment
+        OffHeapCache<String> cache = new OffHeapCache<String>( "TestCache", 1, 8 * 160, CODEC );
+        for ( long i = 0; i < 100; i++ )
+        {
+            cache.put( i, String.format( "%08d", i ) );
+        }
+        assertTrue( cache.evictionCount() > 0 );
+        assertEquals( 8 * 160, cache.offHeapMemoryUsed() );
+        assertEquals( 100, cache.evictionCount() + cache.size() );
+        // The most recent ones are still there, the oldest are gone
+        for ( long i = 90; i < 100; i++ )
+        {
+            assertEquals( String.format( "%08d", i ), cache.get( i ) );
+        }
+        assertNull( cache.get( 0L ) );
+    }
+
+    @Test
+    public void withoutMemoryItIsAnLruCache()
+    {
+        OffHeapCache<String> cache = new OffHeapCache<String>( "TestCache", 2, 0, CODEC );
+        cache.put( 1L, "1" );
+        cache.put( 2L, "2" );
+        cache.get( 1L );
+        cache.put( 3L, "3" );
+        assertNull( cache.get( 2L ) );
+        assertEquals( "1", cache.get( 1L ) );
+        assertEquals( 2, cache.size() );
+        assertEquals( 0, cache.offHeapMemoryUsed() );
+    }
+
+    @Test
+    public void resizeMovesElementsOffHeap()
+    {
+        OffHeapCache<String> cache = new OffHeapCache<String>( "TestCache", 10, 64 * 1024, CODEC );
+        for ( long i = 0; i < 10; i++ )
+        {
+            cache.put( i, "element " + i );
+        }
+        cache.resize( 4 );
+        assertEquals( 4, cache.heapSize() );
+        assertEquals( 10, cache.size() );
+        assertEquals( "element 0", cache.get( 0L ) );
+    }
+
+    @Test
+    public void randomOperationsAgreeWithAMap()
+    {
+        OffHeapCache<String> cache = new OffHeapCache<String>( "TestCache", 50, 16 * 1024 * 1024, CODEC );
+        Map<Long,String> expected = new HashMap<Long,String>();
+        Random random = new Random( 12345 );
+        for ( int i = 0; i < 200000; i++ )
+        {
+            long key = random.nextInt( 20000 );
+            switch ( random.nextInt( 3 ) )
+            {
+            case 0:
+                String value = "value " + random.nextInt();
+                cache.put( key, value );
+                expected.put( key, value );
+                break;
+            case 1:
+                assertEquals( expected.get( key ), cache.get( key ) );
+                break;
+            default:
+                assertEquals( expected.remove( key ), cache.remove( key ) );
+            }
+        }
+        assertEquals( expected.size(), cache.size() );
+        for ( Map.Entry<Long,String> entry : expected.entrySet() )
+        {
+            assertEquals( entry.getValue(), cache.get( entry.getKey() ) );
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.IteratorUtil;
+import org.neo4j.kernel.AbstractGraphDatabase;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.util.FileUtils;
+import org.neo4j.tooling.GlobalGraphOperations;
+
+/**
+ * Compares iterating over all nodes by loading each id through the cache
+ * with scanning the node store, serially and in partitions on increasing
+ * numbers of threads. Every run starts with empty caches. Run it with the
+ * main method, it's not part of the test suite.
+ */
+public class AllNodesScanBenchmark
+{
+    private static final String PATH = "target/var/all-nodes-scan-benchmark";
+    private static final int NODES = 2000000;
+    private static final int DELETE_EVERY = 10;
+
+    public static void main( String[] args ) throws Exception
+    {
+        int maxThreads = args.length > 0 ? Integer.parseInt( args[0] ) :
+                Runtime.getRuntime().availableProcessors();
+        FileUtils.deleteRecursively( new File( PATH ) );
+        GraphDatabaseService db = new EmbeddedGraphDatabase( PATH );
+        try
+        {
+            createNodes( db );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+
+        System.out.println( "method\tnodes\tmillis" );
+        db = new EmbeddedGraphDatabase( PATH );
+        try
+        {
+            long time = System.currentTimeMillis();
+            int nodes = countById( db );
+            report( "by id", nodes, time );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+        for ( int threads = 1; threads <= maxThreads; threads *= 2 )
+        {
+            db = new EmbeddedGraphDatabase( PATH );
+            ExecutorService executor = Executors.newFixedThreadPool( threads );
+            try
+            {
+                long time = System.currentTimeMillis();
+                int nodes = countByScan( db, executor, threads );
+                report( "scan/" + threads, nodes, time );
+            }
+            finally
+            {
+                executor.shutdown();
+                db.shutdown();
+            }
+        }
+    }
+
+    private static void report( String method, int nodes, long startTime )
+    {
+        System.out.println( method + "\t" + nodes + "\t" + (System.currentTimeMillis() - startTime) );
+    }
+
+    private static int countById( GraphDatabaseService db )
+    {
+        long highId = ((AbstractGraphDatabase) db).getConfig().getGraphDbModule().getNodeManager()
+                .getHighestPossibleIdInUse( Node.class );
+        int count = 0;
+        for ( long id = 0; id <= highId; id++ )
+        {
+            try
+            {
+                db.getNodeById( id );
+                count++;
+            }
+            catch ( NotFoundException e )
+            {   // A deleted node
+            }
+        }
+        return count;
+    }
+
+    private static int countByScan( GraphDatabaseService db, ExecutorService executor, final int partitions )
+            throws Exception
+    {
+        final GlobalGraphOperations operations = GlobalGraphOperations.at( db );
+        List<Future<Integer>> counts = new ArrayList<Future<Integer>>();
+        for ( int i = 0; i < partitions; i++ )
+        {
+            final int partition = i;
+            counts.add( executor.submit( new Callable<Integer>()
+            {
+                @Override
+                public Integer call()
+                {
+                    return IteratorUtil.count( operations.getAllNodes( partition, partitions ) );
+                }
+            } ) );
+        }
+        int count = 0;
+        for ( Future<Integer> partitionCount : counts )
+        {
+            count += partitionCount.get();
+        }
+        return count;
+    }
+
+    private static void createNodes( GraphDatabaseService db )
+    {
+        Transaction tx = db.beginTx();
+        try
+        {
+            for ( int i = 1; i <= NODES; i++ )
+            {
+                Node node = db.createNode();
+                if ( i % DELETE_EVERY == 0 )
+                {
+                    node.delete();
+                }
+                if ( i % 50000 == 0 )
+                {
+                    tx.success();
+                    tx.finish();
+                    tx = db.beginTx();
+                }
+            }
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+    }
+}
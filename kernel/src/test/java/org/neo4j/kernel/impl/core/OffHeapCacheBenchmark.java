@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import java.io.File;
+import java.util.Random;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.MyRelTypes;
+import org.neo4j.kernel.impl.util.FileUtils;
+
+/**
+ * Compares the heap footprint and the random read throughput of a graph
+ * that fits in the strong reference cache with the same graph in the off
+ * heap cache, where only a small working set is kept on the heap. Run it
+ * with the main method, it's not part of the test suite.
+ */
+public class OffHeapCacheBenchmark
+{
+    private static final String PATH = "target/var/off-heap-cache-benchmark";
+    private static final int NODES = 500000;
+    private static final int READS = 5000000;
+
+    public static void main( String[] args ) throws Exception
+    {
+        FileUtils.deleteRecursively( new File( PATH ) );
+        GraphDatabaseService db = new EmbeddedGraphDatabase( PATH );
+        try
+        {
+            createGraph( db );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+
+        System.out.println( "cache\theap MB\treads/s" );
+        for ( String cacheType : new String[] { "strong", "offheap" } )
+        {
+            long heapBefore = usedHeap();
+            db = new EmbeddedGraphDatabase( PATH, MapUtil.stringMap( Config.CACHE_TYPE, cacheType,
+                    "max_node_cache_size", "10000", "max_relationship_cache_size", "20000",
+                    Config.NODE_CACHE_OFFHEAP_MEMORY, "512M",
+                    Config.RELATIONSHIP_CACHE_OFFHEAP_MEMORY, "512M" ) );
+            try
+            {
+                // Load everything into the cache, then read at random
+                readAll( db );
+                long heap = usedHeap() - heapBefore;
+                long time = System.currentTimeMillis();
+                readRandom( db );
+                time = System.currentTimeMillis() - time;
+                System.out.println( String.format( "%s\t%d\t%.0f", cacheType, heap / (1024 * 1024),
+                        READS * 1000d / time ) );
+            }
+            finally
+            {
+                db.shutdown();
+            }
+        }
+    }
+
+    private static void createGraph( GraphDatabaseService db )
+    {
+        Random random = new Random( 0 );
+        long[] ids = new long[NODES];
+        Transaction tx = db.beginTx();
+        try
+        {
+            for ( int i = 0; i < NODES; i++ )
+            {
+                Node node = db.createNode();
+                node.setProperty( "name", "node " + i );
+                node.setProperty( "age", i % 100 );
+                ids[i] = node.getId();
+                if ( i > 0 )
+                {
+                    Node other = db.getNodeById( ids[random.nextInt( i )] );
+                    node.createRelationshipTo( other, MyRelTypes.TEST ).setProperty( "since", (long) i );
+                }
+                if ( i % 10000 == 0 )
+                {
+                    tx.success();
+                    tx.finish();
+                    tx = db.beginTx();
+                }
+            }
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+    }
+
+    private static long readAll( GraphDatabaseService db )
+    {
+        long sum = 0;
+        for ( long id = 1; id <= NODES; id++ )
+        {
+            sum += read( db.getNodeById( id ) );
+        }
+        return sum;
+    }
+
+    private static long readRandom( GraphDatabaseService db )
+    {
+        Random random = new Random( 1 );
+        long sum = 0;
+        for ( int i = 0; i < READS; i++ )
+        {
+            sum += read( db.getNodeById( 1 + random.nextInt( NODES ) ) );
+        }
+        return sum;
+    }
+
+    private static long read( Node node )
+    {
+        long sum = ((String) node.getProperty( "name" )).length();
+        for ( Relationship rel : node.getRelationships( MyRelTypes.TEST, Direction.OUTGOING ) )
+        {
+            sum += (Long) rel.getProperty( "since" );
+        }
+        return sum;
+    }
+
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for ( int i = 0; i < 5; i++ )
+        {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -20,17 +20,23 @@
 package org.neo4j.kernel.impl.core;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.fail;
 
 import java.io.File;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
 import org.neo4j.helpers.collection.MapUtil;
 import org.neo4j.kernel.Config;
 import org.neo4j.kernel.EmbeddedGraphDatabase;
 import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+import org.neo4j.kernel.impl.MyRelTypes;
 import org.neo4j.kernel.impl.core.NodeManager.CacheType;
 
 public class TestCacheTypes extends AbstractNeo4jTestCase
@@ -96,6 +102,90 @@ public class TestCacheTypes extends AbstractNeo4jTestCase
         db.shutdown();
     }
 
+    @Test
+    public void testClockCache()
+    {
+        GraphDatabaseService db = newDb( "clock" );
+        assertEquals( CacheType.clock, ((EmbeddedGraphDatabase) db).getConfig().getGraphDbModule().getNodeManager().getCacheType() );
+        db.shutdown();
+    }
+
+    @Test
+    public void testOffHeapCache()
+    {
+        GraphDatabaseService db = newDb( "offheap" );
+        assertEquals( CacheType.offheap, ((EmbeddedGraphDatabase) db).getConfig().getGraphDbModule().getNodeManager().getCacheType() );
+        db.shutdown();
+    }
+
+    @Test
+    public void offHeapCacheKeepsEntitiesIntactWhenMovedOffHeap()
+    {
+        GraphDatabaseService db = new EmbeddedGraphDatabase( PATH, MapUtil.stringMap( Config.CACHE_TYPE, "offheap",
+                "max_node_cache_size", "2", "max_relationship_cache_size", "2" ) );
+        Node[] nodes = new Node[20];
+        Transaction tx = db.beginTx();
+        for ( int i = 0; i < nodes.length; i++ )
+        {
+            nodes[i] = db.createNode();
+            nodes[i].setProperty( "name", "node " + i );
+            nodes[i].setProperty( "number", -i * 100000L );
+            nodes[i].setProperty( "array", new int[] { i } );
+        }
+        for ( int i = 1; i < nodes.length; i++ )
+        {
+            nodes[i - 1].createRelationshipTo( nodes[i], MyRelTypes.TEST ).setProperty( "weight", i / 2d );
+        }
+        nodes[0].createRelationshipTo( nodes[0], MyRelTypes.TEST2 );
+        tx.success();
+        tx.finish();
+        // Load everything once so that it goes through the off heap tier
+        for ( int round = 0; round < 2; round++ )
+        {
+            for ( int i = 0; i < nodes.length; i++ )
+            {
+                Node node = db.getNodeById( nodes[i].getId() );
+                assertEquals( "node " + i, node.getProperty( "name" ) );
+                assertEquals( -i * 100000L, node.getProperty( "number" ) );
+                assertEquals( i, ((int[]) node.getProperty( "array" ))[0] );
+                int expected = (i == 0 || i == nodes.length - 1) ? 1 : 2;
+                assertEquals( expected, count( node.getRelationships( MyRelTypes.TEST ) ) );
+                for ( Relationship rel : node.getRelationships( MyRelTypes.TEST, Direction.OUTGOING ) )
+                {
+                    assertEquals( nodes[i + 1], rel.getEndNode() );
+                    assertEquals( (i + 1) / 2d, rel.getProperty( "weight" ) );
+                }
+            }
+            assertEquals( 1, count( db.getNodeById( nodes[0].getId() ).getRelationships( MyRelTypes.TEST2 ) ) );
+        }
+        // Changes to entities which have been moved off heap are visible afterwards
+        tx = db.beginTx();
+        db.getNodeById( nodes[3].getId() ).setProperty( "name", "changed" );
+        db.getNodeById( nodes[4].getId() ).removeProperty( "number" );
+        db.getNodeById( nodes[5].getId() ).getSingleRelationship( MyRelTypes.TEST, Direction.OUTGOING ).delete();
+        tx.success();
+        tx.finish();
+        for ( int i = 0; i < nodes.length; i++ )
+        {
+            db.getNodeById( nodes[i].getId() ).getPropertyKeys();
+        }
+        assertEquals( "changed", db.getNodeById( nodes[3].getId() ).getProperty( "name" ) );
+        assertFalse( db.getNodeById( nodes[4].getId() ).hasProperty( "number" ) );
+        assertEquals( 1, count( db.getNodeById( nodes[5].getId() ).getRelationships( MyRelTypes.TEST ) ) );
+        assertEquals( 1, count( db.getNodeById( nodes[6].getId() ).getRelationships( MyRelTypes.TEST ) ) );
+        db.shutdown();
+    }
+
+    private static int count( Iterable<?> iterable )
+    {
+        int count = 0;
+        for ( Object item : iterable )
+        {
+            count++;
+        }
+        return count;
+    }
+
     @Test
     public void testInvalidCache()
     {
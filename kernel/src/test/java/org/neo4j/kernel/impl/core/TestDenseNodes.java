@@ -0,0 +1,237 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.neo4j.graphdb.Direction.BOTH;
+import static org.neo4j.graphdb.Direction.INCOMING;
+import static org.neo4j.graphdb.Direction.OUTGOING;
+import static org.neo4j.helpers.collection.IteratorUtil.addToCollection;
+import static org.neo4j.helpers.collection.IteratorUtil.count;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.Config;
+import org.neo4j.test.ImpermanentGraphDatabase;
+
+public class TestDenseNodes
+{
+    private static final int THRESHOLD = 10;
+    private static final RelationshipType TYPE1 = DynamicRelationshipType.withName( "type1" );
+    private static final RelationshipType TYPE2 = DynamicRelationshipType.withName( "type2" );
+
+    private ImpermanentGraphDatabase db;
+    private Transaction tx;
+
+    @Before
+    public void doBefore() throws Exception
+    {
+        db = new ImpermanentGraphDatabase( stringMap( Config.DENSE_NODE_THRESHOLD, String.valueOf( THRESHOLD ),
+                "relationship_grab_size", "3" ) );
+    }
+
+    @After
+    public void doAfter() throws Exception
+    {
+        db.shutdown();
+    }
+
+    private void beginTx()
+    {
+        tx = db.beginTx();
+    }
+
+    private void finishTx()
+    {
+        tx.success();
+        tx.finish();
+    }
+
+    private void clearCache()
+    {
+        db.getConfig().getGraphDbModule().getNodeManager().clearCache();
+    }
+
+    @Test
+    public void relationshipsOfDenseNodeCanBeLoadedByTypeAndDirection() throws Exception
+    {
+        beginTx();
+        Node hub = db.createNode();
+        Collection<Relationship> out1 = createRelationships( hub, TYPE1, THRESHOLD, true );
+        Collection<Relationship> in1 = createRelationships( hub, TYPE1, 5, false );
+        Collection<Relationship> out2 = createRelationships( hub, TYPE2, 7, true );
+        Relationship loop = hub.createRelationshipTo( hub, TYPE2 );
+        finishTx();
+
+        for ( int i = 0; i < 2; i++ )
+        {
+            clearCache();
+            assertDense( hub );
+            assertEquals( out1, addToCollection( hub.getRelationships( TYPE1, OUTGOING ),
+                    new HashSet<Relationship>() ) );
+            assertEquals( in1, addToCollection( hub.getRelationships( TYPE1, INCOMING ),
+                    new HashSet<Relationship>() ) );
+            Collection<Relationship> expected = new HashSet<Relationship>( out2 );
+            expected.add( loop );
+            assertEquals( expected, addToCollection( hub.getRelationships( OUTGOING, TYPE2 ),
+                    new HashSet<Relationship>() ) );
+            assertEquals( 1, count( hub.getRelationships( TYPE2, INCOMING ) ) );
+            assertEquals( THRESHOLD + 5 + 7 + 1, count( hub.getRelationships() ) );
+            assertEquals( THRESHOLD + 5, count( hub.getRelationships( BOTH, TYPE1 ) ) );
+        }
+    }
+
+    @Test
+    public void sparseNodeIsConvertedWhenReachingThreshold() throws Exception
+    {
+        beginTx();
+        Node hub = db.createNode();
+        Collection<Relationship> rels = createRelationships( hub, TYPE1, THRESHOLD - 2, true );
+        finishTx();
+        clearCache();
+
+        beginTx();
+        rels.addAll( createRelationships( hub, TYPE1, 4, false ) );
+        rels.addAll( createRelationships( hub, TYPE2, 2, true ) );
+        assertEquals( rels, addToCollection( hub.getRelationships(), new HashSet<Relationship>() ) );
+        finishTx();
+
+        assertEquals( rels, addToCollection( hub.getRelationships(), new HashSet<Relationship>() ) );
+        clearCache();
+        assertDense( hub );
+        assertEquals( rels, addToCollection( hub.getRelationships(), new HashSet<Relationship>() ) );
+        assertEquals( THRESHOLD + 2, count( hub.getRelationships( TYPE1 ) ) );
+        assertEquals( 2, count( hub.getRelationships( TYPE2 ) ) );
+    }
+
+    @Test
+    public void nodeGettingOneRelationshipPerTransactionIsConvertedAtThreshold() throws Exception
+    {
+        beginTx();
+        Node hub = db.createNode();
+        finishTx();
+
+        Collection<Relationship> rels = new HashSet<Relationship>();
+        for ( int i = 0; i < THRESHOLD - 1; i++ )
+        {
+            beginTx();
+            rels.addAll( createRelationships( hub, TYPE1, 1, true ) );
+            finishTx();
+        }
+        clearCache();
+        assertSparse( hub );
+
+        beginTx();
+        Iterator<Relationship> toDelete = rels.iterator();
+        for ( int i = 0; i < 2; i++ )
+        {
+            toDelete.next().delete();
+            toDelete.remove();
+        }
+        finishTx();
+
+        beginTx();
+        rels.addAll( createRelationships( hub, TYPE2, 2, true ) );
+        finishTx();
+        clearCache();
+        assertSparse( hub );
+
+        beginTx();
+        rels.addAll( createRelationships( hub, TYPE2, 1, true ) );
+        finishTx();
+        clearCache();
+        assertDense( hub );
+        assertEquals( rels, addToCollection( hub.getRelationships(), new HashSet<Relationship>() ) );
+    }
+
+    @Test
+    public void relationshipsCanBeDeletedFromDenseNode() throws Exception
+    {
+        beginTx();
+        Node hub = db.createNode();
+        Collection<Relationship> rels = createRelationships( hub, TYPE1, THRESHOLD, true );
+        rels.addAll( createRelationships( hub, TYPE2, THRESHOLD, false ) );
+        rels.add( hub.createRelationshipTo( hub, TYPE1 ) );
+        finishTx();
+        clearCache();
+
+        beginTx();
+        for ( Relationship rel : hub.getRelationships( TYPE2 ) )
+        {
+            rel.delete();
+            rels.remove( rel );
+        }
+        finishTx();
+        clearCache();
+
+        assertFalse( hub.hasRelationship( TYPE2 ) );
+        assertEquals( rels, addToCollection( hub.getRelationships(), new HashSet<Relationship>() ) );
+
+        beginTx();
+        for ( Relationship rel : rels )
+        {
+            rel.delete();
+        }
+        finishTx();
+        clearCache();
+
+        assertFalse( hub.hasRelationship() );
+        beginTx();
+        hub.delete();
+        finishTx();
+    }
+
+    private void assertDense( Node node )
+    {
+        assertTrue( db.getConfig().getGraphDbModule().getNodeManager().getLightNode(
+                node.getId() ) instanceof DenseNodeImpl );
+    }
+
+    private void assertSparse( Node node )
+    {
+        assertFalse( db.getConfig().getGraphDbModule().getNodeManager().getLightNode(
+                node.getId() ) instanceof DenseNodeImpl );
+    }
+
+    private Collection<Relationship> createRelationships( Node hub, RelationshipType type, int count,
+            boolean outgoing )
+    {
+        Collection<Relationship> result = new HashSet<Relationship>();
+        for ( int i = 0; i < count; i++ )
+        {
+            Node other = db.createNode();
+            result.add( outgoing ? hub.createRelationshipTo( other, type ) : other.createRelationshipTo( hub, type ) );
+        }
+        return result;
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+import org.neo4j.kernel.impl.MyRelTypes;
+import org.neo4j.tooling.GlobalGraphOperations;
+
+public class TestGetAllEntities extends AbstractNeo4jTestCase
+{
+    @Test
+    public void partitionsContainEachNodeExactlyOnce()
+    {
+        for ( int i = 0; i < 100; i++ )
+        {
+            getGraphDb().createNode();
+        }
+        newTransaction();
+
+        Set<Node> all = new HashSet<Node>();
+        for ( Node node : GlobalGraphOperations.at( getGraphDb() ).getAllNodes() )
+        {
+            all.add( node );
+        }
+        Set<Node> partitioned = new HashSet<Node>();
+        for ( int partition = 0; partition < 7; partition++ )
+        {
+            for ( Node node : GlobalGraphOperations.at( getGraphDb() ).getAllNodes( partition, 7 ) )
+            {
+                assertTrue( "Saw " + node + " twice", partitioned.add( node ) );
+            }
+        }
+        assertEquals( all, partitioned );
+    }
+
+    @Test
+    public void partitionsContainEachRelationshipExactlyOnce()
+    {
+        Node node = getGraphDb().createNode();
+        Set<Relationship> created = new HashSet<Relationship>();
+        for ( int i = 0; i < 50; i++ )
+        {
+            created.add( node.createRelationshipTo( getGraphDb().createNode(), MyRelTypes.TEST ) );
+        }
+        newTransaction();
+
+        Set<Relationship> partitioned = new HashSet<Relationship>();
+        for ( int partition = 0; partition < 3; partition++ )
+        {
+            for ( Relationship rel : GlobalGraphOperations.at( getGraphDb() ).getAllRelationships( partition, 3 ) )
+            {
+                assertTrue( "Saw " + rel + " twice", partitioned.add( rel ) );
+            }
+        }
+        assertTrue( partitioned.containsAll( created ) );
+    }
+
+    @Test
+    public void seesNodesCreatedAndNotNodesDeletedInCommittedTransactions()
+    {
+        Node node = getGraphDb().createNode();
+        newTransaction();
+        assertTrue( allNodes().contains( node ) );
+
+        node.delete();
+        newTransaction();
+        assertFalse( allNodes().contains( node ) );
+    }
+
+    @Test
+    public void seesNodesCreatedInTheCurrentTransaction()
+    {
+        newTransaction();
+        Node node = getGraphDb().createNode();
+        assertTrue( allNodes().contains( node ) );
+        rollback();
+        assertFalse( allNodes().contains( node ) );
+    }
+
+    @Test
+    public void rejectsInvalidPartitions()
+    {
+        try
+        {
+            GlobalGraphOperations.at( getGraphDb() ).getAllNodes( 2, 2 ).iterator();
+            fail( "Should not accept partition 2 of 2" );
+        }
+        catch ( IllegalArgumentException e )
+        {   // Good
+        }
+    }
+
+    private Set<Node> allNodes()
+    {
+        Set<Node> nodes = new HashSet<Node>();
+        for ( Node node : GlobalGraphOperations.at( getGraphDb() ).getAllNodes() )
+        {
+            nodes.add( node );
+        }
+        return nodes;
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import java.io.File;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.MyRelTypes;
+import org.neo4j.kernel.impl.util.FileUtils;
+
+/**
+ * Measures how much heap the state of a single large transaction takes per
+ * changed entity, both for a transaction creating a graph and for one
+ * updating a property on every node of an existing graph. The heap is
+ * measured before the transaction is finished, so it includes the copy on
+ * write state as well as the records kept for the logical log. Run it with
+ * the main method, it's not part of the test suite.
+ */
+public class TransactionStateHeapBenchmark
+{
+    private static final String PATH = "target/var/tx-state-heap-benchmark";
+
+    public static void main( String[] args ) throws Exception
+    {
+        int nodes = args.length > 0 ? Integer.parseInt( args[0] ) : 500000;
+        FileUtils.deleteRecursively( new File( PATH ) );
+        GraphDatabaseService db = new EmbeddedGraphDatabase( PATH );
+        try
+        {
+            System.out.println( "transaction\tentities\tbytes/entity" );
+            measure( db, "create", nodes, true );
+            measure( db, "update", nodes, false );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+    }
+
+    private static void measure( GraphDatabaseService db, String name, int nodes, boolean create )
+    {
+        long heapBefore = usedHeap();
+        Transaction tx = db.beginTx();
+        try
+        {
+            int entities = create ? createGraph( db, nodes ) : updateGraph( db, nodes );
+            long heap = usedHeap() - heapBefore;
+            System.out.println( String.format( "%s\t%d\t%d", name, entities, heap / entities ) );
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+    }
+
+    private static int createGraph( GraphDatabaseService db, int nodes )
+    {
+        Node previous = null;
+        for ( int i = 0; i < nodes; i++ )
+        {
+            Node node = db.createNode();
+            node.setProperty( "name", "node " + i );
+            if ( previous != null )
+            {
+                previous.createRelationshipTo( node, MyRelTypes.TEST ).setProperty( "weight", i );
+            }
+            previous = node;
+        }
+        return nodes * 2 - 1;
+    }
+
+    private static int updateGraph( GraphDatabaseService db, int nodes )
+    {
+        // node ids start at 1 since the reference node takes 0
+        for ( long id = 1; id <= nodes; id++ )
+        {
+            db.getNodeById( id ).setProperty( "name", "updated " + id );
+        }
+        return nodes;
+    }
+
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for ( int i = 0; i < 5; i++ )
+        {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.neo4j.kernel.IdType;
+
+/**
+ * Measures how many ids per second threads can allocate from a plain
+ * {@link IdGeneratorImpl} compared to a {@link ConcurrentIdGenerator}
+ * wrapping one, for an increasing number of threads. Every tenth id is
+ * freed again to include the free id path. Run it with the main method,
+ * it's not part of the test suite.
+ */
+public class IdGeneratorBenchmark
+{
+    private static final long DURATION_MILLIS = 3000;
+
+    public static void main( String[] args ) throws Exception
+    {
+        int maxThreads = args.length > 0 ? Integer.parseInt( args[0] ) :
+                Runtime.getRuntime().availableProcessors() * 2;
+        File dir = new File( "target/id-generator-benchmark" );
+        dir.mkdirs();
+        String fileName = new File( dir, "benchmark.id" ).getPath();
+
+        // warm up
+        run( fileName, false, 1, 1000 );
+        run( fileName, true, 1, 1000 );
+
+        System.out.println( "threads\tsynchronized ids/s\tconcurrent ids/s" );
+        for ( int threads = 1; threads <= maxThreads; threads *= 2 )
+        {
+            System.out.println( String.format( "%d\t%.0f\t%.0f", threads,
+                    run( fileName, false, threads, DURATION_MILLIS ),
+                    run( fileName, true, threads, DURATION_MILLIS ) ) );
+        }
+    }
+
+    private static double run( String fileName, boolean concurrent, int threadCount,
+            long durationMillis ) throws Exception
+    {
+        new File( fileName ).delete();
+        IdGeneratorImpl.createGenerator( fileName );
+        IdGenerator plain = new IdGeneratorImpl( fileName, IdType.NODE.getGrabSize(),
+                IdType.NODE.getMaxValue(), false );
+        final IdGenerator generator = concurrent ?
+                new ConcurrentIdGenerator( plain, 64, IdType.NODE.getGrabSize(), false ) : plain;
+        final AtomicLong operations = new AtomicLong();
+        final CountDownLatch startSignal = new CountDownLatch( 1 );
+        final long endTime[] = new long[1];
+        Thread[] threads = new Thread[threadCount];
+        for ( int i = 0; i < threadCount; i++ )
+        {
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        startSignal.await();
+                        long count = 0;
+                        while ( System.currentTimeMillis() < endTime[0] )
+                        {
+                            for ( int op = 0; op < 1000; op++ )
+                            {
+                                long id = generator.nextId();
+                                if ( op % 10 == 0 )
+                                {
+                                    generator.freeId( id );
+                                }
+                            }
+                            count += 1000;
+                        }
+                        operations.addAndGet( count );
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        Thread.interrupted();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        long start = System.currentTimeMillis();
+        endTime[0] = start + durationMillis;
+        startSignal.countDown();
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        long time = System.currentTimeMillis() - start;
+        generator.close( true );
+        return operations.get() * 1000d / time;
+    }
+}
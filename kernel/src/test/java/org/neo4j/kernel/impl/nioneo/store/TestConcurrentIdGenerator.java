@@ -0,0 +1,257 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.IteratorUtil;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+import org.neo4j.kernel.impl.util.FileUtils;
+import org.neo4j.tooling.GlobalGraphOperations;
+
+public class TestConcurrentIdGenerator
+{
+    private String path()
+    {
+        String path = AbstractNeo4jTestCase.getStorePath( "concurrent-id-generator" );
+        new File( path ).mkdirs();
+        return path;
+    }
+
+    private String idGeneratorFile()
+    {
+        return path() + File.separator + "test.id";
+    }
+
+    @Before
+    public void deleteIdGeneratorFile()
+    {
+        new File( idGeneratorFile() ).delete();
+    }
+
+    private IdGenerator newGenerator( boolean aggressiveReuse )
+    {
+        return new ConcurrentIdGenerator( new IdGeneratorImpl( idGeneratorFile(), 10, 100000,
+                aggressiveReuse ), 8, 10, aggressiveReuse );
+    }
+
+    @Test
+    public void threadsGetUniqueIds() throws Exception
+    {
+        IdGeneratorImpl.createGenerator( idGeneratorFile() );
+        final IdGenerator generator = newGenerator( false );
+        final Set<Long> ids = Collections.synchronizedSet( new HashSet<Long>() );
+        final int idsPerThread = 5000;
+        List<Thread> threads = new ArrayList<Thread>();
+        for ( int i = 0; i < 4; i++ )
+        {
+            threads.add( new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for ( int j = 0; j < idsPerThread; j++ )
+                    {
+                        assertTrue( ids.add( generator.nextId() ) );
+                    }
+                }
+            } );
+        }
+        for ( Thread thread : threads )
+        {
+            thread.start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        assertEquals( 4 * idsPerThread, ids.size() );
+        assertEquals( 4 * idsPerThread, generator.getNumberOfIdsInUse() );
+        generator.close( true );
+    }
+
+    @Test
+    public void unusedPooledIdsAreFreedOnClose()
+    {
+        IdGeneratorImpl.createGenerator( idGeneratorFile() );
+        IdGenerator generator = newGenerator( false );
+        assertEquals( 0, generator.nextId() );
+        assertEquals( 1, generator.nextId() );
+        // the rest of the batch of 8 stays in the pool used by this thread
+        assertEquals( 8, generator.getHighId() );
+        assertEquals( 2, generator.getNumberOfIdsInUse() );
+        generator.close( true );
+
+        generator = new IdGeneratorImpl( idGeneratorFile(), 10, 100000, false );
+        assertEquals( 8, generator.getHighId() );
+        Set<Long> reused = new HashSet<Long>();
+        for ( int i = 0; i < 6; i++ )
+        {
+            reused.add( generator.nextId() );
+        }
+        for ( long id = 2; id < 8; id++ )
+        {
+            assertTrue( reused.contains( id ) );
+        }
+        assertEquals( 8, generator.nextId() );
+        generator.close( true );
+    }
+
+    @Test
+    public void idsLeftByThreadsThatAreGoneAreHandedOutAgain() throws Exception
+    {
+        IdGeneratorImpl.createGenerator( idGeneratorFile() );
+        final IdGenerator generator = new ConcurrentIdGenerator( new IdGeneratorImpl( idGeneratorFile(), 10,
+                100000, false ), 8, 10, false, 4 );
+        final Set<Long> ids = Collections.synchronizedSet( new HashSet<Long>() );
+        for ( int i = 0; i < 100; i++ )
+        {
+            Thread thread = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    assertTrue( ids.add( generator.nextId() ) );
+                }
+            };
+            thread.start();
+            thread.join();
+        }
+        assertEquals( 100, ids.size() );
+        // at most one batch of 8 is left in each of the 4 pools
+        assertTrue( "high id " + generator.getHighId(), generator.getHighId() <= 100 + 4 * 8 );
+        assertEquals( 100, generator.getNumberOfIdsInUse() );
+        generator.close( true );
+    }
+
+    @Test
+    public void freedIdsAreReusedInSameSessionWithAggressiveReuse()
+    {
+        IdGeneratorImpl.createGenerator( idGeneratorFile() );
+        IdGenerator generator = newGenerator( true );
+        long id = generator.nextId();
+        generator.freeId( id );
+        assertEquals( 1, generator.getDefragCount() );
+        assertEquals( id, generator.nextId() );
+        generator.close( true );
+    }
+
+    @Test
+    public void freedIdsArePassedOnWithoutAggressiveReuse()
+    {
+        IdGeneratorImpl.createGenerator( idGeneratorFile() );
+        IdGenerator generator = newGenerator( false );
+        long first = generator.nextId();
+        generator.freeId( first );
+        assertFalse( first == generator.nextId() );
+        generator.close( true );
+
+        // the freed id comes back together with the unused pooled ones
+        generator = new IdGeneratorImpl( idGeneratorFile(), 10, 100000, false );
+        Set<Long> reused = new HashSet<Long>();
+        for ( int i = 0; i < 7; i++ )
+        {
+            reused.add( generator.nextId() );
+        }
+        assertTrue( reused.contains( first ) );
+        generator.close( true );
+    }
+
+    @Test
+    public void databaseWithConcurrentIdGeneration() throws Exception
+    {
+        String storeDir = AbstractNeo4jTestCase.getStorePath( "concurrent-id-generation-db" );
+        FileUtils.deleteRecursively( new File( storeDir ) );
+        Map<String,String> config = MapUtil.stringMap( Config.CONCURRENT_ID_GENERATION, "true",
+                Config.CONCURRENT_ID_BATCH_SIZE, "16" );
+        final GraphDatabaseService db = new EmbeddedGraphDatabase( storeDir, config );
+        List<Thread> threads = new ArrayList<Thread>();
+        for ( int i = 0; i < 3; i++ )
+        {
+            threads.add( new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for ( int j = 0; j < 10; j++ )
+                    {
+                        Transaction tx = db.beginTx();
+                        try
+                        {
+                            for ( int k = 0; k < 10; k++ )
+                            {
+                                db.createNode().setProperty( "name", "n" + k );
+                            }
+                            tx.success();
+                        }
+                        finally
+                        {
+                            tx.finish();
+                        }
+                    }
+                }
+            } );
+        }
+        for ( Thread thread : threads )
+        {
+            thread.start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        db.shutdown();
+
+        GraphDatabaseService reopened = new EmbeddedGraphDatabase( storeDir );
+        // 300 created nodes plus the reference node
+        assertEquals( 301, IteratorUtil.count( GlobalGraphOperations.at( reopened ).getAllNodes() ) );
+        Transaction tx = reopened.beginTx();
+        try
+        {
+            Node node = reopened.createNode();
+            node.setProperty( "name", "after restart" );
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        assertEquals( 302, IteratorUtil.count( GlobalGraphOperations.at( reopened ).getAllNodes() ) );
+        reopened.shutdown();
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+
+public class TestPersistenceWindowPool
+{
+    private static final int RECORD_SIZE = 8;
+    private static final int RECORD_COUNT = 100000;
+    // a tenth of the file, giving 1000 mappable bricks of 10 records each
+    private static final long MAPPED_MEMORY = RECORD_SIZE * RECORD_COUNT / 10;
+
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private PersistenceWindowPool pool;
+
+    @Before
+    public void createPool() throws Exception
+    {
+        File dir = new File( AbstractNeo4jTestCase.getStorePath( "windowpool" ) );
+        dir.mkdirs();
+        File storeFile = new File( dir, "pool.db" );
+        storeFile.delete();
+        file = new RandomAccessFile( storeFile, "rw" );
+        file.setLength( (long) RECORD_SIZE * RECORD_COUNT );
+        channel = file.getChannel();
+        pool = new PersistenceWindowPool( "pool.db", RECORD_SIZE, channel,
+                MAPPED_MEMORY, true, false );
+    }
+
+    @After
+    public void closePool() throws Exception
+    {
+        pool.close();
+        file.close();
+    }
+
+    @Test
+    public void shouldMapFrequentlyUsedBricksInBackground() throws Exception
+    {
+        PersistenceWindow window = pool.acquire( 5, OperationType.READ );
+        assertTrue( window instanceof PersistenceRow );
+        pool.release( window );
+
+        // misses enough to trigger a refresh, all in the first ten bricks
+        for ( int i = 0; i < 60000; i++ )
+        {
+            pool.release( pool.acquire( i % 100, OperationType.READ ) );
+        }
+        long timeout = System.currentTimeMillis() + 10000;
+        while ( pool.getStats().getRefreshCount() == 0 && System.currentTimeMillis() < timeout )
+        {
+            Thread.sleep( 10 );
+        }
+        WindowPoolStats stats = pool.getStats();
+        assertEquals( 1, stats.getRefreshCount() );
+        assertTrue( stats.getMemUsed() > 0 );
+        assertTrue( stats.getMaxRefreshTime() >= stats.getAvgRefreshTime() );
+
+        window = pool.acquire( 5, OperationType.READ );
+        assertFalse( window instanceof PersistenceRow );
+        pool.release( window );
+        assertEquals( stats.getHitCount() + 1, pool.getStats().getHitCount() );
+    }
+
+    @Test
+    public void concurrentReadersAndWritersSeeTheirOwnWrites() throws Exception
+    {
+        final int threadCount = 8;
+        final int recordsPerThread = 250;
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[threadCount];
+        for ( int t = 0; t < threadCount; t++ )
+        {
+            final int thread = t;
+            threads[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for ( int round = 1; round <= 40; round++ )
+                        {
+                            for ( int i = 0; i < recordsPerThread; i++ )
+                            {
+                                long id = (long) i * threadCount + thread;
+                                write( id, id * round );
+                                assertEquals( id * round, read( id ) );
+                            }
+                        }
+                    }
+                    catch ( Throwable e )
+                    {
+                        failure.compareAndSet( null, e );
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        if ( failure.get() != null )
+        {
+            throw new AssertionError( failure.get() );
+        }
+        for ( long id = 0; id < threadCount * recordsPerThread; id++ )
+        {
+            assertEquals( id * 40, read( id ) );
+        }
+        assertEquals( 2 * 40 * threadCount * recordsPerThread + threadCount * recordsPerThread,
+                pool.getStats().getHitCount() + pool.getStats().getMissCount() );
+    }
+
+    private void write( long id, long value )
+    {
+        PersistenceWindow window = pool.acquire( id, OperationType.WRITE );
+        try
+        {
+            window.getOffsettedBuffer( id ).putLong( value );
+        }
+        finally
+        {
+            pool.release( window );
+        }
+    }
+
+    private long read( long id )
+    {
+        PersistenceWindow window = pool.acquire( id, OperationType.READ );
+        try
+        {
+            return window.getOffsettedBuffer( id ).getLong();
+        }
+        finally
+        {
+            pool.release( window );
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.storemigration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.neo4j.helpers.collection.IteratorUtil.count;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.UTF8;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.nioneo.store.CommonAbstractStore;
+import org.neo4j.kernel.impl.nioneo.store.NeoStore;
+import org.neo4j.kernel.impl.nioneo.store.NodeStore;
+import org.neo4j.kernel.impl.nioneo.store.StoreAccess;
+import org.neo4j.kernel.impl.util.FileUtils;
+
+public class DenseNodeMigratorTest
+{
+    private static final RelationshipType TYPE1 = DynamicRelationshipType.withName( "TYPE1" );
+    private static final RelationshipType TYPE2 = DynamicRelationshipType.withName( "TYPE2" );
+
+    @Test
+    public void shouldUpgradeStoreOfPreviousVersionAndGroupRelationshipsOfDenseNodes() throws Exception
+    {
+        File storeDir = new File( "target/var/" + DenseNodeMigratorTest.class.getSimpleName() );
+        FileUtils.deleteRecursively( storeDir );
+
+        GraphDatabaseService db = new EmbeddedGraphDatabase( storeDir.getPath(),
+                stringMap( Config.DENSE_NODE_THRESHOLD, "1000" ) );
+        Transaction tx = db.beginTx();
+        Node hub = db.createNode();
+        hub.setProperty( "name", "hub" );
+        Node sparse = db.createNode();
+        for ( int i = 0; i < 15; i++ )
+        {
+            hub.createRelationshipTo( db.createNode(), TYPE1 );
+            db.createNode().createRelationshipTo( hub, TYPE2 );
+        }
+        hub.createRelationshipTo( sparse, TYPE1 );
+        tx.success();
+        tx.finish();
+        long hubId = hub.getId();
+        long sparseId = sparse.getId();
+        db.shutdown();
+
+        downgradeToPreviousVersion( storeDir );
+        assertTrue( new UpgradableDatabase().storeFilesOfPreviousVersion(
+                new File( storeDir, NeoStore.DEFAULT_NAME ) ) );
+
+        Map<String, String> config = stringMap( Config.DENSE_NODE_THRESHOLD, "10",
+                Config.ALLOW_STORE_UPGRADE, "true" );
+        db = new EmbeddedGraphDatabase( storeDir.getPath(), config );
+        hub = db.getNodeById( hubId );
+        assertEquals( "hub", hub.getProperty( "name" ) );
+        assertEquals( 16, count( hub.getRelationships( TYPE1, Direction.OUTGOING ) ) );
+        assertEquals( 15, count( hub.getRelationships( TYPE2, Direction.INCOMING ) ) );
+        assertEquals( 0, count( hub.getRelationships( TYPE2, Direction.OUTGOING ) ) );
+        assertEquals( 1, count( db.getNodeById( sparseId ).getRelationships() ) );
+        tx = db.beginTx();
+        for ( Relationship rel : hub.getRelationships() )
+        {
+            rel.delete();
+        }
+        hub.delete();
+        tx.success();
+        tx.finish();
+        db.shutdown();
+
+        StoreAccess stores = new StoreAccess( storeDir.getPath() );
+        try
+        {
+            assertTrue( stores.getRelationshipGroupStore().getHighId() > 0 );
+        }
+        finally
+        {
+            stores.close();
+        }
+    }
+
+    @Test
+    public void shouldRefuseToUpgradeStoreWithRelationshipIdsNeedingTheDenseFlagBit() throws Exception
+    {
+        File storeDir = new File( "target/var/" + DenseNodeMigratorTest.class.getSimpleName() );
+        FileUtils.deleteRecursively( storeDir );
+
+        GraphDatabaseService db = new EmbeddedGraphDatabase( storeDir.getPath() );
+        Transaction tx = db.beginTx();
+        Node node = db.createNode();
+        node.createRelationshipTo( db.createNode(), TYPE1 );
+        tx.success();
+        tx.finish();
+        long nodeId = node.getId();
+        db.shutdown();
+
+        downgradeToPreviousVersion( storeDir );
+        // what the previous version wrote for a first relationship id of 2^34 and above
+        FileChannel channel = new RandomAccessFile( new File( storeDir, "neostore.nodestore.db" ), "rw" ).getChannel();
+        try
+        {
+            ByteBuffer inUseByte = ByteBuffer.allocate( 1 );
+            channel.read( inUseByte, nodeId * NodeStore.RECORD_SIZE );
+            inUseByte.put( 0, (byte) ( inUseByte.get( 0 ) | 0x8 ) );
+            inUseByte.rewind();
+            channel.write( inUseByte, nodeId * NodeStore.RECORD_SIZE );
+        }
+        finally
+        {
+            channel.close();
+        }
+
+        try
+        {
+            new EmbeddedGraphDatabase( storeDir.getPath(), stringMap( Config.ALLOW_STORE_UPGRADE, "true" ) );
+            fail( "Should not upgrade a store with relationship ids the dense flag is in the way of" );
+        }
+        catch ( RuntimeException e )
+        {
+            assertTrue( e.toString(), causedBy( e, StoreUpgrader.UnableToUpgradeException.class ) );
+        }
+        assertTrue( new UpgradableDatabase().storeFilesOfPreviousVersion(
+                new File( storeDir, NeoStore.DEFAULT_NAME ) ) );
+    }
+
+    private static boolean causedBy( Throwable e, Class<? extends Throwable> type )
+    {
+        for ( Throwable cause = e; cause != null; cause = cause.getCause() )
+        {
+            if ( type.isInstance( cause ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Rewrites a store of the current version into what the previous version
+     * would have written. No node is dense in it, so the node records are the
+     * same, it's only the version and the relationship group store that differ.
+     */
+    private void downgradeToPreviousVersion( File storeDir ) throws IOException
+    {
+        for ( Map.Entry<String, String> file : UpgradableDatabase.fileNamesToPreviousVersions.entrySet() )
+        {
+            String previousTrailer = file.getValue();
+            String currentTrailer = previousTrailer.replace( UpgradableDatabase.PREVIOUS_VERSION,
+                    CommonAbstractStore.ALL_STORES_VERSION );
+            FileChannel channel = new RandomAccessFile( new File( storeDir, file.getKey() ), "rw" ).getChannel();
+            try
+            {
+                long end = channel.size() - UTF8.encode( currentTrailer ).length;
+                if ( file.getKey().equals( NeoStore.DEFAULT_NAME ) )
+                {
+                    ByteBuffer version = ByteBuffer.allocate( 8 );
+                    version.putLong( NeoStore.versionStringToLong( UpgradableDatabase.PREVIOUS_VERSION ) ).flip();
+                    channel.write( version, 4 * NeoStore.RECORD_SIZE + 1 );
+                }
+                channel.truncate( end );
+                channel.write( ByteBuffer.wrap( UTF8.encode( previousTrailer ) ), end );
+            }
+            finally
+            {
+                channel.close();
+            }
+        }
+        assertTrue( new File( storeDir, "neostore.relationshipgroupstore.db" ).delete() );
+        assertTrue( new File( storeDir, "neostore.relationshipgroupstore.db.id" ).delete() );
+    }
+}
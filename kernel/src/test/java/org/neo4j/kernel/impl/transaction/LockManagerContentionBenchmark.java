@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures lock/unlock throughput of {@link LockManager} when threads are
+ * locking disjoint resources, which is where a single lock table monitor
+ * makes all transactions serialize. Run it with the main method, it's not
+ * part of the test suite.
+ */
+public class LockManagerContentionBenchmark
+{
+    private static final long DURATION_MILLIS = 5000;
+    private static final int RESOURCES_PER_THREAD = 1000;
+
+    public static void main( String[] args ) throws Exception
+    {
+        int maxThreads = args.length > 0 ? Integer.parseInt( args[0] ) :
+                Runtime.getRuntime().availableProcessors();
+        // warm up
+        run( 1, LockManager.DEFAULT_STRIPE_COUNT, 1000 );
+        run( 1, 1, 1000 );
+
+        System.out.println( "threads\tsingle-stripe ops/s\tstriped ops/s\tspeedup" );
+        for ( int threads = 1; threads <= maxThreads; threads *= 2 )
+        {
+            double single = run( threads, 1, DURATION_MILLIS );
+            double striped = run( threads, LockManager.DEFAULT_STRIPE_COUNT, DURATION_MILLIS );
+            System.out.println( String.format( "%d\t%.0f\t%.0f\t%.2f", threads, single, striped,
+                    striped / single ) );
+        }
+    }
+
+    private static double run( int threadCount, int stripes, long durationMillis ) throws Exception
+    {
+        final LockManager lockManager = new LockManager( new PlaceboTm(), stripes );
+        final AtomicLong operations = new AtomicLong();
+        final CountDownLatch startSignal = new CountDownLatch( 1 );
+        final long endTime[] = new long[1];
+        Thread[] threads = new Thread[threadCount];
+        for ( int i = 0; i < threadCount; i++ )
+        {
+            final Object[] resources = new Object[RESOURCES_PER_THREAD];
+            for ( int r = 0; r < resources.length; r++ )
+            {
+                resources[r] = Long.valueOf( (long) i * RESOURCES_PER_THREAD + r );
+            }
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        startSignal.await();
+                        long count = 0;
+                        while ( System.currentTimeMillis() < endTime[0] )
+                        {
+                            for ( Object resource : resources )
+                            {
+                                lockManager.getWriteLock( resource );
+                                lockManager.releaseWriteLock( resource, null );
+                            }
+                            count += resources.length;
+                        }
+                        operations.addAndGet( count );
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        Thread.interrupted();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        long start = System.currentTimeMillis();
+        endTime[0] = start + durationMillis;
+        startSignal.countDown();
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        long time = System.currentTimeMillis() - start;
+        return operations.get() * 1000d / time;
+    }
+}
@@ -19,11 +19,13 @@
  */
 package org.neo4j.kernel.impl.transaction;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import org.junit.Test;
 import org.neo4j.kernel.DeadlockDetectedException;
+import org.neo4j.kernel.info.LockInfo;
 
 public class TestRWLock
 {
@@ -553,4 +555,43 @@ public class TestRWLock
         }
         go = true;
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testLocksAreVisibleAndRemovedAcrossAllStripes() throws Exception
+    {
+        LockManager striped = new LockManager( new PlaceboTm(), 8 );
+        ResourceObject[] resources = new ResourceObject[100];
+        for ( int i = 0; i < resources.length; i++ )
+        {
+            resources[i] = new ResourceObject( "R" + i );
+            if ( i % 2 == 0 )
+            {
+                striped.getReadLock( resources[i] );
+            }
+            else
+            {
+                striped.getWriteLock( resources[i] );
+            }
+        }
+        assertEquals( resources.length, striped.getAllLocks().size() );
+        int writeLocks = 0;
+        for ( LockInfo lock : striped.getAllLocks() )
+        {
+            writeLocks += lock.getWriteCount();
+        }
+        assertEquals( resources.length / 2, writeLocks );
+
+        for ( int i = 0; i < resources.length; i++ )
+        {
+            if ( i % 2 == 0 )
+            {
+                striped.releaseReadLock( resources[i], null );
+            }
+            else
+            {
+                striped.releaseWriteLock( resources[i], null );
+            }
+        }
+        assertEquals( 0, striped.getAllLocks().size() );
+    }
+}
@@ -0,0 +1,488 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.transaction.TransactionManager;
+
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.TransactionFailureException;
+import org.neo4j.kernel.CommonFactories;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.GraphDatabaseTestAccess;
+import org.neo4j.kernel.impl.nioneo.store.FileLock;
+import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
+import org.neo4j.kernel.impl.util.FileUtils;
+
+public class TestGroupCommit
+{
+    private static final int THREADS = 10;
+    private static final int COMMITS_PER_THREAD = 50;
+
+    @Test
+    public void concurrentCommittersShareForces() throws Exception
+    {
+        final GroupCommit groupCommit = new GroupCommit( 100, 0, TimeUnit.MILLISECONDS );
+        final AtomicInteger forces = new AtomicInteger();
+        final GroupCommit.Forcer forcer = new GroupCommit.Forcer()
+        {
+            public long forceAppended() throws IOException
+            {
+                long ticket = groupCommit.appendedSoFar();
+                forces.incrementAndGet();
+                try
+                {
+                    Thread.sleep( 5 );
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.interrupted();
+                }
+                return ticket;
+            }
+        };
+        Thread[] threads = new Thread[THREADS];
+        final AtomicInteger completed = new AtomicInteger();
+        for ( int i = 0; i < threads.length; i++ )
+        {
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for ( int c = 0; c < COMMITS_PER_THREAD; c++ )
+                    {
+                        long ticket = groupCommit.appended();
+                        try
+                        {
+                            groupCommit.awaitForced( ticket, forcer );
+                        }
+                        catch ( IOException e )
+                        {
+                            throw new RuntimeException( e );
+                        }
+                        assertTrue( groupCommit.isForced( ticket ) );
+                        completed.incrementAndGet();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        assertEquals( THREADS * COMMITS_PER_THREAD, completed.get() );
+        assertTrue( "Expected fewer forces than commits, got " + forces.get(),
+                forces.get() < THREADS * COMMITS_PER_THREAD );
+        assertEquals( forces.get(), groupCommit.getForceCount() );
+    }
+
+    @Test
+    public void txIdsOfOtherGeneratorsAreCommittedAsGenerated() throws Exception
+    {
+        File storeDir = new File( "target/test-data/group-commit-tx-ids" );
+        FileUtils.deleteRecursively( storeDir );
+        final Set<Long> generated = Collections.synchronizedSet( new HashSet<Long>() );
+        TxIdGeneratorFactory txIdGenerators = new TxIdGeneratorFactory()
+        {
+            public TxIdGenerator create( TransactionManager txManager )
+            {
+                return new TxIdGenerator()
+                {
+                    public long generate( XaDataSource dataSource, int identifier )
+                    {
+                        long txId = dataSource.getLastCommittedTxId() + 1;
+                        assertTrue( "Generated " + txId + " twice", generated.add( txId ) );
+                        return txId;
+                    }
+
+                    public int getCurrentMasterId()
+                    {
+                        return XaLogicalLog.MASTER_ID_REPRESENTING_NO_MASTER;
+                    }
+
+                    public int getMyId()
+                    {
+                        return XaLogicalLog.MASTER_ID_REPRESENTING_NO_MASTER;
+                    }
+                };
+            }
+        };
+        final GraphDatabaseTestAccess db = new GraphDatabaseTestAccess( storeDir.getAbsolutePath(),
+                stringMap( Config.GROUP_COMMIT, "true" ), CommonFactories.defaultIdGeneratorFactory(),
+                txIdGenerators, CommonFactories.defaultFileSystemAbstraction() );
+        try
+        {
+            XaDataSource dataSource = db.getConfig().getTxModule().getXaDataSourceManager().getXaDataSource(
+                    Config.DEFAULT_DATA_SOURCE_NAME );
+            long txIdBefore = dataSource.getLastCommittedTxId();
+            generated.clear();
+            Thread[] threads = new Thread[THREADS];
+            for ( int i = 0; i < threads.length; i++ )
+            {
+                threads[i] = new Thread()
+                {
+                    @Override
+                    public void run()
+                    {
+                        for ( int c = 0; c < COMMITS_PER_THREAD; c++ )
+                        {
+                            Transaction tx = db.beginTx();
+                            try
+                            {
+                                db.createNode();
+                                tx.success();
+                            }
+                            finally
+                            {
+                                tx.finish();
+                            }
+                        }
+                    }
+                };
+                threads[i].start();
+            }
+            for ( Thread thread : threads )
+            {
+                thread.join();
+            }
+            assertEquals( THREADS * COMMITS_PER_THREAD, generated.size() );
+            assertEquals( txIdBefore + THREADS * COMMITS_PER_THREAD, dataSource.getLastCommittedTxId() );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+    }
+
+    @Test
+    public void transactionsCommittedWithGroupCommitSurviveRestart() throws Exception
+    {
+        File storeDir = new File( "target/test-data/group-commit" );
+        FileUtils.deleteRecursively( storeDir );
+        final EmbeddedGraphDatabase db = new EmbeddedGraphDatabase( storeDir.getAbsolutePath(),
+                stringMap( Config.GROUP_COMMIT, "true", Config.GROUP_COMMIT_MAX_BATCH_WAIT, "2" ) );
+        XaDataSource dataSource = db.getConfig().getTxModule().getXaDataSourceManager().getXaDataSource(
+                Config.DEFAULT_DATA_SOURCE_NAME );
+        long txIdBefore = dataSource.getLastCommittedTxId();
+        Thread[] threads = new Thread[THREADS];
+        for ( int i = 0; i < threads.length; i++ )
+        {
+            final int threadId = i;
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for ( int c = 0; c < COMMITS_PER_THREAD; c++ )
+                    {
+                        Transaction tx = db.beginTx();
+                        try
+                        {
+                            Node node = db.createNode();
+                            node.setProperty( "thread", threadId );
+                            tx.success();
+                        }
+                        finally
+                        {
+                            tx.finish();
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        dataSource.rotateLogicalLog();
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        assertEquals( txIdBefore + THREADS * COMMITS_PER_THREAD, dataSource.getLastCommittedTxId() );
+        db.shutdown();
+
+        EmbeddedGraphDatabase restarted = new EmbeddedGraphDatabase( storeDir.getAbsolutePath() );
+        try
+        {
+            int[] nodesPerThread = new int[THREADS];
+            for ( Node node : restarted.getAllNodes() )
+            {
+                if ( node.hasProperty( "thread" ) )
+                {
+                    nodesPerThread[(Integer) node.getProperty( "thread" )]++;
+                }
+            }
+            for ( int count : nodesPerThread )
+            {
+                assertEquals( COMMITS_PER_THREAD, count );
+            }
+        }
+        finally
+        {
+            restarted.shutdown();
+        }
+    }
+
+    @Test
+    public void failedForceStopsTheDataSourceUntilItIsRestarted() throws Exception
+    {
+        File storeDir = new File( "target/test-data/group-commit-failed-force" );
+        FileUtils.deleteRecursively( storeDir );
+        FailingForceFileSystem fileSystem = new FailingForceFileSystem();
+        GraphDatabaseTestAccess db = new GraphDatabaseTestAccess( storeDir.getAbsolutePath(),
+                stringMap( Config.GROUP_COMMIT, "true" ), CommonFactories.defaultIdGeneratorFactory(), fileSystem );
+        long nodeId;
+        try
+        {
+            nodeId = createNode( db );
+            fileSystem.failForces = true;
+            try
+            {
+                createNode( db );
+                fail( "Commit should fail when the log can't be forced" );
+            }
+            catch ( TransactionFailureException e )
+            {   // Good
+            }
+            fileSystem.failForces = false;
+
+            // refused, rather than failing on the tx id the failed commit would have had
+            try
+            {
+                createNode( db );
+                fail( "Transactions after a failed force should be refused until restart" );
+            }
+            catch ( RuntimeException e )
+            {   // Good, the data source can't be enlisted in new transactions
+            }
+        }
+        finally
+        {
+            db.shutdown();
+        }
+
+        EmbeddedGraphDatabase restarted = new EmbeddedGraphDatabase( storeDir.getAbsolutePath() );
+        try
+        {
+            restarted.getNodeById( nodeId );
+            restarted.getNodeById( createNode( restarted ) );
+        }
+        finally
+        {
+            restarted.shutdown();
+        }
+    }
+
+    private static long createNode( GraphDatabaseService db )
+    {
+        Transaction tx = db.beginTx();
+        try
+        {
+            Node node = db.createNode();
+            tx.success();
+            return node.getId();
+        }
+        finally
+        {
+            tx.finish();
+        }
+    }
+
+    private static class FailingForceFileSystem implements FileSystemAbstraction
+    {
+        private final FileSystemAbstraction actual = CommonFactories.defaultFileSystemAbstraction();
+        volatile boolean failForces;
+
+        public FileChannel open( String fileName, String mode ) throws IOException
+        {
+            FileChannel channel = actual.open( fileName, mode );
+            return fileName.contains( "nioneo_logical.log" ) ? new FailingForceFileChannel( channel ) : channel;
+        }
+
+        public FileLock tryLock( String fileName, FileChannel channel ) throws IOException
+        {
+            return actual.tryLock( fileName, channel );
+        }
+
+        public FileChannel create( String fileName ) throws IOException
+        {
+            return open( fileName, "rw" );
+        }
+
+        public boolean fileExists( String fileName )
+        {
+            return actual.fileExists( fileName );
+        }
+
+        public long getFileSize( String fileName )
+        {
+            return actual.getFileSize( fileName );
+        }
+
+        public boolean deleteFile( String fileName )
+        {
+            return actual.deleteFile( fileName );
+        }
+
+        public boolean renameFile( String from, String to ) throws IOException
+        {
+            return actual.renameFile( from, to );
+        }
+
+        private class FailingForceFileChannel extends FileChannel
+        {
+            private final FileChannel actual;
+
+            FailingForceFileChannel( FileChannel actual )
+            {
+                this.actual = actual;
+            }
+
+            @Override
+            public void force( boolean metaData ) throws IOException
+            {
+                if ( failForces )
+                {
+                    throw new IOException( "Simulated failure to force" );
+                }
+                actual.force( metaData );
+            }
+
+            @Override
+            public int read( ByteBuffer dst ) throws IOException
+            {
+                return actual.read( dst );
+            }
+
+            @Override
+            public long read( ByteBuffer[] dsts, int offset, int length ) throws IOException
+            {
+                return actual.read( dsts, offset, length );
+            }
+
+            @Override
+            public int write( ByteBuffer src ) throws IOException
+            {
+                return actual.write( src );
+            }
+
+            @Override
+            public long write( ByteBuffer[] srcs, int offset, int length ) throws IOException
+            {
+                return actual.write( srcs, offset, length );
+            }
+
+            @Override
+            public long position() throws IOException
+            {
+                return actual.position();
+            }
+
+            @Override
+            public FileChannel position( long newPosition ) throws IOException
+            {
+                actual.position( newPosition );
+                return this;
+            }
+
+            @Override
+            public long size() throws IOException
+            {
+                return actual.size();
+            }
+
+            @Override
+            public FileChannel truncate( long size ) throws IOException
+            {
+                actual.truncate( size );
+                return this;
+            }
+
+            @Override
+            public long transferTo( long position, long count, WritableByteChannel target ) throws IOException
+            {
+                return actual.transferTo( position, count, target );
+            }
+
+            @Override
+            public long transferFrom( ReadableByteChannel src, long position, long count ) throws IOException
+            {
+                return actual.transferFrom( src, position, count );
+            }
+
+            @Override
+            public int read( ByteBuffer dst, long position ) throws IOException
+            {
+                return actual.read( dst, position );
+            }
+
+            @Override
+            public int write( ByteBuffer src, long position ) throws IOException
+            {
+                return actual.write( src, position );
+            }
+
+            @Override
+            public MappedByteBuffer map( MapMode mode, long position, long size ) throws IOException
+            {
+                return actual.map( mode, position, size );
+            }
+
+            @Override
+            public java.nio.channels.FileLock lock( long position, long size, boolean shared ) throws IOException
+            {
+                return actual.lock( position, size, shared );
+            }
+
+            @Override
+            public java.nio.channels.FileLock tryLock( long position, long size, boolean shared ) throws IOException
+            {
+                return actual.tryLock( position, size, shared );
+            }
+
+            @Override
+            protected void implCloseChannel() throws IOException
+            {
+                actual.close();
+            }
+        }
+    }
+}
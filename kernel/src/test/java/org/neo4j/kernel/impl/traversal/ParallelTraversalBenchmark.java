@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.traversal;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.traversal.TraversalDescription;
+import org.neo4j.helpers.collection.IteratorUtil;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.Traversal;
+import org.neo4j.kernel.impl.util.FileUtils;
+
+/**
+ * Measures how a breadth first traversal over a large neighbourhood speeds
+ * up when branches are expanded in parallel, for increasing numbers of
+ * threads. Every run starts with empty caches, so relationships are loaded
+ * from the store during the traversal. Run it with the main method, it's
+ * not part of the test suite.
+ */
+public class ParallelTraversalBenchmark
+{
+    private static final String PATH = "target/var/parallel-traversal-benchmark";
+    private static final RelationshipType TYPE = DynamicRelationshipType.withName( "KNOWS" );
+    private static final int FAN_OUT = 20;
+    private static final int DEPTH = 4;
+
+    public static void main( String[] args ) throws Exception
+    {
+        int maxThreads = args.length > 0 ? Integer.parseInt( args[0] ) :
+                Runtime.getRuntime().availableProcessors();
+        FileUtils.deleteRecursively( new File( PATH ) );
+        GraphDatabaseService db = new EmbeddedGraphDatabase( PATH );
+        long start;
+        try
+        {
+            start = createTree( db );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+
+        System.out.println( "threads\tpaths\tmillis\tspeedup" );
+        double serial = 0;
+        for ( int threads = 0; threads <= maxThreads; threads = threads == 0 ? 1 : threads * 2 )
+        {
+            db = new EmbeddedGraphDatabase( PATH );
+            ExecutorService executor = threads == 0 ? null : Executors.newFixedThreadPool( threads );
+            try
+            {
+                TraversalDescription description = Traversal.description().breadthFirst().parallel( executor );
+                long time = System.currentTimeMillis();
+                int paths = IteratorUtil.count( description.traverse( db.getNodeById( start ) ).iterator() );
+                time = System.currentTimeMillis() - time;
+                if ( threads == 0 ) serial = time;
+                System.out.println( String.format( "%s\t%d\t%d\t%.2f", threads == 0 ? "serial" : "" + threads,
+                        paths, time, serial / Math.max( 1, time ) ) );
+            }
+            finally
+            {
+                if ( executor != null ) executor.shutdown();
+                db.shutdown();
+            }
+        }
+    }
+
+    private static long createTree( GraphDatabaseService db )
+    {
+        Transaction tx = db.beginTx();
+        try
+        {
+            Node root = db.createNode();
+            List<Node> level = new ArrayList<Node>();
+            level.add( root );
+            for ( int depth = 0; depth < DEPTH; depth++ )
+            {
+                List<Node> next = new ArrayList<Node>();
+                for ( Node parent : level )
+                {
+                    for ( int i = 0; i < FAN_OUT; i++ )
+                    {
+                        Node child = db.createNode();
+                        parent.createRelationshipTo( child, TYPE );
+                        next.add( child );
+                    }
+                }
+                level = next;
+                tx.success();
+                tx.finish();
+                tx = db.beginTx();
+            }
+            tx.success();
+            return root.getId();
+        }
+        finally
+        {
+            tx.finish();
+        }
+    }
+}
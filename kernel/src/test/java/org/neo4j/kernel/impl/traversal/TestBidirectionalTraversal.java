@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.traversal;
+
+import static org.junit.Assert.assertEquals;
+import static org.neo4j.graphdb.DynamicRelationshipType.withName;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.traversal.BidirectionalTraversalDescription;
+import org.neo4j.graphdb.traversal.Evaluators;
+import org.neo4j.helpers.collection.IteratorUtil;
+import org.neo4j.kernel.BranchCollisionPolicies;
+import org.neo4j.kernel.SideSelectorPolicies;
+import org.neo4j.kernel.Traversal;
+
+public class TestBidirectionalTraversal extends AbstractTestBase
+{
+    /*
+     *   (a)-->(b)-->(c)-->(d)-->(e)
+     *    |\                    ^ ^
+     *    | ------->(x)---------/  |       (f)
+     *    |                        |
+     *     -->(y)-->(z)-->(w)------
+     *
+     * The short path is created between two long ones, so whichever order
+     * the relationships of (a) and (e) come in, a deep branch comes before
+     * the shallow one.
+     */
+    @BeforeClass
+    public static void setupGraph()
+    {
+        createGraph( "a TO b", "b TO c", "c TO d", "d TO e", "a TO x", "x TO e",
+                "a TO y", "y TO z", "z TO w", "w TO e", "f TO f" );
+    }
+
+    private BidirectionalTraversalDescription outgoing()
+    {
+        return Traversal.bidirectionalTraversal().mirroredSides(
+                Traversal.description().breadthFirst().relationships( withName( "TO" ), Direction.OUTGOING ) );
+    }
+
+    @Test
+    public void shouldFindEveryPathBetweenTheNodes() throws Exception
+    {
+        expectPaths( outgoing().traverse( node( "a" ), node( "e" ) ), "a,x,e", "a,b,c,d,e", "a,y,z,w,e" );
+    }
+
+    @Test
+    public void shouldNotReturnPathsLongerThanMaxDepth() throws Exception
+    {
+        expectPaths( outgoing().sideSelector( SideSelectorPolicies.LEVEL, 3 ).traverse( node( "a" ), node( "e" ) ),
+                "a,x,e" );
+    }
+
+    @Test
+    public void shouldFindPathsWithinMaxDepthWhenDeepBranchesComeFirst() throws Exception
+    {
+        // Sides described depth first are still expanded breadth first
+        BidirectionalTraversalDescription depthFirst = Traversal.bidirectionalTraversal().mirroredSides(
+                Traversal.description().depthFirst().relationships( withName( "TO" ), Direction.OUTGOING ) );
+        for ( SideSelectorPolicies policy : SideSelectorPolicies.values() )
+        {
+            for ( int maxDepth = 2; maxDepth < 4; maxDepth++ )
+            {
+                expectPaths( depthFirst.sideSelector( policy, maxDepth ).traverse( node( "a" ), node( "e" ) ),
+                        "a,x,e" );
+            }
+            expectPaths( depthFirst.sideSelector( policy, 4 ).traverse( node( "a" ), node( "e" ) ),
+                    "a,x,e", "a,b,c,d,e", "a,y,z,w,e" );
+        }
+    }
+
+    @Test
+    public void shouldOnlyReturnTheShortestPaths() throws Exception
+    {
+        expectPaths( outgoing().collisionPolicy( BranchCollisionPolicies.SHORTEST_PATH )
+                .sideSelector( SideSelectorPolicies.LEVEL, 10 ).traverse( node( "a" ), node( "e" ) ), "a,x,e" );
+    }
+
+    @Test
+    public void shouldOnlyReturnPathsIncludedByCollisionEvaluator() throws Exception
+    {
+        expectPaths( outgoing().collisionEvaluator( Evaluators.atDepth( 4 ) ).traverse( node( "a" ), node( "e" ) ),
+                "a,b,c,d,e", "a,y,z,w,e" );
+    }
+
+    @Test
+    public void shouldRespectDirectionOfSides() throws Exception
+    {
+        assertEquals( 0, IteratorUtil.count( outgoing().traverse( node( "e" ), node( "a" ) ).iterator() ) );
+        expectPaths( Traversal.bidirectionalTraversal().traverse( node( "e" ), node( "a" ) ),
+                "e,x,a", "e,d,c,b,a", "e,w,z,y,a" );
+    }
+
+    @Test
+    public void shouldFindNothingBetweenDisconnectedNodes() throws Exception
+    {
+        assertEquals( 0, IteratorUtil.count( outgoing().traverse( node( "a" ), node( "f" ) ).iterator() ) );
+    }
+}
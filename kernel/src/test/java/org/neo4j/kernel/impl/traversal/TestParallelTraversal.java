@@ -0,0 +1,180 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.traversal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.neo4j.graphdb.DynamicRelationshipType.withName;
+import static org.junit.Assert.fail;
+
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.traversal.Evaluation;
+import org.neo4j.graphdb.traversal.Evaluator;
+import org.neo4j.graphdb.traversal.Evaluators;
+import org.neo4j.graphdb.traversal.TraversalDescription;
+import org.neo4j.helpers.collection.ClosableIterator;
+import org.neo4j.helpers.collection.IteratorUtil;
+import org.neo4j.kernel.Traversal;
+import org.neo4j.kernel.Uniqueness;
+
+public class TestParallelTraversal extends AbstractTestBase
+{
+    /*
+     *                     (1)
+     *               ------ | ------
+     *             /        |        \
+     *           (2)       (3)       (4)
+     *          / | \     / | \     / | \
+     *        (5)(6)(7) (8)(9)(A) (B)(C)(D)
+     *                    \_________/
+     *
+     *      (S) -> (P) -> (Q) -> (F) -> (H)
+     *        \                   ^
+     *         `-----> (X) ------'
+     */
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void setupGraph()
+    {
+        createGraph( "1 TO 2", "1 TO 3", "1 TO 4", "2 TO 5", "2 TO 6", "2 TO 7",
+                "3 TO 8", "3 TO 9", "3 TO A", "4 TO B", "4 TO C", "4 TO D", "9 TO C",
+                "S TO P", "P TO Q", "Q TO F", "S TO X", "X TO F", "F TO H" );
+        executor = Executors.newFixedThreadPool( 4 );
+    }
+
+    @AfterClass
+    public static void shutdownExecutor()
+    {
+        executor.shutdown();
+    }
+
+    private TraversalDescription parallel()
+    {
+        return Traversal.description().parallel( executor );
+    }
+
+    @Test
+    public void shouldReturnEveryNodeOnce() throws Exception
+    {
+        expectNodes( parallel().traverse( node( "1" ) ),
+                "1", "2", "3", "4", "5", "6", "7", "8", "9", "A", "B", "C", "D" );
+    }
+
+    @Test
+    public void shouldReturnEveryRelationshipOnceWithRelationshipUniqueness() throws Exception
+    {
+        expectRelationships( parallel().uniqueness( Uniqueness.RELATIONSHIP_GLOBAL ).traverse( node( "1" ) ),
+                "1 TO 2", "1 TO 3", "1 TO 4", "2 TO 5", "2 TO 6", "2 TO 7", "3 TO 8", "3 TO 9",
+                "3 TO A", "4 TO B", "4 TO C", "4 TO D", "9 TO C" );
+    }
+
+    @Test
+    public void shouldObeyEvaluators() throws Exception
+    {
+        expectPaths( parallel().evaluator( Evaluators.atDepth( 2 ) ).uniqueness( Uniqueness.NONE )
+                .relationships( withName( "TO" ), Direction.OUTGOING )
+                .traverse( node( "1" ) ),
+                "1,2,5", "1,2,6", "1,2,7", "1,3,8", "1,3,9", "1,3,A", "1,4,B", "1,4,C", "1,4,D" );
+    }
+
+    @Test
+    public void shouldReachNodesAtTheirLowestDepthWithGlobalUniqueness() throws Exception
+    {
+        // F is at depth 2 through X, but at depth 3 through P and Q. If it's
+        // reached through P and Q first, H isn't within the depth limit
+        TraversalDescription description = Traversal.description().breadthFirst()
+                .uniqueness( Uniqueness.NODE_GLOBAL ).evaluator( Evaluators.toDepth( 3 ) )
+                .relationships( withName( "TO" ), Direction.OUTGOING );
+        String[] expected = { "S", "P", "Q", "X", "F", "H" };
+        expectNodes( description.traverse( node( "S" ) ), expected );
+        for ( int i = 0; i < 100; i++ )
+        {
+            expectNodes( description.parallel( executor ).traverse( node( "S" ) ), expected );
+        }
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void shouldNotSupportPathUniqueness() throws Exception
+    {
+        parallel().uniqueness( Uniqueness.NODE_PATH ).traverse( node( "1" ) );
+    }
+
+    @Test
+    public void shouldPropagateFailuresToTheCaller() throws Exception
+    {
+        final RuntimeException failure = new RuntimeException( "evaluator failed" );
+        try
+        {
+            IteratorUtil.count( parallel().evaluator( new Evaluator()
+            {
+                public Evaluation evaluate( Path path )
+                {
+                    if ( path.length() == 2 ) throw failure;
+                    return Evaluation.INCLUDE_AND_CONTINUE;
+                }
+            } ).traverse( node( "1" ) ).iterator() );
+            fail( "Should have failed" );
+        }
+        catch ( RuntimeException e )
+        {
+            assertEquals( failure, e );
+        }
+    }
+
+    @Test
+    public void closingTheIteratorStopsAnEndlessTraversal() throws Exception
+    {
+        ThreadPoolExecutor ownExecutor = (ThreadPoolExecutor) Executors.newFixedThreadPool( 4 );
+        try
+        {
+            // Without uniqueness, going both ways never ends
+            Iterator<Path> paths = Traversal.description().parallel( ownExecutor )
+                    .uniqueness( Uniqueness.NONE ).traverse( node( "1" ) ).iterator();
+            for ( int i = 0; i < 100; i++ )
+            {
+                paths.next();
+            }
+            ( (ClosableIterator<Path>) paths ).close();
+
+            long deadline = System.currentTimeMillis() + 10000;
+            while ( ( ownExecutor.getActiveCount() > 0 || !ownExecutor.getQueue().isEmpty() )
+                    && System.currentTimeMillis() < deadline )
+            {
+                Thread.sleep( 10 );
+            }
+            assertEquals( 0, ownExecutor.getActiveCount() );
+            assertTrue( ownExecutor.getQueue().isEmpty() );
+        }
+        finally
+        {
+            ownExecutor.shutdownNow();
+        }
+    }
+}
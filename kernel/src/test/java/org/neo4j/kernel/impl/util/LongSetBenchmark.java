@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Compares memory use and throughput of {@link LongHashSet}, on and off
+ * heap, with a boxed {@link HashSet} when adding and looking up the kind of
+ * ids a traversal visits. Run it with the main method, it's not part of the
+ * test suite. Run with a fixed heap (e.g. -Xms2g -Xmx2g) for stable numbers.
+ */
+public class LongSetBenchmark
+{
+    private interface LongSet
+    {
+        boolean add( long value );
+
+        boolean contains( long value );
+    }
+
+    private interface LongSetFactory
+    {
+        LongSet create();
+    }
+
+    private static final String[] NAMES = { "HashSet<Long>", "LongHashSet", "LongHashSet off-heap" };
+    private static final LongSetFactory[] FACTORIES = {
+        new LongSetFactory()
+        {
+            public LongSet create()
+            {
+                final Set<Long> set = new HashSet<Long>();
+                return new LongSet()
+                {
+                    public boolean add( long value )
+                    {
+                        return set.add( value );
+                    }
+
+                    public boolean contains( long value )
+                    {
+                        return set.contains( value );
+                    }
+                };
+            }
+        },
+        new LongSetFactory()
+        {
+            public LongSet create()
+            {
+                return wrap( new LongHashSet() );
+            }
+        },
+        new LongSetFactory()
+        {
+            public LongSet create()
+            {
+                return wrap( new LongHashSet( 16, true ) );
+            }
+        },
+    };
+
+    public static void main( String[] args )
+    {
+        int count = args.length > 0 ? Integer.parseInt( args[0] ) : 5000000;
+        for ( LongSetFactory factory : FACTORIES )
+        {
+            run( factory, count / 10 );
+        }
+        System.out.println( "set\tadds/s\tlookups/s\theap bytes/value" );
+        for ( int i = 0; i < FACTORIES.length; i++ )
+        {
+            System.out.println( NAMES[i] + "\t" + run( FACTORIES[i], count ) );
+        }
+    }
+
+    private static String run( LongSetFactory factory, int count )
+    {
+        // ids visited by a traversal are scattered, not sequential
+        long[] added = randomIds( count, 1 );
+        long[] looked = randomIds( count, 2 );
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        LongSet set = factory.create();
+        for ( int i = 0; i < count; i++ )
+        {
+            set.add( added[i] );
+        }
+        long addTime = System.nanoTime() - start;
+        long heapAfter = usedHeap();
+        start = System.nanoTime();
+        int found = 0;
+        for ( int i = 0; i < count; i++ )
+        {
+            if ( set.contains( looked[i] ) )
+            {
+                found++;
+            }
+        }
+        long lookupTime = System.nanoTime() - start;
+        // keep the set and result reachable until after measuring
+        if ( found < 0 || !set.contains( added[0] ) )
+        {
+            throw new IllegalStateException();
+        }
+        return String.format( "%.0f\t%.0f\t%.1f", count * 1e9 / addTime, count * 1e9 / lookupTime,
+                (double) ( heapAfter - heapBefore ) / count );
+    }
+
+    private static long[] randomIds( int count, long seed )
+    {
+        Random random = new Random( seed );
+        long[] ids = new long[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            ids[i] = random.nextInt( count * 3 );
+        }
+        return ids;
+    }
+
+    private static LongSet wrap( final LongHashSet set )
+    {
+        return new LongSet()
+        {
+            public boolean add( long value )
+            {
+                return set.add( value );
+            }
+
+            public boolean contains( long value )
+            {
+                return set.contains( value );
+            }
+        };
+    }
+
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for ( int i = 0; i < 3; i++ )
+        {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
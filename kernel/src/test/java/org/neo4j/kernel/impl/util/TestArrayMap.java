@@ -121,6 +121,28 @@ public class TestArrayMap
                 new ArrayMap<String, Integer>( 3, true, true ), true );
     }
 
+    @Test
+    public void arraymapGrowsItsArrayUpToThresholdBeforeExpandingToHashMap() throws Exception
+    {
+        assertDataRepresentationSwitchesWhenAboveThreshold( new ArrayMap<String, Integer>( 1, 3, false,
+                true ), true );
+        assertDataRepresentationSwitchesWhenAboveThreshold( new ArrayMap<String, Integer>( 1, 3, true,
+                false ), false );
+
+        ArrayMap<String, Integer> map = new ArrayMap<String, Integer>( 1, 5, false, false );
+        Field dataField = ArrayMap.class.getDeclaredField( "data" );
+        dataField.setAccessible( true );
+        assertEquals( 1, ((Object[]) dataField.get( map )).length );
+        map.put( "key1", 1 );
+        map.put( "key2", 2 );
+        map.put( "key3", 3 );
+        assertEquals( 4, ((Object[]) dataField.get( map )).length );
+        assertEquals( new Integer( 1 ), map.get( "key1" ) );
+        assertEquals( new Integer( 3 ), map.get( "key3" ) );
+        assertEquals( new Integer( 2 ), map.remove( "key2" ) );
+        assertEquals( 2, map.size() );
+    }
+
     @SuppressWarnings( "rawtypes" )
     private void assertDataRepresentationSwitchesWhenAboveThreshold( ArrayMap<String, Integer> map,
             boolean shrinkable ) throws Exception
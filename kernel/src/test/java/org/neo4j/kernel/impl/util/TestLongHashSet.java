@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TestLongHashSet
+{
+    @Test
+    public void addContainsAndRemove()
+    {
+        LongHashSet set = new LongHashSet();
+        assertTrue( set.add( 5 ) );
+        assertTrue( set.add( -1 ) );
+        assertTrue( set.add( 0 ) );
+        assertFalse( set.add( 5 ) );
+        assertFalse( set.add( -1 ) );
+        assertEquals( 3, set.size() );
+        assertTrue( set.contains( -1 ) );
+        assertFalse( set.contains( 6 ) );
+
+        assertTrue( set.remove( -1 ) );
+        assertFalse( set.remove( -1 ) );
+        assertTrue( set.remove( 5 ) );
+        assertFalse( set.contains( 5 ) );
+        assertEquals( 1, set.size() );
+        long[] values = set.toArray();
+        assertEquals( 1, values.length );
+        assertEquals( 0, values[0] );
+    }
+
+    @Test
+    public void behavesLikeHashSetOnHeap()
+    {
+        behavesLikeHashSet( new LongHashSet() );
+    }
+
+    @Test
+    public void behavesLikeHashSetOffHeap()
+    {
+        behavesLikeHashSet( new LongHashSet( 4, true ) );
+    }
+
+    private void behavesLikeHashSet( LongHashSet set )
+    {
+        Set<Long> expected = new HashSet<Long>();
+        Random random = new Random( 1234 );
+        for ( int i = 0; i < 100000; i++ )
+        {
+            // small value range so that removes and re-adds collide a lot
+            long value = random.nextInt( 5000 ) - 10;
+            if ( random.nextInt( 3 ) == 0 )
+            {
+                assertEquals( expected.remove( value ), set.remove( value ) );
+            }
+            else
+            {
+                assertEquals( expected.add( value ), set.add( value ) );
+            }
+            assertEquals( expected.size(), set.size() );
+        }
+        for ( long value = -20; value < 5010; value++ )
+        {
+            assertEquals( expected.contains( value ), set.contains( value ) );
+        }
+        long[] values = set.toArray();
+        Arrays.sort( values );
+        Long[] expectedValues = expected.toArray( new Long[0] );
+        Arrays.sort( expectedValues );
+        assertEquals( expectedValues.length, values.length );
+        for ( int i = 0; i < values.length; i++ )
+        {
+            assertEquals( expectedValues[i].longValue(), values[i] );
+        }
+        set.clear();
+        assertTrue( set.isEmpty() );
+        assertFalse( set.contains( 10 ) );
+    }
+}
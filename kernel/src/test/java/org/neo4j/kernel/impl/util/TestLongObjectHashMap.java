@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestLongObjectHashMap
+{
+    @Test
+    public void behavesLikeHashMap()
+    {
+        LongObjectHashMap<String> map = new LongObjectHashMap<String>();
+        Map<Long,String> expected = new HashMap<Long,String>();
+        Random random = new Random( 4321 );
+        for ( int i = 0; i < 100000; i++ )
+        {
+            long key = random.nextInt( 3000 );
+            if ( random.nextInt( 3 ) == 0 )
+            {
+                assertEquals( expected.remove( key ), map.remove( key ) );
+            }
+            else
+            {
+                String value = "v" + i;
+                assertEquals( expected.put( key, value ), map.put( key, value ) );
+            }
+            assertEquals( expected.size(), map.size() );
+        }
+        for ( long key = 0; key < 3000; key++ )
+        {
+            assertEquals( expected.get( key ), map.get( key ) );
+            assertEquals( expected.containsKey( key ), map.containsKey( key ) );
+        }
+        assertEquals( expected.size(), map.keys().length );
+        for ( long key : map.keys() )
+        {
+            assertTrue( expected.containsKey( key ) );
+        }
+    }
+
+    @Test
+    public void negativeKeys()
+    {
+        LongObjectHashMap<String> map = new LongObjectHashMap<String>();
+        assertNull( map.put( -1, "a" ) );
+        assertNull( map.put( Long.MIN_VALUE, "b" ) );
+        assertEquals( "a", map.get( -1 ) );
+        assertEquals( "b", map.remove( Long.MIN_VALUE ) );
+        assertFalse( map.containsKey( Long.MIN_VALUE ) );
+    }
+
+    @Test
+    public void valuesAndClear()
+    {
+        LongObjectHashMap<String> map = new LongObjectHashMap<String>();
+        Set<String> expected = new HashSet<String>();
+        for ( long key = 0; key < 1000; key += 7 )
+        {
+            map.put( key, "v" + key );
+            expected.add( "v" + key );
+        }
+        Set<String> values = new HashSet<String>();
+        for ( String value : map.values() )
+        {
+            assertTrue( values.add( value ) );
+        }
+        assertEquals( expected, values );
+
+        map.clear();
+        assertTrue( map.isEmpty() );
+        assertNull( map.get( 7 ) );
+        assertFalse( map.values().iterator().hasNext() );
+        map.put( 7, "again" );
+        assertEquals( "again", map.get( 7 ) );
+    }
+}
@@ -19,7 +19,6 @@
  */
 package org.neo4j.index.impl.lucene;
 
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -28,39 +27,51 @@ import org.neo4j.kernel.impl.cache.LruCache;
 
 public class Cache
 {
-    private final Map<IndexIdentifier, Map<String,LruCache<String,Collection<Long>>>> caching = 
+    private final Map<IndexIdentifier, Map<String,LruCache<String,long[]>>> caching = 
             Collections.synchronizedMap( 
-                    new HashMap<IndexIdentifier, Map<String,LruCache<String,Collection<Long>>>>() );
+                    new HashMap<IndexIdentifier, Map<String,LruCache<String,long[]>>>() );
     
     public void setCapacity( IndexIdentifier identifier, String key, int size )
     {
-        Map<String, LruCache<String, Collection<Long>>> map = caching.get( identifier );
+        Map<String, LruCache<String, long[]>> map = caching.get( identifier );
         if ( map == null )
         {
-            map = new HashMap<String, LruCache<String,Collection<Long>>>();
+            map = new HashMap<String, LruCache<String,long[]>>();
             caching.put( identifier, map );
         }
-        map.put( key, new LruCache<String, Collection<Long>>( key, size, null ) );
+        map.put( key, new LruCache<String, long[]>( key, size, null ) );
     }
     
-    public LruCache<String, Collection<Long>> get( IndexIdentifier identifier, String key )
+    public LruCache<String, long[]> get( IndexIdentifier identifier, String key )
     {
-        Map<String, LruCache<String, Collection<Long>>> map = caching.get( identifier );
+        Map<String, LruCache<String, long[]>> map = caching.get( identifier );
         return map != null ? map.get( key ) : null;
     }
     
     public void disable( IndexIdentifier identifier, String key )
     {
-        Map<String, LruCache<String, Collection<Long>>> map = caching.get( identifier );
+        Map<String, LruCache<String, long[]>> map = caching.get( identifier );
         if ( map != null )
         {
             map.remove( key );
         }
     }
     
+    public void clear( IndexIdentifier identifier )
+    {
+        Map<String, LruCache<String, long[]>> map = caching.get( identifier );
+        if ( map != null )
+        {
+            for ( LruCache<String, long[]> cache : map.values() )
+            {
+                cache.clear();
+            }
+        }
+    }
+    
     public void disable( IndexIdentifier identifier )
     {
-        Map<String, LruCache<String, Collection<Long>>> map = caching.get( identifier );
+        Map<String, LruCache<String, long[]>> map = caching.get( identifier );
         if ( map != null )
         {
             map.clear();
@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Scorer;
+
+/**
+ * Collects the entity ids of matching documents into a {@code long[]}. The
+ * ids are read from the {@link FieldCache} of each segment instead of from
+ * the stored documents, so no {@link org.apache.lucene.document.Document}s
+ * or boxed ids are created. The ids are in index order, not scored.
+ */
+class IdCollector extends Collector
+{
+    private long[] ids = new long[16];
+    private int size;
+    private long[] segmentIds;
+
+    @Override
+    public void setScorer( Scorer scorer )
+    {
+    }
+
+    @Override
+    public void setNextReader( IndexReader reader, int docBase ) throws IOException
+    {
+        segmentIds = FieldCache.DEFAULT.getLongs( reader, LuceneIndex.KEY_DOC_ID );
+    }
+
+    @Override
+    public void collect( int doc )
+    {
+        if ( size == ids.length )
+        {
+            ids = Arrays.copyOf( ids, size * 2 );
+        }
+        ids[size++] = segmentIds[doc];
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder()
+    {
+        return true;
+    }
+
+    long[] getIds()
+    {
+        return size == ids.length ? ids : Arrays.copyOf( ids, size );
+    }
+}
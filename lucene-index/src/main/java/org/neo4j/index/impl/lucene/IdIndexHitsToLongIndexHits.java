@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import java.util.HashSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.graphdb.index.LongIndexHits;
+
+/**
+ * {@link LongIndexHits} over the boxed ids of a scored or sorted search,
+ * without duplicates, for queries where the order of the ids matters.
+ */
+class IdIndexHitsToLongIndexHits implements LongIndexHits
+{
+    private final IndexHits<Long> ids;
+    private final Set<Long> alreadyReturned = new HashSet<Long>();
+    private Long next;
+
+    IdIndexHitsToLongIndexHits( IndexHits<Long> ids )
+    {
+        this.ids = ids;
+    }
+
+    public boolean hasNext()
+    {
+        while ( next == null && ids.hasNext() )
+        {
+            Long id = ids.next();
+            if ( alreadyReturned.add( id ) )
+            {
+                next = id;
+            }
+        }
+        return next != null;
+    }
+
+    public long next()
+    {
+        if ( !hasNext() )
+        {
+            throw new NoSuchElementException();
+        }
+        long result = next;
+        next = null;
+        return result;
+    }
+
+    public int size()
+    {
+        return ids.size();
+    }
+
+    public void close()
+    {
+        ids.close();
+    }
+}
@@ -20,9 +20,7 @@
 package org.neo4j.index.impl.lucene;
 
 import java.io.IOException;
-import java.util.concurrent.atomic.AtomicBoolean;
 
-import org.neo4j.helpers.Pair;
 import org.neo4j.kernel.impl.cache.LruCache;
 
 /**
@@ -30,7 +28,7 @@ import org.neo4j.kernel.impl.cache.LruCache;
  *
  * @see LuceneDataSource
  */
-public class IndexSearcherLruCache extends LruCache<IndexIdentifier, Pair<IndexSearcherRef, AtomicBoolean>>
+public class IndexSearcherLruCache extends LruCache<IndexIdentifier, IndexSearcherRef>
 {
     /**
      * Creates a LRU cache. If <CODE>maxSize < 1</CODE> an
@@ -44,10 +42,10 @@ public class IndexSearcherLruCache extends LruCache<IndexIdentifier, Pair<IndexS
     }
 
     @Override
-    public void elementCleaned(Pair<IndexSearcherRef, AtomicBoolean> searcher)
+    public void elementCleaned( IndexSearcherRef searcher )
     {
         try {
-            searcher.first().dispose();
+            searcher.detachOrClose();
         } catch (IOException e) {
             throw new RuntimeException( e );
         }
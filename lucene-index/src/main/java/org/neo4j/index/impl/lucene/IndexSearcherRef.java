@@ -20,6 +20,7 @@
 package org.neo4j.index.impl.lucene;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.search.IndexSearcher;
@@ -28,16 +29,24 @@ class IndexSearcherRef
 {
     private final IndexIdentifier identifier;
     private final IndexSearcher searcher;
-    private final AtomicInteger refCount = new AtomicInteger( 0 );
-    private volatile boolean isClosed;
     
     /**
-     * We need this because we only want to close the reader/searcher if
-     * it has been detached... i.e. the {@link LuceneDataSource} no longer
-     * has any reference to it, only an iterator out in the client has a ref.
-     * And when that client calls close() it should be closed.
+     * One reference belongs to the {@link LuceneDataSource} as long as it
+     * hands out this searcher, the others to iterators out in the clients.
+     * When the count reaches zero the reader/searcher is closed, i.e. when the
+     * {@link LuceneDataSource} no longer has any reference to it and the last
+     * client has called close().
      */
-    private volatile boolean detached;
+    private final AtomicInteger refCount = new AtomicInteger( 1 );
+    private final AtomicBoolean detached = new AtomicBoolean();
+    private final AtomicBoolean isClosed = new AtomicBoolean();
+    
+    /**
+     * Commits to the index since this searcher was opened and the time of the
+     * first one, i.e. since when this searcher doesn't see everything.
+     */
+    private final AtomicInteger commitsSinceOpened = new AtomicInteger();
+    private volatile long staleSince;
     
     public IndexSearcherRef( IndexIdentifier identifier, IndexSearcher searcher )
     {
@@ -57,45 +66,70 @@ class IndexSearcherRef
 
     void incRef()
     {
-        this.refCount.incrementAndGet();
+        if ( !tryIncRef() )
+        {
+            throw new IllegalStateException( "Searcher for " + identifier + " has been closed" );
+        }
+    }
+    
+    /**
+     * Takes a reference to this searcher unless it has already been closed,
+     * without any locking so that it can be handed out to a concurrent query
+     * while the {@link LuceneDataSource} replaces it.
+     * 
+     * @return {@code true} if a reference was taken, otherwise {@code false}.
+     */
+    boolean tryIncRef()
+    {
+        while ( true )
+        {
+            int count = refCount.get();
+            if ( count <= 0 )
+            {
+                return false;
+            }
+            if ( refCount.compareAndSet( count, count + 1 ) )
+            {
+                return true;
+            }
+        }
     }
     
     public void dispose() throws IOException
     {
-        if ( !this.isClosed )
+        if ( this.isClosed.compareAndSet( false, true ) )
         {
+            this.refCount.set( 0 );
             this.searcher.close();
             this.searcher.getIndexReader().close();
-            this.isClosed = true;
         }
     }
     
     public void detachOrClose() throws IOException
     {
-        if ( this.refCount.get() == 0 )
-        {
-            dispose();
-        }
-        else
+        if ( this.detached.compareAndSet( false, true ) )
         {
-            this.detached = true;
+            decRef();
         }
     }
     
     public boolean close() throws IOException
     {
-        if ( this.isClosed || this.refCount.get() == 0 )
+        if ( this.isClosed.get() )
         {
             return true;
         }
-        
-        boolean reallyClosed = false;
-        if ( this.refCount.decrementAndGet() <= 0 && this.detached )
+        return decRef();
+    }
+    
+    private boolean decRef() throws IOException
+    {
+        if ( this.refCount.decrementAndGet() == 0 )
         {
             dispose();
-            reallyClosed = true;
+            return true;
         }
-        return reallyClosed;
+        return false;
     }
     
     boolean closeStrict()
@@ -112,6 +146,40 @@ class IndexSearcherRef
 
     boolean isClosed()
     {
-        return isClosed;
+        return isClosed.get();
+    }
+    
+    void markStale()
+    {
+        if ( commitsSinceOpened.getAndIncrement() == 0 )
+        {
+            staleSince = System.currentTimeMillis();
+        }
+    }
+    
+    void markFresh()
+    {
+        commitsSinceOpened.set( 0 );
+        staleSince = 0;
+    }
+    
+    boolean isStale()
+    {
+        return commitsSinceOpened.get() > 0;
+    }
+    
+    int getCommitsSinceOpened()
+    {
+        return commitsSinceOpened.get();
+    }
+    
+    /**
+     * @return the number of milliseconds since the first commit this
+     * searcher doesn't see, or 0 if it sees all commits.
+     */
+    long getStaleness( long now )
+    {
+        long since = staleSince;
+        return since == 0 ? 0 : Math.max( 0, now - since );
     }
 }
@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import org.neo4j.kernel.impl.util.StringLogger;
+
+/**
+ * Reopens stale index searchers in the background so that queries don't
+ * have to wait for it, see {@link org.neo4j.kernel.Config#LUCENE_SEARCHER_REFRESH_INTERVAL}
+ * and {@link org.neo4j.kernel.Config#LUCENE_SEARCHER_REFRESH_COMMITS}.
+ *
+ * @see LuceneDataSource
+ */
+class IndexSearcherRefresher extends Thread
+{
+    private final LuceneDataSource dataSource;
+    private final long interval;
+    private final int commits;
+    private final StringLogger msgLog;
+    private boolean done;
+    private boolean signalled;
+
+    /**
+     * @param interval the longest time in milliseconds a searcher may miss
+     * committed changes, or 0 if only {@code commits} should be considered.
+     * @param commits the number of commits after which a searcher is
+     * reopened without waiting for the interval, or 0 if only
+     * {@code interval} should be considered.
+     */
+    IndexSearcherRefresher( LuceneDataSource dataSource, long interval, int commits, StringLogger msgLog )
+    {
+        super( "Lucene index searcher refresher" );
+        this.dataSource = dataSource;
+        this.interval = interval;
+        this.commits = commits;
+        this.msgLog = msgLog;
+        setDaemon( true );
+    }
+
+    /**
+     * Called after a commit to a searcher's index.
+     *
+     * @param commitsSinceOpened the number of commits that the searcher
+     * doesn't see.
+     */
+    void committed( int commitsSinceOpened )
+    {
+        if ( commits > 0 && commitsSinceOpened >= commits )
+        {
+            synchronized ( this )
+            {
+                signalled = true;
+                notify();
+            }
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        while ( true )
+        {
+            boolean refreshAll;
+            synchronized ( this )
+            {
+                long wakeUp = System.currentTimeMillis() + interval;
+                while ( !done && !signalled )
+                {
+                    long timeout = interval > 0 ? wakeUp - System.currentTimeMillis() : 0;
+                    if ( interval > 0 && timeout <= 0 )
+                    {
+                        break;
+                    }
+                    try
+                    {
+                        wait( timeout );
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        Thread.interrupted();
+                    }
+                }
+                if ( done )
+                {
+                    return;
+                }
+                refreshAll = !signalled;
+                signalled = false;
+            }
+            try
+            {
+                dataSource.refreshStaleSearchers( refreshAll ? 1 : commits );
+            }
+            catch ( RuntimeException e )
+            {   // Keep going, queries reopen searchers themselves if need be
+                msgLog.logMessage( "Unable to refresh stale lucene index searchers", e );
+            }
+        }
+    }
+
+    void halt()
+    {
+        synchronized ( this )
+        {
+            done = true;
+            notify();
+        }
+        try
+        {
+            join();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.interrupted();
+        }
+    }
+}
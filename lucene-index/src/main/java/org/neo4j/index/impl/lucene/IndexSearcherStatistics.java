@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How long it takes to reopen lucene index searchers after commits and how
+ * out of date the searchers that queries get are. Queries only get stale
+ * searchers when they are refreshed in the background, see
+ * {@link org.neo4j.kernel.Config#LUCENE_SEARCHER_REFRESH_INTERVAL}.
+ */
+public class IndexSearcherStatistics
+{
+    private final AtomicLong reopens = new AtomicLong();
+    private final AtomicLong reopenNanos = new AtomicLong();
+    private final AtomicLong maxReopenNanos = new AtomicLong();
+    private final AtomicLong staleReads = new AtomicLong();
+    private final AtomicLong maxStaleness = new AtomicLong();
+
+    void reopened( long nanos )
+    {
+        reopens.incrementAndGet();
+        reopenNanos.addAndGet( nanos );
+        setIfGreater( maxReopenNanos, nanos );
+    }
+
+    void staleRead( long stalenessMillis )
+    {
+        staleReads.incrementAndGet();
+        setIfGreater( maxStaleness, stalenessMillis );
+    }
+
+    private static void setIfGreater( AtomicLong max, long value )
+    {
+        long current;
+        while ( value > (current = max.get()) )
+        {
+            if ( max.compareAndSet( current, value ) )
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the number of times a searcher has been reopened after a commit.
+     */
+    public long getReopenCount()
+    {
+        return reopens.get();
+    }
+
+    /**
+     * @return the average time in milliseconds it took to reopen a searcher.
+     */
+    public double getAverageReopenTime()
+    {
+        long count = reopens.get();
+        return count == 0 ? 0 : reopenNanos.get() / 1000000d / count;
+    }
+
+    /**
+     * @return the longest time in milliseconds it took to reopen a searcher.
+     */
+    public double getMaxReopenTime()
+    {
+        return maxReopenNanos.get() / 1000000d;
+    }
+
+    /**
+     * @return the number of queries which got a searcher that didn't see
+     * all committed changes.
+     */
+    public long getStaleReadCount()
+    {
+        return staleReads.get();
+    }
+
+    /**
+     * @return the longest time in milliseconds that a searcher given to a
+     * query had missed committed changes.
+     */
+    public long getMaxStaleness()
+    {
+        return maxStaleness.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "reopens:%d avg:%.2fms max:%.2fms stale reads:%d max staleness:%dms",
+                getReopenCount(), getAverageReopenTime(), getMaxReopenTime(), getStaleReadCount(),
+                getMaxStaleness() );
+    }
+}
@@ -17,30 +17,42 @@
  * You should have received a copy of the GNU General Public License
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
-package org.neo4j.server.guard;
+package org.neo4j.index.impl.lucene;
 
-public class GuardException extends RuntimeException {
+import java.util.NoSuchElementException;
 
-    private final int opsCount;
-    private final int totalOpsCount;
-    private final long overtime;
+import org.neo4j.graphdb.index.LongIndexHits;
 
-    public GuardException(final int opsCount, final int totalOpsCount, final long overtime) {
-        super(String.format("timeout occured (ops=%d,totalOps=%d,overtime=%d)", opsCount, totalOpsCount, overtime));
-        this.opsCount = opsCount;
-        this.totalOpsCount = totalOpsCount;
-        this.overtime = overtime;
+class LongArrayIndexHits implements LongIndexHits
+{
+    private final long[] ids;
+    private int index;
+
+    LongArrayIndexHits( long[] ids )
+    {
+        this.ids = ids;
+    }
+
+    public boolean hasNext()
+    {
+        return index < ids.length;
     }
 
-    public int getOpsCount() {
-        return opsCount;
+    public long next()
+    {
+        if ( !hasNext() )
+        {
+            throw new NoSuchElementException();
+        }
+        return ids[index++];
     }
 
-    public long getOvertime() {
-        return overtime;
+    public int size()
+    {
+        return ids.length;
     }
 
-    public int getTotalOpsCount() {
-        return totalOpsCount;
+    public void close()
+    {
     }
 }
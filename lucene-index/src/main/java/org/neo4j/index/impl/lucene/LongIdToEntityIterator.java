@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import java.util.Iterator;
+
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.graphdb.index.LongIndexHits;
+import org.neo4j.helpers.collection.IteratorUtil;
+import org.neo4j.helpers.collection.PrefetchingIterator;
+
+/**
+ * Like {@link IdToEntityIterator}, but for {@link LongIndexHits} which
+ * contain no duplicate ids, so that the ids don't have to be boxed and
+ * remembered.
+ */
+public abstract class LongIdToEntityIterator<T extends PropertyContainer>
+        extends PrefetchingIterator<T> implements IndexHits<T>
+{
+    private final LongIndexHits ids;
+
+    public LongIdToEntityIterator( LongIndexHits ids )
+    {
+        this.ids = ids;
+    }
+
+    @Override
+    protected T fetchNextOrNull()
+    {
+        while ( ids.hasNext() )
+        {
+            long id = ids.next();
+            try
+            {
+                return underlyingObjectToObject( id );
+            }
+            catch ( NotFoundException e )
+            {
+                itemDodged( id );
+            }
+        }
+        return null;
+    }
+
+    protected abstract T underlyingObjectToObject( long id );
+
+    protected void itemDodged( long id )
+    {
+    }
+
+    public float currentScore()
+    {
+        return Float.NaN;
+    }
+
+    public int size()
+    {
+        return this.ids.size();
+    }
+
+    public Iterator<T> iterator()
+    {
+        return this;
+    }
+
+    public void close()
+    {
+        ids.close();
+    }
+
+    public T getSingle()
+    {
+        try
+        {
+            return IteratorUtil.singleOrNull( (Iterator<T>) this );
+        }
+        finally
+        {
+            close();
+        }
+    }
+}
@@ -22,13 +22,16 @@ package org.neo4j.index.impl.lucene;
 import static org.neo4j.index.impl.lucene.LuceneDataSource.LUCENE_VERSION;
 import static org.neo4j.index.impl.lucene.LuceneDataSource.getDirectory;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Fieldable;
@@ -41,17 +44,21 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TopDocs;
 import org.neo4j.graphdb.index.BatchInserterIndex;
 import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.graphdb.index.RebuildableIndex;
 import org.neo4j.helpers.Pair;
 import org.neo4j.index.lucene.ValueContext;
 import org.neo4j.kernel.impl.batchinsert.BatchInserter;
 import org.neo4j.kernel.impl.batchinsert.BatchInserterImpl;
+import org.neo4j.kernel.impl.batchinsert.ImportProgressMonitor;
 import org.neo4j.kernel.impl.cache.LruCache;
 import org.neo4j.kernel.impl.util.IoPrimitiveUtils;
 
-class LuceneBatchInserterIndex implements BatchInserterIndex
+class LuceneBatchInserterIndex implements BatchInserterIndex, RebuildableIndex
 {
+    private final BatchInserterImpl inserter;
     private final IndexIdentifier identifier;
     private final IndexType type;
+    private final File directory;
     
     private IndexWriter writer;
     private boolean writerModified;
@@ -64,10 +71,12 @@ class LuceneBatchInserterIndex implements BatchInserterIndex
     LuceneBatchInserterIndex( LuceneBatchInserterIndexProvider provider,
             BatchInserter inserter, IndexIdentifier identifier, Map<String, String> config )
     {
-        String dbStoreDir = ((BatchInserterImpl) inserter).getStore();
+        this.inserter = (BatchInserterImpl) inserter;
+        String dbStoreDir = this.inserter.getStore();
         Pair<String, Boolean> storeDir = LuceneDataSource.getStoreDir( dbStoreDir );
         this.createdNow = storeDir.other();
         this.identifier = identifier;
+        this.directory = LuceneDataSource.getFileDirectory( storeDir.first(), identifier );
         this.type = IndexType.getIndexType( identifier, config );
         this.writer = instantiateWriter( storeDir.first() );
     }
@@ -107,6 +116,81 @@ class LuceneBatchInserterIndex implements BatchInserterIndex
         }
     }
 
+    public void rebuild( Set<String> keys, int threads, ImportProgressMonitor monitor )
+    {
+        LuceneIndexPopulator populator = new LuceneIndexPopulator( identifier, type, keys,
+                threads, monitor, new File( directory.getPath() + "-population" ) );
+        try
+        {
+            populator.populate( new StoreSource() );
+            populator.replaceContentsOf( writer );
+            writer.commit();
+            populator.finished();
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( e );
+        }
+        finally
+        {
+            populator.close();
+            updateCount = 0;
+            writerModified = true;
+            if ( this.cache != null )
+            {
+                for ( LruCache<String, Collection<Long>> cache : this.cache.values() )
+                {
+                    cache.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the entities to rebuild this index from straight from the store
+     * of the batch inserter.
+     */
+    private class StoreSource extends LuceneIndexPopulator.Source<Long>
+    {
+        private final boolean nodes = identifier.entityTypeByte == LuceneCommand.NODE;
+
+        @Override
+        Iterator<Long> entities( int partition, int partitions )
+        {
+            return nodes ? inserter.getAllNodeIds( partition, partitions ) :
+                    inserter.getAllRelationshipIds( partition, partitions );
+        }
+
+        @Override
+        Long entity( long id )
+        {
+            return id;
+        }
+
+        @Override
+        Object documentId( Long entity )
+        {
+            return entity;
+        }
+
+        @Override
+        Map<String, Object> properties( Long entity, Set<String> keys )
+        {
+            Map<String, Object> properties = nodes ? inserter.getNodeProperties( entity ) :
+                    inserter.getRelationshipProperties( entity );
+            Map<String, Object> result = new HashMap<String, Object>();
+            for ( String key : keys )
+            {
+                Object value = properties.get( key );
+                if ( value != null )
+                {
+                    result.put( key, value );
+                }
+            }
+            return result;
+        }
+    }
+
     private void addSingleProperty( long entityId, Document document, String key, Object value ) {
         for ( Object oneValue : IoPrimitiveUtils.asArray(value) )
         {
@@ -30,10 +30,13 @@ import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.lucene.analysis.Analyzer;
@@ -81,6 +84,7 @@ import org.neo4j.kernel.impl.transaction.xaframework.XaDataSource;
 import org.neo4j.kernel.impl.transaction.xaframework.XaLogicalLog;
 import org.neo4j.kernel.impl.transaction.xaframework.XaTransaction;
 import org.neo4j.kernel.impl.transaction.xaframework.XaTransactionFactory;
+import org.neo4j.kernel.impl.util.StringLogger;
 
 /**
  * An {@link XaDataSource} optimized for the {@link LuceneIndexImplementation}.
@@ -131,9 +135,19 @@ public class LuceneDataSource extends LogBackedXaDataSource
 
     private final IndexWriterLruCache indexWriters;
     private final IndexSearcherLruCache indexSearchers;
+    /**
+     * The searchers in {@link #indexSearchers}, for handing them out to
+     * queries without locking. Only changed together with it, when holding
+     * the lock on this data source.
+     */
+    private final ConcurrentMap<IndexIdentifier, IndexSearcherRef> searchers =
+            new ConcurrentHashMap<IndexIdentifier, IndexSearcherRef>();
+    private final IndexSearcherRefresher searcherRefresher;
+    private final IndexSearcherStatistics searcherStatistics = new IndexSearcherStatistics();
 
     private final XaContainer xaContainer;
     private final String baseStorePath;
+    private final StringLogger msgLog;
     private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
     final IndexStore indexStore;
     final IndexProviderStore providerStore;
@@ -145,6 +159,12 @@ public class LuceneDataSource extends LogBackedXaDataSource
     final Map<IndexIdentifier, LuceneIndex<? extends PropertyContainer>> indexes =
             new HashMap<IndexIdentifier, LuceneIndex<? extends PropertyContainer>>();
     private final DirectoryGetter directoryGetter;
+    /**
+     * The ids of the entities committed to indexes which are being populated,
+     * since the population started. Only accessed when holding the write lock.
+     */
+    private final Map<IndexIdentifier, Set<Long>> populations =
+            new HashMap<IndexIdentifier, Set<Long>>();
 
     /**
      * Constructs this data source.
@@ -158,11 +178,20 @@ public class LuceneDataSource extends LogBackedXaDataSource
     {
         super( params );
         int searcherSize = parseInt( params, Config.LUCENE_SEARCHER_CACHE_SIZE );
-        indexSearchers = new IndexSearcherLruCache( searcherSize );
+        indexSearchers = new IndexSearcherLruCache( searcherSize )
+        {
+            @Override
+            public void elementCleaned( IndexSearcherRef searcher )
+            {
+                searchers.remove( searcher.getIdentifier(), searcher );
+                super.elementCleaned( searcher );
+            }
+        };
         int writerSize = parseInt( params, Config.LUCENE_WRITER_CACHE_SIZE );
         indexWriters = new IndexWriterLruCache( writerSize );
         caching = new Cache();
         String storeDir = (String) params.get( "store_dir" );
+        this.msgLog = (StringLogger) params.get( StringLogger.class );
         this.baseStorePath = getStoreDir( storeDir ).first();
         cleanWriteLocks( baseStorePath );
         this.indexStore = (IndexStore) params.get( IndexStore.class );
@@ -226,6 +255,18 @@ public class LuceneDataSource extends LogBackedXaDataSource
             setKeepLogicalLogsIfSpecified( (String) params.get( Config.KEEP_LOGICAL_LOGS ), DEFAULT_NAME );
             setLogicalLogAtCreationTime( xaContainer.getLogicalLog() );
         }
+
+        int refreshInterval = parseInt( params, Config.LUCENE_SEARCHER_REFRESH_INTERVAL, 0 );
+        int refreshCommits = parseInt( params, Config.LUCENE_SEARCHER_REFRESH_COMMITS, 0 );
+        if ( refreshInterval > 0 || refreshCommits > 0 )
+        {
+            searcherRefresher = new IndexSearcherRefresher( this, refreshInterval, refreshCommits, msgLog );
+            searcherRefresher.start();
+        }
+        else
+        {
+            searcherRefresher = null;
+        }
     }
 
     private boolean parseBoolean( Map<Object, Object> params, String key, boolean defaultValue )
@@ -238,8 +279,13 @@ public class LuceneDataSource extends LogBackedXaDataSource
 
     private int parseInt( Map<Object, Object> params, String param )
     {
-        String searcherParam = (String) params.get( param );
-        return searcherParam != null ? Integer.parseInt( searcherParam ) : Integer.MAX_VALUE;
+        return parseInt( params, param, Integer.MAX_VALUE );
+    }
+
+    private int parseInt( Map<Object, Object> params, String param, int defaultValue )
+    {
+        String value = (String) params.get( param );
+        return value != null ? Integer.parseInt( value ) : defaultValue;
     }
 
     IndexType getType( IndexIdentifier identifier )
@@ -298,6 +344,10 @@ public class LuceneDataSource extends LogBackedXaDataSource
     @Override
     public void close()
     {
+        if ( searcherRefresher != null )
+        {
+            searcherRefresher.halt();
+        }
         synchronized ( this )
         {
             if ( closed )
@@ -305,11 +355,11 @@ public class LuceneDataSource extends LogBackedXaDataSource
                 return;
             }
             closed = true;
-            for ( Pair<IndexSearcherRef, AtomicBoolean> searcher : indexSearchers.values() )
+            for ( IndexSearcherRef searcher : indexSearchers.values() )
             {
                 try
                 {
-                    searcher.first().dispose();
+                    searcher.dispose();
                 }
                 catch ( IOException e )
                 {
@@ -317,6 +367,7 @@ public class LuceneDataSource extends LogBackedXaDataSource
                 }
             }
             indexSearchers.clear();
+            searchers.clear();
 
             for ( Map.Entry<IndexIdentifier, IndexWriter> entry : indexWriters.entrySet() )
             {
@@ -431,39 +482,6 @@ public class LuceneDataSource extends LogBackedXaDataSource
         lock.writeLock().unlock();
     }
 
-    /**
-     * If nothing has changed underneath (since the searcher was last created
-     * or refreshed) {@code searcher} is returned. But if something has changed a
-     * refreshed searcher is returned. It makes use if the
-     * {@link IndexReader#openIfChanged(IndexReader, IndexWriter, boolean)} which faster than opening an index from
-     * scratch.
-     *
-     * @param searcher the {@link IndexSearcher} to refresh.
-     * @param writer 
-     * @return a refreshed version of the searcher or, if nothing has changed,
-     * {@code null}.
-     * @throws IOException if there's a problem with the index.
-     */
-    private Pair<IndexSearcherRef, AtomicBoolean> refreshSearcher( Pair<IndexSearcherRef, AtomicBoolean> searcher, IndexWriter writer )
-    {
-        try
-        {
-            IndexReader reader = searcher.first().getSearcher().getIndexReader();
-            IndexReader reopened = IndexReader.openIfChanged( reader, writer, true );
-            if ( reopened != null )
-            {
-                IndexSearcher newSearcher = new IndexSearcher( reopened );
-                searcher.first().detachOrClose();
-                return Pair.of( new IndexSearcherRef( searcher.first().getIdentifier(), newSearcher ), new AtomicBoolean() );
-            }
-            return searcher;
-        }
-        catch ( IOException e )
-        {
-            throw new RuntimeException( e );
-        }
-    }
-
     static File getFileDirectory( String storeDir, byte entityType )
     {
         File path = new File( storeDir, "lucene" );
@@ -500,40 +518,182 @@ public class LuceneDataSource extends LogBackedXaDataSource
         return TopFieldCollector.create( sorting, n, false, true, false, true );
     }
 
-    synchronized IndexSearcherRef getIndexSearcher( IndexIdentifier identifier, boolean incRef )
+    /**
+     * Returns the searcher for queries to the index. Unless searchers are
+     * refreshed in the background a searcher that doesn't see all committed
+     * changes is refreshed first.
+     *
+     * @param identifier the index to search.
+     * @param incRef whether or not to take a reference to the searcher, which
+     * the caller must release with {@link IndexSearcherRef#close()}.
+     * @return the searcher for the index.
+     */
+    IndexSearcherRef getIndexSearcher( IndexIdentifier identifier, boolean incRef )
     {
-        try
+        return getIndexSearcher( identifier, incRef, searcherRefresher != null );
+    }
+
+    /**
+     * Returns a searcher which sees all committed changes to the index, for
+     * use when committing transactions. No reference is taken to it.
+     */
+    IndexSearcherRef getUpToDateIndexSearcher( IndexIdentifier identifier )
+    {
+        return getIndexSearcher( identifier, false, false );
+    }
+
+    private IndexSearcherRef getIndexSearcher( IndexIdentifier identifier, boolean incRef, boolean allowStale )
+    {
+        while ( true )
         {
-            Pair<IndexSearcherRef, AtomicBoolean> searcher = indexSearchers.get( identifier );
-            IndexWriter writer = getIndexWriter( identifier );
+            IndexSearcherRef searcher = searchers.get( identifier );
             if ( searcher == null )
             {
-                IndexReader reader = IndexReader.open( writer, true );
-                IndexSearcher indexSearcher = new IndexSearcher( reader );
-                searcher = Pair.of( new IndexSearcherRef( identifier, indexSearcher ), new AtomicBoolean() );
-                indexSearchers.put( identifier, searcher );
+                searcher = openIndexSearcher( identifier );
             }
-            else
+            else if ( searcher.isStale() )
             {
-                if ( searcher.other().compareAndSet( true, false ) )
+                if ( allowStale )
                 {
-                    searcher = refreshSearcher( searcher, writer );
-                    if ( searcher != null )
-                    {
-                        indexSearchers.put( identifier, searcher );
-                    }
+                    searcherStatistics.staleRead( searcher.getStaleness( System.currentTimeMillis() ) );
+                }
+                else
+                {
+                    searcher = refreshIndexSearcher( searcher );
                 }
             }
-            if ( incRef )
+            // If it was replaced and closed before we got a reference, try again
+            if ( searcher != null && (!incRef || searcher.tryIncRef()) )
             {
-                searcher.first().incRef();
+                return searcher;
             }
-            return searcher.first();
+        }
+    }
+
+    /**
+     * Searchers only move towards the head of the {@link #indexSearchers}
+     * LRU when opened or refreshed, not when handed out from
+     * {@link #searchers}.
+     */
+    private synchronized IndexSearcherRef openIndexSearcher( IndexIdentifier identifier )
+    {
+        IndexSearcherRef searcher = indexSearchers.get( identifier );
+        if ( searcher != null )
+        {
+            return searcher;
+        }
+        IndexWriter writer = getIndexWriter( identifier );
+        try
+        {
+            IndexReader reader = IndexReader.open( writer, true );
+            searcher = new IndexSearcherRef( identifier, new IndexSearcher( reader ) );
         }
         catch ( IOException e )
         {
             throw new RuntimeException( e );
         }
+        indexSearchers.put( identifier, searcher );
+        searchers.put( identifier, searcher );
+        return searcher;
+    }
+
+    /**
+     * Reopens a searcher which doesn't see all committed changes. It makes use
+     * of {@link IndexReader#openIfChanged(IndexReader, IndexWriter, boolean)}
+     * which is faster than opening an index from scratch. Only one thread
+     * reopens a searcher at a time, but queries to it and to other indexes
+     * can go on meanwhile.
+     *
+     * @param searcher the searcher to refresh.
+     * @return the refreshed searcher, {@code searcher} itself if nothing had
+     * changed or {@code null} if it was closed or replaced meanwhile.
+     */
+    private IndexSearcherRef refreshIndexSearcher( IndexSearcherRef searcher )
+    {
+        IndexIdentifier identifier = searcher.getIdentifier();
+        synchronized ( searcher )
+        {
+            if ( searchers.get( identifier ) != searcher || !searcher.isStale() )
+            {
+                return null;
+            }
+            if ( !searcher.tryIncRef() )
+            {
+                return null;
+            }
+            try
+            {
+                long start = System.nanoTime();
+                IndexReader reader = searcher.getSearcher().getIndexReader();
+                IndexReader reopened = IndexReader.openIfChanged( reader, getIndexWriter( identifier ), true );
+                searcherStatistics.reopened( System.nanoTime() - start );
+                if ( reopened == null )
+                {
+                    searcher.markFresh();
+                    return searcher;
+                }
+                IndexSearcherRef refreshed = new IndexSearcherRef( identifier, new IndexSearcher( reopened ) );
+                if ( !replaceIndexSearcher( searcher, refreshed ) )
+                {
+                    refreshed.dispose();
+                    return null;
+                }
+                return refreshed;
+            }
+            catch ( IOException e )
+            {
+                throw new RuntimeException( e );
+            }
+            finally
+            {
+                searcher.closeStrict();
+            }
+        }
+    }
+
+    private synchronized boolean replaceIndexSearcher( IndexSearcherRef searcher, IndexSearcherRef refreshed )
+            throws IOException
+    {
+        IndexIdentifier identifier = searcher.getIdentifier();
+        if ( closed || indexSearchers.get( identifier ) != searcher )
+        {
+            return false;
+        }
+        indexSearchers.put( identifier, refreshed );
+        searchers.put( identifier, refreshed );
+        searcher.detachOrClose();
+        return true;
+    }
+
+    /**
+     * Called by the {@link IndexSearcherRefresher} to reopen the searchers
+     * which miss at least {@code minCommits} commits.
+     */
+    void refreshStaleSearchers( int minCommits )
+    {
+        getReadLock();
+        try
+        {
+            for ( IndexSearcherRef searcher : searchers.values() )
+            {
+                if ( searcher.getCommitsSinceOpened() >= minCommits )
+                {
+                    refreshIndexSearcher( searcher );
+                }
+            }
+        }
+        finally
+        {
+            releaseReadLock();
+        }
+    }
+
+    /**
+     * @return statistics about reopening of index searchers.
+     */
+    public IndexSearcherStatistics getSearcherStatistics()
+    {
+        return searcherStatistics;
     }
 
     XaTransaction createTransaction( int identifier,
@@ -542,12 +702,16 @@ public class LuceneDataSource extends LogBackedXaDataSource
         return new LuceneTransaction( identifier, logicalLog, this );
     }
 
-    synchronized void invalidateIndexSearcher( IndexIdentifier identifier )
+    void invalidateIndexSearcher( IndexIdentifier identifier )
     {
-        Pair<IndexSearcherRef, AtomicBoolean> searcher = indexSearchers.get( identifier );
+        IndexSearcherRef searcher = searchers.get( identifier );
         if ( searcher != null )
         {
-            searcher.other().set( true );
+            searcher.markStale();
+            if ( searcherRefresher != null )
+            {
+                searcherRefresher.committed( searcher.getCommitsSinceOpened() );
+            }
         }
     }
 
@@ -686,11 +850,12 @@ public class LuceneDataSource extends LogBackedXaDataSource
     {
         try
         {
-            Pair<IndexSearcherRef, AtomicBoolean> searcher = indexSearchers.remove( identifier );
+            IndexSearcherRef searcher = indexSearchers.remove( identifier );
+            searchers.remove( identifier );
             IndexWriter writer = indexWriters.remove( identifier );
             if ( searcher != null )
             {
-                searcher.first().dispose();
+                searcher.dispose();
             }
             if ( writer != null )
             {
@@ -703,7 +868,7 @@ public class LuceneDataSource extends LogBackedXaDataSource
         }
     }
 
-    LruCache<String,Collection<Long>> getFromCache( IndexIdentifier identifier, String key )
+    LruCache<String,long[]> getFromCache( IndexIdentifier identifier, String key )
     {
         return caching.get( identifier, key );
     }
@@ -715,16 +880,29 @@ public class LuceneDataSource extends LogBackedXaDataSource
 
     Integer getCacheCapacity( IndexIdentifier identifier, String key )
     {
-        LruCache<String,Collection<Long>> cache = this.caching.get( identifier, key );
+        LruCache<String,long[]> cache = this.caching.get( identifier, key );
         return cache != null ? cache.maxSize() : null;
     }
 
     void invalidateCache( IndexIdentifier identifier, String key, Object value )
     {
-        LruCache<String, Collection<Long>> cache = caching.get( identifier, key );
+        if ( key == null )
+        {
+            // Removal of an entity from the whole index, any cached hit may have it
+            caching.clear( identifier );
+            return;
+        }
+        LruCache<String, long[]> cache = caching.get( identifier, key );
         if ( cache != null )
         {
-            cache.remove( value.toString() );
+            if ( value == null )
+            {
+                cache.clear();
+            }
+            else
+            {
+                cache.remove( value.toString() );
+            }
         }
     }
 
@@ -733,6 +911,122 @@ public class LuceneDataSource extends LogBackedXaDataSource
         this.caching.disable( identifier );
     }
 
+    /**
+     * @return the path which the partitions of a population of the given
+     * index are named after, or {@code null} if they should be kept in memory.
+     */
+    File getPopulationDirectoryPrefix( IndexIdentifier identifier )
+    {
+        if ( directoryGetter == DirectoryGetter.MEMORY )
+        {
+            return null;
+        }
+        return new File( getFileDirectory( baseStorePath, identifier ).getPath() + "-population" );
+    }
+
+    /**
+     * Replacing the contents of an index isn't written to the logical log, so
+     * HA slaves and incremental backups, which apply the kept logical logs,
+     * wouldn't see it and would silently diverge from this database.
+     *
+     * @throws UnsupportedOperationException if the logical logs of this data
+     * source are kept.
+     */
+    void assertContentsCanBeReplaced( IndexIdentifier identifier )
+    {
+        if ( isLogicalLogKept() )
+        {
+            throw new UnsupportedOperationException( identifier + " can't be rebuilt while logical logs are kept, "
+                                                     + "for HA or online backup, since the rebuild isn't logged" );
+        }
+    }
+
+    /**
+     * Starts remembering which entities are committed to the given index, so
+     * that they can be indexed again when the populated contents replace the
+     * current ones in {@link #finishPopulation(IndexIdentifier, LuceneIndexPopulator, LuceneIndexPopulator.Source)}.
+     */
+    void startPopulation( IndexIdentifier identifier )
+    {
+        getWriteLock();
+        try
+        {
+            if ( populations.containsKey( identifier ) )
+            {
+                throw new IllegalStateException( identifier + " is already being populated" );
+            }
+            populations.put( identifier, new HashSet<Long>() );
+        }
+        finally
+        {
+            releaseWriteLock();
+        }
+    }
+
+    /**
+     * Called when holding the write lock, after the documents of the given
+     * entities have been changed in a commit.
+     */
+    void documentsCommitted( IndexIdentifier identifier, Set<Long> entityIds )
+    {
+        Set<Long> committed = populations.get( identifier );
+        if ( committed != null )
+        {
+            committed.addAll( entityIds );
+        }
+    }
+
+    /**
+     * Replaces the contents of the given index with the populated ones and
+     * indexes the entities committed to it during the population again from
+     * {@code source}.
+     */
+    <E> void finishPopulation( IndexIdentifier identifier, LuceneIndexPopulator populator,
+            LuceneIndexPopulator.Source<E> source ) throws IOException
+    {
+        getWriteLock();
+        try
+        {
+            // Logs may have started to be kept, by a backup, while populating
+            assertContentsCanBeReplaced( identifier );
+            IndexWriter writer = getIndexWriter( identifier );
+            IndexType type = getType( identifier );
+            populator.replaceContentsOf( writer );
+            for ( long entityId : populations.get( identifier ) )
+            {
+                Document document = populator.newDocument( source, entityId );
+                if ( document != null )
+                {
+                    writer.updateDocument( type.idTerm( entityId ), document );
+                }
+                else
+                {
+                    writer.deleteDocuments( type.idTerm( entityId ) );
+                }
+            }
+            writer.commit();
+            caching.clear( identifier );
+            invalidateIndexSearcher( identifier );
+        }
+        finally
+        {
+            releaseWriteLock();
+        }
+    }
+
+    void stopPopulation( IndexIdentifier identifier )
+    {
+        getWriteLock();
+        try
+        {
+            populations.remove( identifier );
+        }
+        finally
+        {
+            releaseWriteLock();
+        }
+    }
+
     @Override
     public long getCreationTime()
     {
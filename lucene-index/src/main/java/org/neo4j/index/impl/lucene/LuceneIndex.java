@@ -24,8 +24,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 
@@ -40,17 +43,24 @@ import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.TermQuery;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.PropertyContainer;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.index.Index;
 import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.graphdb.index.LongIndexHits;
+import org.neo4j.graphdb.index.ReadableIdIndex;
+import org.neo4j.graphdb.index.RebuildableIndex;
 import org.neo4j.index.lucene.QueryContext;
 import org.neo4j.kernel.AbstractGraphDatabase;
+import org.neo4j.kernel.impl.batchinsert.ImportProgressMonitor;
 import org.neo4j.kernel.impl.cache.LruCache;
 import org.neo4j.kernel.impl.core.ReadOnlyDbException;
 import org.neo4j.kernel.impl.util.IoPrimitiveUtils;
+import org.neo4j.tooling.GlobalGraphOperations;
 
-public abstract class LuceneIndex<T extends PropertyContainer> implements Index<T>
+public abstract class LuceneIndex<T extends PropertyContainer> implements Index<T>, ReadableIdIndex,
+        RebuildableIndex
 {
     static final String KEY_DOC_ID = "_id_";
     static final String KEY_START_NODE_ID = "_start_node_id_";
@@ -206,6 +216,16 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
         return query( type.get( key, value ), key, value, null );
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * The ids are collected up front, without loading any documents.
+     */
+    public LongIndexHits getIds( String key, Object value )
+    {
+        return collectIds( type.get( key, value ), key, value, null );
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -237,8 +257,50 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
         return query( null, queryOrQueryObject );
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Unless the {@link QueryContext} asks for sorting or the top hits the
+     * ids are collected up front, without loading any documents or scoring
+     * the hits, in index order.
+     *
+     * @see #query(String, Object)
+     */
+    public LongIndexHits queryIds( String key, Object queryOrQueryObject )
+    {
+        QueryContext context = queryOrQueryObject instanceof QueryContext ?
+                (QueryContext) queryOrQueryObject : null;
+        Query query = type.query( key, context != null ?
+                context.getQueryOrQueryObject() : queryOrQueryObject, context );
+        if ( context != null && (context.getSorting() != null || context.getTop() > 0) )
+        {
+            return new IdIndexHitsToLongIndexHits( queryIdHits( query, context ) );
+        }
+        return collectIds( query, null, null, context );
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see #queryIds(String, Object)
+     */
+    public LongIndexHits queryIds( Object queryOrQueryObject )
+    {
+        return queryIds( null, queryOrQueryObject );
+    }
+
     protected IndexHits<T> query( Query query, String keyForDirectLookup,
             Object valueForDirectLookup, QueryContext additionalParametersOrNull )
+    {
+        if ( keyForDirectLookup != null )
+        {
+            return newEntityIterator( collectIds( query, keyForDirectLookup, valueForDirectLookup,
+                    additionalParametersOrNull ) );
+        }
+        return newEntityIterator( queryIdHits( query, additionalParametersOrNull ) );
+    }
+
+    private IndexHits<Long> queryIdHits( Query query, QueryContext additionalParametersOrNull )
     {
         List<Long> ids = new ArrayList<Long>();
         LuceneXaConnection con = getReadOnlyConnection();
@@ -246,64 +308,152 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
         Collection<Long> removedIds = Collections.emptySet();
         IndexSearcher additionsSearcher = null;
         if ( luceneTx != null )
+        {
+            additionsSearcher = luceneTx.getAdditionsAsSearcher( this, additionalParametersOrNull );
+            removedIds = luceneTx.getRemovedIds( this, query );
+        }
+        service.dataSource().getReadLock();
+        IndexHits<Long> idIterator = null;
+        IndexSearcherRef searcher = null;
+        try
+        {
+            searcher = service.dataSource().getIndexSearcher( identifier, true );
+            if ( searcher != null )
+            {
+                idIterator = new DocToIdIterator( search( searcher, query, additionalParametersOrNull,
+                        additionsSearcher, removedIds ), removedIds, searcher );
+            }
+        }
+        finally
+        {
+            // The DocToIdIterator closes the IndexSearchRef instance anyways,
+            // or the LazyIterator if it's a lazy one. So no need here.
+            service.dataSource().releaseReadLock();
+        }
+        return idIterator == null ? new ConstantScoreIterator<Long>( ids, 0 ) : idIterator;
+    }
+
+    /**
+     * Collects the ids matching {@code query} into a {@code long[]}, see
+     * {@link IdCollector}. For direct lookups the committed ids are cached, if
+     * a cache capacity has been set for the key. Changes in the current
+     * transaction are applied on top of them.
+     */
+    private LongIndexHits collectIds( Query query, String keyForDirectLookup,
+            Object valueForDirectLookup, QueryContext additionalParametersOrNull )
+    {
+        LuceneXaConnection con = getReadOnlyConnection();
+        LuceneTransaction luceneTx = con != null ? con.getLuceneTx() : null;
+        Collection<Long> addedIds = Collections.emptySet();
+        Collection<Long> removedIds = Collections.emptySet();
+        IndexSearcher additionsSearcher = null;
+        if ( luceneTx != null )
         {
             if ( keyForDirectLookup != null )
             {
-                ids.addAll( luceneTx.getAddedIds( this, keyForDirectLookup, valueForDirectLookup ) );
+                addedIds = luceneTx.getAddedIds( this, keyForDirectLookup, valueForDirectLookup );
+                removedIds = luceneTx.getRemovedIds( this, keyForDirectLookup, valueForDirectLookup );
             }
             else
             {
                 additionsSearcher = luceneTx.getAdditionsAsSearcher( this, additionalParametersOrNull );
+                removedIds = luceneTx.getRemovedIds( this, query );
             }
-            removedIds = keyForDirectLookup != null ?
-                    luceneTx.getRemovedIds( this, keyForDirectLookup, valueForDirectLookup ) :
-                    luceneTx.getRemovedIds( this, query );
         }
+        long[] ids;
         service.dataSource().getReadLock();
-        IndexHits<Long> idIterator = null;
         IndexSearcherRef searcher = null;
         try
         {
             searcher = service.dataSource().getIndexSearcher( identifier, true );
-            if ( searcher != null )
+            LruCache<String, long[]> cache = keyForDirectLookup != null ?
+                    service.dataSource().getFromCache( identifier, keyForDirectLookup ) : null;
+            String valueAsString = cache != null ? valueForDirectLookup.toString() : null;
+            ids = cache != null ? cache.get( valueAsString ) : null;
+            if ( ids == null )
             {
-                boolean foundInCache = false;
-                LruCache<String, Collection<Long>> cachedIdsMap = null;
-                if ( keyForDirectLookup != null )
+                if ( additionsSearcher != null && !removedIds.isEmpty() )
                 {
-                    cachedIdsMap = service.dataSource().getFromCache(
-                            identifier, keyForDirectLookup );
-                    foundInCache = fillFromCache( cachedIdsMap, ids,
-                            keyForDirectLookup, valueForDirectLookup.toString(), removedIds );
+                    letThroughAdditions( additionsSearcher, query, removedIds );
                 }
-
-                if ( !foundInCache )
+                IndexSearcher indexSearcher = additionsSearcher == null ? searcher.getSearcher() :
+                        new IndexSearcher( new MultiReader( searcher.getSearcher().getIndexReader(),
+                                additionsSearcher.getIndexReader() ) );
+                IdCollector collector = new IdCollector();
+                indexSearcher.search( query, collector );
+                ids = collector.getIds();
+                // A searcher refreshed in the background may not see the last commits
+                if ( cache != null && !searcher.isStale() )
                 {
-                    DocToIdIterator searchedIds = new DocToIdIterator( search( searcher,
-                            query, additionalParametersOrNull, additionsSearcher, removedIds ), removedIds, searcher );
-                    if ( ids.isEmpty() )
-                    {
-                        idIterator = searchedIds;
-                    }
-                    else
-                    {
-                        Collection<IndexHits<Long>> iterators = new ArrayList<IndexHits<Long>>();
-                        iterators.add( searchedIds );
-                        iterators.add( new ConstantScoreIterator<Long>( ids, Float.NaN ) );
-                        idIterator = new CombinedIndexHits<Long>( iterators );
-                    }
+                    cache.put( valueAsString, ids );
                 }
             }
         }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( "Unable to query " + this + " with " + query, e );
+        }
         finally
         {
-            // The DocToIdIterator closes the IndexSearchRef instance anyways,
-            // or the LazyIterator if it's a lazy one. So no need here.
+            if ( searcher != null )
+            {
+                searcher.closeStrict();
+            }
             service.dataSource().releaseReadLock();
         }
+        return new LongArrayIndexHits( applyTransactionState( ids, addedIds, removedIds ) );
+    }
+
+    /**
+     * @return {@code ids} without {@code removed} and with the ones in
+     * {@code added} which aren't already in {@code ids}. {@code ids} itself
+     * is left as it is, since it may be cached.
+     */
+    private static long[] applyTransactionState( long[] ids, Collection<Long> added, Collection<Long> removed )
+    {
+        long[] result = ids;
+        if ( !removed.isEmpty() )
+        {
+            long[] sortedRemoved = sortedArray( removed );
+            long[] kept = new long[ids.length];
+            int size = 0;
+            for ( long id : ids )
+            {
+                if ( Arrays.binarySearch( sortedRemoved, id ) < 0 )
+                {
+                    kept[size++] = id;
+                }
+            }
+            result = size == kept.length ? kept : Arrays.copyOf( kept, size );
+        }
+        if ( !added.isEmpty() )
+        {
+            long[] sortedIds = result.clone();
+            Arrays.sort( sortedIds );
+            long[] withAdded = Arrays.copyOf( result, result.length + added.size() );
+            int size = result.length;
+            for ( Long id : added )
+            {
+                if ( Arrays.binarySearch( sortedIds, id ) < 0 )
+                {
+                    withAdded[size++] = id;
+                }
+            }
+            result = size == withAdded.length ? withAdded : Arrays.copyOf( withAdded, size );
+        }
+        return result;
+    }
 
-        idIterator = idIterator == null ? new ConstantScoreIterator<Long>( ids, 0 ) : idIterator;
-        return newEntityIterator( idIterator );
+    private static long[] sortedArray( Collection<Long> ids )
+    {
+        long[] result = new long[ids.size()];
+        int i = 0;
+        for ( Long id : ids )
+        {
+            result[i++] = id;
+        }
+        Arrays.sort( result );
+        return result;
     }
 
     @Override
@@ -312,46 +462,40 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
         return true;
     }
 
-    private IndexHits<T> newEntityIterator( IndexHits<Long> idIterator )
+    private IndexHits<T> newEntityIterator( LongIndexHits ids )
     {
-        return new IdToEntityIterator<T>( idIterator )
+        return new LongIdToEntityIterator<T>( ids )
         {
             @Override
-            protected T underlyingObjectToObject( Long id )
+            protected T underlyingObjectToObject( long id )
             {
                 return getById( id );
             }
 
             @Override
-            protected void itemDodged( Long item )
+            protected void itemDodged( long id )
             {
-                abandonedIds.add( item );
+                abandonedIds.add( id );
             }
         };
     }
 
-    private boolean fillFromCache(
-            LruCache<String, Collection<Long>> cachedNodesMap,
-            List<Long> ids, String key, String valueAsString,
-            Collection<Long> deletedNodes )
+    private IndexHits<T> newEntityIterator( IndexHits<Long> idIterator )
     {
-        boolean found = false;
-        if ( cachedNodesMap != null )
+        return new IdToEntityIterator<T>( idIterator )
         {
-            Collection<Long> cachedNodes = cachedNodesMap.get( valueAsString );
-            if ( cachedNodes != null )
+            @Override
+            protected T underlyingObjectToObject( Long id )
             {
-                found = true;
-                for ( Long cachedNodeId : cachedNodes )
-                {
-                    if ( !deletedNodes.contains( cachedNodeId ) )
-                    {
-                        ids.add( cachedNodeId );
-                    }
-                }
+                return getById( id );
             }
-        }
-        return found;
+
+            @Override
+            protected void itemDodged( Long item )
+            {
+                abandonedIds.add( item );
+            }
+        };
     }
 
     private IndexHits<Document> search( IndexSearcherRef searcherRef, Query query,
@@ -402,6 +546,93 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
         }
     }
 
+    public void rebuild( Set<String> keys, int threads, ImportProgressMonitor monitor )
+    {
+        assertNotDeleted();
+        if ( service.broker() == null )
+        {
+            throw new ReadOnlyDbException();
+        }
+        for ( String key : keys )
+        {
+            assertValidKey( key );
+        }
+        LuceneDataSource dataSource = service.dataSource();
+        dataSource.assertContentsCanBeReplaced( identifier );
+        LuceneIndexPopulator populator = new LuceneIndexPopulator( identifier, type, keys,
+                threads, monitor, dataSource.getPopulationDirectoryPrefix( identifier ) );
+        GraphSource source = new GraphSource();
+        dataSource.startPopulation( identifier );
+        try
+        {
+            populator.populate( source );
+            dataSource.finishPopulation( identifier, populator, source );
+            populator.finished();
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( e );
+        }
+        finally
+        {
+            dataSource.stopPopulation( identifier );
+            populator.close();
+        }
+    }
+
+    /**
+     * Reads the entities to rebuild this index from straight from the graph.
+     */
+    private class GraphSource extends LuceneIndexPopulator.Source<T>
+    {
+        @Override
+        Iterator<T> entities( int partition, int partitions )
+        {
+            return getAllEntities( partition, partitions );
+        }
+
+        @Override
+        T entity( long id )
+        {
+            try
+            {
+                return getById( id );
+            }
+            catch ( NotFoundException e )
+            {
+                return null;
+            }
+        }
+
+        @Override
+        Object documentId( T entity )
+        {
+            return getDocumentId( entity );
+        }
+
+        @Override
+        Map<String, Object> properties( T entity, Set<String> keys )
+        {
+            Map<String, Object> properties = new HashMap<String, Object>();
+            try
+            {
+                for ( String key : keys )
+                {
+                    Object value = entity.getProperty( key, null );
+                    if ( value != null )
+                    {
+                        properties.put( key, value );
+                    }
+                }
+            }
+            catch ( NotFoundException e )
+            {   // Deleted after it was scanned
+                properties.clear();
+            }
+            return properties;
+        }
+    }
+
     public void setCacheCapacity( String key, int capacity )
     {
         service.dataSource().setCacheCapacity( identifier, key, capacity );
@@ -416,6 +647,17 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
 
     protected abstract long getEntityId( T entity );
 
+    /**
+     * @return the id to create the document of {@code entity} from, see
+     * {@link EntityType#newDocument(Object)}.
+     */
+    protected abstract Object getDocumentId( T entity );
+
+    /**
+     * @see GlobalGraphOperations#getAllNodes(int, int)
+     */
+    protected abstract Iterator<T> getAllEntities( int partition, int partitions );
+
     protected abstract LuceneCommand newAddCommand( PropertyContainer entity,
             String key, Object value );
 
@@ -447,6 +689,19 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
             return entity.getId();
         }
 
+        @Override
+        protected Object getDocumentId( Node entity )
+        {
+            return entity.getId();
+        }
+
+        @Override
+        protected Iterator<Node> getAllEntities( int partition, int partitions )
+        {
+            return GlobalGraphOperations.at( service.graphDb() ).getAllNodes( partition,
+                    partitions ).iterator();
+        }
+
         @Override
         protected LuceneCommand newAddCommand( PropertyContainer entity, String key, Object value )
         {
@@ -488,6 +743,19 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
             return entity.getId();
         }
 
+        @Override
+        protected Object getDocumentId( Relationship entity )
+        {
+            return RelationshipId.of( entity );
+        }
+
+        @Override
+        protected Iterator<Relationship> getAllEntities( int partition, int partitions )
+        {
+            return GlobalGraphOperations.at( service.graphDb() ).getAllRelationships( partition,
+                    partitions ).iterator();
+        }
+
         public void add( Relationship relationship )
         {
 
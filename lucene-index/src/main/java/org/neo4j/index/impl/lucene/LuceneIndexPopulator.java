@@ -0,0 +1,395 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import static org.neo4j.index.impl.lucene.LuceneDataSource.LUCENE_VERSION;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.search.Similarity;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.RAMDirectory;
+import org.neo4j.index.lucene.ValueContext;
+import org.neo4j.kernel.impl.batchinsert.ImportProgressMonitor;
+import org.neo4j.kernel.impl.util.IoPrimitiveUtils;
+
+/**
+ * Builds the contents of an index from the entities in the graph using
+ * several threads. The entities are split into one partition per thread and
+ * each thread indexes its partition with an {@link IndexWriter} of its own,
+ * into a directory of its own. The index is then replaced by the partitions
+ * with {@link IndexWriter#addIndexes(Directory...)}, which copies their
+ * segments instead of indexing the documents again.
+ */
+class LuceneIndexPopulator
+{
+    private static final long PROGRESS_INTERVAL = 5000;
+
+    /**
+     * The entities to populate an index from.
+     *
+     * @param <E> the type of the entities
+     */
+    static abstract class Source<E>
+    {
+        /**
+         * @return the entities in one of {@code partitions} parts of the graph
+         * which together contain all entities.
+         */
+        abstract Iterator<E> entities( int partition, int partitions );
+
+        /**
+         * @return the entity with the given id, or {@code null} if it doesn't
+         * exist.
+         */
+        abstract E entity( long id );
+
+        /**
+         * @return the id to create the document of {@code entity} from, see
+         * {@link EntityType#newDocument(Object)}.
+         */
+        abstract Object documentId( E entity );
+
+        /**
+         * @return the values of the properties in {@code keys} which
+         * {@code entity} has.
+         */
+        abstract Map<String, Object> properties( E entity, Set<String> keys );
+    }
+
+    private final IndexIdentifier identifier;
+    private final IndexType type;
+    private final Set<String> keys;
+    private final int threads;
+    private final ImportProgressMonitor monitor;
+    private final File directoryPrefix;
+    private final AtomicLong count = new AtomicLong();
+    private final Directory[] partitions;
+    private long startTime;
+
+    /**
+     * @param directoryPrefix the path which the directories of the partitions
+     * are named after, or {@code null} to keep the partitions in memory.
+     */
+    LuceneIndexPopulator( IndexIdentifier identifier, IndexType type, Set<String> keys,
+            int threads, ImportProgressMonitor monitor, File directoryPrefix )
+    {
+        if ( threads < 1 )
+        {
+            throw new IllegalArgumentException( "threads=" + threads );
+        }
+        this.identifier = identifier;
+        this.type = type;
+        this.keys = keys;
+        this.threads = threads;
+        this.monitor = monitor;
+        this.directoryPrefix = directoryPrefix;
+        this.partitions = new Directory[threads];
+    }
+
+    /**
+     * Indexes the entities of {@code source}, one partition per thread, and
+     * waits for all partitions to be done.
+     */
+    <E> void populate( Source<E> source ) throws IOException
+    {
+        startTime = System.currentTimeMillis();
+        monitor.started( identifier.indexName );
+        ExecutorService executor = Executors.newFixedThreadPool( threads, new PopulationThreadFactory() );
+        try
+        {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for ( int i = 0; i < threads; i++ )
+            {
+                partitions[i] = newDirectory( i );
+                futures.add( executor.submit( new Partition<E>( source, i ) ) );
+            }
+            executor.shutdown();
+            while ( !executor.awaitTermination( PROGRESS_INTERVAL, TimeUnit.MILLISECONDS ) &&
+                    !anyFailed( futures ) )
+            {
+                monitor.progress( identifier.indexName, count.get(), elapsed() );
+            }
+            executor.shutdownNow();
+            for ( Future<Void> future : futures )
+            {
+                if ( future.isDone() )
+                {
+                    getResult( future );
+                }
+            }
+            for ( Future<Void> future : futures )
+            {
+                getResult( future );
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while populating " + identifier, e );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private static boolean anyFailed( List<Future<Void>> futures ) throws InterruptedException
+    {
+        for ( Future<Void> future : futures )
+        {
+            if ( future.isDone() )
+            {
+                try
+                {
+                    future.get();
+                }
+                catch ( ExecutionException e )
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void getResult( Future<Void> future ) throws IOException, InterruptedException
+    {
+        try
+        {
+            future.get();
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+            if ( cause instanceof IOException )
+            {
+                throw (IOException) cause;
+            }
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new RuntimeException( "Population of " + identifier + " failed", cause );
+        }
+    }
+
+    /**
+     * Replaces all documents of the index written to by {@code writer} with
+     * the populated ones. The change isn't visible until the writer commits.
+     */
+    void replaceContentsOf( IndexWriter writer ) throws IOException
+    {
+        writer.deleteAll();
+        writer.addIndexes( partitions );
+    }
+
+    /**
+     * @return a new document for the entity with the given id, or
+     * {@code null} if it doesn't exist or doesn't have any of the populated
+     * properties.
+     */
+    <E> Document newDocument( Source<E> source, long id )
+    {
+        E entity = source.entity( id );
+        return entity != null ? documentOf( source, entity ) : null;
+    }
+
+    private <E> Document documentOf( Source<E> source, E entity )
+    {
+        Map<String, Object> properties = source.properties( entity, keys );
+        if ( properties.isEmpty() )
+        {
+            return null;
+        }
+        Document document = identifier.entityType.newDocument( source.documentId( entity ) );
+        for ( Map.Entry<String, Object> property : properties.entrySet() )
+        {
+            for ( Object value : IoPrimitiveUtils.asArray( property.getValue() ) )
+            {
+                value = value instanceof ValueContext ? ((ValueContext) value).getCorrectValue() : value.toString();
+                type.addToDocument( document, property.getKey(), value );
+            }
+        }
+        return document;
+    }
+
+    void finished()
+    {
+        monitor.finished( identifier.indexName, count.get(), elapsed() );
+    }
+
+    /**
+     * Deletes the partitions.
+     */
+    void close()
+    {
+        for ( int i = 0; i < partitions.length; i++ )
+        {
+            if ( partitions[i] != null )
+            {
+                try
+                {
+                    partitions[i].close();
+                }
+                catch ( IOException e )
+                {   // Deleted below anyway
+                }
+                partitions[i] = null;
+            }
+            if ( directoryPrefix != null )
+            {
+                deleteFileOrDirectory( partitionDirectory( i ) );
+            }
+        }
+    }
+
+    private Directory newDirectory( int partition ) throws IOException
+    {
+        if ( directoryPrefix == null )
+        {
+            return new RAMDirectory();
+        }
+        File directory = partitionDirectory( partition );
+        deleteFileOrDirectory( directory );
+        return FSDirectory.open( directory );
+    }
+
+    private File partitionDirectory( int partition )
+    {
+        return new File( directoryPrefix.getPath() + "-" + partition );
+    }
+
+    private static void deleteFileOrDirectory( File file )
+    {
+        if ( file.isDirectory() )
+        {
+            for ( File child : file.listFiles() )
+            {
+                deleteFileOrDirectory( child );
+            }
+        }
+        file.delete();
+    }
+
+    private long elapsed()
+    {
+        return System.currentTimeMillis() - startTime;
+    }
+
+    private double ramBufferSizeMB()
+    {
+        double heapHint = (double)(Runtime.getRuntime().maxMemory()/(1024*1024*14)) / threads;
+        return Math.min( Math.max( IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB, heapHint ), 700 );
+    }
+
+    private class Partition<E> implements Callable<Void>
+    {
+        private final Source<E> source;
+        private final int partition;
+
+        Partition( Source<E> source, int partition )
+        {
+            this.source = source;
+            this.partition = partition;
+        }
+
+        public Void call() throws Exception
+        {
+            IndexWriterConfig config = new IndexWriterConfig( LUCENE_VERSION, type.analyzer );
+            config.setOpenMode( OpenMode.CREATE );
+            config.setRAMBufferSizeMB( ramBufferSizeMB() );
+            Similarity similarity = type.getSimilarity();
+            if ( similarity != null )
+            {
+                config.setSimilarity( similarity );
+            }
+            IndexWriter writer = new IndexWriter( partitions[partition], config );
+            boolean success = false;
+            try
+            {
+                Iterator<E> entities = source.entities( partition, threads );
+                while ( entities.hasNext() )
+                {
+                    if ( Thread.interrupted() )
+                    {
+                        throw new InterruptedException();
+                    }
+                    Document document = documentOf( source, entities.next() );
+                    if ( document != null )
+                    {
+                        writer.addDocument( document );
+                        count.incrementAndGet();
+                    }
+                }
+                success = true;
+            }
+            finally
+            {
+                if ( success )
+                {
+                    writer.close();
+                }
+                else
+                {
+                    writer.rollback();
+                }
+            }
+            return null;
+        }
+    }
+
+    private class PopulationThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger number = new AtomicInteger();
+
+        public Thread newThread( Runnable r )
+        {
+            Thread thread = new Thread( r, "Populate " + identifier.indexName + " worker-"
+                                           + number.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        }
+    }
+}
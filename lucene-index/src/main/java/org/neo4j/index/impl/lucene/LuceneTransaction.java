@@ -260,6 +260,7 @@ class LuceneTransaction extends XaTransaction
                 }
                 
                 applyDocuments( context.writer, type, context.documents );
+                dataSource.documentsCommitted( identifier, context.documents.keySet() );
                 if ( context.writer != null )
                 {
                     dataSource.invalidateIndexSearcher( identifier );
@@ -24,9 +24,13 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.Before;
@@ -39,8 +43,13 @@ import org.neo4j.graphdb.Transaction;
 import org.neo4j.graphdb.index.AutoIndexer;
 import org.neo4j.graphdb.index.Index;
 import org.neo4j.graphdb.index.ReadableIndex;
+import org.neo4j.graphdb.index.RelationshipAutoIndexer;
 import org.neo4j.graphdb.index.RelationshipIndex;
+import org.neo4j.index.Neo4jTestCase;
+import org.neo4j.kernel.AbstractGraphDatabase;
 import org.neo4j.kernel.Config;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.batchinsert.SilentImportProgressMonitor;
 import org.neo4j.test.ImpermanentGraphDatabase;
 
 public class TestAutoIndexing
@@ -656,4 +665,111 @@ public class TestAutoIndexing
         newTransaction();
         assertFalse( node1.hasProperty( "nodeProp" ) );
     }
-}
\ No newline at end of file
+
+    @Test
+    public void rebuildAutoIndexesFromGraph()
+    {
+        AutoIndexer<Node> nodeAutoIndexer = graphDb.index().getNodeAutoIndexer();
+        RelationshipAutoIndexer relAutoIndexer = graphDb.index().getRelationshipAutoIndexer();
+        nodeAutoIndexer.startAutoIndexingProperty( "name" );
+        nodeAutoIndexer.setEnabled( true );
+        newTransaction();
+        Node node1 = graphDb.createNode();
+        node1.setProperty( "name", "a" );
+        newTransaction();
+
+        nodeAutoIndexer.setEnabled( false );
+        node1.setProperty( "name", "b" );
+        Node node2 = graphDb.createNode();
+        node2.setProperty( "name", "c" );
+        graphDb.createNode().setProperty( "other", "c" );
+        Relationship rel = node1.createRelationshipTo( node2,
+                DynamicRelationshipType.withName( "KNOWS" ) );
+        rel.setProperty( "since", "2012" );
+        newTransaction();
+        tx.success();
+        tx.finish();
+        tx = null;
+        assertEquals( node1, nodeAutoIndexer.getAutoIndex().get( "name", "a" ).getSingle() );
+
+        nodeAutoIndexer.setEnabled( true );
+        nodeAutoIndexer.rebuildAutoIndex( 3, new SilentImportProgressMonitor() );
+        assertEquals( null, nodeAutoIndexer.getAutoIndex().get( "name", "a" ).getSingle() );
+        assertEquals( node1, nodeAutoIndexer.getAutoIndex().get( "name", "b" ).getSingle() );
+        assertEquals( node2, nodeAutoIndexer.getAutoIndex().get( "name", "c" ).getSingle() );
+
+        relAutoIndexer.startAutoIndexingProperty( "since" );
+        relAutoIndexer.rebuildAutoIndex( 2, new SilentImportProgressMonitor() );
+        assertEquals( rel, relAutoIndexer.getAutoIndex().get( "since", "2012" ).getSingle() );
+    }
+
+    @Test
+    public void asynchronousAutoIndexingAppliesCommittedChanges()
+    {
+        stopDb();
+        config = new HashMap<String, String>();
+        config.put( Config.NODE_KEYS_INDEXABLE, "name" );
+        config.put( Config.NODE_AUTO_INDEXING, "true" );
+        config.put( Config.AUTO_INDEXING_ASYNC, "true" );
+        config.put( Config.AUTO_INDEXING_ASYNC_BATCH_SIZE, "2" );
+        startDb();
+        AutoIndexer<Node> autoIndexer = graphDb.index().getNodeAutoIndexer();
+
+        newTransaction();
+        Node node1 = graphDb.createNode();
+        node1.setProperty( "name", "a" );
+        Node node2 = graphDb.createNode();
+        node2.setProperty( "name", "b" );
+        graphDb.createNode().setProperty( "other", "a" );
+        newTransaction();
+        assertTrue( autoIndexer.waitForIndexing( lastCommittedTxId(), 10, TimeUnit.SECONDS ) );
+        assertEquals( node1, autoIndexer.getAutoIndex().get( "name", "a" ).getSingle() );
+        assertEquals( node2, autoIndexer.getAutoIndex().get( "name", "b" ).getSingle() );
+        assertEquals( null, autoIndexer.getAutoIndex().get( "other", "a" ).getSingle() );
+
+        node1.setProperty( "name", "c" );
+        node2.delete();
+        newTransaction();
+        assertTrue( autoIndexer.waitForIndexing( lastCommittedTxId(), 10, TimeUnit.SECONDS ) );
+        assertEquals( 0, autoIndexer.getIndexingLag() );
+        assertEquals( null, autoIndexer.getAutoIndex().get( "name", "a" ).getSingle() );
+        assertEquals( null, autoIndexer.getAutoIndex().get( "name", "b" ).getSingle() );
+        assertEquals( node1, autoIndexer.getAutoIndex().get( "name", "c" ).getSingle() );
+    }
+
+    @Test
+    public void changesLostByAsynchronousAutoIndexingAreRebuiltOnStartup() throws Exception
+    {
+        stopDb();
+        String path = "target/var/async-auto-index";
+        Neo4jTestCase.deleteFileOrDirectory( new File( path ) );
+        graphDb = new EmbeddedGraphDatabase( path );
+        newTransaction();
+        Node node = graphDb.createNode();
+        node.setProperty( "name", "a" );
+        newTransaction();
+        stopDb();
+
+        // As left by an updater that had the change queued when it was killed
+        Writer progress = new FileWriter( new File( path, "node_auto_index.lastindexedtx" ) );
+        progress.write( "1\n" );
+        progress.close();
+
+        config = new HashMap<String, String>();
+        config.put( Config.NODE_KEYS_INDEXABLE, "name" );
+        config.put( Config.NODE_AUTO_INDEXING, "true" );
+        config.put( Config.AUTO_INDEXING_ASYNC, "true" );
+        graphDb = new EmbeddedGraphDatabase( path, config );
+        AutoIndexer<Node> autoIndexer = graphDb.index().getNodeAutoIndexer();
+        assertEquals( 0, autoIndexer.getIndexingLag() );
+        assertEquals( lastCommittedTxId(), autoIndexer.getLastIndexedTxId() );
+        assertEquals( node, autoIndexer.getAutoIndex().get( "name", "a" ).getSingle() );
+        stopDb();
+    }
+
+    private long lastCommittedTxId()
+    {
+        return ( (AbstractGraphDatabase) graphDb ).getConfig().getTxModule().getXaDataSourceManager().getXaDataSource(
+                Config.DEFAULT_DATA_SOURCE_NAME ).getLastCommittedTxId();
+    }
+}
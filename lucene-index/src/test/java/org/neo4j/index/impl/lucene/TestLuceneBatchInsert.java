@@ -37,6 +37,7 @@ import static org.neo4j.index.lucene.ValueContext.numeric;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -50,11 +51,13 @@ import org.neo4j.graphdb.index.BatchInserterIndexProvider;
 import org.neo4j.graphdb.index.Index;
 import org.neo4j.graphdb.index.IndexHits;
 import org.neo4j.graphdb.index.IndexManager;
+import org.neo4j.graphdb.index.RebuildableIndex;
 import org.neo4j.index.Neo4jTestCase;
 import org.neo4j.index.lucene.ValueContext;
 import org.neo4j.kernel.EmbeddedGraphDatabase;
 import org.neo4j.kernel.impl.batchinsert.BatchInserter;
 import org.neo4j.kernel.impl.batchinsert.BatchInserterImpl;
+import org.neo4j.kernel.impl.batchinsert.SilentImportProgressMonitor;
 
 public class TestLuceneBatchInsert
 {
@@ -362,6 +365,35 @@ public class TestLuceneBatchInsert
         inserter.shutdown();
     }
     
+    @Test
+    public void rebuildIndexFromStore() throws Exception
+    {
+        BatchInserter inserter = new BatchInserterImpl( new File( PATH, "10" ).getAbsolutePath() );
+        BatchInserterIndexProvider provider = new LuceneBatchInserterIndexProvider( inserter );
+        BatchInserterIndex index = provider.nodeIndex( "rebuilt", EXACT_CONFIG );
+        int count = 100;
+        long[] ids = new long[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            ids[i] = inserter.createNode( map( "name", "Joe" + i, "other", "Schmoe" ) );
+            inserter.createNode( map( "other", "Schmoe" ) );
+        }
+        index.add( ids[0], map( "name", "Stale" ) );
+        index.flush();
+
+        ((RebuildableIndex) index).rebuild( Collections.singleton( "name" ), 4,
+                new SilentImportProgressMonitor() );
+        assertEquals( 0, index.get( "name", "Stale" ).size() );
+        assertEquals( 0, index.get( "other", "Schmoe" ).size() );
+        for ( int i = 0; i < count; i++ )
+        {
+            assertContains( index.get( "name", "Joe" + i ), ids[i] );
+        }
+        assertEquals( count, index.query( "name", "Joe*" ).size() );
+        provider.shutdown();
+        inserter.shutdown();
+    }
+
     private enum EdgeType implements RelationshipType
     {
         KNOWS
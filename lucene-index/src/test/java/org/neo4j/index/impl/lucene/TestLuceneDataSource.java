@@ -174,6 +174,74 @@ public class TestLuceneDataSource
         assertFalse( IndexWriterAccessor.isClosed( newFooIndexWriter ) );
     }
 
+    @Test
+    public void testStaleSearcherIsRefreshedWhenRequested() throws Exception
+    {
+        dataSource = new LuceneDataSource( config() );
+        IndexIdentifier identifier = identifier( "foo" );
+        IndexSearcherRef oldSearcher = dataSource.getIndexSearcher( identifier, true );
+        dataSource.getIndexWriter( identifier ).addDocument( IndexType.newBaseDocument( 1 ) );
+        dataSource.invalidateIndexSearcher( identifier );
+        IndexSearcherRef newSearcher = dataSource.getIndexSearcher( identifier, false );
+        assertNotSame( oldSearcher, newSearcher );
+        assertEquals( 1, newSearcher.getSearcher().getIndexReader().numDocs() );
+        assertEquals( 1, dataSource.getSearcherStatistics().getReopenCount() );
+        assertEquals( 0, dataSource.getSearcherStatistics().getStaleReadCount() );
+        // Still referenced, so it's closed when the reference is released
+        assertFalse( oldSearcher.isClosed() );
+        oldSearcher.close();
+        assertTrue( oldSearcher.isClosed() );
+    }
+
+    @Test
+    public void testStaleSearcherIsRefreshedInTheBackground() throws Exception
+    {
+        Map<Object, Object> config = config();
+        config.put( Config.LUCENE_SEARCHER_REFRESH_INTERVAL, "10" );
+        dataSource = new LuceneDataSource( config );
+        IndexIdentifier identifier = identifier( "foo" );
+        IndexSearcherRef oldSearcher = dataSource.getIndexSearcher( identifier, false );
+        dataSource.getIndexWriter( identifier ).addDocument( IndexType.newBaseDocument( 1 ) );
+        dataSource.invalidateIndexSearcher( identifier );
+        IndexSearcherRef newSearcher = oldSearcher;
+        long end = System.currentTimeMillis() + 10000;
+        while ( newSearcher == oldSearcher && System.currentTimeMillis() < end )
+        {
+            Thread.sleep( 10 );
+            newSearcher = dataSource.getIndexSearcher( identifier, false );
+        }
+        assertNotSame( oldSearcher, newSearcher );
+        assertTrue( oldSearcher.isClosed() );
+        assertEquals( 1, newSearcher.getSearcher().getIndexReader().numDocs() );
+        assertEquals( 1, dataSource.getSearcherStatistics().getReopenCount() );
+    }
+
+    @Test
+    public void testSearcherIsRefreshedInTheBackgroundAfterCommits() throws Exception
+    {
+        Map<Object, Object> config = config();
+        config.put( Config.LUCENE_SEARCHER_REFRESH_COMMITS, "2" );
+        dataSource = new LuceneDataSource( config );
+        IndexIdentifier identifier = identifier( "foo" );
+        IndexSearcherRef oldSearcher = dataSource.getIndexSearcher( identifier, false );
+        dataSource.getIndexWriter( identifier ).addDocument( IndexType.newBaseDocument( 1 ) );
+        dataSource.invalidateIndexSearcher( identifier );
+        // Queries get the stale searcher until there have been enough commits
+        assertSame( oldSearcher, dataSource.getIndexSearcher( identifier, false ) );
+        assertEquals( 1, dataSource.getSearcherStatistics().getStaleReadCount() );
+        dataSource.getIndexWriter( identifier ).addDocument( IndexType.newBaseDocument( 2 ) );
+        dataSource.invalidateIndexSearcher( identifier );
+        IndexSearcherRef newSearcher = oldSearcher;
+        long end = System.currentTimeMillis() + 10000;
+        while ( newSearcher == oldSearcher && System.currentTimeMillis() < end )
+        {
+            Thread.sleep( 10 );
+            newSearcher = dataSource.getIndexSearcher( identifier, false );
+        }
+        assertNotSame( oldSearcher, newSearcher );
+        assertEquals( 2, newSearcher.getSearcher().getIndexReader().numDocs() );
+    }
+
     @Ignore( "No longer valid since Lucene 3.5" )
     @Test
     public void testInvalidatingSearcherCreatesANewOne() throws InstantiationException
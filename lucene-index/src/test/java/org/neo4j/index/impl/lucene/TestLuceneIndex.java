@@ -20,9 +20,12 @@
 package org.neo4j.index.impl.lucene;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -46,6 +49,9 @@ import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.graphdb.index.Index;
 import org.neo4j.graphdb.index.IndexHits;
 import org.neo4j.graphdb.index.IndexManager;
+import org.neo4j.graphdb.index.LongIndexHits;
+import org.neo4j.graphdb.index.ReadableIdIndex;
+import org.neo4j.graphdb.index.RebuildableIndex;
 import org.neo4j.graphdb.index.RelationshipIndex;
 import org.neo4j.graphdb.index.UniqueFactory;
 import org.neo4j.helpers.collection.IteratorUtil;
@@ -53,6 +59,8 @@ import org.neo4j.helpers.collection.MapUtil;
 import org.neo4j.index.lucene.QueryContext;
 import org.neo4j.index.lucene.ValueContext;
 import org.neo4j.kernel.AbstractGraphDatabase;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.impl.batchinsert.SilentImportProgressMonitor;
 import org.neo4j.test.ImpermanentGraphDatabase;
 
 import static org.apache.lucene.search.NumericRangeQuery.newIntRange;
@@ -1658,4 +1666,179 @@ public class TestLuceneIndex extends AbstractLuceneIndexTest
         Node node = graphDb.createNode();
         index.add( node, "name", "Mattias" );
     }
+
+    @Test
+    public void getIdsAndQueryIdsSeeCommittedAndTransactionState()
+    {
+        Index<Node> index = nodeIndex( testname.getMethodName(), LuceneIndexImplementation.EXACT_CONFIG );
+        ReadableIdIndex idIndex = (ReadableIdIndex) index;
+        String key = "name";
+        Node node1 = graphDb.createNode();
+        Node node2 = graphDb.createNode();
+        Node node3 = graphDb.createNode();
+        index.add( node1, key, "Mattias" );
+        index.add( node2, key, "Mattias" );
+        restartTx();
+
+        assertEquals( longs( node1.getId(), node2.getId() ), ids( idIndex.getIds( key, "Mattias" ) ) );
+        index.remove( node1, key, "Mattias" );
+        index.add( node3, key, "Mattias" );
+        index.add( node2, key, "Mattias" );
+        assertEquals( longs( node2.getId(), node3.getId() ), ids( idIndex.getIds( key, "Mattias" ) ) );
+        assertContains( index.get( key, "Mattias" ), node2, node3 );
+        restartTx();
+
+        assertEquals( longs( node2.getId(), node3.getId() ), ids( idIndex.getIds( key, "Mattias" ) ) );
+        assertEquals( longs( node2.getId(), node3.getId() ), ids( idIndex.queryIds( key, "Matt*" ) ) );
+        assertEquals( longs(), ids( idIndex.getIds( key, "Someone else" ) ) );
+    }
+
+    @Test
+    public void cachedLookupsSeeLaterCommits()
+    {
+        Index<Node> index = nodeIndex( testname.getMethodName(), LuceneIndexImplementation.EXACT_CONFIG );
+        ((LuceneIndex<Node>) index).setCacheCapacity( "name", 100 );
+        Node node1 = graphDb.createNode();
+        Node node2 = graphDb.createNode();
+        index.add( node1, "name", "Mattias" );
+        restartTx();
+
+        assertContains( index.get( "name", "Mattias" ), node1 );
+        // Now from the cache
+        assertContains( index.get( "name", "Mattias" ), node1 );
+        index.add( node2, "name", "Mattias" );
+        assertContains( index.get( "name", "Mattias" ), node1, node2 );
+        restartTx();
+
+        assertContains( index.get( "name", "Mattias" ), node1, node2 );
+        index.remove( node1, "name", "Mattias" );
+        assertContains( index.get( "name", "Mattias" ), node2 );
+        restartTx();
+
+        assertContains( index.get( "name", "Mattias" ), node2 );
+    }
+
+    @Test
+    public void cachedLookupsSeeRemovalsOfWholeEntities()
+    {
+        Index<Node> index = nodeIndex( testname.getMethodName(), LuceneIndexImplementation.EXACT_CONFIG );
+        ((LuceneIndex<Node>) index).setCacheCapacity( "name", 100 );
+        Node node1 = graphDb.createNode();
+        Node node2 = graphDb.createNode();
+        index.add( node1, "name", "Mattias" );
+        index.add( node2, "name", "Mattias" );
+        restartTx();
+
+        assertContains( index.get( "name", "Mattias" ), node1, node2 );
+        index.remove( node1 );
+        restartTx();
+        assertContains( index.get( "name", "Mattias" ), node2 );
+    }
+
+    @Test
+    public void cachedLookupsSeeRemovalsOfAllValuesOfAKey()
+    {
+        Index<Node> index = nodeIndex( testname.getMethodName(), LuceneIndexImplementation.EXACT_CONFIG );
+        ((LuceneIndex<Node>) index).setCacheCapacity( "name", 100 );
+        Node node1 = graphDb.createNode();
+        Node node2 = graphDb.createNode();
+        index.add( node1, "name", "Mattias" );
+        index.add( node2, "name", "Mattias" );
+        restartTx();
+
+        assertContains( index.get( "name", "Mattias" ), node1, node2 );
+        index.remove( node1, "name" );
+        restartTx();
+        assertContains( index.get( "name", "Mattias" ), node2 );
+    }
+
+    @Test
+    public void getSkipsDeletedEntities()
+    {
+        Index<Node> index = nodeIndex( testname.getMethodName(), LuceneIndexImplementation.EXACT_CONFIG );
+        Node node1 = graphDb.createNode();
+        Node node2 = graphDb.createNode();
+        index.add( node1, "name", "Mattias" );
+        index.add( node2, "name", "Mattias" );
+        restartTx();
+        node1.delete();
+        restartTx();
+
+        assertContains( index.get( "name", "Mattias" ), node2 );
+    }
+
+    @Test
+    public void rebuildReplacesContentsWithPropertiesFromTheGraph()
+    {
+        Index<Node> index = nodeIndex( testname.getMethodName(), LuceneIndexImplementation.EXACT_CONFIG );
+        Node node1 = graphDb.createNode();
+        node1.setProperty( "rebuilt", "a" );
+        Node node2 = graphDb.createNode();
+        node2.setProperty( "rebuilt", "b" );
+        Node node3 = graphDb.createNode();
+        node3.setProperty( "rebuilt", "c" );
+        Node deleted = graphDb.createNode();
+        index.add( node1, "rebuilt", "stale" );
+        index.add( node2, "rebuilt", "b" );
+        index.add( deleted, "rebuilt", "c" );
+        restartTx();
+        deleted.delete();
+        restartTx();
+
+        ( (RebuildableIndex) index ).rebuild( Collections.singleton( "rebuilt" ), 2,
+                new SilentImportProgressMonitor() );
+        assertContains( index.get( "rebuilt", "stale" ) );
+        assertContains( index.get( "rebuilt", "a" ), node1 );
+        assertContains( index.get( "rebuilt", "b" ), node2 );
+        assertContains( index.get( "rebuilt", "c" ), node3 );
+
+        // Still a regular index afterwards
+        index.remove( node3, "rebuilt", "c" );
+        index.add( node3, "rebuilt", "d" );
+        restartTx();
+        assertContains( index.get( "rebuilt", "c" ) );
+        assertContains( index.get( "rebuilt", "d" ), node3 );
+    }
+
+    @Test
+    public void rebuildIsRefusedWhileLogicalLogsAreKept()
+    {
+        AbstractGraphDatabase db = new ImpermanentGraphDatabase( stringMap( Config.KEEP_LOGICAL_LOGS, "true" ) );
+        try
+        {
+            Index<Node> index = db.index().forNodes( "index" );
+            ( (RebuildableIndex) index ).rebuild( Collections.singleton( "key" ), 1,
+                    new SilentImportProgressMonitor() );
+            fail( "The rebuild isn't logged, so it shouldn't be allowed when logs are kept" );
+        }
+        catch ( UnsupportedOperationException e )
+        {   // Good
+        }
+        finally
+        {
+            db.shutdown();
+        }
+    }
+
+    private static Set<Long> longs( long... values )
+    {
+        Set<Long> set = new HashSet<Long>();
+        for ( long value : values )
+        {
+            set.add( value );
+        }
+        return set;
+    }
+
+    private static Set<Long> ids( LongIndexHits hits )
+    {
+        Set<Long> ids = new HashSet<Long>();
+        while ( hits.hasNext() )
+        {
+            assertTrue( ids.add( hits.next() ) );
+        }
+        hits.close();
+        return ids;
+    }
 }
+
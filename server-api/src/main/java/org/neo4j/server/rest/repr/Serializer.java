@@ -63,7 +63,9 @@ abstract class Serializer
                         extension.writeValue( RepresentationType.URI, method, joinBaseWithRelativePath( baseUri,
                                 path.toString() ) );
                     }
+                    extension.done();
                 }
+                extensions.done();
             }
         }
     }
@@ -25,16 +25,21 @@ import static org.junit.Assert.assertTrue;
 import java.util.List;
 import java.util.Map;
 
+import javax.ws.rs.core.MediaType;
+
 import org.json.JSONException;
 import org.junit.Test;
 import org.neo4j.graphdb.Node;
 import org.neo4j.kernel.impl.annotations.Documented;
 import org.neo4j.server.rest.domain.JsonHelper;
 import org.neo4j.server.rest.domain.JsonParseException;
+import org.neo4j.server.rest.repr.StreamingFormat;
 import org.neo4j.server.rest.web.PropertyValueException;
 import org.neo4j.test.GraphDescription.Graph;
 
+import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.UniformInterfaceException;
 
 public class BatchOperationFunctionalTest extends AbstractRestFunctionalTestBase
@@ -470,6 +475,70 @@ public class BatchOperationFunctionalTest extends AbstractRestFunctionalTestBase
 
     }
     
+    @Test
+    public void shouldStreamResultsWhenAsked() throws Exception {
+
+        String jsonString = new PrettyJSON()
+            .array()
+                .object()
+                    .key("method")  .value("POST")
+                    .key("to")      .value("/node")
+                    .key("id")      .value(0)
+                .endObject()
+                .object()
+                    .key("method")  .value("PUT")
+                    .key("to")      .value("{0}/properties/name")
+                    .key("body")    .value("bob")
+                .endObject()
+            .endArray().toString();
+
+        ClientResponse response = streamingBatchRequest( jsonString );
+
+        assertEquals(200, response.getStatus());
+        List<Map<String, Object>> results = JsonHelper.jsonToList(response.getEntity( String.class ));
+        assertEquals(2, results.size());
+        assertTrue(((String) results.get(0).get("location")).length() > 0);
+    }
+
+    @Test
+    public void shouldEndStreamedResultsWithTheFailureAndRollback() throws Exception {
+
+        String jsonString = new PrettyJSON()
+            .array()
+                .object()
+                    .key("method")  .value("POST")
+                    .key("to")      .value("/node")
+                .endObject()
+                .object()
+                    .key("method")  .value("PUT")
+                    .key("to")      .value("/node/123456789/properties")
+                    .key("body")
+                        .object()
+                            .key("age").value(1)
+                        .endObject()
+                .endObject()
+            .endArray().toString();
+
+        int originalNodeCount = countNodes();
+
+        ClientResponse response = streamingBatchRequest( jsonString );
+
+        assertEquals(200, response.getStatus());
+        List<Map<String, Object>> results = JsonHelper.jsonToList(response.getEntity( String.class ));
+        assertEquals(2, results.size());
+        assertEquals(404, results.get(1).get("status"));
+        assertEquals(originalNodeCount, countNodes());
+    }
+
+    private ClientResponse streamingBatchRequest( String jsonString )
+    {
+        return Client.create().resource( batchUri() )
+                .header( StreamingFormat.STREAM_HEADER, "true" )
+                .type( MediaType.APPLICATION_JSON_TYPE )
+                .accept( MediaType.APPLICATION_JSON_TYPE )
+                .post( ClientResponse.class, jsonString );
+    }
+
     private int countNodes()
     {
         int count = 0;
@@ -28,13 +28,14 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.configuration.Configuration;
+import org.neo4j.kernel.Config;
 import org.neo4j.kernel.impl.util.StringLogger;
 import org.neo4j.kernel.info.DiagnosticsManager;
 import org.neo4j.server.configuration.Configurator;
 import org.neo4j.server.database.Database;
 import org.neo4j.server.database.GraphDatabaseFactory;
-import org.neo4j.server.guard.Guard;
 import org.neo4j.server.guard.GuardedDatabaseFactory;
+import org.neo4j.server.guard.GuardingRequestFilter;
 import org.neo4j.server.logging.Logger;
 import org.neo4j.server.modules.PluginInitializer;
 import org.neo4j.server.modules.RESTApiModule;
@@ -47,6 +48,8 @@ import org.neo4j.server.startup.healthcheck.StartupHealthCheckFailedException;
 import org.neo4j.server.web.WebServer;
 
 import static org.neo4j.server.configuration.Configurator.WEBSERVER_LIMIT_EXECUTION_TIME_PROPERTY_KEY;
+import static org.neo4j.server.configuration.Configurator.WEBSERVER_LIMIT_OPERATIONS_PROPERTY_KEY;
+import static org.neo4j.server.configuration.Configurator.WEBSERVER_LIMIT_ROWS_PROPERTY_KEY;
 
 public class NeoServerWithEmbeddedWebServer implements NeoServer
 {
@@ -60,7 +63,10 @@ public class NeoServerWithEmbeddedWebServer implements NeoServer
     private final List<ServerModule> serverModules = new ArrayList<ServerModule>();
     private PluginInitializer pluginInitializer;
     private final Bootstrapper bootstrapper;
-    private Guard guard;
+    private boolean guardEnabled;
+    private long guardTimeLimit;
+    private long guardOperationLimit;
+    private long guardRowLimit;
 
     public NeoServerWithEmbeddedWebServer( Bootstrapper bootstrapper,
             StartupHealthCheck startupHealthCheck, Configurator configurator, WebServer webServer,
@@ -92,6 +98,8 @@ public class NeoServerWithEmbeddedWebServer implements NeoServer
 
         DiagnosticsManager dm = startDatabase();
 
+        checkGuard();
+
         StringLogger logger = dm.getTargetLog();
         logger.logMessage( "--- SERVER STARTUP START ---" );
 
@@ -170,9 +178,9 @@ public class NeoServerWithEmbeddedWebServer implements NeoServer
                 .getString( Configurator.DATABASE_LOCATION_PROPERTY_KEY ) ).getAbsolutePath();
         GraphDatabaseFactory dbFactory = bootstrapper.getGraphDatabaseFactory( configurator.configuration() );
 
-        if ( guard != null )
+        if ( guardEnabled )
         {
-            dbFactory = new GuardedDatabaseFactory( dbFactory, guard );
+            dbFactory = new GuardedDatabaseFactory( dbFactory );
         }
 
         Map<String, String> databaseTuningProperties = configurator.getDatabaseTuningProperties();
@@ -189,8 +197,28 @@ public class NeoServerWithEmbeddedWebServer implements NeoServer
 
     private void initGuard()
     {
-        Integer limit = getConfiguration().getInteger( WEBSERVER_LIMIT_EXECUTION_TIME_PROPERTY_KEY, null);
-        guard = limit != null ? new Guard( limit ) : null;
+        Configuration configuration = getConfiguration();
+        guardEnabled = configuration.containsKey( WEBSERVER_LIMIT_EXECUTION_TIME_PROPERTY_KEY )
+                       || configuration.containsKey( WEBSERVER_LIMIT_OPERATIONS_PROPERTY_KEY )
+                       || configuration.containsKey( WEBSERVER_LIMIT_ROWS_PROPERTY_KEY );
+        guardTimeLimit = configuration.getLong( WEBSERVER_LIMIT_EXECUTION_TIME_PROPERTY_KEY, -1 );
+        guardOperationLimit = configuration.getLong( WEBSERVER_LIMIT_OPERATIONS_PROPERTY_KEY, -1 );
+        guardRowLimit = configuration.getLong( WEBSERVER_LIMIT_ROWS_PROPERTY_KEY, -1 );
+    }
+
+    /**
+     * Databases created by the server get a guard when limits are configured,
+     * but a database handed to the {@link WrappingNeoServerBootstrapper} has
+     * to be started with {@link Config#EXECUTION_GUARD_ENABLED} itself. Fails
+     * rather than serving requests without the configured limits.
+     */
+    private void checkGuard()
+    {
+        if ( guardEnabled && database.graph.getGuard() == null )
+        {
+            throw new IllegalStateException( "Request limits are configured, but the database was started without "
+                                             + Config.EXECUTION_GUARD_ENABLED + "=true" );
+        }
     }
 
     @Override
@@ -257,7 +285,11 @@ public class NeoServerWithEmbeddedWebServer implements NeoServer
             }
             webServer.addSecurityRules( securityRules );
 
-            if (guard != null) webServer.addExecutionLimitFilter( guard );
+            if ( guardEnabled )
+            {
+                webServer.addExecutionLimitFilter( new GuardingRequestFilter( database.graph.getGuard(),
+                        guardTimeLimit, guardOperationLimit, guardRowLimit ) );
+            }
 
             webServer.start();
             if ( logger != null ) logger.logMessage( "Server started on: " + baseUri() );
@@ -19,60 +19,32 @@
  */
 package org.neo4j.server.guard;
 
-import org.neo4j.graphdb.GraphDatabaseService;
-import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Relationship;
+import org.neo4j.kernel.Config;
 import org.neo4j.kernel.AbstractGraphDatabase;
 import org.neo4j.server.database.GraphDatabaseFactory;
-import org.neo4j.tooling.wrap.WrappedGraphDatabase;
-import org.neo4j.tooling.wrap.WrappedNode;
-import org.neo4j.tooling.wrap.WrappedRelationship;
 
+import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Creates databases with the kernel execution guard enabled, so that nodes
+ * and relationships loaded by a guarded request count against its limits.
+ */
 public class GuardedDatabaseFactory implements GraphDatabaseFactory {
 
     private final GraphDatabaseFactory dbFactory;
-    private final Guard guard;
 
-    public GuardedDatabaseFactory(GraphDatabaseFactory dbFactory, final Guard guard) {
+    public GuardedDatabaseFactory(GraphDatabaseFactory dbFactory) {
         this.dbFactory = dbFactory;
-        this.guard = guard;
     }
 
     @Override
     public AbstractGraphDatabase createDatabase(String databaseStoreDirectory, Map<String, String> databaseProperties) {
-        final GraphDatabaseService db = dbFactory.createDatabase(databaseStoreDirectory, databaseProperties);
-
-        return new WrappedGraphDatabase(db) {
-            // private int cnt = 0;
-
-            @Override protected WrappedNode<WrappedGraphDatabase> node(final Node node, boolean created) {
-                // if (cnt++ % 1000 == 0)
-                guard.check();
-                if (node == null) {
-                    return null;
-                }
-                return new WrappedNode<WrappedGraphDatabase>(this) {
-                    @Override protected Node actual() {
-                        return node;
-                    }
-                };
-            }
-
-            @Override
-            protected WrappedRelationship<WrappedGraphDatabase> relationship(final Relationship relationship, boolean created) {
-                // if (cnt++ % 1000 == 0)
-                guard.check();
-                if (relationship == null) {
-                    return null;
-                }
-                return new WrappedRelationship<WrappedGraphDatabase>(this) {
-                    @Override protected Relationship actual() {
-                        return relationship;
-                    }
-                };
-            }
-        };
+        Map<String, String> properties = new HashMap<String, String>();
+        if (databaseProperties != null) {
+            properties.putAll(databaseProperties);
+        }
+        properties.put(Config.EXECUTION_GUARD_ENABLED, "true");
+        return dbFactory.createDatabase(databaseStoreDirectory, properties);
     }
 }
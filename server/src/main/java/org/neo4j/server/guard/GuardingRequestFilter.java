@@ -19,20 +19,37 @@
  */
 package org.neo4j.server.guard;
 
+import org.neo4j.kernel.guard.Guard;
+import org.neo4j.kernel.guard.GuardException;
+
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 
-import static java.lang.System.currentTimeMillis;
 import static javax.servlet.http.HttpServletResponse.SC_REQUEST_TIMEOUT;
 
+/**
+ * Guards every request with the configured time, operation and row limits.
+ * Clients may lower those limits for a single request with the
+ * max-execution-time, max-operations and max-rows headers.
+ */
 public class GuardingRequestFilter implements Filter {
 
+    public static final String MAX_EXECUTION_TIME_HEADER = "max-execution-time";
+    public static final String MAX_OPERATIONS_HEADER = "max-operations";
+    public static final String MAX_ROWS_HEADER = "max-rows";
+
     private final Guard guard;
+    private final long timeLimit;
+    private final long operationLimit;
+    private final long rowLimit;
 
-    public GuardingRequestFilter(final Guard guard) {
+    public GuardingRequestFilter(final Guard guard, final long timeLimit, final long operationLimit, final long rowLimit) {
         this.guard = guard;
+        this.timeLimit = timeLimit;
+        this.operationLimit = operationLimit;
+        this.rowLimit = rowLimit;
     }
 
     @Override
@@ -44,19 +61,19 @@ public class GuardingRequestFilter implements Filter {
             HttpServletRequest request = (HttpServletRequest) req;
             HttpServletResponse response = (HttpServletResponse) res;
 
-            int timeLimit = getTimeLimit(request);
-            if (timeLimit <= 0) {
-                guard.clear();
+            guard.start(getLimit(request, MAX_EXECUTION_TIME_HEADER, timeLimit),
+                    getLimit(request, MAX_OPERATIONS_HEADER, operationLimit),
+                    getLimit(request, MAX_ROWS_HEADER, rowLimit));
+            try {
                 chain.doFilter(req, res);
-            } else {
-                guard.start(currentTimeMillis() + timeLimit);
-                try {
-                    chain.doFilter(req, res);
-                } catch (GuardException e) {
-                    response.setStatus(SC_REQUEST_TIMEOUT);
-                } finally {
-                    guard.stop();
-                }
+            } catch (ServletException e) {
+                if (!abort(response, e)) throw e;
+            } catch (IOException e) {
+                if (!abort(response, e)) throw e;
+            } catch (RuntimeException e) {
+                if (!abort(response, e)) throw e;
+            } finally {
+                guard.stop();
             }
         } else {
             chain.doFilter(req, res);
@@ -66,15 +83,30 @@ public class GuardingRequestFilter implements Filter {
     public void destroy() {
     }
 
-    private int getTimeLimit(HttpServletRequest request) {
-        int timeLimit = guard.getTimeLimit();
-        String headerValue = request.getHeader("max-execution-time");
+    private boolean abort(HttpServletResponse response, Throwable failure) throws IOException {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof GuardException) {
+                if (!response.isCommitted()) {
+                    response.sendError(SC_REQUEST_TIMEOUT, cause.getMessage());
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A header may only lower the configured limit, or set it when there is
+     * none. Non-positive values mean no limit.
+     */
+    private long getLimit(HttpServletRequest request, String header, long configured) {
+        String headerValue = request.getHeader(header);
         if (headerValue != null) {
-            int maxHeader = Integer.parseInt(headerValue);
-            if (timeLimit < 0 || (maxHeader > 0 && maxHeader < timeLimit)) {
-                return maxHeader;
+            long requested = Long.parseLong(headerValue.trim());
+            if (requested > 0 && (configured <= 0 || requested < configured)) {
+                return requested;
             }
         }
-        return timeLimit;
+        return configured;
     }
 }
@@ -19,31 +19,83 @@
  */
 package org.neo4j.server.modules;
 
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.mortbay.jetty.Server;
 import org.neo4j.kernel.impl.util.StringLogger;
 import org.neo4j.server.NeoServerWithEmbeddedWebServer;
+import org.neo4j.server.RoundRobinJobScheduler;
+import org.neo4j.server.statistic.RequestStatistics;
+import org.neo4j.server.statistic.RequestStatisticsMXBean;
 import org.neo4j.server.statistic.StatisticCollector;
 import org.neo4j.server.statistic.StatisticFilter;
 import org.neo4j.server.statistic.StatisticStartupListener;
 
 public class StatisticModule implements ServerModule
 {
+    private static final String SNAPSHOT_JOB_NAME = "Statistic snapshots";
+
+    private final RoundRobinJobScheduler jobScheduler = new RoundRobinJobScheduler();
     private StatisticStartupListener listener;
+    private ObjectName beanName;
 
     public void start( NeoServerWithEmbeddedWebServer neoServer, StringLogger logger )
     {
         Server jetty = neoServer.getWebServer().getJetty();
 
-        StatisticCollector statisticCollector =
+        final StatisticCollector statisticCollector =
                 neoServer.getDatabase().statisticCollector();
 
         listener = new StatisticStartupListener( jetty,
                 new StatisticFilter( statisticCollector ) );
         jetty.addLifeCycleListener( listener );
+
+        jobScheduler.scheduleAtFixedRate( new Runnable()
+        {
+            public void run()
+            {
+                statisticCollector.createSnapshot();
+            }
+        }, SNAPSHOT_JOB_NAME, StatisticCollector.SNAPSHOT_PERIOD, StatisticCollector.SNAPSHOT_PERIOD );
+
+        registerBean( statisticCollector, logger );
+    }
+
+    private void registerBean( StatisticCollector statisticCollector, StringLogger logger )
+    {
+        try
+        {
+            ObjectName name = new ObjectName( "org.neo4j.server:name=" + RequestStatisticsMXBean.NAME
+                    + ",instance=" + Integer.toHexString( System.identityHashCode( statisticCollector ) ) );
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    new RequestStatistics( statisticCollector ), name );
+            beanName = name;
+        }
+        catch ( Exception e )
+        {
+            logger.logMessage( "Failed to register request statistics with JMX", e );
+        }
     }
 
     public void stop()
     {
+        jobScheduler.stopJobs();
         listener.stop();
+        if ( beanName != null )
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try
+            {
+                server.unregisterMBean( beanName );
+            }
+            catch ( Exception e )
+            {
+                // Already gone
+            }
+            beanName = null;
+        }
     }
 }
@@ -19,61 +19,283 @@
  */
 package org.neo4j.server.rest.paging;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class LeaseManager
+/**
+ * Keeps leases by id. Looking a lease up only checks that one lease, leases
+ * that are never looked up again are expired by a hashed timer wheel with one
+ * slot per second, advanced by a background thread. Renewing a lease does not
+ * touch the wheel, a renewed lease is moved to a later slot when its old slot
+ * comes up. The background thread is shared by all lease managers, and it
+ * stops advancing the wheel of a lease manager that is shut down or no longer
+ * referenced.
+ * <p>
+ * At most {@link #DEFAULT_MAX_LEASES} leases are kept by default, creating
+ * another one evicts the lease that would expire first.
+ */
+public class LeaseManager implements LeaseManagerMXBean
 {
+    public static final int DEFAULT_MAX_LEASES = 10000;
+    static final long TICK_MILLIS = 1000;
+    private static final int WHEEL_SIZE = 512;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
     private Clock clock;
+    private final int maxLeases;
     private Map<String, Lease> leases = new ConcurrentHashMap<String, Lease>();
 
+    private static Timer expiryTimer;
+
+    // The wheel, guarded by itself
+    private final List<Lease>[] wheel;
+    private long cursor;
+    private TimerTask expiry;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
     public LeaseManager( Clock clock )
+    {
+        this( clock, DEFAULT_MAX_LEASES );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    public LeaseManager( Clock clock, int maxLeases )
     {
         this.clock = clock;
+        this.maxLeases = maxLeases;
+        this.wheel = new List[WHEEL_SIZE];
+        for ( int i = 0; i < WHEEL_SIZE; i++ )
+        {
+            wheel[i] = new ArrayList<Lease>();
+        }
+        this.cursor = tick( clock.currentTimeInMilliseconds() );
     }
 
-    public Lease createLease( long seconds, PagedTraverser leasedTraverser ) throws LeaseAlreadyExpiredException
+    public Lease createLease( long seconds, Leasable leasedItem ) throws LeaseAlreadyExpiredException
     {
         if ( seconds < 1 )
         {
             return null;
         }
 
-        Lease lease = new Lease( leasedTraverser, seconds, clock );
+        Lease lease = new Lease( leasedItem, seconds, clock );
+        while ( leases.size() >= maxLeases && evictSoonestToExpire() )
+        {
+            // keep evicting until there is room
+        }
         leases.put( lease.getId(), lease );
+        created.incrementAndGet();
+        schedule( lease );
 
         return lease;
     }
 
     public Lease getLeaseById( String id )
     {
-        pruneOldLeasesByNaivelyIteratingThroughAllOfThem();
         Lease lease = leases.get( id );
-
-        if ( lease != null )
+        if ( lease == null )
         {
-            lease.renew();
+            return null;
+        }
+        if ( lease.expired() )
+        {
+            if ( leases.remove( id ) != null )
+            {
+                expired.incrementAndGet();
+            }
+            return null;
         }
 
+        lease.renew();
         return lease;
     }
 
-    private void pruneOldLeasesByNaivelyIteratingThroughAllOfThem()
+    /**
+     * Expires the leases in the slots of the wheel up to now. Done every
+     * second by a background thread.
+     */
+    void expireLeases()
     {
-        for ( String key : leases.keySet() )
+        long now = clock.currentTimeInMilliseconds();
+        long until = tick( now );
+        List<Lease> pending = new ArrayList<Lease>();
+        synchronized ( wheel )
         {
-            try
+            long from = Math.max( cursor + 1, until - WHEEL_MASK );
+            for ( long t = from; t <= until; t++ )
             {
-                Lease lease = leases.get( key );
-                if ( lease.getStartTime() + lease.getPeriod() < clock.currentTimeInMilliseconds() )
+                List<Lease> slot = wheel[(int) ( t & WHEEL_MASK )];
+                pending.addAll( slot );
+                slot.clear();
+            }
+            cursor = Math.max( cursor, until );
+
+            for ( Lease lease : pending )
+            {
+                if ( !isLive( lease ) )
                 {
-                    remove( key );
+                    continue;
                 }
+                if ( lease.expired() )
+                {
+                    if ( leases.remove( lease.getId() ) != null )
+                    {
+                        expired.incrementAndGet();
+                    }
+                }
+                else
+                {
+                    scheduleLocked( lease );
+                }
+            }
+        }
+    }
+
+    private boolean evictSoonestToExpire()
+    {
+        synchronized ( wheel )
+        {
+            Lease any = null;
+            List<Lease> anySlot = null;
+            for ( long t = cursor + 1; t <= cursor + WHEEL_SIZE; t++ )
+            {
+                List<Lease> slot = wheel[(int) ( t & WHEEL_MASK )];
+                for ( Iterator<Lease> leasesInSlot = slot.iterator(); leasesInSlot.hasNext(); )
+                {
+                    Lease lease = leasesInSlot.next();
+                    if ( !isLive( lease ) )
+                    {
+                        leasesInSlot.remove();
+                    }
+                    else if ( tick( expiryTime( lease ) ) <= t )
+                    {
+                        leasesInSlot.remove();
+                        return evict( lease );
+                    }
+                    else if ( any == null )
+                    {
+                        any = lease;
+                        anySlot = slot;
+                    }
+                }
+            }
+            if ( any != null )
+            {
+                anySlot.remove( any );
+                return evict( any );
+            }
+            return false;
+        }
+    }
+
+    private boolean evict( Lease lease )
+    {
+        if ( leases.remove( lease.getId() ) != null )
+        {
+            evicted.incrementAndGet();
+        }
+        return true;
+    }
+
+    private boolean isLive( Lease lease )
+    {
+        return leases.get( lease.getId() ) == lease;
+    }
+
+    private void schedule( Lease lease )
+    {
+        synchronized ( wheel )
+        {
+            scheduleLocked( lease );
+            if ( expiry == null )
+            {
+                expiry = new ExpiryTask( this );
+                expiryTimer().schedule( expiry, TICK_MILLIS, TICK_MILLIS );
             }
-            catch ( Exception e )
+        }
+    }
+
+    private static synchronized Timer expiryTimer()
+    {
+        if ( expiryTimer == null )
+        {
+            expiryTimer = new Timer( "Neo4j lease expiry", true );
+        }
+        return expiryTimer;
+    }
+
+    /**
+     * Advances the wheel of a lease manager, without keeping the lease
+     * manager from being garbage collected.
+     */
+    private static class ExpiryTask extends TimerTask
+    {
+        private final WeakReference<LeaseManager> manager;
+
+        ExpiryTask( LeaseManager manager )
+        {
+            this.manager = new WeakReference<LeaseManager>( manager );
+        }
+
+        @Override
+        public void run()
+        {
+            LeaseManager leaseManager = manager.get();
+            if ( leaseManager == null )
+            {
+                cancel();
+                return;
+            }
+            try
             {
-                // do nothing - if something goes wrong, it just means another
-                // thread already nuked the lease
+                leaseManager.expireLeases();
+            }
+            catch ( RuntimeException e )
+            {
+                // Don't let one lease manager stop the thread shared by all,
+                // its leases are still expired when looked up
+            }
+        }
+    }
+
+    private void scheduleLocked( Lease lease )
+    {
+        long t = Math.max( tick( expiryTime( lease ) ), cursor + 1 );
+        wheel[(int) ( t & WHEEL_MASK )].add( lease );
+    }
+
+    private static long expiryTime( Lease lease )
+    {
+        return lease.getStartTime() + lease.getPeriod();
+    }
+
+    private static long tick( long millis )
+    {
+        return millis / TICK_MILLIS;
+    }
+
+    /**
+     * Stops expiring leases in the background, leases are still expired when
+     * looked up.
+     */
+    public void shutdown()
+    {
+        synchronized ( wheel )
+        {
+            if ( expiry != null )
+            {
+                expiry.cancel();
+                expiry = null;
             }
         }
     }
@@ -90,9 +312,36 @@ public class LeaseManager
 
     public void remove( String key )
     {
-        if ( leases.containsKey( key ) )
-        {
-            leases.remove( key );
-        }
+        leases.remove( key );
+    }
+
+    @Override
+    public int getLiveLeases()
+    {
+        return leases.size();
+    }
+
+    @Override
+    public int getMaxLeases()
+    {
+        return maxLeases;
+    }
+
+    @Override
+    public long getCreatedLeases()
+    {
+        return created.get();
+    }
+
+    @Override
+    public long getExpiredLeases()
+    {
+        return expired.get();
+    }
+
+    @Override
+    public long getEvictedLeases()
+    {
+        return evicted.get();
     }
 }
@@ -19,6 +19,10 @@
  */
 package org.neo4j.server.rest.paging;
 
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
 import org.neo4j.server.database.AbstractInjectableProvider;
 
 import com.sun.jersey.api.core.HttpContext;
@@ -27,6 +31,19 @@ public class LeaseManagerProvider extends AbstractInjectableProvider<LeaseManage
 {
     private static final LeaseManager leaseManager = new LeaseManager( new RealClock() );
 
+    static
+    {
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().registerMBean( leaseManager,
+                    new ObjectName( "org.neo4j.server:name=" + LeaseManagerMXBean.NAME ) );
+        }
+        catch ( Exception e )
+        {
+            // Monitoring the leases is optional
+        }
+    }
+
     public static void setClock( Clock clock )
     {
         leaseManager.setClock( clock );
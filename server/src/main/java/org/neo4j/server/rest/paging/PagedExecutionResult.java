@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.paging;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.cypher.javacompat.ExecutionResult;
+
+/**
+ * The rows of a Cypher query handed out a page at a time. Rows are pulled
+ * from the result as the pages are asked for, so only the current page is
+ * held on to between requests. Queries which sort or aggregate their rows
+ * have to read all of them first though, and keep them for as long as the
+ * result is leased.
+ */
+public class PagedExecutionResult implements Iterator<List<Map<String, Object>>>, Iterable<List<Map<String, Object>>>,
+        Leasable
+{
+    private final List<String> columns;
+    private final int pageSize;
+    private final Iterator<Map<String, Object>> rows;
+
+    public PagedExecutionResult( ExecutionResult result, int pageSize )
+    {
+        this.columns = result.columns();
+        this.rows = result.iterator();
+        this.pageSize = pageSize;
+    }
+
+    public List<String> columns()
+    {
+        return columns;
+    }
+
+    public List<Map<String, Object>> next()
+    {
+        if ( !rows.hasNext() )
+        {
+            return null;
+        }
+
+        List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+        for ( int i = 0; i < pageSize && rows.hasNext(); i++ )
+        {
+            result.add( rows.next() );
+        }
+        return result;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        return rows.hasNext();
+    }
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Iterator<List<Map<String, Object>>> iterator()
+    {
+        return this;
+    }
+}
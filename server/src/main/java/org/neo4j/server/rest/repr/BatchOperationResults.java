@@ -19,7 +19,9 @@
  */
 package org.neo4j.server.rest.repr;
 
+import java.io.IOException;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -33,6 +35,9 @@ import org.neo4j.server.rest.domain.JsonHelper;
  * Doing so would require us to de-serialize each JSON response we get from
  * each operation, and we would have to extend our current type safe serialization
  * system to incorporate arbitrary responses.
+ *
+ * Results are either collected in memory and returned by toJSON(), or written
+ * to a writer as they are added, which finish() terminates.
  */
 public class BatchOperationResults
 {
@@ -42,15 +47,24 @@ public class BatchOperationResults
     private static final String CLOSING_CURLY = "}";
     private static final String COMMA = ",";
 
-    private StringWriter results = new StringWriter();
+    private final Writer results;
+    private final StringWriter buffer;
     private boolean firstResult = true;
     private Map<Integer, String> locations = new HashMap<Integer, String>();
 
     public BatchOperationResults() {
+        this.buffer = new StringWriter();
+        this.results = buffer;
+        buffer.append(OPENING_BRACKET);
+    }
+
+    public BatchOperationResults( Writer results ) throws IOException {
+        this.buffer = null;
+        this.results = results;
         results.append(OPENING_BRACKET);
     }
 
-    public void addOperationResult( String from, Integer id, String body, String location )
+    public void addOperationResult( String from, Integer id, String body, String location ) throws IOException
     {
         if(firstResult)
             firstResult = false;
@@ -92,9 +106,34 @@ public class BatchOperationResults
         return locations;
     }
 
+    /**
+     * Adds a last element describing the failure that ended a batch whose
+     * results are streamed, when it is too late to fail the whole response.
+     */
+    public void addFailure( int status, String message ) throws IOException
+    {
+        if(!firstResult)
+            results.append(COMMA);
+        firstResult = false;
+
+        results.append( OPENING_CURLY )
+                .append( "\"status\":" )
+                .append( String.valueOf( status ) )
+                .append( COMMA )
+                .append( "\"message\":" )
+                .append( JsonHelper.createJsonFrom( message ) )
+                .append( CLOSING_CURLY );
+    }
+
     public String toJSON()
+    {
+        buffer.append(CLOSING_BRACKET);
+        return buffer.toString();
+    }
+
+    public void finish() throws IOException
     {
         results.append(CLOSING_BRACKET);
-        return results.toString();
+        results.flush();
     }
 }
@@ -27,43 +27,51 @@ import org.neo4j.cypher.javacompat.ExecutionResult;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Path;
 import org.neo4j.graphdb.Relationship;
+import org.neo4j.helpers.collection.IterableWrapper;
 
 public class CypherResultRepresentation extends ObjectRepresentation
 {
 
-    private final ExecutionResult queryResult;
+    private final List<String> columns;
+    private final Iterable<Map<String, Object>> rows;
 
     public CypherResultRepresentation( ExecutionResult result )
+    {
+        this( result.columns(), result );
+    }
+
+    public CypherResultRepresentation( List<String> columns, Iterable<Map<String, Object>> rows )
     {
         super( RepresentationType.STRING );
-        this.queryResult = result;
+        this.columns = columns;
+        this.rows = rows;
     }
 
     @Mapping( "columns" )
     public Representation columns()
     {
 
-        return ListRepresentation.string( queryResult.columns() );
+        return ListRepresentation.string( columns );
     }
 
     @Mapping( "data" )
     public Representation data()
     {
-        // rows
-        List<Representation> rows = new ArrayList<Representation>();
-        for ( Map<String, Object> row : queryResult )
+        // rows are converted as they are serialized, so a streaming format doesn't have to hold them all
+        return new ListRepresentation( "data", new IterableWrapper<Representation, Map<String, Object>>( rows )
         {
-            List<Representation> fields = new ArrayList<Representation>();
-            // columns
-            for ( String column : queryResult.columns() )
+            @Override
+            protected Representation underlyingObjectToObject( Map<String, Object> row )
             {
-                Representation rowRep = getRepresentation( row.get( column ) );
-                fields.add( rowRep );
-
+                List<Representation> fields = new ArrayList<Representation>();
+                // columns
+                for ( String column : columns )
+                {
+                    fields.add( getRepresentation( row.get( column ) ) );
+                }
+                return new ListRepresentation( "row", fields );
             }
-            rows.add( new ListRepresentation( "row", fields ) );
-        }
-        return new ListRepresentation( "data", rows );
+        } );
     }
 
     private Representation getRepresentation( Object r )
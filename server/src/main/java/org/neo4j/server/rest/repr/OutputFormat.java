@@ -19,14 +19,18 @@
  */
 package org.neo4j.server.rest.repr;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 
 public class OutputFormat
 {
@@ -97,6 +101,15 @@ public class OutputFormat
 
     protected Response response( ResponseBuilder response, Representation representation )
     {
+        if ( format instanceof StreamingFormat )
+        {
+            // Without a length the entity is sent with chunked transfer encoding as it's written
+            return response.entity( stream( representation, (StreamingFormat) format ) )
+                    .header( HttpHeaders.CONTENT_ENCODING, UTF8 )
+                    .type( getMediaType() )
+                    .build();
+        }
+
         String entity = format( representation );
         byte[] entityAsBytes;
         try
@@ -113,6 +126,32 @@ public class OutputFormat
                 .build();
     }
 
+    /**
+     * The representation is serialized when the response is written, after
+     * the resource method has returned. Errors at that point can't change the
+     * status of the response anymore, and leave the output cut short.
+     */
+    private StreamingOutput stream( final Representation representation, final StreamingFormat streamingFormat )
+    {
+        return new StreamingOutput()
+        {
+            @Override
+            public void write( OutputStream output ) throws IOException, WebApplicationException
+            {
+                representation.serialize( streamingFormat.writeTo( output ), baseUri, extensions );
+            }
+        };
+    }
+
+    /**
+     * @return whether the client asked for a response that is streamed as it
+     *         is produced, see {@link StreamingFormat}.
+     */
+    public boolean isStreaming()
+    {
+        return format instanceof StreamingFormat;
+    }
+
     public MediaType getMediaType()
     {
         return format.mediaType;
@@ -42,7 +42,8 @@ public final class OutputFormatProvider extends AbstractInjectableProvider<Outpu
         try
         {
             return repository.outputFormat( context.getRequest()
-                    .getAcceptableMediaTypes(), context.getRequest().getBaseUri() );
+                    .getAcceptableMediaTypes(), context.getRequest().getBaseUri(), context.getRequest()
+                    .getRequestHeaders() );
         }
         catch ( MediaTypeNotSupportedException e )
         {
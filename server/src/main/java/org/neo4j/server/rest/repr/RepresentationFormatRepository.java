@@ -25,6 +25,7 @@ import java.util.List;
 import java.util.Map;
 
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
 
 import org.neo4j.helpers.Service;
 import org.neo4j.server.rest.repr.formats.JsonFormat;
@@ -58,6 +59,44 @@ public final class RepresentationFormatRepository
         return new OutputFormat( useDefault( acceptable ), baseUri, injector );
     }
 
+    /**
+     * Picks a streaming format if one is asked for, either with the
+     * {@link StreamingFormat#STREAM_HEADER} header or with a parameter on the
+     * accepted media type, and there is one for an accepted media type.
+     * Otherwise picks a format like {@link #outputFormat(List, URI)}.
+     */
+    public OutputFormat outputFormat( List<MediaType> acceptable, URI baseUri,
+            MultivaluedMap<String, String> requestHeaders )
+    {
+        boolean streamAll = requestHeaders != null
+                            && "true".equalsIgnoreCase( requestHeaders.getFirst( StreamingFormat.STREAM_HEADER ) );
+        for ( MediaType type : acceptable )
+        {
+            if ( streamAll || "true".equalsIgnoreCase( type.getParameters().get( StreamingFormat.STREAM_PARAMETER ) ) )
+            {
+                RepresentationFormat format = streamingFormat( type );
+                if ( format != null )
+                {
+                    return new OutputFormat( format, baseUri, injector );
+                }
+            }
+        }
+
+        return outputFormat( acceptable, baseUri );
+    }
+
+    private RepresentationFormat streamingFormat( MediaType type )
+    {
+        for ( RepresentationFormat format : formats.values() )
+        {
+            if ( format instanceof StreamingFormat && format.mediaType.isCompatible( type ) )
+            {
+                return format;
+            }
+        }
+        return null;
+    }
+
     public InputFormat inputFormat( MediaType type )
     {
         if ( type == null )
@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.repr;
+
+import java.io.OutputStream;
+
+/**
+ * A {@link RepresentationFormat} that can write representations straight to
+ * an output stream as they are serialized, rather than building the whole
+ * response as a String first.
+ */
+public interface StreamingFormat
+{
+    /**
+     * Request header that asks for a streamed response in any of the
+     * accepted media types that has a streaming format.
+     */
+    String STREAM_HEADER = "X-Stream";
+
+    /**
+     * Media type parameter that asks for a streamed response in that media
+     * type, as in <code>application/json;stream=true</code>.
+     */
+    String STREAM_PARAMETER = "stream";
+
+    /**
+     * Returns a format, only to be used for serializing a single
+     * representation, that writes everything it serializes to the given
+     * stream. The strings it returns are empty.
+     */
+    RepresentationFormat writeTo( OutputStream output );
+}
@@ -0,0 +1,373 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.repr.formats;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.MediaType;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.neo4j.helpers.Service;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.server.rest.domain.JsonBuildRuntimeException;
+import org.neo4j.server.rest.repr.BadInputException;
+import org.neo4j.server.rest.repr.InputFormat;
+import org.neo4j.server.rest.repr.ListWriter;
+import org.neo4j.server.rest.repr.MappingWriter;
+import org.neo4j.server.rest.repr.RepresentationFormat;
+import org.neo4j.server.rest.repr.StreamingFormat;
+
+/**
+ * JSON that is written through a {@link JsonGenerator} to the response as
+ * the representation is serialized, so that no copy of the whole response is
+ * built on the heap. Used when a client accepts
+ * <code>application/json;stream=true</code> or sends the
+ * {@link StreamingFormat#STREAM_HEADER} header.
+ *
+ * Used as a plain format, for example for the location of a created entity,
+ * it produces the same output as {@link JsonFormat}.
+ */
+@Service.Implementation( RepresentationFormat.class )
+public class StreamingJsonFormat extends JsonFormat implements StreamingFormat
+{
+    public static final MediaType MEDIA_TYPE = new MediaType( MediaType.APPLICATION_JSON_TYPE.getType(),
+            MediaType.APPLICATION_JSON_TYPE.getSubtype(), MapUtil.stringMap( STREAM_PARAMETER, "true" ) );
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    public StreamingJsonFormat()
+    {
+        super( MEDIA_TYPE );
+    }
+
+    @Override
+    public RepresentationFormat writeTo( OutputStream output )
+    {
+        try
+        {
+            JsonGenerator generator = OBJECT_MAPPER.getJsonFactory().createJsonGenerator( output, JsonEncoding.UTF8 );
+            return new StreamingRepresentationFormat( generator, this );
+        }
+        catch ( IOException e )
+        {
+            throw new JsonBuildRuntimeException( e );
+        }
+    }
+
+    private static class StreamingRepresentationFormat extends RepresentationFormat
+    {
+        private final JsonGenerator out;
+        private final InputFormat input;
+
+        StreamingRepresentationFormat( JsonGenerator out, InputFormat input )
+        {
+            super( MEDIA_TYPE );
+            this.out = out;
+            this.input = input;
+        }
+
+        @Override
+        protected String serializeValue( String type, Object value )
+        {
+            try
+            {
+                out.writeObject( value );
+                out.flush();
+            }
+            catch ( IOException e )
+            {
+                throw new JsonBuildRuntimeException( e );
+            }
+            return "";
+        }
+
+        @Override
+        protected ListWriter serializeList( String type )
+        {
+            return new StreamingListWriter( out );
+        }
+
+        @Override
+        protected String complete( ListWriter serializer )
+        {
+            flush();
+            return "";
+        }
+
+        @Override
+        protected MappingWriter serializeMapping( String type )
+        {
+            return new StreamingMappingWriter( out );
+        }
+
+        @Override
+        protected String complete( MappingWriter serializer )
+        {
+            flush();
+            return "";
+        }
+
+        private void flush()
+        {
+            try
+            {
+                out.flush();
+            }
+            catch ( IOException e )
+            {
+                throw new JsonBuildRuntimeException( e );
+            }
+        }
+
+        @Override
+        public Object readValue( String input ) throws BadInputException
+        {
+            return this.input.readValue( input );
+        }
+
+        @Override
+        public Map<String, Object> readMap( String input, String... requiredKeys ) throws BadInputException
+        {
+            return this.input.readMap( input, requiredKeys );
+        }
+
+        @Override
+        public List<Object> readList( String input ) throws BadInputException
+        {
+            return this.input.readList( input );
+        }
+
+        @Override
+        public URI readUri( String input ) throws BadInputException
+        {
+            return this.input.readUri( input );
+        }
+    }
+
+    private static class StreamingListWriter extends ListWriter
+    {
+        private final JsonGenerator out;
+
+        StreamingListWriter( JsonGenerator out )
+        {
+            this.out = out;
+            try
+            {
+                out.writeStartArray();
+            }
+            catch ( IOException e )
+            {
+                throw new JsonBuildRuntimeException( e );
+            }
+        }
+
+        @Override
+        protected MappingWriter newMapping( String type )
+        {
+            return new StreamingMappingWriter( out );
+        }
+
+        @Override
+        protected ListWriter newList( String type )
+        {
+            return new StreamingListWriter( out );
+        }
+
+        @Override
+        protected void writeString( String value )
+        {
+            try
+            {
+                out.writeString( value );
+            }
+            catch ( IOException e )
+            {
+                throw new JsonBuildRuntimeException( e );
+            }
+        }
+
+        @Override
+        protected void writeInteger( String type, long value )
+        {
+            try
+            {
+                out.writeNumber( value );
+            }
+            catch ( IOException e )
+            {
+                throw new JsonBuildRuntimeException( e );
+            }
+        }
+
+        @Override
+        protected void writeFloatingPointNumber( String type, double value )
+        {
+            try
+            {
+                out.writeNumber( value );
+            }
+            catch ( IOException e )
+            {
+                throw new JsonBuildRuntimeException( e );
+            }
+        }
+
+        @Override
+        protected void writeValue( String type, Object value )
+        {
+            try
+            {
+                out.writeObject( value );
+            }
+            catch ( IOException e )
+            {
+                throw new JsonBuildRuntimeException( e );
+            }
+        }
+
+        @Override
+        protected void done()
+        {
+            try
+            {
+                out.writeEndArray();
+            }
+            catch ( IOException e )
+            {
+                throw new JsonBuildRuntimeException( e );
+            }
+        }
+    }
+
+    private static class StreamingMappingWriter extends MappingWriter
+    {
+        private final JsonGenerator out;
+
+        StreamingMappingWriter( JsonGenerator out )
+        {
+            this.out = out;
+            try
+            {
+                out.writeStartObject();
+            }
+            catch ( IOException e )
+            {
+                throw new JsonBuildRuntimeException( e );
+            }
+        }
+
+        @Override
+        protected MappingWriter newMapping( String type, String key )
+        {
+            fieldName( key );
+            return new StreamingMappingWriter( out );
+        }
+
+        @Override
+        protected ListWriter newList( String type, String key )
+        {
+            fieldName( key );
+            return new StreamingListWriter( out );
+        }
+
+        private void fieldName( String key )
+        {
+            try
+            {
+                out.writeFieldName( key );
+            }
+            catch ( IOException e )
+            {
+                throw new JsonBuildRuntimeException( e );
+            }
+        }
+
+        @Override
+        protected void writeString( String key, String value )
+        {
+            try
+            {
+                out.writeStringField( key, value );
+            }
+            catch ( IOException e )
+            {
+                throw new JsonBuildRuntimeException( e );
+            }
+        }
+
+        @Override
+        protected void writeInteger( String type, String key, long value )
+        {
+            try
+            {
+                out.writeNumberField( key, value );
+            }
+            catch ( IOException e )
+            {
+                throw new JsonBuildRuntimeException( e );
+            }
+        }
+
+        @Override
+        protected void writeFloatingPointNumber( String type, String key, double value )
+        {
+            try
+            {
+                out.writeNumberField( key, value );
+            }
+            catch ( IOException e )
+            {
+                throw new JsonBuildRuntimeException( e );
+            }
+        }
+
+        @Override
+        protected void writeValue( String type, String key, Object value )
+        {
+            try
+            {
+                out.writeObjectField( key, value );
+            }
+            catch ( IOException e )
+            {
+                throw new JsonBuildRuntimeException( e );
+            }
+        }
+
+        @Override
+        protected void done()
+        {
+            try
+            {
+                out.writeEndObject();
+            }
+            catch ( IOException e )
+            {
+                throw new JsonBuildRuntimeException( e );
+            }
+        }
+    }
+}
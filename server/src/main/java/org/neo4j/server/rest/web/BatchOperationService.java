@@ -19,37 +19,57 @@
  */
 package org.neo4j.server.rest.web;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import javax.servlet.ServletException;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 import org.codehaus.jackson.JsonFactory;
-import org.codehaus.jackson.JsonGenerator;
-import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.JsonParser;
 import org.codehaus.jackson.JsonToken;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.kernel.AbstractGraphDatabase;
+import org.neo4j.kernel.impl.transaction.xaframework.ForceMode;
 import org.neo4j.server.database.Database;
 import org.neo4j.server.rest.domain.BatchOperationFailedException;
+import org.neo4j.server.rest.paging.LeaseManager;
 import org.neo4j.server.rest.repr.BadInputException;
 import org.neo4j.server.rest.repr.BatchOperationResults;
 import org.neo4j.server.rest.repr.OutputFormat;
+import org.neo4j.server.rest.repr.StreamingFormat;
 import org.neo4j.server.web.WebServer;
 
+/**
+ * Executes a list of operations in one transaction. The most common
+ * operations are executed directly, see {@link NativeBatchOperations}, the
+ * rest by invoking the REST API in-process.
+ *
+ * If a streamed response is asked for, see {@link StreamingFormat}, results
+ * are written as the operations complete. A failure then can't change the
+ * status of the response anymore. Instead the transaction is rolled back and
+ * the list of results ends with an element holding the status and message
+ * of the failure.
+ */
 @Path( "/batch" )
 public class BatchOperationService
 {
@@ -59,73 +79,50 @@ public class BatchOperationService
     private static final String BODY_KEY = "body";
     private static final String TO_KEY = "to";
     private static final String[] HEADERS_TO_PASSOVER = { "Authorization" };
+    private static final String UTF8 = "UTF-8";
 
     private static final JsonFactory jsonFactory = new JsonFactory();
-    
+    private static final ObjectMapper mapper = new ObjectMapper();
+
     private final OutputFormat output;
     private final WebServer webServer;
     private final Database database;
+    private final NativeBatchOperations nativeOperations;
 
-    public BatchOperationService(@Context Database database, @Context WebServer webServer, @Context OutputFormat output)
+    public BatchOperationService( @Context Database database, @Context WebServer webServer,
+            @Context OutputFormat output, @Context LeaseManager leaseManager )
     {
         this.output = output;
         this.webServer = webServer;
         this.database = database;
+        this.nativeOperations = new NativeBatchOperations(
+                new DatabaseActions( database, leaseManager, ForceMode.forced ), output );
     }
 
     @POST
-    public Response performBatchOperations( @Context UriInfo uriInfo, @Context HttpHeaders httpHeaders, 
+    public Response performBatchOperations( @Context UriInfo uriInfo, @Context HttpHeaders httpHeaders,
                                             InputStream body ) throws BadInputException
     {
+        if ( output.isStreaming() )
+        {
+            return Response.ok()
+                    .entity( streamBatchOperations( uriInfo, httpHeaders, body ) )
+                    .header( HttpHeaders.CONTENT_ENCODING, UTF8 )
+                    .type( MediaType.APPLICATION_JSON )
+                    .build();
+        }
+
         AbstractGraphDatabase db = database.graph;
 
         Transaction tx = db.beginTx();
         try
         {
-            JsonParser jp = jsonFactory.createJsonParser(body);
-            ObjectMapper mapper = new ObjectMapper();
-            
             BatchOperationResults results = new BatchOperationResults();
-            
-            JsonToken token;
-            String field;
-            String jobMethod, jobPath, jobBody;
-            Integer jobId;
-
-            // TODO: Perhaps introduce a simple DSL for 
-            // deserializing streamed JSON?
-            while( (token = jp.nextToken()) != null) {
-                 if(token == JsonToken.START_OBJECT) {
-                     jobMethod = jobPath = jobBody = "";
-                     jobId = null;
-                     while( (token = jp.nextToken()) != JsonToken.END_OBJECT && token != null) {
-                         field = jp.getText();
-                         token = jp.nextToken();
-                         if(field.equals(METHOD_KEY)) {
-                             jobMethod = jp.getText().toUpperCase();
-                         } else if(field.equals(TO_KEY)) {
-                             jobPath = jp.getText();
-                         } else if(field.equals(ID_KEY)) {
-                             jobId = jp.getIntValue();
-                         } else if(field.equals(BODY_KEY)) {
-                            JsonNode node = mapper.readTree(jp);
-                            StringWriter out = new StringWriter();
-                            JsonGenerator gen = jsonFactory.createJsonGenerator(out);
-                            mapper.writeTree(gen, node);
-                            gen.flush();
-                            gen.close();
-                            jobBody = out.toString();
-                         }
-                     }
-
-                     // Read one job description. Execute it.
-                     performJob(results, uriInfo, jobMethod, jobPath, jobBody, jobId, httpHeaders);
-                 }
-            }
+            performJobs( results, uriInfo, httpHeaders, body );
 
             Response res = Response.ok()
                     .entity( results.toJSON() )
-                    .header( HttpHeaders.CONTENT_ENCODING, "UTF-8" )
+                    .header( HttpHeaders.CONTENT_ENCODING, UTF8 )
                     .type( MediaType.APPLICATION_JSON )
                     .build();
 
@@ -143,7 +140,80 @@ public class BatchOperationService
         }
     }
 
-    private void performJob( BatchOperationResults results, UriInfo uriInfo, String method, String path, String body, 
+    private StreamingOutput streamBatchOperations( final UriInfo uriInfo, final HttpHeaders httpHeaders,
+            final InputStream body )
+    {
+        return new StreamingOutput()
+        {
+            @Override
+            public void write( OutputStream out ) throws IOException, WebApplicationException
+            {
+                Writer writer = new BufferedWriter( new OutputStreamWriter( out, UTF8 ) );
+                BatchOperationResults results = new BatchOperationResults( writer );
+                Transaction tx = database.graph.beginTx();
+                try
+                {
+                    performJobs( results, uriInfo, httpHeaders, body );
+                    tx.success();
+                }
+                catch ( BatchOperationFailedException e )
+                {
+                    tx.failure();
+                    results.addFailure( e.getStatus(), e.getMessage() );
+                }
+                catch ( Exception e )
+                {
+                    tx.failure();
+                    results.addFailure( Status.INTERNAL_SERVER_ERROR.getStatusCode(), e.toString() );
+                }
+                finally
+                {
+                    tx.finish();
+                }
+                results.finish();
+            }
+        };
+    }
+
+    private void performJobs( BatchOperationResults results, UriInfo uriInfo, HttpHeaders httpHeaders,
+            InputStream body ) throws IOException, ServletException
+    {
+        JsonParser jp = jsonFactory.createJsonParser( body );
+
+        JsonToken token;
+        String field;
+        String jobMethod, jobPath;
+        Object jobBody;
+        Integer jobId;
+
+        // TODO: Perhaps introduce a simple DSL for
+        // deserializing streamed JSON?
+        while( (token = jp.nextToken()) != null) {
+             if(token == JsonToken.START_OBJECT) {
+                 jobMethod = jobPath = "";
+                 jobBody = null;
+                 jobId = null;
+                 while( (token = jp.nextToken()) != JsonToken.END_OBJECT && token != null) {
+                     field = jp.getText();
+                     token = jp.nextToken();
+                     if(field.equals(METHOD_KEY)) {
+                         jobMethod = jp.getText().toUpperCase();
+                     } else if(field.equals(TO_KEY)) {
+                         jobPath = jp.getText();
+                     } else if(field.equals(ID_KEY)) {
+                         jobId = jp.getIntValue();
+                     } else if(field.equals(BODY_KEY)) {
+                         jobBody = mapper.readValue( jp, Object.class );
+                     }
+                 }
+
+                 // Read one job description. Execute it.
+                 performJob(results, uriInfo, jobMethod, jobPath, jobBody, jobId, httpHeaders);
+             }
+        }
+    }
+
+    private void performJob( BatchOperationResults results, UriInfo uriInfo, String method, String path, Object body,
                              Integer id, HttpHeaders httpHeaders )
             throws IOException, ServletException
     {
@@ -154,7 +224,14 @@ public class BatchOperationService
 
         URI targetUri = calculateTargetUri( uriInfo, path );
 
-        InternalJettyServletRequest req = new InternalJettyServletRequest(method, targetUri.toString(), body );
+        if ( targetUri.getRawQuery() == null
+             && nativeOperations.perform( results, method, relativePath( uriInfo, targetUri ), body, path, id ) )
+        {
+            return;
+        }
+
+        String jsonBody = body == null ? "" : mapper.writeValueAsString( body );
+        InternalJettyServletRequest req = new InternalJettyServletRequest(method, targetUri.toString(), jsonBody );
         InternalJettyServletResponse res = new InternalJettyServletResponse();
         addHeaders(req, httpHeaders);
 
@@ -171,7 +248,18 @@ public class BatchOperationService
                     .toString() );
         }
     }
-    
+
+    private String relativePath( UriInfo serverUriInfo, URI targetUri )
+    {
+        String basePath = serverUriInfo.getBaseUri().getRawPath();
+        String targetPath = targetUri.getRawPath();
+        if ( basePath.endsWith( "/" ) )
+        {
+            basePath = basePath.substring( 0, basePath.length() - 1 );
+        }
+        return targetPath.startsWith( basePath ) ? targetPath.substring( basePath.length() ) : targetPath;
+    }
+
     private void addHeaders(final InternalJettyServletRequest res, final HttpHeaders httpHeaders)
     {
         for ( String header : HEADERS_TO_PASSOVER)
@@ -201,15 +289,72 @@ public class BatchOperationService
         return baseUri.resolve( "." + requestedPath );
     }
 
+    @SuppressWarnings( "unchecked" )
+    private Object replaceLocationPlaceholders( Object value, Map<Integer, String> locations )
+    {
+        if ( locations.isEmpty() )
+        {
+            return value;
+        }
+        if ( value instanceof String )
+        {
+            return replaceLocationPlaceholders( (String) value, locations );
+        }
+        if ( value instanceof Map )
+        {
+            Map<String, Object> replaced = new LinkedHashMap<String, Object>();
+            for ( Map.Entry<String, Object> entry : ( (Map<String, Object>) value ).entrySet() )
+            {
+                replaced.put( replaceLocationPlaceholders( entry.getKey(), locations ),
+                        replaceLocationPlaceholders( entry.getValue(), locations ) );
+            }
+            return replaced;
+        }
+        if ( value instanceof List )
+        {
+            List<Object> replaced = new ArrayList<Object>();
+            for ( Object item : (List<Object>) value )
+            {
+                replaced.add( replaceLocationPlaceholders( item, locations ) );
+            }
+            return replaced;
+        }
+        return value;
+    }
+
+    /**
+     * Replaces each {[ID]} with the location of the job with that id, looking
+     * only at the placeholders in the string rather than at every location.
+     */
     private String replaceLocationPlaceholders( String str, Map<Integer, String> locations )
     {
-        // TODO: Potential memory-hog on big requests, write smarter
-        // implementation.
-        for ( Integer jobId : locations.keySet() )
+        int open = str.indexOf( '{' );
+        if ( open == -1 )
+        {
+            return str;
+        }
+        StringBuilder result = new StringBuilder( str.length() + 64 );
+        int copied = 0;
+        while ( open != -1 )
         {
-            str = str.replace( "{" + jobId + "}", locations.get( jobId ) );
+            int close = open + 1;
+            while ( close < str.length() && Character.isDigit( str.charAt( close ) ) )
+            {
+                close++;
+            }
+            String location = null;
+            if ( close > open + 1 && close < str.length() && str.charAt( close ) == '}' && close - open < 11 )
+            {
+                location = locations.get( Integer.valueOf( str.substring( open + 1, close ) ) );
+            }
+            if ( location != null )
+            {
+                result.append( str, copied, open ).append( location );
+                copied = close + 1;
+            }
+            open = str.indexOf( '{', open + 1 );
         }
-        return str;
+        return result.append( str, copied, str.length() ).toString();
     }
 
     private boolean is2XXStatusCode( int statusCode )
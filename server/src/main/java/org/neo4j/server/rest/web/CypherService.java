@@ -19,17 +19,31 @@
  */
 package org.neo4j.server.rest.web;
 
+import java.net.URI;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
 
 import org.neo4j.cypher.javacompat.ExecutionEngine;
 import org.neo4j.cypher.javacompat.ExecutionResult;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.kernel.guard.GuardException;
 import org.neo4j.server.database.Database;
+import org.neo4j.server.rest.paging.Lease;
+import org.neo4j.server.rest.paging.LeaseManager;
+import org.neo4j.server.rest.paging.PagedExecutionResult;
 import org.neo4j.server.rest.repr.BadInputException;
 import org.neo4j.server.rest.repr.CypherResultRepresentation;
 import org.neo4j.server.rest.repr.InputFormat;
@@ -41,19 +55,27 @@ public class CypherService {
     private static final String PARAMS_KEY = "params";
     private static final String QUERY_KEY = "query";
 
+    private static final String PATH_PAGED = "/paged";
+    private static final String PATH_PAGED_RESULT = PATH_PAGED + "/{resultId}";
+    private static final String SIXTY_SECONDS = "60";
+    private static final String FIFTY = "50";
+
     private ExecutionEngine executionEngine;
     private OutputFormat output;
     private InputFormat input;
+    private LeaseManager leases;
+    private UriInfo uriInfo;
 
-    public CypherService(@Context Database database, @Context InputFormat input,
-            @Context OutputFormat output) {
+    public CypherService(@Context UriInfo uriInfo, @Context Database database, @Context InputFormat input,
+            @Context OutputFormat output, @Context LeaseManager leases) {
+        this.uriInfo = uriInfo;
         this.executionEngine = new ExecutionEngine(database.graph);
         this.input = input;
         this.output = output;
+        this.leases = leases;
     }
     
     @POST
-    @SuppressWarnings({ "unchecked" })
     public Response cypher(String body) throws BadInputException {
         Map<String,Object> command = input.readMap( body );
         
@@ -61,14 +83,97 @@ public class CypherService {
             return output.badRequest(new BadInputException( "You have to provide the 'query' parameter." ));
         }
         
-        String query =  (String) command.get(QUERY_KEY);
-        Map<String,Object> params = (Map<String, Object>) (command.containsKey(PARAMS_KEY) ? command.get(PARAMS_KEY) : new HashMap<String, Object>());
         try {
-            ExecutionResult result = executionEngine.execute(  query, params );
+            ExecutionResult result = execute( command );
             return output.ok(new CypherResultRepresentation( result ));
+        } catch(GuardException e) {
+            throw e;
+        } catch(Exception e) {
+            return output.badRequest(e);
+        }
+    }
+
+    /**
+     * Runs the query and leases out its result, which is then read a page at
+     * a time from the location of the created result. The first page is
+     * returned right away.
+     */
+    @POST
+    @Path( PATH_PAGED )
+    public Response createPagedResult(@QueryParam( "pageSize" ) @DefaultValue( FIFTY ) int pageSize,
+            @QueryParam( "leaseTime" ) @DefaultValue( SIXTY_SECONDS ) int leaseTimeInSeconds, String body)
+            throws BadInputException {
+        Map<String,Object> command = input.readMap( body );
+
+        if( !command.containsKey(QUERY_KEY) ) {
+            return output.badRequest(new BadInputException( "You have to provide the 'query' parameter." ));
+        }
+        if( pageSize < 1 ) {
+            return output.badRequest(new BadInputException( "Page size less than 1 is not permitted" ));
+        }
+        if( leaseTimeInSeconds < 1 ) {
+            return output.badRequest(new BadInputException( "Lease time less than 1 second is not supported" ));
+        }
+
+        PagedExecutionResult result;
+        try {
+            result = new PagedExecutionResult( execute( command ), pageSize );
+        } catch(GuardException e) {
+            throw e;
         } catch(Exception e) {
             return output.badRequest(e);
         }
+
+        String resultId = leases.createLease( leaseTimeInSeconds, result ).getId();
+        URI location = uriInfo.getBaseUri().resolve( "cypher" + PATH_PAGED + "/" + resultId );
+        return Response.created( location )
+                .entity( output.format( nextPage( result ) ) )
+                .type( output.getMediaType() )
+                .build();
+    }
+
+    @GET
+    @Path( PATH_PAGED_RESULT )
+    public Response pagedResult(@PathParam( "resultId" ) String resultId) {
+        Lease lease = leases.getLeaseById( resultId );
+        if( lease == null || !(lease.leasedItem instanceof PagedExecutionResult) ) {
+            return output.notFound( new NotFoundException( String.format(
+                    "The paged result with id [%s] was not found", resultId ) ) );
+        }
+
+        PagedExecutionResult result = (PagedExecutionResult) lease.getLeasedItemAndRenewLease();
+        if( !result.hasNext() ) {
+            leases.remove( resultId );
+            return output.notFound( new NotFoundException( String.format(
+                    "The paged result with id [%s] has been fully enumerated", resultId ) ) );
+        }
+        return output.ok( nextPage( result ) );
+    }
+
+    @DELETE
+    @Path( PATH_PAGED_RESULT )
+    public Response removePagedResult(@PathParam( "resultId" ) String resultId) {
+        Lease lease = leases.getLeaseById( resultId );
+        if( lease == null || !(lease.leasedItem instanceof PagedExecutionResult) ) {
+            return output.notFound();
+        }
+        leases.remove( resultId );
+        return Response.ok().build();
+    }
+
+    private CypherResultRepresentation nextPage( PagedExecutionResult result ) {
+        List<Map<String,Object>> rows = result.next();
+        if( rows == null ) {
+            rows = Collections.emptyList();
+        }
+        return new CypherResultRepresentation( result.columns(), rows );
+    }
+
+    @SuppressWarnings({ "unchecked" })
+    private ExecutionResult execute( Map<String,Object> command ) {
+        String query =  (String) command.get(QUERY_KEY);
+        Map<String,Object> params = (Map<String, Object>) (command.containsKey(PARAMS_KEY) ? command.get(PARAMS_KEY) : new HashMap<String, Object>());
+        return executionEngine.execute(  query, params );
     }
     
 }
@@ -1244,13 +1244,13 @@ public class DatabaseActions
             TraverserReturnType returnType )
     {
         Lease lease = leases.getLeaseById( traverserId );
-        if ( lease == null )
+        if ( lease == null || !( lease.leasedItem instanceof PagedTraverser ) )
         {
             throw new NotFoundException( String.format(
                     "The traverser with id [%s] was not found", traverserId ) );
         }
 
-        PagedTraverser traverser = lease.getLeasedItemAndRenewLease();
+        PagedTraverser traverser = (PagedTraverser) lease.getLeasedItemAndRenewLease();
         List<Path> paths = traverser.next();
 
         List<Representation> result = new ArrayList<Representation>();
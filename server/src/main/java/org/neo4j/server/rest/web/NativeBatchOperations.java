@@ -0,0 +1,250 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.web;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.Collections;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.ws.rs.core.Response.Status;
+
+import org.neo4j.server.rest.domain.BatchOperationFailedException;
+import org.neo4j.server.rest.domain.EndNodeNotFoundException;
+import org.neo4j.server.rest.domain.JsonHelper;
+import org.neo4j.server.rest.domain.StartNodeNotFoundException;
+import org.neo4j.server.rest.repr.BadInputException;
+import org.neo4j.server.rest.repr.BatchOperationResults;
+import org.neo4j.server.rest.repr.DefaultFormat;
+import org.neo4j.server.rest.repr.EntityRepresentation;
+import org.neo4j.server.rest.repr.ExceptionRepresentation;
+import org.neo4j.server.rest.repr.OutputFormat;
+import org.neo4j.server.rest.repr.Representation;
+
+/**
+ * Executes the most common batch operations (creating nodes and
+ * relationships, setting properties and adding to indexes) directly against
+ * {@link DatabaseActions}, with the same results and failure statuses as the
+ * REST endpoints for them, but without emulating an HTTP request for each.
+ * Operations it doesn't recognize are left to the caller.
+ */
+class NativeBatchOperations
+{
+    private static final Pattern NODES = Pattern.compile( "/node/?" );
+    private static final Pattern NODE = Pattern.compile( "/node/(\\d+)/?" );
+    private static final Pattern NODE_RELATIONSHIPS = Pattern.compile( "/node/(\\d+)/relationships/?" );
+    private static final Pattern NODE_PROPERTIES = Pattern.compile( "/node/(\\d+)/properties/?" );
+    private static final Pattern NODE_PROPERTY = Pattern.compile( "/node/(\\d+)/properties/([^/]+)" );
+    private static final Pattern RELATIONSHIP = Pattern.compile( "/relationship/(\\d+)/?" );
+    private static final Pattern RELATIONSHIP_PROPERTIES = Pattern.compile( "/relationship/(\\d+)/properties/?" );
+    private static final Pattern RELATIONSHIP_PROPERTY = Pattern.compile( "/relationship/(\\d+)/properties/([^/]+)" );
+    private static final Pattern NODE_INDEX = Pattern.compile( "/index/node/([^/]+)/?" );
+    private static final Pattern RELATIONSHIP_INDEX = Pattern.compile( "/index/relationship/([^/]+)/?" );
+
+    private final DatabaseActions actions;
+    private final OutputFormat output;
+
+    NativeBatchOperations( DatabaseActions actions, OutputFormat output )
+    {
+        this.actions = actions;
+        this.output = output;
+    }
+
+    /**
+     * @param path the raw path of the operation, relative to the REST API
+     *            root and without a query string.
+     * @return {@code false} if the operation wasn't recognized and nothing
+     *         was done.
+     * @throws BatchOperationFailedException if the operation failed.
+     */
+    boolean perform( BatchOperationResults results, String method, String path, Object body, String from,
+            Integer id ) throws IOException
+    {
+        try
+        {
+            Representation result = null;
+            Matcher matcher;
+            if ( "POST".equals( method ) )
+            {
+                if ( NODES.matcher( path ).matches() )
+                {
+                    result = actions.createNode( map( body ) );
+                }
+                else if ( ( matcher = NODE_RELATIONSHIPS.matcher( path ) ).matches() )
+                {
+                    Map<String, Object> data = map( body );
+                    result = actions.createRelationship( id( matcher ), endNodeId( (String) data.get( "to" ) ),
+                            (String) data.get( "type" ), map( data.get( "data" ) ) );
+                }
+                else if ( ( matcher = NODE_INDEX.matcher( path ) ).matches() )
+                {
+                    Map<String, Object> entity = DefaultFormat.validateKeys( map( body ), "key", "value", "uri" );
+                    result = actions.addToNodeIndex( decode( matcher.group( 1 ) ),
+                            String.valueOf( entity.get( "key" ) ), String.valueOf( entity.get( "value" ) ),
+                            idFromUri( entity.get( "uri" ).toString() ) );
+                }
+                else if ( ( matcher = RELATIONSHIP_INDEX.matcher( path ) ).matches() )
+                {
+                    Map<String, Object> entity = DefaultFormat.validateKeys( map( body ), "key", "value", "uri" );
+                    result = actions.addToRelationshipIndex( decode( matcher.group( 1 ) ),
+                            String.valueOf( entity.get( "key" ) ), String.valueOf( entity.get( "value" ) ),
+                            idFromUri( entity.get( "uri" ).toString() ) );
+                }
+                else
+                {
+                    return false;
+                }
+            }
+            else if ( "PUT".equals( method ) )
+            {
+                if ( ( matcher = NODE_PROPERTIES.matcher( path ) ).matches() )
+                {
+                    actions.setAllNodeProperties( id( matcher ), map( body ) );
+                }
+                else if ( ( matcher = NODE_PROPERTY.matcher( path ) ).matches() )
+                {
+                    actions.setNodeProperty( id( matcher ), decode( matcher.group( 2 ) ), body );
+                }
+                else if ( ( matcher = RELATIONSHIP_PROPERTIES.matcher( path ) ).matches() )
+                {
+                    actions.setAllRelationshipProperties( id( matcher ), map( body ) );
+                }
+                else if ( ( matcher = RELATIONSHIP_PROPERTY.matcher( path ) ).matches() )
+                {
+                    actions.setRelationshipProperty( id( matcher ), decode( matcher.group( 2 ) ), body );
+                }
+                else
+                {
+                    return false;
+                }
+            }
+            else if ( "GET".equals( method ) )
+            {
+                if ( ( matcher = NODE.matcher( path ) ).matches() )
+                {
+                    result = actions.getNode( id( matcher ) );
+                }
+                else if ( ( matcher = RELATIONSHIP.matcher( path ) ).matches() )
+                {
+                    result = actions.getRelationship( id( matcher ) );
+                }
+                else
+                {
+                    return false;
+                }
+            }
+            else
+            {
+                return false;
+            }
+
+            String location = null;
+            if ( result instanceof EntityRepresentation && !"GET".equals( method ) )
+            {
+                location = output.format( ( (EntityRepresentation) result ).selfUri() );
+            }
+            results.addOperationResult( from, id, result == null ? null : output.format( result ), location );
+            return true;
+        }
+        catch ( BadInputException e )
+        {
+            throw failure( Status.BAD_REQUEST, e );
+        }
+        catch ( ClassCastException e )
+        {
+            throw failure( Status.BAD_REQUEST, e );
+        }
+        catch ( ArrayStoreException e )
+        {
+            // Same message as the plain text response of the REST endpoints
+            throw new BatchOperationFailedException( Status.BAD_REQUEST.getStatusCode(),
+                    "Invalid JSON array in POST body: " + JsonHelper.createJsonFrom( body ) );
+        }
+        catch ( EndNodeNotFoundException e )
+        {
+            throw failure( Status.BAD_REQUEST, e );
+        }
+        catch ( StartNodeNotFoundException e )
+        {
+            throw failure( Status.NOT_FOUND, e );
+        }
+        catch ( NodeNotFoundException e )
+        {
+            throw failure( Status.NOT_FOUND, e );
+        }
+        catch ( RelationshipNotFoundException e )
+        {
+            throw failure( Status.NOT_FOUND, e );
+        }
+    }
+
+    private BatchOperationFailedException failure( Status status, Throwable cause )
+    {
+        return new BatchOperationFailedException( status.getStatusCode(),
+                output.format( new ExceptionRepresentation( cause ) ) );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private static Map<String, Object> map( Object body ) throws BadInputException
+    {
+        if ( body == null ) return Collections.emptyMap();
+        if ( !( body instanceof Map ) ) throw new BadInputException( "Expected a map, but got: " + body );
+        return (Map<String, Object>) body;
+    }
+
+    private static long id( Matcher matcher )
+    {
+        return Long.parseLong( matcher.group( 1 ) );
+    }
+
+    private static long endNodeId( String uri ) throws BadInputException
+    {
+        if ( uri == null ) throw new BadInputException( "Missing required key: \"to\"" );
+        return idFromUri( uri );
+    }
+
+    private static long idFromUri( String uri ) throws BadInputException
+    {
+        try
+        {
+            return Long.parseLong( uri.substring( uri.lastIndexOf( "/" ) + 1 ) );
+        }
+        catch ( NumberFormatException e )
+        {
+            throw new BadInputException( e );
+        }
+    }
+
+    private static String decode( String segment )
+    {
+        try
+        {
+            // Path segments are percent encoded, a plus sign is just a plus sign
+            return URLDecoder.decode( segment.replace( "+", "%2B" ), "UTF-8" );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new RuntimeException( "UTF-8 is not supported", e );
+        }
+    }
+}
@@ -76,6 +76,9 @@ public class RrdFactory
 //                new RequestBytesSampleable( db ),
 //                new RequestMeanTimeSampleable( db ),
 //                new RequestMedianTimeSampleable( db ),
+//                new RequestPercentileTimeSampleable( db, 90 ),
+//                new RequestPercentileTimeSampleable( db, 99 ),
+//                new RequestPercentileTimeSampleable( db, 99.9 ),
 //                new RequestMaxTimeSampleable( db ),
 //                new RequestMinTimeSampleable( db ),
 //                new RequestCountSampleable( db )
@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rrd.sampler;
+
+import org.neo4j.server.database.Database;
+import org.rrd4j.DsType;
+
+public class RequestPercentileTimeSampleable extends StatisticSampleableBase
+{
+    private final double percentile;
+    private final String name;
+
+    /**
+     * @param percentile between 0 and 100, e.g. 99.9 is sampled as
+     *            <code>request_p999_time</code>.
+     */
+    public RequestPercentileTimeSampleable( Database db, double percentile )
+    {
+        super( db, DsType.ABSOLUTE );
+        this.percentile = percentile;
+        String label = percentile == Math.floor( percentile ) ? String.valueOf( (long) percentile )
+                : String.valueOf( percentile ).replace( ".", "" );
+        this.name = "request_p" + label + "_time";
+    }
+
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public double getValue()
+    {
+        return getCurrentSnapshot().getDuration().getPercentile( percentile );
+    }
+}
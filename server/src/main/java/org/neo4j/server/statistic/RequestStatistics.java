@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.statistic;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+public class RequestStatistics implements RequestStatisticsMXBean
+{
+    private final StatisticCollector collector;
+
+    public RequestStatistics( StatisticCollector collector )
+    {
+        this.collector = collector;
+    }
+
+    private StatisticRecord snapshot()
+    {
+        return collector.currentSnapshot();
+    }
+
+    public long getPeriod()
+    {
+        return snapshot().getPeriod();
+    }
+
+    public long getRequestCount()
+    {
+        return snapshot().getRequests();
+    }
+
+    public double getMeanTime()
+    {
+        return snapshot().getDuration().getAvg();
+    }
+
+    public double getMedianTime()
+    {
+        return snapshot().getDuration().getMedian();
+    }
+
+    public double getP90Time()
+    {
+        return snapshot().getDuration().getP90();
+    }
+
+    public double getP99Time()
+    {
+        return snapshot().getDuration().getP99();
+    }
+
+    public double getP999Time()
+    {
+        return snapshot().getDuration().getP999();
+    }
+
+    public double getMaxTime()
+    {
+        return snapshot().getDuration().getMax();
+    }
+
+    public double getMeanBytes()
+    {
+        return snapshot().getSize().getAvg();
+    }
+
+    public Map<String, Long> getEndpointRequestCounts()
+    {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for ( Map.Entry<String, StatisticData> endpoint : snapshot().getEndpointDurations().entrySet() )
+        {
+            result.put( endpoint.getKey(), endpoint.getValue().getCount() );
+        }
+        return result;
+    }
+
+    public Map<String, Double> getEndpointP99Times()
+    {
+        Map<String, Double> result = new TreeMap<String, Double>();
+        for ( Map.Entry<String, StatisticData> endpoint : snapshot().getEndpointDurations().entrySet() )
+        {
+            result.put( endpoint.getKey(), endpoint.getValue().getP99() );
+        }
+        return result;
+    }
+}
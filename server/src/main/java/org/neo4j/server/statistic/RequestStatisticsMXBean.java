@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.statistic;
+
+import java.util.Map;
+
+/**
+ * Request statistics of the last period of a {@link StatisticCollector}.
+ * Times are in milliseconds.
+ */
+public interface RequestStatisticsMXBean
+{
+    String NAME = "Request statistics";
+
+    long getPeriod();
+
+    long getRequestCount();
+
+    double getMeanTime();
+
+    double getMedianTime();
+
+    double getP90Time();
+
+    double getP99Time();
+
+    double getP999Time();
+
+    double getMaxTime();
+
+    double getMeanBytes();
+
+    Map<String, Long> getEndpointRequestCounts();
+
+    Map<String, Double> getEndpointP99Times();
+}
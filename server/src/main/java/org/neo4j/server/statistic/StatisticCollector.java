@@ -19,25 +19,46 @@
  */
 package org.neo4j.server.statistic;
 
-import org.neo4j.server.logging.Logger;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * statistics-collector will keep n-statistic records
+ * <p>
+ * Recording is lock free, durations and sizes go into histograms striped by
+ * thread. Durations are also broken down per endpoint, up to
+ * {@link #MAX_ENDPOINTS} of them, after which they are counted as
+ * {@link #OTHER_ENDPOINTS}.
  *
  * @author tbaum
  * @since 31.05.11 20:23
  */
 public class StatisticCollector
 {
+    public static final String OTHER_ENDPOINTS = "other";
+    static final int MAX_ENDPOINTS = 128;
+    /**
+     * How often the server takes a new snapshot with {@link #createSnapshot()}.
+     */
+    public static final long SNAPSHOT_PERIOD = 60 * 1000;
+
+    private static final double MICROS_PER_MILLI = 1000.0;
+    private static final int STRIPES = Math.min( 16, Runtime.getRuntime().availableProcessors() );
+    private static final int ENDPOINT_STRIPES = Math.min( 4, STRIPES );
 
-    private static final Logger LOG = Logger.getLogger( StatisticCollector.class );
+    private final StripedHistogram duration = new StripedHistogram( STRIPES );
+    private final StripedHistogram size = new StripedHistogram( STRIPES );
+    private final ConcurrentMap<String, StripedHistogram> endpoints =
+            new ConcurrentHashMap<String, StripedHistogram>();
 
-    private volatile long start = System.currentTimeMillis();
-    private volatile long count = 0;
-    private volatile StatisticData currentSize = new StatisticData();
-    private volatile StatisticData currentDuration = new StatisticData();
-    private StatisticRecord snapshot = createSnapshot();
+    private long start = System.currentTimeMillis();
+    private volatile StatisticRecord snapshot = createSnapshot();
 
+    /**
+     * @return the snapshot last taken with {@link #createSnapshot()}.
+     */
     public StatisticRecord currentSnapshot()
     {
         return snapshot;
@@ -45,38 +66,65 @@ public class StatisticCollector
 
     public synchronized StatisticRecord createSnapshot()
     {
-        final StatisticData previousDuration, previousSize;
-        final long timeStamp, period, previousCount, previousStart;
+        final long timeStamp = System.currentTimeMillis();
+        final long period = timeStamp - start;
+        start = timeStamp;
 
-        synchronized (this)
+        StatisticData durationData = duration.snapshot( MICROS_PER_MILLI );
+        StatisticData sizeData = size.snapshot( 1 );
+        Map<String, StatisticData> endpointData = new TreeMap<String, StatisticData>();
+        for ( Map.Entry<String, StripedHistogram> endpoint : endpoints.entrySet() )
         {
-            previousDuration = currentDuration.copy();
-            previousSize = currentSize.copy();
-            previousCount = count;
-            previousStart = start;
-
-            currentDuration = new StatisticData();
-            currentSize = new StatisticData();
-            start = System.currentTimeMillis();
-            count = 0;
-
-            timeStamp = start;
-            period = ( start - previousStart );
+            endpointData.put( endpoint.getKey(), endpoint.getValue().snapshot( MICROS_PER_MILLI ) );
         }
 
-        return snapshot = new StatisticRecord( timeStamp, period, previousCount, previousDuration, previousSize );
+        return snapshot = new StatisticRecord( timeStamp, period, durationData.getCount(),
+                durationData, sizeData, endpointData );
     }
 
     /**
      * add one datapoint for statistics
      *
-     * @param time duration of the request
+     * @param time duration of the request in milliseconds
      * @param size size in bytes of the request
      */
-    public synchronized void update( final double time, final long size )
+    public void update( final double time, final long size )
     {
-        currentDuration.addValue( time );
-        currentSize.addValue( size );
-        count++;
+        update( null, (long) ( time * 1000000 ), size );
+    }
+
+    /**
+     * add one datapoint for statistics
+     *
+     * @param endpoint what was requested, or {@code null} to only count the
+     *            request in the totals
+     * @param nanos duration of the request in nanoseconds
+     * @param size size in bytes of the request
+     */
+    public void update( final String endpoint, final long nanos, final long size )
+    {
+        long micros = nanos / 1000;
+        duration.record( micros );
+        this.size.record( size );
+        if ( endpoint != null )
+        {
+            endpoint( endpoint ).record( micros );
+        }
+    }
+
+    private StripedHistogram endpoint( String name )
+    {
+        StripedHistogram histogram = endpoints.get( name );
+        if ( histogram != null ) return histogram;
+
+        if ( endpoints.size() >= MAX_ENDPOINTS )
+        {
+            name = OTHER_ENDPOINTS;
+            histogram = endpoints.get( name );
+            if ( histogram != null ) return histogram;
+        }
+        histogram = new StripedHistogram( ENDPOINT_STRIPES );
+        StripedHistogram existing = endpoints.putIfAbsent( name, histogram );
+        return existing != null ? existing : histogram;
     }
 }
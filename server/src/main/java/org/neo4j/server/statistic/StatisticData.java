@@ -22,124 +22,118 @@ package org.neo4j.server.statistic;
 import java.io.Serializable;
 
 /**
- * storage-class to collect general statistic-data.
+ * Statistics over the values recorded in one period, read from a log-linear
+ * histogram. Percentiles are exact to within the bucket width of the
+ * histogram, which is at most 1/32 of the value.
  *
  * @author tbaum
  * @since 19.05.11 18:07
  */
 public class StatisticData implements Serializable
 {
-    private static final long serialVersionUID = 1006656694124740870L;
-    
-    private static final int MEDIAN_MAX = 3000;
-    private int[] requests = new int[MEDIAN_MAX];
-    private int count = 0;
-    private double sum = 0;
-    private double sumSq = 0;
-    private double min = 0;
-    private double max = 0;
-
-    public StatisticData()
+    private static final long serialVersionUID = 2006656694124740870L;
+
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long min;
+    private final long max;
+    private final double scale;
+
+    StatisticData( double scale )
     {
+        this( new long[0], 0, 0, 0, 0, scale );
     }
 
-    private StatisticData( int count, double sum, double sumSq, double min,
-                           double max, int[] requests )
+    StatisticData( long[] counts, long count, long sum, long min, long max, double scale )
     {
+        this.counts = counts;
         this.count = count;
         this.sum = sum;
-        this.sumSq = sumSq;
         this.min = min;
         this.max = max;
-        System.arraycopy( requests, 0, this.requests, 0, MEDIAN_MAX );
+        this.scale = scale;
     }
 
+    public long getCount()
+    {
+        return count;
+    }
 
     public double getAvg()
     {
-        double avg = 0;
-        if ( count > 1 )
-        {
-            avg = sum / count;
-        }
-        return avg;
+        return count > 0 ? sum / scale / count : 0;
     }
 
-    private double getVar()
+    public double getMedian()
     {
-        double var = 0;
-        if ( count > 2 )
-        {
-            var = Math.sqrt( ( sumSq - sum * sum / count ) / ( count - 1 ) );
-        }
-        return var;
+        return getPercentile( 50 );
     }
 
-    public int getMedian()
+    public double getP90()
     {
-        int c = 0;
-        int medianPoint = count / 2;
-        for ( int i = 0; i < MEDIAN_MAX; i++ )
-        {
-            c += requests[i];
-            if ( c >= medianPoint )
-            {
-                return i;
-            }
-        }
-        return MEDIAN_MAX;
+        return getPercentile( 90 );
     }
 
-    @Override
-    public String toString()
+    public double getP99()
     {
-        return "StatisticData{" +
-                "count=" + count +
-                ", sum=" + sum +
-                ", min=" + min +
-                ", max=" + max +
-                ", avg=" + getAvg() +
-                ", var=" + getVar() +
-                ", median=" + getMedian() +
-                '}';
+        return getPercentile( 99 );
     }
 
-
-    public StatisticData copy()
+    public double getP999()
     {
-        return new StatisticData( count, sum, sumSq, min, max, requests );
+        return getPercentile( 99.9 );
     }
 
-    public void addValue( double value )
+    /**
+     * @param percentile between 0 and 100.
+     * @return the highest value in the bucket holding the given percentile,
+     *         never more than the largest value recorded.
+     */
+    public double getPercentile( double percentile )
     {
-        min = count > 0 && min < value ? min : value;
-        max = count > 0 && max > value ? max : value;
-
-        count += 1;
-        sum += value;
-        sumSq += value * value;
-
-        int v = value >= MEDIAN_MAX ? MEDIAN_MAX - 1 :
-                value < 0 ? 0 :
-                        (int) value;
-
-        requests[v]++;
+        if ( count == 0 ) return 0;
+        long rank = Math.max( 1, (long) Math.ceil( percentile / 100.0 * count ) );
+        long seen = 0;
+        for ( int i = 0; i < counts.length; i++ )
+        {
+            seen += counts[i];
+            if ( seen >= rank )
+            {
+                return Math.min( StripedHistogram.highestValueIn( i ), max ) / scale;
+            }
+        }
+        return max / scale;
     }
 
     public double getMin()
     {
-        return min;
+        return min / scale;
     }
 
     public double getMax()
     {
-        return max;
+        return max / scale;
     }
 
     public double getSum()
     {
-        return sum;
+        return sum / scale;
     }
-}
-
 
+    @Override
+    public String toString()
+    {
+        return "StatisticData{" +
+                "count=" + count +
+                ", sum=" + getSum() +
+                ", min=" + getMin() +
+                ", max=" + getMax() +
+                ", avg=" + getAvg() +
+                ", median=" + getMedian() +
+                ", p90=" + getP90() +
+                ", p99=" + getP99() +
+                ", p999=" + getP999() +
+                '}';
+    }
+}
@@ -30,6 +30,7 @@ import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.ServletResponseWrapper;
+import javax.servlet.http.HttpServletRequest;
 
 import org.mortbay.jetty.Response;
 
@@ -56,16 +57,76 @@ public class StatisticFilter implements Filter
     public void doFilter( ServletRequest request, ServletResponse response,
                           FilterChain chain ) throws IOException, ServletException
     {
-        final Long start = nanoTime();
+        final long start = nanoTime();
         try
         {
             chain.doFilter( request, response );
         } finally
         {
-            collector.update( ( nanoTime() - start ) / 1000000.0, getResponseSize( response ) );
+            collector.update( endpoint( request ), nanoTime() - start, getResponseSize( response ) );
         }
     }
 
+    private String endpoint( final ServletRequest request )
+    {
+        if ( request instanceof HttpServletRequest )
+        {
+            HttpServletRequest http = (HttpServletRequest) request;
+            return endpoint( http.getMethod(), http.getRequestURI() );
+        }
+        return null;
+    }
+
+    /**
+     * Names the endpoint of a request by its method and path, with ids
+     * replaced by <code>{id}</code> and everything after an index type by
+     * <code>{index}</code>, e.g. <code>GET /db/data/node/{id}</code>.
+     */
+    static String endpoint( final String method, final String path )
+    {
+        StringBuilder result = new StringBuilder( method ).append( ' ' );
+        if ( path == null || path.length() == 0 ) return result.append( '/' ).toString();
+
+        String previous = null;
+        boolean index = false;
+        for ( String segment : path.split( "/" ) )
+        {
+            if ( segment.length() == 0 ) continue;
+            result.append( '/' );
+            if ( "index".equals( previous ) && ( "node".equals( segment ) || "relationship".equals( segment ) ) )
+            {
+                result.append( segment );
+                index = true;
+                previous = segment;
+                continue;
+            }
+            if ( index )
+            {
+                return result.append( "{index}" ).toString();
+            }
+            result.append( isId( segment ) ? "{id}" : segment );
+            previous = segment;
+        }
+        if ( result.charAt( result.length() - 1 ) == ' ' ) result.append( '/' );
+        return result.toString();
+    }
+
+    /**
+     * Numbers, lists of numbers and the hex ids of leases.
+     */
+    private static boolean isId( final String segment )
+    {
+        boolean digits = true;
+        for ( int i = 0; i < segment.length(); i++ )
+        {
+            char c = segment.charAt( i );
+            if ( Character.isDigit( c ) || c == ',' ) continue;
+            if ( Character.digit( c, 16 ) < 0 && c != '-' ) return false;
+            digits = false;
+        }
+        return digits || segment.length() >= 16;
+    }
+
     private long getResponseSize( final ServletResponse response )
     {
         if ( response instanceof ServletResponseWrapper )
@@ -20,6 +20,8 @@
 package org.neo4j.server.statistic;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
 
 /**
  * @author tbaum
@@ -33,15 +35,24 @@ public class StatisticRecord implements Serializable
     private final long requests;
     private final StatisticData duration;
     private final StatisticData size;
+    private final Map<String, StatisticData> endpointDurations;
 
     public StatisticRecord( long timeStamp, long period, long requests,
                             StatisticData duration, StatisticData size )
+    {
+        this( timeStamp, period, requests, duration, size, Collections.<String, StatisticData>emptyMap() );
+    }
+
+    public StatisticRecord( long timeStamp, long period, long requests,
+                            StatisticData duration, StatisticData size,
+                            Map<String, StatisticData> endpointDurations )
     {
         this.timeStamp = timeStamp;
         this.period = period;
         this.requests = requests;
         this.duration = duration;
         this.size = size;
+        this.endpointDurations = Collections.unmodifiableMap( endpointDurations );
     }
 
     public StatisticData getDuration()
@@ -49,6 +60,15 @@ public class StatisticRecord implements Serializable
         return duration;
     }
 
+    /**
+     * @return request durations per endpoint, as named by
+     *         {@link StatisticFilter#endpoint(String, String)}.
+     */
+    public Map<String, StatisticData> getEndpointDurations()
+    {
+        return endpointDurations;
+    }
+
     public long getPeriod()
     {
         return period;
@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.statistic;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of non-negative values, with log-linear buckets like
+ * an HDR histogram. Values below {@link #LINEAR_BUCKETS} get a bucket each.
+ * Above that every power of two is split into {@link #LINEAR_BUCKETS} / 2
+ * buckets, so a value is recorded with a relative error of at most 1/32.
+ * Values above 2^41 are recorded as 2^41 - 1.
+ * <p>
+ * Counts are striped by thread, so concurrent writers rarely touch the same
+ * cache lines. They are cumulative, {@link #snapshot(double)} reports what was
+ * recorded since the previous snapshot.
+ */
+class StripedHistogram
+{
+    static final int LINEAR_BUCKETS = 64;
+    private static final int LINEAR_BITS = 6;
+    private static final int SUB_BUCKETS = LINEAR_BUCKETS / 2;
+    private static final int MAX_MAGNITUDE = 40;
+    static final int BUCKETS = LINEAR_BUCKETS + ( MAX_MAGNITUDE - LINEAR_BITS + 1 ) * SUB_BUCKETS;
+    private static final long MAX_VALUE = ( 1L << ( MAX_MAGNITUDE + 1 ) ) - 1;
+
+    private final Stripe[] stripes;
+    private final int mask;
+
+    // Cumulative state at the previous snapshot, only touched by snapshot()
+    private long[] previousCounts = new long[BUCKETS];
+    private long previousSum;
+
+    StripedHistogram( int stripeCount )
+    {
+        int size = Integer.highestOneBit( Math.max( 1, stripeCount - 1 ) ) << 1;
+        stripes = new Stripe[size];
+        for ( int i = 0; i < size; i++ )
+        {
+            stripes[i] = new Stripe();
+        }
+        mask = size - 1;
+    }
+
+    void record( long value )
+    {
+        if ( value < 0 ) value = 0;
+        if ( value > MAX_VALUE ) value = MAX_VALUE;
+
+        Stripe stripe = stripes[(int) Thread.currentThread().getId() & mask];
+        stripe.counts.incrementAndGet( bucketFor( value ) );
+        stripe.sum.addAndGet( value );
+        for ( long max = stripe.max.get(); value > max; max = stripe.max.get() )
+        {
+            if ( stripe.max.compareAndSet( max, value ) ) break;
+        }
+        for ( long min = stripe.min.get(); value < min; min = stripe.min.get() )
+        {
+            if ( stripe.min.compareAndSet( min, value ) ) break;
+        }
+    }
+
+    /**
+     * @param scale what recorded values are divided by when reported.
+     * @return what was recorded since the previous snapshot.
+     */
+    synchronized StatisticData snapshot( double scale )
+    {
+        long[] counts = new long[BUCKETS];
+        long sum = 0;
+        long max = 0;
+        long min = Long.MAX_VALUE;
+        for ( Stripe stripe : stripes )
+        {
+            for ( int i = 0; i < BUCKETS; i++ )
+            {
+                counts[i] += stripe.counts.get( i );
+            }
+            sum += stripe.sum.get();
+            max = Math.max( max, stripe.max.getAndSet( 0 ) );
+            min = Math.min( min, stripe.min.getAndSet( Long.MAX_VALUE ) );
+        }
+
+        long[] interval = new long[BUCKETS];
+        long count = 0;
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            interval[i] = counts[i] - previousCounts[i];
+            count += interval[i];
+        }
+        long intervalSum = sum - previousSum;
+        previousCounts = counts;
+        previousSum = sum;
+
+        if ( count == 0 )
+        {
+            return new StatisticData( scale );
+        }
+        // A value recorded while the stripes were read may have updated the
+        // extremes but not the counts, or the other way around
+        return new StatisticData( interval, count, intervalSum, min == Long.MAX_VALUE ? 0 : min, max, scale );
+    }
+
+    static int bucketFor( long value )
+    {
+        if ( value < LINEAR_BUCKETS ) return (int) value;
+        int magnitude = 63 - Long.numberOfLeadingZeros( value );
+        int shift = magnitude - LINEAR_BITS + 1;
+        return LINEAR_BUCKETS + ( magnitude - LINEAR_BITS ) * SUB_BUCKETS + (int) ( value >>> shift ) - SUB_BUCKETS;
+    }
+
+    static long lowestValueIn( int bucket )
+    {
+        if ( bucket < LINEAR_BUCKETS ) return bucket;
+        int offset = bucket - LINEAR_BUCKETS;
+        int shift = offset / SUB_BUCKETS + 1;
+        return (long) ( offset % SUB_BUCKETS + SUB_BUCKETS ) << shift;
+    }
+
+    static long highestValueIn( int bucket )
+    {
+        if ( bucket < LINEAR_BUCKETS ) return bucket;
+        return lowestValueIn( bucket + 1 ) - 1;
+    }
+
+    private static class Stripe
+    {
+        final AtomicLongArray counts = new AtomicLongArray( BUCKETS );
+        final AtomicLong sum = new AtomicLong();
+        final AtomicLong max = new AtomicLong();
+        final AtomicLong min = new AtomicLong( Long.MAX_VALUE );
+    }
+}
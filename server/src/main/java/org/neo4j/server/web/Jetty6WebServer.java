@@ -33,7 +33,6 @@ import org.mortbay.jetty.webapp.WebAppContext;
 import org.mortbay.resource.Resource;
 import org.mortbay.thread.QueuedThreadPool;
 import org.neo4j.server.NeoServer;
-import org.neo4j.server.guard.Guard;
 import org.neo4j.server.guard.GuardingRequestFilter;
 import org.neo4j.server.logging.Logger;
 import org.neo4j.server.rest.security.SecurityFilter;
@@ -359,7 +358,7 @@ public class Jetty6WebServer implements WebServer
     }
 
     @Override
-    public void addExecutionLimitFilter( final Guard guard )
+    public void addExecutionLimitFilter( final GuardingRequestFilter filter )
     {
         jetty.addLifeCycleListener( new JettyLifeCylcleListenerAdapter()
         {
@@ -371,8 +370,7 @@ public class Jetty6WebServer implements WebServer
                     if ( handler instanceof Context )
                     {
                         final Context context = (Context) handler;
-                        final Filter jettyFilter = new GuardingRequestFilter( guard );
-                        final FilterHolder holder = new FilterHolder( jettyFilter );
+                        final FilterHolder holder = new FilterHolder( filter );
                         context.addFilter( holder, "/*", Handler.ALL );
                     }
                 }
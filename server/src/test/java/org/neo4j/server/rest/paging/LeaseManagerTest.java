@@ -19,6 +19,7 @@
  */
 package org.neo4j.server.rest.paging;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.mock;
@@ -103,4 +104,62 @@ public class LeaseManagerTest
 
         assertNull( manager.getLeaseById( lease.getId() ) );
     }
+
+    @Test
+    public void shouldExpireLeasesThatAreNeverLookedUpAgain() throws Exception
+    {
+        FakeClock fakeClock = new FakeClock();
+        LeaseManager manager = new LeaseManager( fakeClock );
+        manager.createLease( SIXTY_SECONDS, mock( PagedTraverser.class ) );
+        Lease longLease = manager.createLease( SIXTY_SECONDS * 20, mock( PagedTraverser.class ) );
+
+        fakeClock.forwardMinutes( 2 );
+        manager.expireLeases();
+
+        assertEquals( 1, manager.getLiveLeases() );
+        assertEquals( 1, manager.getExpiredLeases() );
+        assertNotNull( manager.getLeaseById( longLease.getId() ) );
+
+        fakeClock.forwardMinutes( 30 );
+        manager.expireLeases();
+
+        assertEquals( 0, manager.getLiveLeases() );
+        assertEquals( 2, manager.getExpiredLeases() );
+        manager.shutdown();
+    }
+
+    @Test
+    public void shouldNotExpireALeaseThatWasRenewed() throws Exception
+    {
+        FakeClock fakeClock = new FakeClock();
+        LeaseManager manager = new LeaseManager( fakeClock );
+        Lease lease = manager.createLease( SIXTY_SECONDS, mock( PagedTraverser.class ) );
+
+        fakeClock.forwardSeconds( 50 );
+        manager.expireLeases();
+        assertNotNull( manager.getLeaseById( lease.getId() ) );
+        fakeClock.forwardSeconds( 50 );
+        manager.expireLeases();
+
+        assertNotNull( manager.getLeaseById( lease.getId() ) );
+        assertEquals( 0, manager.getExpiredLeases() );
+        manager.shutdown();
+    }
+
+    @Test
+    public void shouldEvictTheLeaseClosestToExpiryWhenFull() throws Exception
+    {
+        FakeClock fakeClock = new FakeClock();
+        LeaseManager manager = new LeaseManager( fakeClock, 2 );
+        Lease longLease = manager.createLease( SIXTY_SECONDS * 2, mock( PagedTraverser.class ) );
+        Lease shortLease = manager.createLease( SIXTY_SECONDS, mock( PagedTraverser.class ) );
+
+        Lease newLease = manager.createLease( SIXTY_SECONDS, mock( PagedTraverser.class ) );
+
+        assertNull( manager.getLeaseById( shortLease.getId() ) );
+        assertNotNull( manager.getLeaseById( longLease.getId() ) );
+        assertNotNull( manager.getLeaseById( newLease.getId() ) );
+        assertEquals( 1, manager.getEvictedLeases() );
+        manager.shutdown();
+    }
 }
@@ -19,11 +19,17 @@
  */
 package org.neo4j.server.rest.repr;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.net.URI;
+import java.util.Arrays;
+
 import javax.ws.rs.core.MediaType;
 
+import com.sun.jersey.core.util.MultivaluedMapImpl;
 import org.junit.Test;
+import org.neo4j.server.rest.repr.formats.StreamingJsonFormat;
 
 public class RepresentationFormatRepositoryTest
 {
@@ -48,4 +54,31 @@ public class RepresentationFormatRepositoryTest
         format.readValue( "foo" );
         fail( "Got InputFormat based on wild card type: " + format );
     }
+
+    @Test
+    public void canProvideStreamingJsonOutputFormatWithMediaTypeParameter() throws Exception
+    {
+        OutputFormat format = repository.outputFormat(
+                Arrays.asList( MediaType.valueOf( "application/json;stream=true" ) ), URI.create( "http://localhost/" ),
+                new MultivaluedMapImpl() );
+        assertEquals( StreamingJsonFormat.MEDIA_TYPE, format.getMediaType() );
+    }
+
+    @Test
+    public void canProvideStreamingJsonOutputFormatWithHeader() throws Exception
+    {
+        MultivaluedMapImpl headers = new MultivaluedMapImpl();
+        headers.putSingle( StreamingFormat.STREAM_HEADER, "true" );
+        OutputFormat format = repository.outputFormat( Arrays.asList( MediaType.APPLICATION_JSON_TYPE ),
+                URI.create( "http://localhost/" ), headers );
+        assertEquals( StreamingJsonFormat.MEDIA_TYPE, format.getMediaType() );
+    }
+
+    @Test
+    public void doesNotStreamUnlessAskedTo() throws Exception
+    {
+        OutputFormat format = repository.outputFormat( Arrays.asList( MediaType.APPLICATION_JSON_TYPE ),
+                URI.create( "http://localhost/" ), new MultivaluedMapImpl() );
+        assertEquals( MediaType.APPLICATION_JSON_TYPE, format.getMediaType() );
+    }
 }
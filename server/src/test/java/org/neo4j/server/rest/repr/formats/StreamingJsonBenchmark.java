@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.repr.formats;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.server.NeoServer;
+import org.neo4j.server.helpers.ServerHelper;
+import org.neo4j.server.rest.repr.StreamingFormat;
+
+/**
+ * Fetches all relationships of a node with many relationships from a running
+ * server, as plain and as streamed JSON, and compares the time to the first
+ * byte of the response, the total time and the peak heap usage of the JVM the
+ * server runs in.
+ */
+public class StreamingJsonBenchmark
+{
+    private static final int RELATIONSHIPS = 200000;
+    private static final int ROUNDS = 3;
+
+    public static void main( String[] args ) throws Exception
+    {
+        NeoServer server = ServerHelper.createServer();
+        try
+        {
+            long hub = createHub( server.getDatabase().graph );
+            URL url = new URL( server.baseUri() + "db/data/node/" + hub + "/relationships/all" );
+            for ( int round = 0; round < ROUNDS; round++ )
+            {
+                fetch( url, false );
+                fetch( url, true );
+            }
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+
+    private static long createHub( GraphDatabaseService graph )
+    {
+        Node hub;
+        Transaction tx = graph.beginTx();
+        try
+        {
+            hub = graph.createNode();
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        for ( int created = 0; created < RELATIONSHIPS; )
+        {
+            tx = graph.beginTx();
+            try
+            {
+                for ( int i = 0; i < 10000 && created < RELATIONSHIPS; i++, created++ )
+                {
+                    Node other = graph.createNode();
+                    other.setProperty( "name", "node " + created );
+                    hub.createRelationshipTo( other, DynamicRelationshipType.withName( "KNOWS" ) )
+                            .setProperty( "since", created );
+                }
+                tx.success();
+            }
+            finally
+            {
+                tx.finish();
+            }
+        }
+        return hub.getId();
+    }
+
+    private static void fetch( URL url, boolean stream ) throws Exception
+    {
+        System.gc();
+        for ( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() )
+        {
+            pool.resetPeakUsage();
+        }
+
+        long start = System.currentTimeMillis();
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestProperty( "Accept", "application/json" );
+        if ( stream )
+        {
+            connection.setRequestProperty( StreamingFormat.STREAM_HEADER, "true" );
+        }
+        InputStream input = connection.getInputStream();
+        long bytes = 0;
+        long firstByte = -1;
+        byte[] buffer = new byte[8192];
+        for ( int read; ( read = input.read( buffer ) ) != -1; )
+        {
+            if ( firstByte == -1 )
+            {
+                firstByte = System.currentTimeMillis() - start;
+            }
+            bytes += read;
+        }
+        input.close();
+        long total = System.currentTimeMillis() - start;
+
+        System.out.println( ( stream ? "streamed" : "plain   " ) + ": " + bytes + " bytes, first byte after "
+                            + firstByte + "ms, all after " + total + "ms, peak heap " + peakHeap() / ( 1024 * 1024 )
+                            + "M" );
+    }
+
+    private static long peakHeap()
+    {
+        long peak = 0;
+        for ( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() )
+        {
+            if ( pool.getType() == MemoryType.HEAP )
+            {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
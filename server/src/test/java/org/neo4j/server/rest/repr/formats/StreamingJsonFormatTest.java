@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.repr.formats;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.server.rest.domain.JsonHelper;
+import org.neo4j.server.rest.repr.ListRepresentation;
+import org.neo4j.server.rest.repr.MappingRepresentation;
+import org.neo4j.server.rest.repr.MappingSerializer;
+import org.neo4j.server.rest.repr.OutputFormat;
+import org.neo4j.server.rest.repr.Representation;
+import org.neo4j.server.rest.repr.ValueRepresentation;
+
+public class StreamingJsonFormatTest
+{
+    private OutputFormat json;
+    private OutputFormat stream;
+
+    @Before
+    public void createOutputFormats() throws Exception
+    {
+        json = new OutputFormat( new JsonFormat(), new URI( "http://localhost/" ), null );
+        stream = new OutputFormat( new StreamingJsonFormat(), new URI( "http://localhost/" ), null );
+    }
+
+    @Test
+    public void canStreamString() throws Exception
+    {
+        assertStreamedAsJson( ValueRepresentation.string( "expected value" ) );
+    }
+
+    @Test
+    public void canStreamListOfStrings() throws Exception
+    {
+        assertStreamedAsJson( ListRepresentation.strings( "hello", "world" ) );
+    }
+
+    @Test
+    public void canStreamObjectWithNestedObjectsAndLists() throws Exception
+    {
+        assertStreamedAsJson( new MappingRepresentation( "nesting" )
+        {
+            @Override
+            protected void serialize( MappingSerializer serializer )
+            {
+                serializer.putUri( "URL", "subpath" );
+                serializer.putNumber( "number", 42L );
+                serializer.putNumber( "fraction", 0.5 );
+                serializer.putBoolean( "flag", true );
+                serializer.putMapping( "nested", new MappingRepresentation( "data" )
+                {
+                    @Override
+                    protected void serialize( MappingSerializer nested )
+                    {
+                        nested.putString( "data", "expected data" );
+                        nested.putList( "list", ListRepresentation.numbers( 1, 2, 3 ) );
+                    }
+                } );
+                serializer.putString( "after", "nested" );
+            }
+        } );
+    }
+
+    @Test
+    public void canStreamLongList() throws Exception
+    {
+        List<Representation> strings = new ArrayList<Representation>();
+        for ( int i = 0; i < 10000; i++ )
+        {
+            strings.add( ValueRepresentation.string( "value " + i ) );
+        }
+        assertStreamedAsJson( new ListRepresentation( "string", strings ) );
+    }
+
+    @Test
+    public void formatsLikeJsonWhenNotStreaming() throws Exception
+    {
+        Representation representation = ListRepresentation.strings( "hello", "world" );
+        assertEquals( json.format( representation ), stream.format( representation ) );
+    }
+
+    private void assertStreamedAsJson( Representation representation ) throws Exception
+    {
+        Response response = stream.ok( representation );
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ( (StreamingOutput) response.getEntity() ).write( output );
+
+        assertEquals( JsonHelper.readJson( json.format( representation ) ),
+                JsonHelper.readJson( output.toString( "UTF-8" ) ) );
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.web;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import org.neo4j.server.NeoServer;
+import org.neo4j.server.helpers.ServerHelper;
+
+/**
+ * Posts batches of node and relationship creations, property updates and
+ * index additions to a running server and prints the operations per second,
+ * once executed natively and once through the in-process HTTP path.
+ * Operations with a query string are never executed natively, which is what
+ * the second variant relies on.
+ */
+public class BatchOperationBenchmark
+{
+    private static final int NODES_PER_BATCH = 2500;
+    private static final int OPERATIONS_PER_NODE = 4;
+    private static final int ROUNDS = 5;
+
+    public static void main( String[] args ) throws Exception
+    {
+        NeoServer server = ServerHelper.createServer();
+        try
+        {
+            URL url = new URL( server.baseUri() + "db/data/batch" );
+            String nativeBatch = createBatch( "" );
+            String servletBatch = createBatch( "?" );
+            for ( int round = 0; round < ROUNDS; round++ )
+            {
+                post( url, nativeBatch, "native " );
+                post( url, servletBatch, "servlet" );
+            }
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+
+    /**
+     * Each node is created, gets a property, is linked to the node created
+     * before it and is added to an index.
+     */
+    private static String createBatch( String query )
+    {
+        StringBuilder batch = new StringBuilder( "[" );
+        for ( int i = 0; i < NODES_PER_BATCH; i++ )
+        {
+            int nodeJob = i * OPERATIONS_PER_NODE;
+            if ( i > 0 ) batch.append( "," );
+            batch.append( "{\"method\":\"POST\",\"to\":\"/node" ).append( query ).append( "\",\"id\":" )
+                    .append( nodeJob ).append( ",\"body\":{\"name\":\"node " ).append( i ).append( "\"}}," );
+            batch.append( "{\"method\":\"PUT\",\"to\":\"{" ).append( nodeJob ).append( "}/properties/age" )
+                    .append( query ).append( "\",\"id\":" ).append( nodeJob + 1 ).append( ",\"body\":" )
+                    .append( i ).append( "}," );
+            if ( i > 0 )
+            {
+                batch.append( "{\"method\":\"POST\",\"to\":\"{" ).append( nodeJob ).append( "}/relationships" )
+                        .append( query ).append( "\",\"id\":" ).append( nodeJob + 2 )
+                        .append( ",\"body\":{\"to\":\"{" ).append( nodeJob - OPERATIONS_PER_NODE )
+                        .append( "}\",\"type\":\"NEXT\"}}," );
+            }
+            batch.append( "{\"method\":\"POST\",\"to\":\"/index/node/names" ).append( query )
+                    .append( "\",\"id\":" ).append( nodeJob + 3 ).append( ",\"body\":{\"key\":\"name\",\"value\":\"node " )
+                    .append( i ).append( "\",\"uri\":\"{" ).append( nodeJob ).append( "}\"}}" );
+        }
+        return batch.append( "]" ).toString();
+    }
+
+    private static void post( URL url, String batch, String variant ) throws Exception
+    {
+        long start = System.currentTimeMillis();
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod( "POST" );
+        connection.setDoOutput( true );
+        connection.setRequestProperty( "Content-Type", "application/json" );
+        connection.setRequestProperty( "Accept", "application/json" );
+        OutputStream output = connection.getOutputStream();
+        output.write( batch.getBytes( "UTF-8" ) );
+        output.close();
+        InputStream input = connection.getInputStream();
+        byte[] buffer = new byte[8192];
+        while ( input.read( buffer ) != -1 )
+        {
+            // just consume the response
+        }
+        input.close();
+        long time = System.currentTimeMillis() - start;
+
+        int operations = NODES_PER_BATCH * OPERATIONS_PER_NODE - 1;
+        System.out.println( variant + ": " + operations + " operations in " + time + "ms, "
+                            + ( operations * 1000L / Math.max( time, 1 ) ) + " ops/s, status "
+                            + connection.getResponseCode() );
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.web;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.server.ServerTestUtils;
+import org.neo4j.server.database.Database;
+import org.neo4j.server.rest.domain.JsonHelper;
+import org.neo4j.server.rest.paging.FakeClock;
+import org.neo4j.server.rest.paging.LeaseManager;
+import org.neo4j.server.rest.repr.OutputFormat;
+import org.neo4j.server.rest.repr.formats.JsonFormat;
+
+public class CypherServicePagedResultTest
+{
+    private static final String BASE_URI = "http://neo4j.org:7474/db/data/";
+    private static final String QUERY = "{\"query\":\"start n=node(*) return n\"}";
+    private static final int PAGE_SIZE = 10;
+    private static final int SIXTY_SECONDS = 60;
+
+    private CypherService service;
+    private Database database;
+    private LeaseManager leaseManager;
+
+    @Before
+    public void startDatabase() throws IOException
+    {
+        database = new Database( ServerTestUtils.EPHEMERAL_GRAPH_DATABASE_FACTORY, null );
+        leaseManager = new LeaseManager( new FakeClock() );
+        UriInfo uriInfo = mock( UriInfo.class );
+        when( uriInfo.getBaseUri() ).thenReturn( URI.create( BASE_URI ) );
+        OutputFormat output = new OutputFormat( new JsonFormat(), URI.create( BASE_URI ), null );
+        service = new CypherService( uriInfo, database, new JsonFormat(), output, leaseManager );
+
+        // 25 nodes and the reference node
+        Transaction tx = database.graph.beginTx();
+        try
+        {
+            for ( int i = 0; i < 25; i++ )
+            {
+                database.graph.createNode();
+            }
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+    }
+
+    @After
+    public void shutdownDatabase() throws IOException
+    {
+        this.database.shutdown();
+    }
+
+    @Test
+    public void shouldLeaseTheResultAndReturnTheFirstPageWith201() throws Exception
+    {
+        Response response = service.createPagedResult( PAGE_SIZE, SIXTY_SECONDS, QUERY );
+
+        assertEquals( 201, response.getStatus() );
+        assertThat( location( response ), containsString( "/db/data/cypher/paged/" ) );
+        assertEquals( PAGE_SIZE, rows( response ).size() );
+    }
+
+    @Test
+    public void shouldPageThroughTheResultAndRespondWith404WhenItIsExhausted() throws Exception
+    {
+        String resultId = resultId( service.createPagedResult( PAGE_SIZE, SIXTY_SECONDS, QUERY ) );
+
+        Response response = service.pagedResult( resultId );
+        assertEquals( 200, response.getStatus() );
+        assertEquals( 10, rows( response ).size() );
+
+        response = service.pagedResult( resultId );
+        assertEquals( 200, response.getStatus() );
+        assertEquals( 6, rows( response ).size() );
+
+        assertEquals( 404, service.pagedResult( resultId ).getStatus() );
+    }
+
+    @Test
+    public void shouldRespondWith404WhenNoSuchResultIsLeased()
+    {
+        assertEquals( 404, service.pagedResult( "anUnlikelyResultId" ).getStatus() );
+    }
+
+    @Test
+    public void shouldRespondWith404WhenTheLeaseHasExpired() throws Exception
+    {
+        String resultId = resultId( service.createPagedResult( PAGE_SIZE, SIXTY_SECONDS, QUERY ) );
+        ( (FakeClock) leaseManager.getClock() ).forwardMinutes( 2 );
+
+        assertEquals( 404, service.pagedResult( resultId ).getStatus() );
+    }
+
+    @Test
+    public void shouldRemoveTheLeasedResult() throws Exception
+    {
+        String resultId = resultId( service.createPagedResult( PAGE_SIZE, SIXTY_SECONDS, QUERY ) );
+
+        assertEquals( 200, service.removePagedResult( resultId ).getStatus() );
+        assertEquals( 404, service.pagedResult( resultId ).getStatus() );
+    }
+
+    @Test
+    public void shouldRespondWith400ForBadPageSize() throws Exception
+    {
+        assertEquals( 400, service.createPagedResult( 0, SIXTY_SECONDS, QUERY ).getStatus() );
+    }
+
+    private String location( Response response )
+    {
+        return response.getMetadata().getFirst( "Location" ).toString();
+    }
+
+    private String resultId( Response response )
+    {
+        String location = location( response );
+        return location.substring( location.lastIndexOf( '/' ) + 1 );
+    }
+
+    private List<?> rows( Response response ) throws Exception
+    {
+        Object entity = response.getEntity();
+        String json = entity instanceof byte[] ? new String( (byte[]) entity, "UTF-8" ) : entity.toString();
+        return (List<?>) JsonHelper.jsonToMap( json ).get( "data" );
+    }
+}
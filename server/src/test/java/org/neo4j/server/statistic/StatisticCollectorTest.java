@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.statistic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class StatisticCollectorTest
+{
+    @Test
+    public void shouldReportPercentilesWithinBucketPrecision()
+    {
+        StatisticCollector collector = new StatisticCollector();
+        for ( int millis = 1; millis <= 1000; millis++ )
+        {
+            collector.update( "GET /db/data/node/{id}", millis * 1000000L, 100 );
+        }
+
+        StatisticRecord record = collector.createSnapshot();
+        StatisticData duration = record.getDuration();
+        assertEquals( 1000, record.getRequests() );
+        assertEquals( 1000, duration.getCount() );
+        assertEquals( 500.5, duration.getAvg(), 0.001 );
+        assertEquals( 1.0, duration.getMin(), 0.0 );
+        assertEquals( 1000.0, duration.getMax(), 0.0 );
+        assertWithinPrecision( 500, duration.getMedian() );
+        assertWithinPrecision( 900, duration.getP90() );
+        assertWithinPrecision( 990, duration.getP99() );
+        assertWithinPrecision( 999, duration.getP999() );
+        assertEquals( 100.0, record.getSize().getAvg(), 0.0 );
+    }
+
+    @Test
+    public void shouldOnlyReportWhatWasRecordedSincePreviousSnapshot()
+    {
+        StatisticCollector collector = new StatisticCollector();
+        collector.update( 1000.0, 10 );
+        collector.createSnapshot();
+        collector.update( 2.0, 10 );
+
+        StatisticRecord record = collector.createSnapshot();
+        assertEquals( 1, record.getRequests() );
+        assertEquals( 2.0, record.getDuration().getMax(), 0.0 );
+        assertEquals( 0, collector.createSnapshot().getRequests() );
+    }
+
+    @Test
+    public void shouldBreakDownDurationsPerEndpoint()
+    {
+        StatisticCollector collector = new StatisticCollector();
+        collector.update( "GET /db/data/node/{id}", 1000000L, 0 );
+        collector.update( "GET /db/data/node/{id}", 3000000L, 0 );
+        collector.update( "POST /db/data/cypher", 5000000L, 0 );
+
+        StatisticRecord record = collector.createSnapshot();
+        assertEquals( 3, record.getRequests() );
+        assertEquals( 2, record.getEndpointDurations().get( "GET /db/data/node/{id}" ).getCount() );
+        assertEquals( 5.0, record.getEndpointDurations().get( "POST /db/data/cypher" ).getMax(), 0.0 );
+    }
+
+    @Test
+    public void shouldCountEndpointsBeyondLimitAsOther()
+    {
+        StatisticCollector collector = new StatisticCollector();
+        for ( int i = 0; i < StatisticCollector.MAX_ENDPOINTS + 10; i++ )
+        {
+            collector.update( "GET /endpoint" + i, 1000000L, 0 );
+        }
+
+        StatisticRecord record = collector.createSnapshot();
+        assertEquals( StatisticCollector.MAX_ENDPOINTS + 1, record.getEndpointDurations().size() );
+        assertEquals( 10, record.getEndpointDurations().get( StatisticCollector.OTHER_ENDPOINTS ).getCount() );
+    }
+
+    @Test
+    public void shouldNotLoseUpdatesFromConcurrentThreads() throws Exception
+    {
+        final StatisticCollector collector = new StatisticCollector();
+        final int threads = 8, updates = 10000;
+        final CountDownLatch start = new CountDownLatch( 1 );
+        Thread[] workers = new Thread[threads];
+        for ( int i = 0; i < threads; i++ )
+        {
+            workers[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        return;
+                    }
+                    for ( int j = 0; j < updates; j++ )
+                    {
+                        collector.update( "GET /", ( j % 100 ) * 1000000L, 1 );
+                    }
+                }
+            };
+            workers[i].start();
+        }
+        start.countDown();
+        for ( Thread worker : workers )
+        {
+            worker.join();
+        }
+
+        StatisticRecord record = collector.createSnapshot();
+        assertEquals( threads * updates, record.getRequests() );
+        assertEquals( threads * updates, record.getSize().getSum(), 0.0 );
+        assertEquals( threads * updates, record.getEndpointDurations().get( "GET /" ).getCount() );
+    }
+
+    @Test
+    public void shouldMapEveryValueToTheBucketHoldingIt()
+    {
+        for ( long value = 0; value < 100000; value += 7 )
+        {
+            int bucket = StripedHistogram.bucketFor( value );
+            assertTrue( StripedHistogram.lowestValueIn( bucket ) <= value );
+            assertTrue( StripedHistogram.highestValueIn( bucket ) >= value );
+        }
+        assertEquals( StripedHistogram.BUCKETS - 1, StripedHistogram.bucketFor( ( 1L << 41 ) - 1 ) );
+    }
+
+    private static void assertWithinPrecision( double expected, double actual )
+    {
+        assertTrue( "expected " + expected + " but was " + actual,
+                actual >= expected && actual <= expected * ( 1 + 1 / 32.0 ) );
+    }
+}
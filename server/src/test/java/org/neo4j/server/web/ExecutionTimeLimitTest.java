@@ -19,6 +19,9 @@
  */
 package org.neo4j.server.web;
 
+import static org.junit.Assert.assertEquals;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+
 import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.UniformInterfaceException;
 import org.junit.After;
@@ -26,6 +29,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.neo4j.graphdb.Node;
 import org.neo4j.kernel.AbstractGraphDatabase;
+import org.neo4j.kernel.Config;
+import org.neo4j.server.Bootstrapper;
 import org.neo4j.server.WrappingNeoServerBootstrapper;
 import org.neo4j.server.configuration.Configurator;
 import org.neo4j.server.configuration.EmbeddedServerConfigurator;
@@ -69,10 +74,28 @@ public class ExecutionTimeLimitTest
                 .get( String.class );
     }
 
+    @Test
+    public void refuseToStartWithLimitsForDatabaseWithoutGuard()
+    {
+        AbstractGraphDatabase unguarded = new ImpermanentGraphDatabase();
+        try
+        {
+            EmbeddedServerConfigurator config = new EmbeddedServerConfigurator( unguarded );
+            config.configuration().setProperty( Configurator.WEBSERVER_PORT_PROPERTY_KEY, 7477 );
+            config.configuration().setProperty( Configurator.WEBSERVER_LIMIT_EXECUTION_TIME_PROPERTY_KEY, 1000 );
+            assertEquals( Bootstrapper.WEB_SERVER_STARTUP_ERROR_CODE,
+                    new WrappingNeoServerBootstrapper( unguarded, config ).start() );
+        }
+        finally
+        {
+            unguarded.shutdown();
+        }
+    }
+
     @Before
     public void setUp() throws Exception
     {
-        db = new ImpermanentGraphDatabase()
+        db = new ImpermanentGraphDatabase( stringMap( Config.EXECUTION_GUARD_ENABLED, "true" ) )
         {
             @Override
             public Node getNodeById( long id )